@@ -17,7 +17,6 @@ import org.exist.dom.QName;
 import org.exist.security.PermissionDeniedException;
 import org.exist.source.Source;
 import org.exist.source.SourceFactory;
-import org.exist.storage.NativeBroker;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.BasicFunction;
@@ -97,7 +96,7 @@ public class MetadataFunctions extends BasicFunction {
             doc = context.getBroker().getXMLResource(docUri, LockMode.READ_LOCK);
             if (doc instanceof BinaryDocument) {
                 //resolve real filesystem path of binary file
-                final Path binaryFile = ((NativeBroker) context.getBroker()).getCollectionBinaryFileFsPath(docUri);
+                final Path binaryFile = context.getBroker().getBinaryFile((BinaryDocument) doc);
                 if (!Files.exists(binaryFile)) {
                     throw new XPathException("Binary Document at " + docUri.toString() + " does not exist.");
                 }
@@ -105,8 +104,8 @@ public class MetadataFunctions extends BasicFunction {
             } else {
                 throw new XPathException("The binay document at " + docUri.toString() + " cannot be found.");
             }
-        } catch (PermissionDeniedException pde) {
-            throw new XPathException("Could not access binary document: " + pde.getMessage(), pde);
+        } catch (PermissionDeniedException | IOException e) {
+            throw new XPathException("Could not access binary document: " + e.getMessage(), e);
         } finally {
             if (doc != null) {
                 doc.getUpdateLock().release(LockMode.READ_LOCK);
@@ -24,8 +24,11 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
@@ -33,6 +36,7 @@ import org.exist.backup.RawDataBackup;
 import org.exist.indexing.AbstractIndex;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
+import org.exist.management.AgentFactory;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
@@ -47,6 +51,9 @@ import org.w3c.dom.NodeList;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     
@@ -58,6 +65,20 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
 	private static final String DIR_NAME = "lucene";
 
+    /**
+     * Module attribute: the maximum time in milliseconds a query may see
+     * stale results after a write. With 0, the readers are refreshed before
+     * every query.
+     */
+    public static final String MAX_STALE_ATTRIBUTE = "maxStale";
+
+    /**
+     * Module attribute: the interval in milliseconds in which the index
+     * is committed. With 0, the index is committed whenever the database
+     * syncs its indexes.
+     */
+    public static final String COMMIT_INTERVAL_ATTRIBUTE = "commitInterval";
+
     protected Directory directory;
     protected Analyzer defaultAnalyzer;
 
@@ -68,6 +89,19 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     protected SearcherManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    protected long maxStale = 0;
+    protected long commitInterval = 0;
+
+    private TrackingIndexWriter trackingWriter = null;
+    private ControlledRealTimeReopenThread<IndexSearcher> searcherReopenThread = null;
+    private ControlledRealTimeReopenThread<DirectoryReader> readerReopenThread = null;
+    private ScheduledExecutorService committer = null;
+
+    /** the generation of the last write of the current thread, see {@link #releaseWriter(IndexWriter)} */
+    private final ThreadLocal<Long> lastWriteGeneration = new ThreadLocal<>();
+
+    private final LuceneIndexStatistics statistics = new LuceneIndexStatistics(this);
+
     public LuceneIndex() {
         //Nothing special to do
     }
@@ -92,6 +126,9 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: " + bufferSize);
+
+        maxStale = getMillis(config, MAX_STALE_ATTRIBUTE);
+        commitInterval = getMillis(config, COMMIT_INTERVAL_ATTRIBUTE);
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -129,17 +166,81 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
             searcherManager = new SearcherManager(cachedWriter, true, null);
             readerManager = new ReaderManager(cachedWriter, true);
+            searcherManager.addListener(statistics.newRefreshListener());
+            readerManager.addListener(statistics.newRefreshListener());
+
+            if (maxStale > 0) {
+                trackingWriter = new TrackingIndexWriter(cachedWriter);
+                searcherReopenThread = startReopenThread(searcherManager, "searcher");
+                readerReopenThread = startReopenThread(readerManager, "reader");
+            }
+            if (commitInterval > 0) {
+                committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "exist-" + getDirName() + "-index-committer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                committer.scheduleWithFixedDelay(() -> {
+                    synchronized (LuceneIndex.this) {
+                        commit();
+                    }
+                }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+            }
         } catch (IOException e) {
             throw new DatabaseConfigurationException("Exception while reading lucene index directory: " +
                 e.getMessage(), e);
         } finally {
             releaseWriter(writer);
         }
+
+        try {
+            AgentFactory.getInstance().addMBean(pool.getId(),
+                    "org.exist.management." + pool.getId() + ":type=LuceneIndexStatistics,index=" + getDirName(),
+                    statistics);
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering mbean for the " + getDirName() + " index.", e);
+        }
+    }
+
+    private static long getMillis(final Element config, final String attribute) {
+        final String param = config.getAttribute(attribute);
+        if (param != null && !param.isEmpty()) {
+            try {
+                return Math.max(0, Long.parseLong(param));
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid " + attribute + " setting for lucene index: " + param, e);
+            }
+        }
+        return 0;
+    }
+
+    private <T> ControlledRealTimeReopenThread<T> startReopenThread(final ReferenceManager<T> manager, final String name) {
+        // refresh at least every maxStale ms, but at once if a thread waits for its writes
+        final ControlledRealTimeReopenThread<T> thread =
+                new ControlledRealTimeReopenThread<>(trackingWriter, manager, maxStale / 1000.0, 0.0);
+        thread.setName("exist-" + getDirName() + "-index-" + name + "-reopen");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
     }
 
     @Override
     public synchronized void close() throws DBException {
         try {
+            if (searcherReopenThread != null) {
+                searcherReopenThread.close();
+                searcherReopenThread = null;
+            }
+            if (readerReopenThread != null) {
+                readerReopenThread.close();
+                readerReopenThread = null;
+            }
+            trackingWriter = null;
+            if (committer != null) {
+                // the pending commit, if any, gives up once the writer is closed
+                committer.shutdownNow();
+                committer = null;
+            }
             if (searcherManager != null) {
                 searcherManager.close();
                 searcherManager = null;
@@ -162,8 +263,10 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
     @Override
     public synchronized void sync() throws DBException {
-        //Nothing special to do
-        commit();
+        // with a commit interval, the index is committed in the background
+        if (commitInterval <= 0) {
+            commit();
+        }
     }
 
     @Override
@@ -208,6 +311,10 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         if (writer == null)
             return;
         needsCommit = true;
+        if (trackingWriter != null) {
+            // a reader opened after this generation sees the changes of the current thread
+            lastWriteGeneration.set(trackingWriter.getAndIncrementGeneration());
+        }
     }
 
     protected void commit() {
@@ -220,7 +327,9 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
             }
             
         	if (cachedWriter != null) {
+                final long start = System.nanoTime();
                 cachedWriter.commit();
+                statistics.committed(System.nanoTime() - start);
             }
             needsCommit = false;
         } catch(CorruptIndexException cie) {
@@ -230,8 +339,52 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    /**
+     * Make sure the manager sees the writes of the current thread. Without
+     * a maximum staleness, the manager is refreshed before every query.
+     * Otherwise a background thread refreshes it regularly, and we only
+     * wait for it if the current thread has written since the last refresh.
+     */
+    private void refresh(final ReferenceManager<?> manager, final ControlledRealTimeReopenThread<?> reopenThread)
+            throws IOException {
+        final Long generation = lastWriteGeneration.get();
+        if (reopenThread == null) {
+            manager.maybeRefreshBlocking();
+        } else if (generation != null) {
+            try {
+                if (!reopenThread.waitForGeneration(generation, (int) Math.min(Integer.MAX_VALUE, maxStale))) {
+                    manager.maybeRefreshBlocking();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the lucene index to refresh");
+            }
+        }
+    }
+
+    /**
+     * @return the number of segments of the index, as seen by the
+     * current reader, or -1 if the index is closed
+     */
+    int getSegmentCount() {
+        final ReaderManager manager = readerManager;
+        if (manager == null) {
+            return -1;
+        }
+        try {
+            final DirectoryReader reader = manager.acquire();
+            try {
+                return reader.leaves().size();
+            } finally {
+                manager.release(reader);
+            }
+        } catch (final IOException | AlreadyClosedException e) {
+            return -1;
+        }
+    }
+
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
+        refresh(readerManager, readerReopenThread);
         final DirectoryReader reader = readerManager.acquire();
         try {
             return fn.apply(reader);
@@ -241,7 +394,7 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withSearcher(Function2E<IndexSearcher, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        refresh(searcherManager, searcherReopenThread);
         final IndexSearcher searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
@@ -0,0 +1,132 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.search.ReferenceManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the number and latency of the refreshes and commits of a
+ * {@link LuceneIndex}. All times are reported in milliseconds.
+ */
+public class LuceneIndexStatistics implements LuceneIndexStatisticsMXBean {
+
+    private final LuceneIndex index;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshTime = new AtomicLong();
+    private final AtomicLong maxRefreshTime = new AtomicLong();
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong commitTime = new AtomicLong();
+    private final AtomicLong maxCommitTime = new AtomicLong();
+
+    public LuceneIndexStatistics(final LuceneIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @return a listener which times the refreshes of a searcher or reader manager
+     */
+    ReferenceManager.RefreshListener newRefreshListener() {
+        return new ReferenceManager.RefreshListener() {
+            // refreshes of a manager never overlap
+            private long start;
+
+            @Override
+            public void beforeRefresh() {
+                start = System.nanoTime();
+            }
+
+            @Override
+            public void afterRefresh(final boolean didRefresh) {
+                if (didRefresh) {
+                    refreshed(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    void refreshed(final long nanos) {
+        refreshes.incrementAndGet();
+        refreshTime.addAndGet(nanos);
+        maxRefreshTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    void committed(final long nanos) {
+        commits.incrementAndGet();
+        commitTime.addAndGet(nanos);
+        maxCommitTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    @Override
+    public long getMaxStale() {
+        return index.maxStale;
+    }
+
+    @Override
+    public long getCommitInterval() {
+        return index.commitInterval;
+    }
+
+    @Override
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    @Override
+    public double getAverageRefreshTime() {
+        return average(refreshTime.get(), refreshes.get());
+    }
+
+    @Override
+    public double getMaxRefreshTime() {
+        return millis(maxRefreshTime.get());
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.get();
+    }
+
+    @Override
+    public double getAverageCommitTime() {
+        return average(commitTime.get(), commits.get());
+    }
+
+    @Override
+    public double getMaxCommitTime() {
+        return millis(maxCommitTime.get());
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return index.getSegmentCount();
+    }
+
+    private static double average(final long nanos, final long count) {
+        return count == 0 ? 0.0 : millis(nanos) / count;
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
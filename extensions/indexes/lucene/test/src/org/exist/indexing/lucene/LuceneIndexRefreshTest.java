@@ -0,0 +1,182 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2017 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software Foundation
+ *  Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the maxStale and commitInterval settings of the Lucene index:
+ * a thread always sees its own writes, other threads may see them only
+ * after the next refresh, and a commit interval defers the commits to a
+ * background thread. Also checks that the statistics are published as an MXBean.
+ */
+public class LuceneIndexRefreshTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readYourWritesWithMaxStale() throws Exception {
+        final LuceneIndex index = openIndex("60000", "0");
+        final ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            addDocument(index, "1");
+
+            // the reader of another thread is refreshed within maxStale only
+            assertEquals(0, (int) other.submit(() -> count(index)).get());
+            // but the writing thread sees its changes at once
+            assertEquals(1, count(index));
+            // and has thereby refreshed the reader for all threads
+            assertEquals(1, (int) other.submit(() -> count(index)).get());
+        } finally {
+            other.shutdown();
+            index.close();
+        }
+    }
+
+    @Test
+    public void refreshWithoutMaxStale() throws Exception {
+        final LuceneIndex index = openIndex("0", "0");
+        final ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            addDocument(index, "1");
+            assertEquals(1, (int) other.submit(() -> count(index)).get());
+        } finally {
+            other.shutdown();
+            index.close();
+        }
+    }
+
+    @Test
+    public void commitOnSync() throws Exception {
+        final LuceneIndex index = openIndex("0", "0");
+        try {
+            addDocument(index, "1");
+            index.sync();
+            assertEquals(1, countCommitted(index));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void commitInterval() throws Exception {
+        final LuceneIndex index = openIndex("0", "60000");
+        try {
+            addDocument(index, "1");
+            // the commit is left to the background thread
+            index.sync();
+            assertEquals(0, countCommitted(index));
+            // but still visible to queries
+            assertEquals(1, count(index));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void commitInBackground() throws Exception {
+        final LuceneIndex index = openIndex("0", "100");
+        try {
+            addDocument(index, "1");
+            final long timeout = System.currentTimeMillis() + 10000;
+            while (countCommitted(index) == 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, countCommitted(index));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void statisticsMXBean() throws Exception {
+        final MBeanServer server = MBeanServerFactory.findMBeanServer(null).get(0);
+        final ObjectName name = new ObjectName("org.exist.management." + existEmbeddedServer.getBrokerPool().getId() +
+                ":type=LuceneIndexStatistics,index=lucene");
+        assertTrue(server.isRegistered(name));
+        assertEquals(0L, server.getAttribute(name, "MaxStale"));
+        assertEquals(0L, server.getAttribute(name, "CommitInterval"));
+        assertTrue((Integer) server.getAttribute(name, "SegmentCount") >= 0);
+    }
+
+    private LuceneIndex openIndex(final String maxStale, final String commitInterval) throws Exception {
+        final String module = "<module id='lucene-index' " + LuceneIndex.MAX_STALE_ATTRIBUTE + "='" + maxStale + "' " +
+                LuceneIndex.COMMIT_INTERVAL_ATTRIBUTE + "='" + commitInterval + "'/>";
+        final Element config = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(module))).getDocumentElement();
+        final LuceneIndex index = new LuceneIndex();
+        index.configure(existEmbeddedServer.getBrokerPool(), folder.newFolder().toPath(), config);
+        index.open();
+        return index;
+    }
+
+    private static void addDocument(final LuceneIndex index, final String id) throws Exception {
+        final IndexWriter writer = index.getWriter();
+        try {
+            final Document doc = new Document();
+            doc.add(new StringField("id", id, Field.Store.YES));
+            writer.addDocument(doc);
+        } finally {
+            index.releaseWriter(writer);
+        }
+    }
+
+    private static int count(final LuceneIndex index) throws Exception {
+        return index.withSearcher(searcher -> searcher.getIndexReader().numDocs());
+    }
+
+    /**
+     * @return the number of documents in the last commit of the index
+     */
+    private static int countCommitted(final LuceneIndex index) throws Exception {
+        if (!DirectoryReader.indexExists(index.directory)) {
+            return 0;
+        }
+        try (final DirectoryReader reader = DirectoryReader.open(index.directory)) {
+            return reader.numDocs();
+        }
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.exist.xquery.modules.expathrepo;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
@@ -33,7 +34,6 @@ import org.exist.repo.ExistPkgInfo;
 import org.exist.repo.ExistRepository;
 import org.exist.security.PermissionDeniedException;
 import org.exist.repo.ClasspathHelper;
-import org.exist.storage.NativeBroker;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.BasicFunction;
@@ -103,10 +103,12 @@ public class InstallFunction extends BasicFunction {
 			BinaryDocument doc = null;
 			try {
 			    doc = _getDocument(pkgOrPath);
-			    Path file = ((NativeBroker)context.getBroker()).getCollectionBinaryFileFsPath(doc.getURI());
+			    Path file = context.getBroker().getBinaryFile(doc);
 			    LOG.debug("Installing file: " + file.toAbsolutePath().toString());
 			    pkg = parent_repo.installPackage(file, force, interact);
 			    repo.get().reportAction(ExistRepository.Action.INSTALL, pkg.getName());
+			} catch (IOException e) {
+			    throw new XPathException(this, e.getMessage(), e);
 			} finally {
 			    if (doc != null)
 				doc.getUpdateLock().release(LockMode.READ_LOCK);
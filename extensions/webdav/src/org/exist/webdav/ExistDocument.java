@@ -43,6 +43,7 @@ import org.exist.webdav.exceptions.DocumentNotLockedException;
 import org.exist.xmldb.XmldbURI;
 import org.xml.sax.SAXException;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -150,6 +151,17 @@ public class ExistDocument extends ExistResource {
      * Stream document to framework.
      */
     public void stream(OutputStream os) throws IOException, PermissionDeniedException {
+        stream(os, 0, -1);
+    }
+
+    /**
+     * Stream a range of the document to framework.
+     *
+     * @param os the stream to write to
+     * @param start the offset of the first byte to write
+     * @param length the number of bytes to write, or -1 for all bytes up to the end of the document
+     */
+    public void stream(OutputStream os, long start, long length) throws IOException, PermissionDeniedException {
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Stream started");
@@ -174,8 +186,9 @@ public class ExistDocument extends ExistResource {
                             serializer.setProperties(configuration);
                         }
 
-                        // Serialize document
-                        try (Writer w = new OutputStreamWriter(os, "UTF-8")) {
+                        // Serialize document, the bytes outside of the range are serialized too but discarded
+                        final OutputStream target = start == 0 && length < 0 ? os : new RangeOutputStream(os, start, length);
+                        try (Writer w = new OutputStreamWriter(target, "UTF-8")) {
                             serializer.serialize(document, w);
                             w.flush();
                         }
@@ -192,7 +205,12 @@ public class ExistDocument extends ExistResource {
 
                 } else {
                     // Stream NON-XML document
-                    broker.readBinaryResource((BinaryDocument) document, os);
+                    if (start == 0 && length < 0) {
+                        broker.readBinaryResource((BinaryDocument) document, os);
+                    } else {
+                        final long end = length < 0 ? document.getContentLength() : Math.min(start + length, document.getContentLength());
+                        broker.readBinaryResource((BinaryDocument) document, start, Math.max(0, end - start), os);
+                    }
                     os.flush();
                 }
             } finally {
@@ -705,4 +723,38 @@ public class ExistDocument extends ExistResource {
             }
         }
     }
+
+    /**
+     * Passes on the bytes of a range and discards all others.
+     */
+    private static class RangeOutputStream extends FilterOutputStream {
+
+        private final long start;
+        private final long end;
+        private long position = 0;
+
+        RangeOutputStream(final OutputStream os, final long start, final long length) {
+            super(os);
+            this.start = start;
+            this.end = length < 0 ? Long.MAX_VALUE : start + length;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (position >= start && position < end) {
+                out.write(b);
+            }
+            position++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final long from = Math.max(position, start);
+            final long to = Math.min(position + len, end);
+            if (from < to) {
+                out.write(b, off + (int) (from - position), (int) (to - from));
+            }
+            position += len;
+        }
+    }
 }
@@ -176,7 +176,11 @@ public class MiltonDocument extends MiltonResource
         try {
             if (vtf == null) {
                 LOG.debug("Serializing from database");
-                existDocument.stream(out);
+                if (range == null) {
+                    existDocument.stream(out);
+                } else {
+                    existDocument.stream(out, range.getStart(), range.getFinish() - range.getStart() + 1);
+                }
 
             } else {
                 // Experimental. Does not work right, the virtual file
@@ -204,6 +208,20 @@ public class MiltonDocument extends MiltonResource
      * GettableResource
      * ================ */
 
+    /**
+     * Binary documents are identified by their modification time and size, which
+     * enables the ETag field and conditional requests. The serialization of XML
+     * documents depends on the configuration, so they have no ETag field.
+     */
+    @Override
+    public String getUniqueId() {
+        final Long lastModified = existDocument.getLastModified();
+        if (existDocument.isXmlDocument() || lastModified == null) {
+            return null;
+        }
+        return Long.toHexString(lastModified) + '-' + Long.toHexString(existDocument.getContentLength());
+    }
+
     @Override
     public Long getMaxAgeSeconds(Auth auth) {
         return null;
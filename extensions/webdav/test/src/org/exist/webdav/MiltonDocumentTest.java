@@ -0,0 +1,116 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2017 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software Foundation
+ *  Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.webdav;
+
+import com.bradmcevoy.http.Range;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the range requests and entity tags of WebDAV documents.
+ */
+public class MiltonDocumentTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-webdav");
+    private static final XmldbURI BINARY = TEST_COLLECTION.append("data.bin");
+    private static final XmldbURI XML = TEST_COLLECTION.append("data.xml");
+
+    private static final byte[] DATA = new byte[100 * 1024];
+
+    @BeforeClass
+    public static void storeDocuments() throws Exception {
+        for (int i = 0; i < DATA.length; i++) {
+            DATA[i] = (byte) i;
+        }
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, collection);
+            collection.addBinaryResource(transaction, broker, BINARY.lastSegment(), DATA, "application/octet-stream");
+            final String xml = "<data><item>first</item><item>second</item><item>third</item></data>";
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, XML.lastSegment(), xml);
+            collection.store(transaction, broker, info, xml);
+            transact.commit(transaction);
+        }
+    }
+
+    @Test
+    public void binaryRange() throws Exception {
+        final MiltonDocument document = getDocument(BINARY);
+        assertArrayEquals(DATA, sendContent(document, null));
+        assertArrayEquals(Arrays.copyOfRange(DATA, 10, 20), sendContent(document, new Range(10, 19)));
+        assertArrayEquals(Arrays.copyOfRange(DATA, 70000, DATA.length),
+                sendContent(document, new Range(70000, DATA.length - 1)));
+    }
+
+    @Test
+    public void xmlRange() throws Exception {
+        final MiltonDocument document = getDocument(XML);
+        final byte[] content = sendContent(document, null);
+        assertTrue(content.length > 20);
+        assertArrayEquals(Arrays.copyOfRange(content, 5, 20), sendContent(document, new Range(5, 19)));
+        assertArrayEquals(Arrays.copyOfRange(content, content.length - 3, content.length),
+                sendContent(document, new Range(content.length - 3, content.length - 1)));
+    }
+
+    @Test
+    public void uniqueId() throws Exception {
+        final String id = getDocument(BINARY).getUniqueId();
+        assertNotNull(id);
+        assertTrue(id.endsWith("-" + Long.toHexString(DATA.length)));
+        assertEquals(id, getDocument(BINARY).getUniqueId());
+
+        // the serialization of XML documents may change with the configuration
+        assertNull(getDocument(XML).getUniqueId());
+    }
+
+    private static MiltonDocument getDocument(final XmldbURI uri) {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Subject subject = pool.getSecurityManager().getSystemSubject();
+        return new MiltonDocument("localhost:8080", uri, pool, subject);
+    }
+
+    private static byte[] sendContent(final MiltonDocument document, final Range range) throws Exception {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        document.sendContent(os, range, null, null);
+        return os.toByteArray();
+    }
+}
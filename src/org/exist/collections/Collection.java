@@ -31,7 +31,9 @@ import java.io.InputStream;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Observable;
+import java.util.function.Consumer;
 
 /**
  * Represents a Collection in the database. A collection maintains a list of
@@ -735,6 +737,30 @@ public interface Collection extends Resource, Comparable<Collection>, Cacheable
     void store(Txn transaction, DBBroker broker, IndexInfo info, Node node)
             throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException;
 
+    /**
+     * Stores several XML documents into the Collection as one batch.
+     * <p>
+     * Each document is validated and stored as by {@link #validateXMLResource(Txn, DBBroker, XmldbURI, InputSource)}
+     * and {@link #store(Txn, DBBroker, IndexInfo, InputSource)}, but the entries of the indexes which support it
+     * are buffered across the documents and written once, sorted, at the end, see
+     * {@link DBBroker#beginIndexBatch()}. Currently only the structural index defers its writes, the other
+     * indexes write the entries of each document as it is stored. The Collection and the documents stay
+     * write locked until the entries have been written, so that no document is read with its index entries
+     * missing. Update notifications for the documents are sent after that.
+     * If document triggers are configured for the Collection, the indexes are flushed after each document,
+     * so that the triggers see the documents stored before.
+     *
+     * @param transaction The database transaction
+     * @param broker      The database broker
+     * @param documents   The names (without path) and sources of the documents, stored in iteration order.
+     *                    Each source is read twice, see {@link #store(Txn, DBBroker, IndexInfo, InputSource)}
+     * @param prepare     Called with the {@link IndexInfo} of each document once it has been validated,
+     *                    e.g. to set the metadata of the document, or null
+     */
+    void storeDocuments(Txn transaction, DBBroker broker, Map<XmldbURI, ? extends InputSource> documents,
+            Consumer<IndexInfo> prepare)
+            throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException;
+
     /**
      * Creates a Binary Document object
      *
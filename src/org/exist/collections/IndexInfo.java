@@ -51,6 +51,12 @@ public class IndexInfo {
     private Permission oldDocPermissions = null;
     private CollectionConfiguration collectionConfig;
 
+    /**
+     * true if the document is stored as part of a batch: it stays locked and its update notification
+     * is sent by the caller, once the index entries of the batch have been flushed
+     */
+    private boolean batched = false;
+
     IndexInfo(Indexer indexer, CollectionConfiguration collectionConfig) {
         this.indexer = indexer;
         this.collectionConfig = collectionConfig;
@@ -119,4 +125,12 @@ public class IndexInfo {
     public CollectionConfiguration getCollectionConfig() {
         return collectionConfig;
     }
+
+    void setBatched(final boolean batched) {
+        this.batched = batched;
+    }
+
+    boolean isBatched() {
+        return batched;
+    }
 }
@@ -1171,6 +1171,63 @@ public class MutableCollection implements Collection {
         storeXMLInternal(transaction, broker, info, storeInfo -> storeInfo.getDOMStreamer().serialize(node, true));
     }
 
+    @Override
+    public void storeDocuments(final Txn transaction, final DBBroker broker, final Map<XmldbURI, ? extends InputSource> documents,
+            final Consumer<IndexInfo> prepare)
+            throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException {
+        final CollectionConfiguration config = isTriggersEnabled() ? getConfiguration(broker) : null;
+        if(config != null && !config.documentTriggers().isEmpty()) {
+            // the triggers may query the documents stored before
+            for(final Map.Entry<XmldbURI, ? extends InputSource> entry : documents.entrySet()) {
+                final IndexInfo info = validateXMLResource(transaction, broker, entry.getKey(), entry.getValue());
+                if(prepare != null) {
+                    prepare.accept(info);
+                }
+                store(transaction, broker, info, entry.getValue());
+            }
+            return;
+        }
+
+        // the collection and the documents stay write locked until the index entries of the batch
+        // have been flushed, so that nobody reads a document whose structural index entries are
+        // missing. The collection lock is taken first, in the same order as readers take them.
+        final List<IndexInfo> validated = new ArrayList<>(documents.size());
+        final List<IndexInfo> stored = new ArrayList<>(documents.size());
+        getLock().acquire(LockMode.WRITE_LOCK);
+        try {
+            broker.beginIndexBatch();
+            try {
+                for(final Map.Entry<XmldbURI, ? extends InputSource> entry : documents.entrySet()) {
+                    final IndexInfo info = validateXMLResource(transaction, broker, entry.getKey(), entry.getValue());
+                    info.setBatched(true);
+                    validated.add(info);
+                    if(prepare != null) {
+                        prepare.accept(info);
+                    }
+                    store(transaction, broker, info, entry.getValue());
+                    stored.add(info);
+                }
+            } finally {
+                try {
+                    // flushes the index entries of all documents
+                    broker.endIndexBatch();
+                } finally {
+                    for(final IndexInfo info : validated) {
+                        //This lock has been acquired in validateXMLResourceInternal()
+                        info.getDocument().getUpdateLock().release(LockMode.WRITE_LOCK);
+                    }
+                }
+            }
+        } finally {
+            getLock().release(LockMode.WRITE_LOCK);
+        }
+
+        final NotificationService notificationService = broker.getBrokerPool().getNotificationService();
+        for(final IndexInfo info : stored) {
+            notificationService.notifyUpdate(info.getDocument(), (info.isCreating() ? UpdateListener.ADD : UpdateListener.UPDATE));
+        }
+    }
+
     /** 
      * Stores an XML document in the database. {@link #validateXMLResourceInternal(Txn, DBBroker, XmldbURI,
      * CollectionConfiguration, Consumer2E)}should have been called previously in order to acquire a write lock
@@ -1243,13 +1300,16 @@ public class MutableCollection implements Collection {
             db.getProcessMonitor().startJob(ProcessMonitor.ACTION_STORE_DOC, document.getFileURI());
             parserFn.accept(info);
             broker.storeXMLResource(transaction, document);
-            broker.flush();
+            broker.flushDocument();
             broker.closeDocument();
             //broker.checkTree(document);
             LOG.debug("document stored.");
         } finally {
             //This lock has been acquired in validateXMLResourceInternal()
-            document.getUpdateLock().release(LockMode.WRITE_LOCK);
+            //Documents of a batch are released by storeDocuments() after the final flush
+            if(!info.isBatched()) {
+                document.getUpdateLock().release(LockMode.WRITE_LOCK);
+            }
             broker.getBrokerPool().getProcessMonitor().endJob();
         }
         setCollectionConfigEnabled(true);
@@ -1264,7 +1324,9 @@ public class MutableCollection implements Collection {
             info.getTriggers().afterUpdateDocument(broker, transaction, document);
         }
         
-        db.getNotificationService().notifyUpdate(document, (info.isCreating() ? UpdateListener.ADD : UpdateListener.UPDATE));
+        if(!info.isBatched()) {
+            db.getNotificationService().notifyUpdate(document, (info.isCreating() ? UpdateListener.ADD : UpdateListener.UPDATE));
+        }
         //Is it a collection configuration file ?
         final XmldbURI docName = document.getFileURI();
         //WARNING : there is no reason to lock the collection since setPath() is normally called in a safe way
@@ -72,7 +72,7 @@ public class AttrImpl extends NodeImpl implements Attr {
 
     @Override
     public String getBaseURI() {
-        final Node parent = document.getNode(document.attrParent[nodeNumber]);
+        final Node parent = document.getNode(document.attrParent.get(nodeNumber));
         if(parent == null) {
             return null;
         }
@@ -133,7 +133,7 @@ public class AttrImpl extends NodeImpl implements Attr {
 
     @Override
     public Element getOwnerElement() {
-        return (Element) document.getNode(document.attrParent[nodeNumber]);
+        return (Element) document.getNode(document.attrParent.get(nodeNumber));
     }
 
     @Override
@@ -168,7 +168,7 @@ public class AttrImpl extends NodeImpl implements Attr {
 
     @Override
     public boolean isId() {
-        return (document.attrType[nodeNumber] == ATTR_ID_TYPE);
+        return (document.attrType.get(nodeNumber) == ATTR_ID_TYPE);
     }
 
     @Override
@@ -0,0 +1,206 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.memtree;
+
+import com.evolvedbinary.j8fu.function.TriConsumerE;
+
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link Column} holding the character data of the text, comment,
+ * CDATA and processing instruction nodes of an in-memory document.
+ */
+final class CharColumn extends Column {
+
+    private char[] array;
+    private CharBuffer[] chunks = null;
+
+    /**
+     * @param capacity the initial capacity
+     * @param offHeapThreshold the number of characters above which the column
+     *                         is moved off heap, 0 to keep it on the heap
+     */
+    CharColumn(final int capacity, final int offHeapThreshold) {
+        super(capacity, offHeapThreshold);
+        this.array = new char[capacity];
+    }
+
+    char get(final int index) {
+        final char[] a = array;
+        if (a != null) {
+            return a[index];
+        }
+        return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    void set(final int index, final char value) {
+        final char[] a = array;
+        if (a != null) {
+            a[index] = value;
+        } else {
+            chunks[index >>> CHUNK_SHIFT].put(index & CHUNK_MASK, value);
+        }
+    }
+
+    /**
+     * Copy characters into the column.
+     */
+    void put(final int index, final char[] ch, final int start, final int len) {
+        if (array != null) {
+            System.arraycopy(ch, start, array, index, len);
+            return;
+        }
+        int copied = 0;
+        while (copied < len) {
+            final int pos = index + copied;
+            final int count = Math.min(len - copied, CHUNK_SIZE - (pos & CHUNK_MASK));
+            positioned(chunks[pos >>> CHUNK_SHIFT].duplicate(), pos & CHUNK_MASK).put(ch, start + copied, count);
+            copied += count;
+        }
+    }
+
+    /**
+     * Copy characters into the column.
+     */
+    void put(final int index, final CharSequence s) {
+        final int len = s.length();
+        if (array != null) {
+            for (int i = 0; i < len; i++) {
+                array[index + i] = s.charAt(i);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                set(index + i, s.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Move characters within the column. The ranges may overlap.
+     */
+    void move(final int from, final int to, final int len) {
+        if (array != null) {
+            System.arraycopy(array, from, array, to, len);
+        } else if (to > from) {
+            for (int i = len - 1; i >= 0; i--) {
+                set(to + i, get(from + i));
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                set(to + i, get(from + i));
+            }
+        }
+    }
+
+    /**
+     * Copy characters out of the column.
+     */
+    void getChars(final int start, final int len, final char[] dst, final int dstStart) {
+        if (array != null) {
+            System.arraycopy(array, start, dst, dstStart, len);
+            return;
+        }
+        int copied = 0;
+        while (copied < len) {
+            final int pos = start + copied;
+            final int count = Math.min(len - copied, CHUNK_SIZE - (pos & CHUNK_MASK));
+            positioned(chunks[pos >>> CHUNK_SHIFT].duplicate(), pos & CHUNK_MASK).get(dst, dstStart + copied, count);
+            copied += count;
+        }
+    }
+
+    String toString(final int start, final int len) {
+        if (array != null) {
+            return new String(array, start, len);
+        }
+        final char[] ch = new char[len];
+        getChars(start, len, ch, 0);
+        return new String(ch);
+    }
+
+    void appendTo(final StringBuilder buf, final int start, final int len) {
+        if (array != null) {
+            buf.append(array, start, len);
+        } else {
+            final CharSequence seq = subSequence(start, len);
+            buf.append(seq, 0, seq.length());
+        }
+    }
+
+    /**
+     * Returns the characters of a range. Off heap, the characters are not
+     * copied unless they span several chunks, so that large documents can be
+     * serialized directly from direct memory.
+     */
+    CharSequence subSequence(final int start, final int len) {
+        if (array == null && (start >>> CHUNK_SHIFT) == ((start + len - 1) >>> CHUNK_SHIFT) && len > 0) {
+            final CharBuffer chunk = chunks[start >>> CHUNK_SHIFT].duplicate();
+            positioned(chunk, start & CHUNK_MASK);
+            ((Buffer) chunk).limit((start & CHUNK_MASK) + len);
+            return chunk.slice();
+        }
+        return toString(start, len);
+    }
+
+    /**
+     * Pass a range of characters to a consumer which takes a char array.
+     * On the heap, the consumer reads the column directly; off heap,
+     * the characters are copied into a new array first.
+     */
+    <E extends Exception> void write(final int start, final int len,
+            final TriConsumerE<char[], Integer, Integer, E> consumer) throws E {
+        if (array != null) {
+            consumer.accept(array, start, len);
+        } else {
+            final char[] ch = new char[len];
+            getChars(start, len, ch, 0);
+            consumer.accept(ch, 0, len);
+        }
+    }
+
+    @Override
+    boolean isOffHeap() {
+        return array == null;
+    }
+
+    @Override
+    protected void growArray(final int newCapacity) {
+        array = Arrays.copyOf(array, newCapacity);
+    }
+
+    @Override
+    protected void growChunks(final int count) {
+        final int first = chunks == null ? 0 : chunks.length;
+        final CharBuffer[] newChunks = chunks == null ? new CharBuffer[count] : Arrays.copyOf(chunks, count);
+        for (int i = first; i < count; i++) {
+            newChunks[i] = allocateChunk(Character.BYTES).asCharBuffer();
+        }
+        if (array != null) {
+            for (int offset = 0; offset < capacity; offset += CHUNK_SIZE) {
+                positioned(newChunks[offset >>> CHUNK_SHIFT].duplicate(), 0)
+                        .put(array, offset, Math.min(CHUNK_SIZE, capacity - offset));
+            }
+            array = null;
+        }
+        chunks = newChunks;
+    }
+}
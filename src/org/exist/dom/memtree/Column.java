@@ -0,0 +1,110 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.memtree;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A column of primitive values of an in-memory document, e.g. the kind or
+ * the tree level of each node.
+ *
+ * A column starts as an array on the heap, which grows by copying. Once it
+ * needs to hold more than <code>offHeapThreshold</code> values, it is moved
+ * into chunks of direct memory. From then on, the column grows by adding
+ * chunks, so the values are never copied again, and the garbage collector
+ * does not have to scan or move them. The direct memory is released when
+ * the document is garbage collected; its total is limited by the
+ * <code>-XX:MaxDirectMemorySize</code> option of the JVM.
+ */
+abstract class Column {
+
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** the number of values above which the column is moved off heap, 0 to keep it on the heap */
+    protected final int offHeapThreshold;
+
+    protected int capacity;
+
+    Column(final int capacity, final int offHeapThreshold) {
+        this.capacity = capacity;
+        this.offHeapThreshold = offHeapThreshold;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return true if the values are stored in direct memory
+     */
+    abstract boolean isOffHeap();
+
+    /**
+     * Make sure the column can hold at least <code>minCapacity</code> values.
+     *
+     * @param minCapacity the number of values the column needs to hold
+     */
+    void ensureCapacity(final int minCapacity) {
+        if (minCapacity <= capacity) {
+            return;
+        }
+        if (!isOffHeap() && (offHeapThreshold <= 0 || minCapacity <= offHeapThreshold)) {
+            long grown = Math.max(minCapacity, (capacity * 3L) / 2);
+            if (offHeapThreshold > 0) {
+                grown = Math.min(grown, offHeapThreshold);
+            }
+            final int newCapacity = (int) Math.min(grown, Integer.MAX_VALUE - 8);
+            growArray(newCapacity);
+            capacity = newCapacity;
+        } else {
+            final int chunks = (int) (((long) minCapacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+            growChunks(chunks);
+            capacity = (int) Math.min((long) chunks << CHUNK_SHIFT, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Replace the array on the heap by a larger one.
+     */
+    protected abstract void growArray(int newCapacity);
+
+    /**
+     * Add chunks of direct memory, moving the array on the heap
+     * into the first chunks if necessary.
+     */
+    protected abstract void growChunks(int chunks);
+
+    static ByteBuffer allocateChunk(final int bytesPerValue) {
+        return ByteBuffer.allocateDirect(CHUNK_SIZE * bytesPerValue).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Position a duplicate of a chunk, so that it can be used for bulk transfers.
+     */
+    static <B extends Buffer> B positioned(final B duplicate, final int position) {
+        // the cast keeps the code compatible with the Buffer API of Java 8
+        ((Buffer) duplicate).position(position);
+        return duplicate;
+    }
+}
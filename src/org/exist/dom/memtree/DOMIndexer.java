@@ -167,7 +167,7 @@ public class DOMIndexer {
      * @param currentPath DOCUMENT ME!
      */
     private void startNode(final int nodeNr, final NodePath currentPath) {
-        switch(doc.nodeKind[nodeNr]) {
+        switch(doc.nodeKind.get(nodeNr)) {
 
             case Node.ELEMENT_NODE: {
                 final ElementImpl elem = (ElementImpl) NodePool.getInstance().borrowNode(Node.ELEMENT_NODE);
@@ -197,7 +197,7 @@ public class DOMIndexer {
                     break;
                 }
                 final ElementImpl last = stack.peek();
-                text.setData(new String(doc.characters, doc.alpha[nodeNr], doc.alphaLen[nodeNr]));
+                text.setData(doc.characters.toString(doc.alpha.get(nodeNr), doc.alphaLen.get(nodeNr)));
                 text.setOwnerDocument(targetDoc);
                 last.appendChildInternal(prevNode, text);
                 setPrevious(text);
@@ -208,7 +208,7 @@ public class DOMIndexer {
             case Node.CDATA_SECTION_NODE: {
                 final ElementImpl last = stack.peek();
                 final org.exist.dom.persistent.CDATASectionImpl cdata = (org.exist.dom.persistent.CDATASectionImpl) NodePool.getInstance().borrowNode(Node.CDATA_SECTION_NODE);
-                cdata.setData(doc.characters, doc.alpha[nodeNr], doc.alphaLen[nodeNr]);
+                doc.characters.write(doc.alpha.get(nodeNr), doc.alphaLen.get(nodeNr), cdata::setData);
                 cdata.setOwnerDocument(targetDoc);
                 last.appendChildInternal(prevNode, cdata);
                 setPrevious(cdata);
@@ -217,7 +217,7 @@ public class DOMIndexer {
             }
 
             case Node.COMMENT_NODE: {
-                comment.setData(doc.characters, doc.alpha[nodeNr], doc.alphaLen[nodeNr]);
+                doc.characters.write(doc.alpha.get(nodeNr), doc.alphaLen.get(nodeNr), comment::setData);
                 comment.setOwnerDocument(targetDoc);
                 if(stack.empty()) {
                     comment.setNodeId(NodeId.DOCUMENT_NODE);
@@ -235,7 +235,7 @@ public class DOMIndexer {
             case Node.PROCESSING_INSTRUCTION_NODE: {
                 final QName qn = doc.nodeName[nodeNr];
                 pi.setTarget(qn.getLocalPart());
-                pi.setData(new String(doc.characters, doc.alpha[nodeNr], doc.alphaLen[nodeNr]));
+                pi.setData(doc.characters.toString(doc.alpha.get(nodeNr), doc.alphaLen.get(nodeNr)));
                 pi.setOwnerDocument(targetDoc);
                 if(stack.empty()) {
                     pi.setNodeId(NodeId.DOCUMENT_NODE);
@@ -250,7 +250,7 @@ public class DOMIndexer {
             }
 
             default: {
-                LOG.debug("Skipped indexing of in-memory node of type " + doc.nodeKind[nodeNr]);
+                LOG.debug("Skipped indexing of in-memory node of type " + doc.nodeKind.get(nodeNr));
             }
         }
     }
@@ -274,7 +274,7 @@ public class DOMIndexer {
     }
 
     private Map<String, String> getNamespaces(final int nodeNr) {
-        int ns = doc.alphaLen[nodeNr];
+        int ns = doc.alphaLen.get(nodeNr);
 
         if(ns < 0) {
             return null;
@@ -305,9 +305,9 @@ public class DOMIndexer {
      * @throws DOMException
      */
     private void storeAttributes(final int nodeNr, final ElementImpl elem, final NodePath path) throws DOMException {
-        int attr = doc.alpha[nodeNr];
+        int attr = doc.alpha.get(nodeNr);
         if(attr > -1) {
-            while((attr < doc.nextAttr) && (doc.attrParent[attr] == nodeNr)) {
+            while((attr < doc.nextAttr) && (doc.attrParent.get(attr) == nodeNr)) {
                 final QName qn = doc.attrName[attr];
                 final AttrImpl attrib = (AttrImpl) NodePool.getInstance().borrowNode(Node.ATTRIBUTE_NODE);
                 attrib.setNodeName(qn, broker.getBrokerPool().getSymbols());
@@ -328,7 +328,7 @@ public class DOMIndexer {
      * @param currentPath DOCUMENT ME!
      */
     private void endNode(final int nodeNr, final NodePath currentPath) {
-        if(doc.nodeKind[nodeNr] == Node.ELEMENT_NODE) {
+        if(doc.nodeKind.get(nodeNr) == Node.ELEMENT_NODE) {
             final ElementImpl last = stack.pop();
             broker.endElement(last, currentPath, null);
             currentPath.removeLastComponent();
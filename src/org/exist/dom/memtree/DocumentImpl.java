@@ -61,7 +61,6 @@ import org.w3c.dom.Text;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
-import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.exist.dom.QName.Validity.ILLEGAL_FORMAT;
@@ -85,14 +84,17 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     private static long nextDocId = 0;
 
+    // the number of nodes, attributes or characters above which the node data is moved off heap
+    protected final int offHeapThreshold;
+
     // holds the node type of a node
-    protected short[] nodeKind = null;
+    protected ShortColumn nodeKind = null;
 
     // the tree level of a node
-    protected short[] treeLevel;
+    protected ShortColumn treeLevel;
 
     // the node number of the next sibling
-    protected int[] next;
+    protected IntColumn next;
 
     // pointer into the namePool
     protected QName[] nodeName;
@@ -100,16 +102,16 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     protected NodeId[] nodeId;
 
     //alphanumeric content
-    protected int[] alpha;
-    protected int[] alphaLen;
-    protected char[] characters = null;
+    protected IntColumn alpha;
+    protected IntColumn alphaLen;
+    protected CharColumn characters = null;
     protected int nextChar = 0;
 
     // attributes
     protected QName[] attrName;
-    protected int[] attrType;
+    protected IntColumn attrType;
     protected NodeId[] attrNodeId;
-    protected int[] attrParent;
+    protected IntColumn attrParent;
     protected String[] attrValue;
     protected int nextAttr = 0;
 
@@ -147,9 +149,11 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         this.docId = createDocId();
         if(context == null) {
             namePool = new NamePool();
+            offHeapThreshold = 0;
         } else {
             db = context.getDatabase();
             namePool = context.getSharedNamePool();
+            offHeapThreshold = context.getMemtreeOffHeapThreshold();
         }
     }
 
@@ -169,22 +173,20 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     private void init() {
-        nodeKind = new short[NODE_SIZE];
-        treeLevel = new short[NODE_SIZE];
-        next = new int[NODE_SIZE];
-        Arrays.fill(next, -1);
+        nodeKind = new ShortColumn(NODE_SIZE, offHeapThreshold);
+        treeLevel = new ShortColumn(NODE_SIZE, offHeapThreshold);
+        next = new IntColumn(NODE_SIZE, -1, offHeapThreshold);
         nodeName = new QName[NODE_SIZE];
         nodeId = new NodeId[NODE_SIZE];
-        alpha = new int[NODE_SIZE];
-        alphaLen = new int[NODE_SIZE];
-        Arrays.fill(alphaLen, -1);
+        alpha = new IntColumn(NODE_SIZE, 0, offHeapThreshold);
+        alphaLen = new IntColumn(NODE_SIZE, -1, offHeapThreshold);
         attrName = new QName[ATTR_SIZE];
-        attrParent = new int[ATTR_SIZE];
+        attrParent = new IntColumn(ATTR_SIZE, 0, offHeapThreshold);
         attrValue = new String[ATTR_SIZE];
-        attrType = new int[ATTR_SIZE];
+        attrType = new IntColumn(ATTR_SIZE, 0, offHeapThreshold);
         attrNodeId = new NodeId[NODE_SIZE];
-        treeLevel[0] = 0;
-        nodeKind[0] = Node.DOCUMENT_NODE;
+        treeLevel.set(0, (short) 0);
+        nodeKind.set(0, Node.DOCUMENT_NODE);
         document = this;
     }
 
@@ -204,14 +206,14 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nodeKind == null) {
             init();
         }
-        if(size == nodeKind.length) {
+        if(size == nodeName.length) {
             grow();
         }
-        nodeKind[size] = kind;
-        treeLevel[size] = level;
+        nodeKind.set(size, kind);
+        treeLevel.set(size, level);
         nodeName[size] = qname != null ? namePool.getSharedName(qname) : null;
-        alpha[size] = -1; // undefined
-        next[size] = -1;
+        alpha.set(size, -1); // undefined
+        next.set(size, -1);
         return (size++);
     }
 
@@ -219,21 +221,22 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nodeKind == null) {
             init();
         }
+        ensureCharacters(len);
+        alpha.set(nodeNum, nextChar);
+        alphaLen.set(nodeNum, len);
+        characters.put(nextChar, ch, start, len);
+        nextChar += len;
+    }
+
+    /**
+     * Make room for <code>len</code> more characters.
+     */
+    private void ensureCharacters(final int len) {
         if(characters == null) {
-            characters = new char[len > CHAR_BUF_SIZE ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
+            characters = new CharColumn((len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE, offHeapThreshold);
+        } else {
+            characters.ensureCapacity(nextChar + len + 1);
         }
-        alpha[nodeNum] = nextChar;
-        alphaLen[nodeNum] = len;
-        System.arraycopy(ch, start, characters, nextChar, len);
-        nextChar += len;
     }
 
     public void addChars(final int nodeNum, final CharSequence s) {
@@ -241,57 +244,68 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             init();
         }
         int len = (s == null) ? 0 : s.length();
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
-        alpha[nodeNum] = nextChar;
-        alphaLen[nodeNum] = len;
-        for(int i = 0; i < len; i++) {
-            characters[nextChar++] = s.charAt(i);
+        ensureCharacters(len);
+        alpha.set(nodeNum, nextChar);
+        alphaLen.set(nodeNum, len);
+        if(s != null) {
+            characters.put(nextChar, s);
+            nextChar += len;
         }
     }
 
     public void appendChars(final int nodeNum, final char[] ch, final int start, final int len) {
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
-        alphaLen[nodeNum] = alphaLen[nodeNum] + len;
-        System.arraycopy(ch, start, characters, nextChar, len);
+        ensureCharacters(len);
+        alphaLen.set(nodeNum, alphaLen.get(nodeNum) + len);
+        characters.put(nextChar, ch, start, len);
         nextChar += len;
     }
 
     public void appendChars(final int nodeNum, final CharSequence s) {
         final int len = s.length();
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
+        ensureCharacters(len);
+        alphaLen.set(nodeNum, alphaLen.get(nodeNum) + len);
+        characters.put(nextChar, s);
+        nextChar += len;
+    }
+
+    /**
+     * Replace <code>count</code> characters of a node, starting at <code>offset</code>.
+     * The characters of the other nodes are moved as necessary.
+     *
+     * @param nodeNum the text, comment, CDATA or processing instruction node
+     * @param offset the offset of the first character to replace
+     * @param count the number of characters to replace
+     * @param s the replacement
+     */
+    void replaceChars(final int nodeNum, final int offset, final int count, final CharSequence s) {
+        final int len = s.length();
+        final int start = alpha.get(nodeNum) + offset;
+        final int change = len - count;
+        if(change != 0) {
+            ensureCharacters(Math.max(change, 0));
+            characters.move(start + count, start + len, nextChar - start - count);
+            nextChar += change;
+            alphaLen.set(nodeNum, alphaLen.get(nodeNum) + change);
+
+            // renumber the nodes whose characters have been moved
+            for(int i = 1; i < size; i++) {
+                if(i != nodeNum && hasChars(i) && alpha.get(i) >= start + count) {
+                    alpha.set(i, alpha.get(i) + change);
+                }
             }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
         }
-        alphaLen[nodeNum] = alphaLen[nodeNum] + len;
-        for(int i = 0; i < len; i++) {
-            characters[nextChar++] = s.charAt(i);
+        characters.put(start, s);
+    }
+
+    private boolean hasChars(final int nodeNum) {
+        switch(nodeKind.get(nodeNum)) {
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+            case Node.COMMENT_NODE:
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -303,7 +317,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             growReferences();
         }
         references[nextReferenceIdx] = proxy;
-        alpha[nodeNum] = nextReferenceIdx++;
+        alpha.set(nodeNum, nextReferenceIdx++);
     }
 
     public boolean hasReferenceNodes() {
@@ -311,8 +325,8 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     public void replaceReferenceNode(final int nodeNum, final CharSequence ch) {
-        nodeKind[nodeNum] = Node.TEXT_NODE;
-        references[alpha[nodeNum]] = null;
+        nodeKind.set(nodeNum, Node.TEXT_NODE);
+        references[alpha.get(nodeNum)] = null;
         addChars(nodeNum, ch);
     }
 
@@ -320,20 +334,20 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nodeKind == null) {
             init();
         }
-        if((nodeNum > 0) && !(nodeKind[nodeNum] == Node.ELEMENT_NODE || nodeKind[nodeNum] == NodeImpl.NAMESPACE_NODE)) {
+        if((nodeNum > 0) && !(nodeKind.get(nodeNum) == Node.ELEMENT_NODE || nodeKind.get(nodeNum) == NodeImpl.NAMESPACE_NODE)) {
             throw (new DOMException(DOMException.INUSE_ATTRIBUTE_ERR,
                 "err:XQTY0024: An attribute node cannot follow a node that is not an attribute node."));
         }
         int prevAttr = nextAttr - 1;
         int attrN;
         //Check if an attribute with the same qname exists in the parent element
-        while((nodeNum > 0) && (prevAttr > -1) && (attrParent[prevAttr] == nodeNum)) {
+        while((nodeNum > 0) && (prevAttr > -1) && (attrParent.get(prevAttr) == nodeNum)) {
             attrN = prevAttr--;
             final QName prevQn = attrName[attrN];
             if(prevQn.equals(qname)) {
                 if(replaceAttribute) {
                     attrValue[attrN] = value;
-                    attrType[attrN] = type;
+                    attrType.set(attrN, type);
                     return attrN;
                 } else {
                     throw new DOMException(DOMException.INUSE_ATTRIBUTE_ERR,
@@ -345,12 +359,12 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             growAttributes();
         }
         final QName attrQname = new QName(qname.getLocalPart(), qname.getNamespaceURI(), qname.getPrefix(), ElementValue.ATTRIBUTE);
-        attrParent[nextAttr] = nodeNum;
+        attrParent.set(nextAttr, nodeNum);
         attrName[nextAttr] = namePool.getSharedName(attrQname);
         attrValue[nextAttr] = value;
-        attrType[nextAttr] = type;
-        if(alpha[nodeNum] < 0) {
-            alpha[nodeNum] = nextAttr;
+        attrType.set(nextAttr, type);
+        if(alpha.get(nodeNum) < 0) {
+            alpha.set(nodeNum, nextAttr);
         }
         return (nextAttr++);
     }
@@ -364,14 +378,14 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         }
         namespaceCode[nextNamespace] = namePool.getSharedName(qname);
         namespaceParent[nextNamespace] = nodeNum;
-        if(alphaLen[nodeNum] < 0) {
-            alphaLen[nodeNum] = nextNamespace;
+        if(alphaLen.get(nodeNum) < 0) {
+            alphaLen.set(nodeNum, nextNamespace);
         }
         return nextNamespace++;
     }
 
     public short getTreeLevel(final int nodeNum) {
-        return treeLevel[nodeNum];
+        return treeLevel.get(nodeNum);
     }
 
     public int getLastNode() {
@@ -382,7 +396,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if((nodeKind == null) || (nodeNum < 0)) {
             return -1;
         }
-        return nodeKind[nodeNum];
+        return nodeKind.get(nodeNum);
     }
 
     @Override
@@ -396,18 +410,11 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     private void grow() {
         final int newSize = (size * 3) / 2;
 
-        final short[] newNodeKind = new short[newSize];
-        System.arraycopy(nodeKind, 0, newNodeKind, 0, size);
-        nodeKind = newNodeKind;
-
-        final short[] newTreeLevel = new short[newSize];
-        System.arraycopy(treeLevel, 0, newTreeLevel, 0, size);
-        treeLevel = newTreeLevel;
-
-        final int[] newNext = new int[newSize];
-        Arrays.fill(newNext, -1);
-        System.arraycopy(next, 0, newNext, 0, size);
-        next = newNext;
+        nodeKind.ensureCapacity(newSize);
+        treeLevel.ensureCapacity(newSize);
+        next.ensureCapacity(newSize);
+        alpha.ensureCapacity(newSize);
+        alphaLen.ensureCapacity(newSize);
 
         final QName[] newNodeName = new QName[newSize];
         System.arraycopy(nodeName, 0, newNodeName, 0, size);
@@ -416,15 +423,6 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         final NodeId[] newNodeId = new NodeId[newSize];
         System.arraycopy(nodeId, 0, newNodeId, 0, size);
         nodeId = newNodeId;
-
-        final int[] newAlpha = new int[newSize];
-        System.arraycopy(alpha, 0, newAlpha, 0, size);
-        alpha = newAlpha;
-
-        final int[] newAlphaLen = new int[newSize];
-        Arrays.fill(newAlphaLen, -1);
-        System.arraycopy(alphaLen, 0, newAlphaLen, 0, size);
-        alphaLen = newAlphaLen;
     }
 
     private void growAttributes() {
@@ -435,17 +433,13 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         System.arraycopy(attrName, 0, newAttrName, 0, size);
         attrName = newAttrName;
 
-        final int[] newAttrParent = new int[newSize];
-        System.arraycopy(attrParent, 0, newAttrParent, 0, size);
-        attrParent = newAttrParent;
+        attrParent.ensureCapacity(newSize);
 
         final String[] newAttrValue = new String[newSize];
         System.arraycopy(attrValue, 0, newAttrValue, 0, size);
         attrValue = newAttrValue;
 
-        final int[] newAttrType = new int[newSize];
-        System.arraycopy(attrType, 0, newAttrType, 0, size);
-        attrType = newAttrType;
+        attrType.ensureCapacity(newSize);
 
         final NodeId[] newNodeId = new NodeId[newSize];
         System.arraycopy(attrNodeId, 0, newNodeId, 0, size);
@@ -498,7 +492,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "node not found");
         }
         final NodeImpl node;
-        switch(nodeKind[nodeNum]) {
+        switch(nodeKind.get(nodeNum)) {
             case Node.ELEMENT_NODE:
                 node = new ElementImpl(this, nodeNum);
                 break;
@@ -551,11 +545,11 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             return null;
         }
         int nodeNum = 1;
-        while(nodeKind[nodeNum] != Node.ELEMENT_NODE) {
-            if(next[nodeNum] < nodeNum) {
+        while(nodeKind.get(nodeNum) != Node.ELEMENT_NODE) {
+            if(next.get(nodeNum) < nodeNum) {
                 return null;
             }
-            nodeNum = next[nodeNum];
+            nodeNum = next.get(nodeNum);
         }
         return (Element)getNode(nodeNum);
     }
@@ -575,9 +569,9 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     public int getAttributesCountFor(final int nodeNumber) {
         int count = 0;
-        int attr = alpha[nodeNumber];
+        int attr = alpha.get(nodeNumber);
         if(-1 < attr) {
-            while((attr < nextAttr) && (attrParent[attr++] == nodeNumber)) {
+            while((attr < nextAttr) && (attrParent.get(attr++) == nodeNumber)) {
                 ++count;
             }
         }
@@ -586,7 +580,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     public int getNamespacesCountFor(final int nodeNumber) {
         int count = 0;
-        int ns = alphaLen[nodeNumber];
+        int ns = alphaLen.get(nodeNumber);
         if(-1 < ns) {
             while((ns < nextNamespace) && (namespaceParent[ns++] == nodeNumber)) {
                 ++count;
@@ -600,29 +594,29 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         int nextNode = getFirstChildFor(nr);
         while(nextNode > nr) {
             ++count;
-            nextNode = next[nextNode];
+            nextNode = next.get(nextNode);
         }
         return count;
     }
 
     public int getFirstChildFor(final int nodeNumber) {
-        final short level = treeLevel[nodeNumber];
+        final short level = treeLevel.get(nodeNumber);
         final int nextNode = nodeNumber + 1;
-        if((nextNode < size) && (treeLevel[nextNode] > level)) {
+        if((nextNode < size) && (treeLevel.get(nextNode) > level)) {
             return nextNode;
         }
         return -1;
     }
 
     public int getNextSiblingFor(final int nodeNumber) {
-        final int nextNr = next[nodeNumber];
+        final int nextNr = next.get(nodeNumber);
         return nextNr < nodeNumber ? -1 : nextNr;
     }
 
     public int getParentNodeFor(final int nodeNumber) {
-        int nextNode = next[nodeNumber];
+        int nextNode = next.get(nodeNumber);
         while(nextNode > nodeNumber) {
-            nextNode = next[nextNode];
+            nextNode = next.get(nextNode);
         }
         return nextNode;
     }
@@ -684,10 +678,10 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(hasIdAttribute(root.getNodeNumber(), id)) {
             return root;
         }
-        final int treeLevel = this.treeLevel[root.getNodeNumber()];
+        final int treeLevel = this.treeLevel.get(root.getNodeNumber());
         int nextNode = root.getNodeNumber();
-        while((++nextNode < document.size) && (document.treeLevel[nextNode] > treeLevel)) {
-            if((document.nodeKind[nextNode] == Node.ELEMENT_NODE) &&
+        while((++nextNode < document.size) && (document.treeLevel.get(nextNode) > treeLevel)) {
+            if((document.nodeKind.get(nextNode) == Node.ELEMENT_NODE) &&
                 hasIdAttribute(nextNode, id)) {
                 return getNode(nextNode);
             }
@@ -704,10 +698,10 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(attr != null) {
             return attr;
         }
-        final int treeLevel = this.treeLevel[root.getNodeNumber()];
+        final int treeLevel = this.treeLevel.get(root.getNodeNumber());
         int nextNode = root.getNodeNumber();
-        while((++nextNode < document.size) && (document.treeLevel[nextNode] > treeLevel)) {
-            if(document.nodeKind[nextNode] == Node.ELEMENT_NODE) {
+        while((++nextNode < document.size) && (document.treeLevel.get(nextNode) > treeLevel)) {
+            if(document.nodeKind.get(nextNode) == Node.ELEMENT_NODE) {
                 attr = getIdrefAttribute(nextNode, id);
                 if(attr != null) {
                     return attr;
@@ -718,10 +712,10 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     private boolean hasIdAttribute(final int nodeNumber, final String id) {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
-                if((document.attrType[attr] == AttrImpl.ATTR_ID_TYPE) &&
+            while((attr < document.nextAttr) && (document.attrParent.get(attr) == nodeNumber)) {
+                if((document.attrType.get(attr) == AttrImpl.ATTR_ID_TYPE) &&
                     id.equals(document.attrValue[attr])) {
                     return true;
                 }
@@ -732,10 +726,10 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     private AttrImpl getIdrefAttribute(final int nodeNumber, final String id) {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
-                if((document.attrType[attr] == AttrImpl.ATTR_IDREF_TYPE) &&
+            while((attr < document.nextAttr) && (document.attrParent.get(attr) == nodeNumber)) {
+                if((document.attrType.get(attr) == AttrImpl.ATTR_IDREF_TYPE) &&
                     id.equals(document.attrValue[attr])) {
                     return new AttrImpl(this, attr);
                 }
@@ -985,7 +979,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     private NodeList getElementsByTagName(final QName qname) {
         final NodeListImpl nl = new NodeListImpl();
         for(int i = 1; i < size; i++) {
-            if(nodeKind[i] == Node.ELEMENT_NODE) {
+            if(nodeKind.get(i) == Node.ELEMENT_NODE) {
                 final QName qn = nodeName[i];
                 if(qn.matches(qname)) {
                     nl.add(getNode(i));
@@ -1059,15 +1053,15 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             case Node.ELEMENT_NODE: {
                 final QName nodeName = document.nodeName[nr];
                 receiver.startElement(nodeName, null);
-                int attr = document.alpha[nr];
+                int attr = document.alpha.get(nr);
                 if(-1 < attr) {
-                    while((attr < document.nextAttr) && (document.attrParent[attr] == nr)) {
+                    while((attr < document.nextAttr) && (document.attrParent.get(attr) == nr)) {
                         final QName attrQName = document.attrName[attr];
                         receiver.attribute(attrQName, attrValue[attr]);
                         ++attr;
                     }
                 }
-                int ns = document.alphaLen[nr];
+                int ns = document.alphaLen.get(nr);
                 if(-1 < ns) {
                     while((ns < document.nextNamespace) && (document.namespaceParent[ns] == nr)) {
                         final QName nsQName = document.namespaceCode[ns];
@@ -1078,21 +1072,21 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 break;
             }
             case Node.TEXT_NODE:
-                receiver.characters(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                document.characters.write(document.alpha.get(nr), document.alphaLen.get(nr), receiver::characters);
                 break;
             case Node.CDATA_SECTION_NODE:
-                receiver.cdataSection(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                document.characters.write(document.alpha.get(nr), document.alphaLen.get(nr), receiver::cdataSection);
                 break;
             case Node.ATTRIBUTE_NODE:
                 final QName attrQName = document.attrName[nr];
                 receiver.attribute(attrQName, attrValue[nr]);
                 break;
             case Node.COMMENT_NODE:
-                receiver.comment(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                document.characters.write(document.alpha.get(nr), document.alphaLen.get(nr), receiver::comment);
                 break;
             case Node.PROCESSING_INSTRUCTION_NODE:
                 final QName piQName = document.nodeName[nr];
-                final String data = new String(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                final String data = document.characters.toString(document.alpha.get(nr), document.alphaLen.get(nr));
                 receiver.processingInstruction(piQName.getLocalPart(), data);
                 break;
             case NodeImpl.NAMESPACE_NODE:
@@ -1105,12 +1099,12 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                         serializer.reset();
                         serializer.setProperty(Serializer.GENERATE_DOC_EVENTS, "false");
                         serializer.setReceiver(receiver);
-                        serializer.toReceiver(document.references[document.alpha[nr]], false, false);
+                        serializer.toReceiver(document.references[document.alpha.get(nr)], false, false);
                     } catch(final EXistException e) {
                         throw new SAXException(e);
                     }
                 } else {
-                    receiver.addReferenceNode(document.references[document.alpha[nr]]);
+                    receiver.addReferenceNode(document.references[document.alpha.get(nr)]);
                 }
                 break;
         }
@@ -1197,11 +1191,11 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     private void computeNodeIds(final NodeId id, final int nodeNum) {
         nodeId[nodeNum] = id;
-        if(nodeKind[nodeNum] == Node.ELEMENT_NODE) {
+        if(nodeKind.get(nodeNum) == Node.ELEMENT_NODE) {
             NodeId nextId = id.newChild();
-            int attr = document.alpha[nodeNum];
+            int attr = document.alpha.get(nodeNum);
             if(-1 < attr) {
-                while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNum)) {
+                while((attr < document.nextAttr) && (document.attrParent.get(attr) == nodeNum)) {
                     attrNodeId[attr] = nextId;
                     nextId = nextId.nextSibling();
                     ++attr;
@@ -1210,7 +1204,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             int nextNode = getFirstChildFor(nodeNum);
             while(nextNode > nodeNum) {
                 computeNodeIds(nextId, nextNode);
-                nextNode = document.next[nextNode];
+                nextNode = document.next.get(nextNode);
                 if(nextNode > nodeNum) {
                     nextId = nextId.nextSibling();
                 }
@@ -1294,7 +1288,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             case Node.ELEMENT_NODE:
                 final QName nodeName = document.nodeName[nr];
                 //Output required namespace declarations
-                int ns = document.alphaLen[nr];
+                int ns = document.alphaLen.get(nr);
                 if(ns > -1) {
                     while((ns < document.nextNamespace) && (document.namespaceParent[ns] == nr)) {
                         final QName nsQName = document.namespaceCode[ns];
@@ -1308,10 +1302,10 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 }
                 //Create the attribute list
                 AttrList attribs = null;
-                int attr = document.alpha[nr];
+                int attr = document.alpha.get(nr);
                 if(attr > -1) {
                     attribs = new AttrList();
-                    while((attr < document.nextAttr) && (document.attrParent[attr] == nr)) {
+                    while((attr < document.nextAttr) && (document.attrParent.get(attr) == nr)) {
                         final QName attrQName = document.attrName[attr];
                         attribs.addAttribute(attrQName, attrValue[attr]);
                         ++attr;
@@ -1320,26 +1314,26 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 receiver.startElement(nodeName, attribs);
                 break;
             case Node.TEXT_NODE:
-                receiver.characters(new String(document.characters, document.alpha[nr],
-                    document.alphaLen[nr]));
+                receiver.characters(document.characters.subSequence(document.alpha.get(nr),
+                    document.alphaLen.get(nr)));
                 break;
             case Node.ATTRIBUTE_NODE:
                 final QName attrQName = document.attrName[nr];
                 receiver.attribute(attrQName, attrValue[nr]);
                 break;
             case Node.COMMENT_NODE:
-                receiver.comment(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                document.characters.write(document.alpha.get(nr), document.alphaLen.get(nr), receiver::comment);
                 break;
             case Node.PROCESSING_INSTRUCTION_NODE:
                 final QName qn = document.nodeName[nr];
-                final String data = new String(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                final String data = document.characters.toString(document.alpha.get(nr), document.alphaLen.get(nr));
                 receiver.processingInstruction(qn.getLocalPart(), data);
                 break;
             case Node.CDATA_SECTION_NODE:
-                receiver.cdataSection(document.characters, document.alpha[nr], document.alphaLen[nr]);
+                document.characters.write(document.alpha.get(nr), document.alphaLen.get(nr), receiver::cdataSection);
                 break;
             case NodeImpl.REFERENCE_NODE:
-                serializer.toReceiver(document.references[document.alpha[nr]], true, false);
+                serializer.toReceiver(document.references[document.alpha.get(nr)], true, false);
                 break;
         }
     }
@@ -1349,7 +1343,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             receiver.endElement(node.getQName());
             //End all prefix mappings used for the element
             final int nr = node.nodeNumber;
-            int ns = document.alphaLen[nr];
+            int ns = document.alphaLen.get(nr);
             if(ns > -1) {
                 while((ns < document.nextNamespace) && (document.namespaceParent[ns] == nr)) {
                     final QName nsQName = document.namespaceCode[ns];
@@ -1509,10 +1503,10 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             int nodeNum = 1;
             while(true) {
                 result.append(getNode(nodeNum).toString());
-                if(next[nodeNum] < nodeNum) {
+                if(next.get(nodeNum) < nodeNum) {
                     break;
                 }
-                nodeNum = next[nodeNum];
+                nodeNum = next.get(nodeNum);
             }
         }
         result.append("} ");
@@ -65,14 +65,14 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public boolean hasChildNodes() {
-        return (nodeNumber + 1) < document.size && document.treeLevel[nodeNumber + 1] > document.treeLevel[nodeNumber];
+        return (nodeNumber + 1) < document.size && document.treeLevel.get(nodeNumber + 1) > document.treeLevel.get(nodeNumber);
     }
 
     @Override
     public Node getFirstChild() {
-        final short level = document.treeLevel[nodeNumber];
+        final short level = document.treeLevel.get(nodeNumber);
         final int nextNode = nodeNumber + 1;
-        if(nextNode < document.size && document.treeLevel[nextNode] > level) {
+        if(nextNode < document.size && document.treeLevel.get(nextNode) > level) {
             return document.getNode(nextNode);
         }
         return null;
@@ -87,7 +87,7 @@ public class ElementImpl extends NodeImpl implements Element {
             if(n.getNodeType() != Node.ATTRIBUTE_NODE) {
                 nl.add(n);
             }
-            nextNode = document.next[nextNode];
+            nextNode = document.next.get(nextNode);
         }
         return nl;
     }
@@ -98,14 +98,14 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public boolean hasAttributes() {
-        return document.alpha[nodeNumber] > -1 || document.alphaLen[nodeNumber] > -1;
+        return document.alpha.get(nodeNumber) > -1 || document.alphaLen.get(nodeNumber) > -1;
     }
 
     @Override
     public String getAttribute(final String name) {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
+            while(attr < document.nextAttr && document.attrParent.get(attr) == nodeNumber) {
                 final QName attrQName = document.attrName[attr];
                 if(attrQName.getStringValue().equals(name)) {
                     return document.attrValue[attr];
@@ -114,7 +114,7 @@ public class ElementImpl extends NodeImpl implements Element {
             }
         }
         if(name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
-            int ns = document.alphaLen[nodeNumber];
+            int ns = document.alphaLen.get(nodeNumber);
             if(-1 < ns) {
                 while(ns < document.nextNamespace && document.namespaceParent[ns] == nodeNumber) {
                     final QName nsQName = document.namespaceCode[ns];
@@ -202,15 +202,15 @@ public class ElementImpl extends NodeImpl implements Element {
     @Override
     public NamedNodeMap getAttributes() {
         final NamedNodeMapImpl map = new NamedNodeMapImpl(document, true);
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
+            while(attr < document.nextAttr && document.attrParent.get(attr) == nodeNumber) {
                 map.setNamedItem(new AttrImpl(document, attr));
                 ++attr;
             }
         }
         // add namespace declarations attached to this element
-        int ns = document.alphaLen[nodeNumber];
+        int ns = document.alphaLen.get(nodeNumber);
         if(ns < 0) {
             return (map);
         }
@@ -224,9 +224,9 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public Attr getAttributeNode(final String name) {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
+            while(attr < document.nextAttr && document.attrParent.get(attr) == nodeNumber) {
                 final QName attrQName = document.attrName[attr];
                 if(attrQName.getStringValue().equals(name)) {
                     return new AttrImpl(document, attr);
@@ -235,7 +235,7 @@ public class ElementImpl extends NodeImpl implements Element {
             }
         }
         if(name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
-            int ns = document.alphaLen[nodeNumber];
+            int ns = document.alphaLen.get(nodeNumber);
             if(-1 < ns) {
                 while(ns < document.nextNamespace && document.namespaceParent[ns] == nodeNumber) {
                     final QName nsQName = document.namespaceCode[ns];
@@ -285,9 +285,9 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public void selectAttributes(final NodeTest test, final Sequence result) throws XPathException {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
+            while(attr < document.nextAttr && document.attrParent.get(attr) == nodeNumber) {
                 final AttrImpl attrib = new AttrImpl(document, attr);
                 if(test.matches(attrib)) {
                     result.add(attrib);
@@ -299,11 +299,11 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public void selectDescendantAttributes(final NodeTest test, final Sequence result) throws XPathException {
-        final int treeLevel = document.treeLevel[nodeNumber];
+        final int treeLevel = document.treeLevel.get(nodeNumber);
         int nextNode = nodeNumber;
         NodeImpl n = document.getNode(nextNode);
         n.selectAttributes(test, result);
-        while(++nextNode < document.size && document.treeLevel[nextNode] > treeLevel) {
+        while(++nextNode < document.size && document.treeLevel.get(nextNode) > treeLevel) {
             n = document.getNode(nextNode);
             if(n.getNodeType() == Node.ELEMENT_NODE) {
                 n.selectAttributes(test, result);
@@ -319,7 +319,7 @@ public class ElementImpl extends NodeImpl implements Element {
             if(test.matches(n)) {
                 result.add(n);
             }
-            nextNode = document.next[nextNode];
+            nextNode = document.next.get(nextNode);
         }
     }
 
@@ -332,7 +332,7 @@ public class ElementImpl extends NodeImpl implements Element {
     @Override
     public void selectDescendants(final boolean includeSelf, final NodeTest test, final Sequence result)
         throws XPathException {
-        final int treeLevel = document.treeLevel[nodeNumber];
+        final int treeLevel = document.treeLevel.get(nodeNumber);
         int nextNode = nodeNumber;
 
         if(includeSelf) {
@@ -342,7 +342,7 @@ public class ElementImpl extends NodeImpl implements Element {
             }
         }
 
-        while(++nextNode < document.size && document.treeLevel[nextNode] > treeLevel) {
+        while(++nextNode < document.size && document.treeLevel.get(nextNode) > treeLevel) {
             final NodeImpl n = document.getNode(nextNode);
             if(test.matches(n)) {
                 result.add(n);
@@ -398,9 +398,9 @@ public class ElementImpl extends NodeImpl implements Element {
     private NodeList getElementsByTagName(final QName qname) {
         final NodeListImpl nl = new NodeListImpl();
         int nextNode = nodeNumber;
-        final int treeLevel = document.treeLevel[nodeNumber];
-        while(++nextNode < document.size && document.treeLevel[nextNode] > treeLevel) {
-            if(document.nodeKind[nextNode] == Node.ELEMENT_NODE) {
+        final int treeLevel = document.treeLevel.get(nodeNumber);
+        while(++nextNode < document.size && document.treeLevel.get(nextNode) > treeLevel) {
+            if(document.nodeKind.get(nextNode) == Node.ELEMENT_NODE) {
                 final QName qn = document.nodeName[nextNode];
                 if(qname.matches(qn)) {
                     nl.add(document.getNode(nextNode));
@@ -412,9 +412,9 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public String getAttributeNS(final String namespaceURI, final String localName) {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
+            while(attr < document.nextAttr && document.attrParent.get(attr) == nodeNumber) {
                 final QName name = document.attrName[attr];
                 if(name.getLocalPart().equals(localName) && name.getNamespaceURI().equals(namespaceURI)) {
                     return document.attrValue[attr];
@@ -423,7 +423,7 @@ public class ElementImpl extends NodeImpl implements Element {
             }
         }
         if(Namespaces.XMLNS_NS.equals(namespaceURI)) {
-            int ns = document.alphaLen[nodeNumber];
+            int ns = document.alphaLen.get(nodeNumber);
             if(-1 < ns) {
                 while(ns < document.nextNamespace && document.namespaceParent[ns] == nodeNumber) {
                     final QName nsQName = document.namespaceCode[ns];
@@ -443,9 +443,9 @@ public class ElementImpl extends NodeImpl implements Element {
 
     @Override
     public Attr getAttributeNodeNS(final String namespaceURI, final String localName) {
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
+            while((attr < document.nextAttr) && (document.attrParent.get(attr) == nodeNumber)) {
                 final QName name = document.attrName[attr];
                 if(name.getLocalPart().equals(localName) && name.getNamespaceURI().equals(namespaceURI)) {
                     return (new AttrImpl(document, attr));
@@ -454,7 +454,7 @@ public class ElementImpl extends NodeImpl implements Element {
             }
         }
         if(Namespaces.XMLNS_NS.equals(namespaceURI)) {
-            int ns = document.alphaLen[nodeNumber];
+            int ns = document.alphaLen.get(nodeNumber);
             if(-1 < ns) {
                 while((ns < document.nextNamespace) && (document.namespaceParent[ns] == nodeNumber)) {
                     final QName nsQName = document.namespaceCode[ns];
@@ -490,7 +490,7 @@ public class ElementImpl extends NodeImpl implements Element {
      */
     public Set<String> getPrefixes() {
         final Set<String> set = new HashSet<>();
-        int ns = document.alphaLen[nodeNumber];
+        int ns = document.alphaLen.get(nodeNumber);
         if(-1 < ns) {
             while(ns < document.nextNamespace && document.namespaceParent[ns] == nodeNumber) {
                 final QName nsQName = document.namespaceCode[ns];
@@ -520,7 +520,7 @@ public class ElementImpl extends NodeImpl implements Element {
     }
 
     public Map<String, String> getNamespaceMap(final Map<String, String> map) {
-        int ns = document.alphaLen[nodeNumber];
+        int ns = document.alphaLen.get(nodeNumber);
         if(-1 < ns) {
             while(ns < document.nextNamespace && document.namespaceParent[ns] == nodeNumber) {
                 final QName nsQName = document.namespaceCode[ns];
@@ -529,9 +529,9 @@ public class ElementImpl extends NodeImpl implements Element {
             }
         }
 
-        int attr = document.alpha[nodeNumber];
+        int attr = document.alpha.get(nodeNumber);
         if(-1 < attr) {
-            while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
+            while(attr < document.nextAttr && document.attrParent.get(attr) == nodeNumber) {
                 final QName qname = document.attrName[attr];
                 if(qname.getPrefix() != null && !qname.getPrefix().isEmpty()) {
                     map.put(qname.getPrefix(), qname.getNamespaceURI());
@@ -572,7 +572,7 @@ public class ElementImpl extends NodeImpl implements Element {
 
         int parent = -1;
         final int test = document.getParentNodeFor(nodeNumber);
-        if(document.nodeKind[test] != Node.DOCUMENT_NODE) {
+        if(document.nodeKind.get(test) != Node.DOCUMENT_NODE) {
             parent = test;
         }
 
@@ -699,8 +699,8 @@ public class ElementImpl extends NodeImpl implements Element {
         }
 
         if(newChild instanceof NodeImpl) {
-            final int treeLevel = document.treeLevel[nodeNumber];
-            final int newChildTreeLevel = document.treeLevel[((NodeImpl)newChild).nodeNumber];
+            final int treeLevel = document.treeLevel.get(nodeNumber);
+            final int newChildTreeLevel = document.treeLevel.get(((NodeImpl)newChild).nodeNumber);
             if(newChildTreeLevel < treeLevel) {
                 throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR,
                         "The node to append is one of this node's ancestors");
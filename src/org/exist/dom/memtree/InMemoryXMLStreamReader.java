@@ -79,7 +79,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
             }
 
             if(next < 0) {
-                next = doc.next[currentNode];
+                next = doc.next.get(currentNode);
 
                 if(next < currentNode) {
 
@@ -97,7 +97,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
             currentNode = rootNode.getNodeNumber();
         }
 
-        switch(doc.nodeKind[currentNode]) {
+        switch(doc.nodeKind.get(currentNode)) {
 
             case Node.TEXT_NODE: {
                 state = XMLStreamReader.CHARACTERS;
@@ -203,7 +203,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
         if(attrCount == 0) {
             return null;
         }
-        final int attrStart = doc.alpha[currentNode];
+        final int attrStart = doc.alpha.get(currentNode);
 
         for(int i = 0; i < attrCount; i++) {
             final QName qname = doc.attrName[attrStart + i];
@@ -232,7 +232,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
         if(index > getAttributeCount()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        final int attr = doc.alpha[currentNode];
+        final int attr = doc.alpha.get(currentNode);
         return doc.attrName[attr + index];
     }
 
@@ -275,7 +275,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
             throw new ArrayIndexOutOfBoundsException();
         }
         doc.expand();
-        final int attr = doc.alpha[currentNode];
+        final int attr = doc.alpha.get(currentNode);
         return doc.attrNodeId[attr + index];
     }
 
@@ -288,8 +288,8 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
         if(index > getAttributeCount()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        final int attr = doc.alpha[currentNode];
-        final int type = doc.attrType[attr + index];
+        final int attr = doc.alpha.get(currentNode);
+        final int type = doc.attrType.get(attr + index);
 
         switch(type) {
 
@@ -320,7 +320,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
         if(index > getAttributeCount()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        final int attr = doc.alpha[currentNode];
+        final int attr = doc.alpha.get(currentNode);
         return doc.attrValue[attr + index];
     }
 
@@ -345,7 +345,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
         if(index > getNamespaceCount()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        final int ns = doc.alphaLen[currentNode];
+        final int ns = doc.alphaLen.get(currentNode);
         final QName nsQName = doc.namespaceCode[ns + index];
         return nsQName.getLocalPart();
     }
@@ -355,7 +355,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
         if(index > getNamespaceCount()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        final int ns = doc.alphaLen[currentNode];
+        final int ns = doc.alphaLen.get(currentNode);
         final QName nsQName = doc.namespaceCode[ns + index];
         return nsQName.getNamespaceURI();
     }
@@ -373,15 +373,15 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
     @Override
     public String getText() {
         if(state == CHARACTERS || state == COMMENT || state == CDATA) {
-            return new String(doc.characters, doc.alpha[currentNode], doc.alphaLen[currentNode]);
+            return doc.characters.toString(doc.alpha.get(currentNode), doc.alphaLen.get(currentNode));
         }
         return "";
     }
 
     @Override
     public char[] getTextCharacters() {
-        final char[] ch = new char[doc.alphaLen[currentNode]];
-        System.arraycopy(doc.characters, doc.alpha[currentNode], ch, 0, ch.length);
+        final char[] ch = new char[doc.alphaLen.get(currentNode)];
+        doc.characters.getChars(doc.alpha.get(currentNode), ch.length, ch, 0);
         return ch;
     }
 
@@ -476,6 +476,6 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
 
     @Override
     public String getPIData() {
-        return new String(doc.characters, doc.alpha[currentNode], doc.alphaLen[currentNode]);
+        return doc.characters.toString(doc.alpha.get(currentNode), doc.alphaLen.get(currentNode));
     }
 }
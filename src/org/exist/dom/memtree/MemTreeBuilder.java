@@ -172,9 +172,9 @@ public class MemTreeBuilder {
         final int prevNr = prevNodeInLevel[level]; // TODO: remove potential ArrayIndexOutOfBoundsException
 
         if(prevNr > -1) {
-            doc.next[prevNr] = nodeNr;
+            doc.next.set(prevNr, nodeNr);
         }
-        doc.next[nodeNr] = prevNodeInLevel[level - 1];
+        doc.next.set(nodeNr, prevNodeInLevel[level - 1]);
         prevNodeInLevel[level] = nodeNr;
         ++level;
         return nodeNr;
@@ -223,7 +223,7 @@ public class MemTreeBuilder {
             if(doc.getNodeType(lastNode) == NodeImpl.REFERENCE_NODE) {
 
                 // check if the previous node is a reference node. if yes, check if it is a text node
-                final int p = doc.alpha[lastNode];
+                final int p = doc.alpha.get(lastNode);
 
                 if((doc.references[p].getNodeType() == Node.TEXT_NODE) && (proxy.getNodeType() == Node.TEXT_NODE)) {
 
@@ -245,7 +245,7 @@ public class MemTreeBuilder {
     public int addAttribute(final QName qname, final String value) {
         final int lastNode = doc.getLastNode();
 
-        //if(0 < lastNode && doc.nodeKind[lastNode] != Node.ELEMENT_NODE) {
+        //if(0 < lastNode && doc.nodeKind.get(lastNode) != Node.ELEMENT_NODE) {
         //Definitely wrong !
         //lastNode = characters(value);
         //} else {
@@ -284,7 +284,7 @@ public class MemTreeBuilder {
             if(doc.getNodeType(lastNode) == NodeImpl.REFERENCE_NODE) {
 
                 // check if the previous node is a reference node. if yes, check if it is a text node
-                final int p = doc.alpha[lastNode];
+                final int p = doc.alpha.get(lastNode);
 
                 if(doc.references[p].getNodeType() == Node.TEXT_NODE) {
 
@@ -331,7 +331,7 @@ public class MemTreeBuilder {
             if(doc.getNodeType(lastNode) == NodeImpl.REFERENCE_NODE) {
 
                 // check if the previous node is a reference node. if yes, check if it is a text node
-                final int p = doc.alpha[lastNode];
+                final int p = doc.alpha.get(lastNode);
 
                 if((doc.references[p].getNodeType() == Node.TEXT_NODE) || (doc.references[p].getNodeType() == Node.CDATA_SECTION_NODE)) {
 
@@ -382,7 +382,7 @@ public class MemTreeBuilder {
             if(doc.getNodeType(lastNode) == NodeImpl.REFERENCE_NODE) {
 
                 // check if the previous node is a reference node. if yes, check if it is a text node
-                final int p = doc.alpha[lastNode];
+                final int p = doc.alpha.get(lastNode);
 
                 if((doc.references[p].getNodeType() == Node.TEXT_NODE) || (doc.references[p].getNodeType() == Node.CDATA_SECTION_NODE)) {
 
@@ -462,9 +462,9 @@ public class MemTreeBuilder {
         final int prevNr = prevNodeInLevel[level];
 
         if(prevNr > -1) {
-            doc.next[prevNr] = nodeNr;
+            doc.next.set(prevNr, nodeNr);
         }
-        doc.next[nodeNr] = prevNodeInLevel[level - 1];
+        doc.next.set(nodeNr, prevNodeInLevel[level - 1]);
         prevNodeInLevel[level] = nodeNr;
     }
 
@@ -281,14 +281,14 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
         if(this.document == null) {
             return Node.DOCUMENT_NODE;
         }
-        return document.nodeKind[nodeNumber];
+        return document.nodeKind.get(nodeNumber);
     }
 
     @Override
     public Node getParentNode() {
-        int next = document.next[nodeNumber];
+        int next = document.next.get(nodeNumber);
         while(next > nodeNumber) {
-            next = document.next[next];
+            next = document.next.get(next);
         }
         if(next < 0) {
             return null;
@@ -301,9 +301,9 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
         if(nodeNumber == 0) {
             return null;
         }
-        int next = document.next[nodeNumber];
+        int next = document.next.get(nodeNumber);
         while(next > nodeNumber) {
-            next = document.next[next];
+            next = document.next.get(next);
         }
         if(next < 0) { //Is this even possible ?
             return null;
@@ -400,7 +400,7 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
         final int parent = document.getParentNodeFor(nodeNumber);
         int nextNode = document.getFirstChildFor(parent);
         while((nextNode >= parent) && (nextNode < nodeNumber)) {
-            final int following = document.next[nextNode];
+            final int following = document.next.get(nextNode);
             if(following == nodeNumber) {
                 return document.getNode(nextNode);
             }
@@ -411,7 +411,7 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
 
     @Override
     public Node getNextSibling() {
-        final int nextNr = document.next[nodeNumber];
+        final int nextNr = document.next.get(nodeNumber);
         return nextNr < nodeNumber ? null : document.getNode(nextNr);
     }
 
@@ -510,52 +510,52 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
 
     @Override
     public String getStringValue() {
-        final int level = document.treeLevel[nodeNumber];
+        final int level = document.treeLevel.get(nodeNumber);
         int next = nodeNumber + 1;
         int startOffset = 0;
         int len = -1;
 
-        while(next < document.size && document.treeLevel[next] > level) {
+        while(next < document.size && document.treeLevel.get(next) > level) {
             if(
-                (document.nodeKind[next] == Node.TEXT_NODE)
-                    || (document.nodeKind[next] == Node.CDATA_SECTION_NODE)
-                    || (document.nodeKind[next] == Node.PROCESSING_INSTRUCTION_NODE)
+                (document.nodeKind.get(next) == Node.TEXT_NODE)
+                    || (document.nodeKind.get(next) == Node.CDATA_SECTION_NODE)
+                    || (document.nodeKind.get(next) == Node.PROCESSING_INSTRUCTION_NODE)
                 ) {
                 if(len < 0) {
-                    startOffset = document.alpha[next];
-                    len = document.alphaLen[next];
+                    startOffset = document.alpha.get(next);
+                    len = document.alphaLen.get(next);
                 } else {
-                    len += document.alphaLen[next];
+                    len += document.alphaLen.get(next);
                 }
             } else {
                 return getStringValueSlow();
             }
             ++next;
         }
-        return len < 0 ? "" : new String(document.characters, startOffset, len);
+        return len < 0 ? "" : document.characters.toString(startOffset, len);
     }
 
     private String getStringValueSlow() {
-        final int level = document.treeLevel[nodeNumber];
+        final int level = document.treeLevel.get(nodeNumber);
         StringBuilder buf = null;
         int next = nodeNumber + 1;
 
-        while(next < document.size && document.treeLevel[next] > level) {
-            switch(document.nodeKind[next]) {
+        while(next < document.size && document.treeLevel.get(next) > level) {
+            switch(document.nodeKind.get(next)) {
                 case Node.TEXT_NODE:
                 case Node.CDATA_SECTION_NODE:
                 case Node.PROCESSING_INSTRUCTION_NODE: {
                     if(buf == null) {
                         buf = new StringBuilder();
                     }
-                    buf.append(document.characters, document.alpha[next], document.alphaLen[next]);
+                    document.characters.appendTo(buf, document.alpha.get(next), document.alphaLen.get(next));
                     break;
                 }
                 case REFERENCE_NODE: {
                     if(buf == null) {
                         buf = new StringBuilder();
                     }
-                    buf.append(document.references[document.alpha[next]].getStringValue());
+                    buf.append(document.references[document.alpha.get(next)].getStringValue());
                     break;
                 }
             }
@@ -803,7 +803,7 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
             if(test.matches(n)) {
                 result.add(n);
             }
-            nextNode = document.next[nextNode];
+            nextNode = document.next.get(nextNode);
         }
     }
 
@@ -850,7 +850,7 @@ public abstract class NodeImpl<T extends NodeImpl> implements INode<DocumentImpl
                 if((nextNode > nodeNumber) && test.matches(n)) {
                     result.add(n);
                 }
-                nextNode = document.next[nextNode];
+                nextNode = document.next.get(nextNode);
             }
         }
     }
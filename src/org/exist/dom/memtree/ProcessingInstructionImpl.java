@@ -59,7 +59,7 @@ public class ProcessingInstructionImpl extends NodeImpl implements ProcessingIns
 
     @Override
     public String getData() {
-        return new String(document.characters, document.alpha[nodeNumber], document.alphaLen[nodeNumber]);
+        return document.characters.toString(document.alpha.get(nodeNumber), document.alphaLen.get(nodeNumber));
     }
 
     @Override
@@ -74,9 +74,7 @@ public class ProcessingInstructionImpl extends NodeImpl implements ProcessingIns
 
     @Override
     public void setData(final String data) throws DOMException {
-        document.characters = data.toCharArray();
-        document.alpha[nodeNumber] = 0;
-        document.alphaLen[nodeNumber] = data.length();
+        document.addChars(nodeNumber, data);
     }
 
     @Override
@@ -85,7 +83,7 @@ public class ProcessingInstructionImpl extends NodeImpl implements ProcessingIns
         int parent = -1;
         int test = document.getParentNodeFor(nodeNumber);
 
-        if(document.nodeKind[test] != Node.DOCUMENT_NODE) {
+        if(document.nodeKind.get(test) != Node.DOCUMENT_NODE) {
             parent = test;
         }
 
@@ -100,7 +98,7 @@ public class ProcessingInstructionImpl extends NodeImpl implements ProcessingIns
 
             test = document.getParentNodeFor(parent);
 
-            if(document.nodeKind[test] == Node.DOCUMENT_NODE) {
+            if(document.nodeKind.get(test) == Node.DOCUMENT_NODE) {
                 return (baseURI);
             } else {
                 parent = test;
@@ -50,7 +50,7 @@ public class ReferenceNode extends NodeImpl {
     }
 
     public NodeProxy getReference() {
-        final int p = document.alpha[nodeNumber];
+        final int p = document.alpha.get(nodeNumber);
         return document.references[p];
     }
 
@@ -0,0 +1,86 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.memtree;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@link Column} of short values. New entries are 0.
+ */
+final class ShortColumn extends Column {
+
+    private short[] array;
+    private ShortBuffer[] chunks = null;
+
+    /**
+     * @param capacity the initial capacity
+     * @param offHeapThreshold the number of values above which the column
+     *                         is moved off heap, 0 to keep it on the heap
+     */
+    ShortColumn(final int capacity, final int offHeapThreshold) {
+        super(capacity, offHeapThreshold);
+        this.array = new short[capacity];
+    }
+
+    short get(final int index) {
+        final short[] a = array;
+        if (a != null) {
+            return a[index];
+        }
+        return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    void set(final int index, final short value) {
+        final short[] a = array;
+        if (a != null) {
+            a[index] = value;
+        } else {
+            chunks[index >>> CHUNK_SHIFT].put(index & CHUNK_MASK, value);
+        }
+    }
+
+    @Override
+    boolean isOffHeap() {
+        return array == null;
+    }
+
+    @Override
+    protected void growArray(final int newCapacity) {
+        array = Arrays.copyOf(array, newCapacity);
+    }
+
+    @Override
+    protected void growChunks(final int count) {
+        final int first = chunks == null ? 0 : chunks.length;
+        final ShortBuffer[] newChunks = chunks == null ? new ShortBuffer[count] : Arrays.copyOf(chunks, count);
+        for (int i = first; i < count; i++) {
+            newChunks[i] = allocateChunk(Short.BYTES).asShortBuffer();
+        }
+        if (array != null) {
+            for (int offset = 0; offset < capacity; offset += CHUNK_SIZE) {
+                positioned(newChunks[offset >>> CHUNK_SHIFT].duplicate(), 0)
+                        .put(array, offset, Math.min(CHUNK_SIZE, capacity - offset));
+            }
+            array = null;
+        }
+        chunks = newChunks;
+    }
+}
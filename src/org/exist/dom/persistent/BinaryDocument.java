@@ -44,6 +44,9 @@ public class BinaryDocument extends DocumentImpl {
     private long pageNr = Page.NO_PAGE;
     private long realSize = 0L;
 
+    /** the digest of the content if it is kept in the blob store, null if the document has a file of its own */
+    private byte[] blobId = null;
+
     public BinaryDocument(final BrokerPool pool) {
         super(pool);
     }
@@ -74,6 +77,21 @@ public class BinaryDocument extends DocumentImpl {
         this.realSize = length;
     }
 
+    /**
+     * Returns the id of the content in the blob store, which is shared
+     * by all binary documents with the same content.
+     *
+     * @return the digest of the content, or null if the content is
+     *     stored in a file of this document
+     */
+    public byte[] getBlobId() {
+        return blobId;
+    }
+
+    public void setBlobId(final byte[] blobId) {
+        this.blobId = blobId;
+    }
+
     @Override
     public void write(final VariableByteOutputStream ostream) throws IOException {
         ostream.writeInt(getDocId());
@@ -84,6 +102,12 @@ public class BinaryDocument extends DocumentImpl {
 
         ostream.writeLong(realSize);
         getMetadata().write(getBrokerPool().getSymbols(), ostream);
+
+        // optional, older records end here
+        if (blobId != null) {
+            ostream.writeByte((byte) blobId.length);
+            ostream.write(blobId);
+        }
     }
 
     @Override
@@ -98,5 +122,15 @@ public class BinaryDocument extends DocumentImpl {
         final DocumentMetadata metadata = new DocumentMetadata();
         metadata.read(getBrokerPool().getSymbols(), istream);
         setMetadata(metadata);
+
+        if (istream.available() > 0) {
+            final byte[] id = new byte[istream.readByte()];
+            for (int i = 0; i < id.length; i++) {
+                id[i] = istream.readByte();
+            }
+            this.blobId = id;
+        } else {
+            this.blobId = null;
+        }
     }
 }
@@ -67,6 +67,12 @@ import java.util.NoSuchElementException;
  */
 public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet, DocumentSet {
 
+    /**
+     * A parent/child join looks up the parent of each node in this set, instead
+     * of the children of each parent, if there are this many times more parents.
+     */
+    private final static int PARENT_LOOKUP_RATIO = 4;
+
     private Set<Collection> cachedCollections = null;
 
     private int documentIds[] = new int[16];
@@ -243,6 +249,11 @@ public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet,
     protected final NodeSet getDescendantsInSet(final NodeSet al, final boolean childOnly,
             final boolean includeSelf, final int mode, final int contextId, final boolean copyMatches) {
         sort();
+        // the join below searches this set once for every node in al. If al is much
+        // larger, it is cheaper to look up the parent of every node in this set in al.
+        if(childOnly && al instanceof NewArrayNodeSet && (long) size * PARENT_LOOKUP_RATIO < al.getLength()) {
+            return getChildrenByParentLookup((NewArrayNodeSet) al, mode, contextId, copyMatches);
+        }
         final NodeSet result = new NewArrayNodeSet();
         int docIdx;
         for(final NodeProxy node : al) {
@@ -255,6 +266,64 @@ public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet,
         return result;
     }
 
+    /**
+     * Find all nodes in the current set being children of a node in the
+     * given set, by looking up the parent of each node. Produces the same
+     * result as {@link #getDescendantsInSet(NodeSet, boolean, boolean, int, int, boolean)}
+     * with childOnly set.
+     *
+     * @param al the set of potential parents
+     * @param mode
+     * @param contextId
+     * @param copyMatches
+     */
+    private NodeSet getChildrenByParentLookup(final NewArrayNodeSet al, final int mode, final int contextId,
+            final boolean copyMatches) {
+        final NodeSet result = new NewArrayNodeSet();
+        for(int docIdx = 0; docIdx < documentCount; docIdx++) {
+            final int parentDocIdx = al.findDoc(documentIds[docIdx]);
+            if(parentDocIdx < 0) {
+                continue;
+            }
+            final int end = documentOffsets[docIdx] + documentLengths[docIdx];
+            for(int i = documentOffsets[docIdx]; i < end; i++) {
+                final NodeId parentId = nodes[i].getNodeId().getParentId();
+                if(parentId == null) {
+                    continue;
+                }
+                final NodeProxy parent = al.get(parentDocIdx, parentId);
+                if(parent == null) {
+                    continue;
+                }
+                switch(mode) {
+                    case NodeSet.DESCENDANT:
+                        if(Expression.NO_CONTEXT_ID != contextId) {
+                            nodes[i].deepCopyContext(parent, contextId);
+                        } else {
+                            nodes[i].copyContext(parent);
+                        }
+                        if(copyMatches) {
+                            nodes[i].addMatches(parent);
+                        }
+                        result.add(nodes[i]);
+                        break;
+                    case NodeSet.ANCESTOR:
+                        if(Expression.NO_CONTEXT_ID != contextId) {
+                            parent.deepCopyContext(nodes[i], contextId);
+                        } else {
+                            parent.copyContext(nodes[i]);
+                        }
+                        if(copyMatches) {
+                            parent.addMatches(nodes[i]);
+                        }
+                        result.add(parent, 1);
+                        break;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Find all nodes in the current set being children or descendants of
      * the given parent node.
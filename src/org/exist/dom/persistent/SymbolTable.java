@@ -35,7 +35,6 @@ import org.exist.storage.io.VariableByteInputStream;
 import org.exist.storage.io.VariableByteOutputStream;
 import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
-import org.exist.util.hashtable.Object2IntHashMap;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -47,7 +46,8 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains a global symbol table shared by a database instance. The symbol
@@ -57,6 +57,10 @@ import java.util.Iterator;
  * <p/>
  * The global SymbolTable singleton can be retrieved from {@link org.exist.storage.BrokerPool#getSymbols()}.
  * It is saved into the database file "symbols.dbx".
+ * <p/>
+ * Looking up the id of a known symbol, or the symbol for an id, never blocks:
+ * only the registration of a new symbol, which appends it to the file, is
+ * serialized on the symbol table.
  *
  * @author wolf
  * @author Adam Retter <adam@exist-db.org>
@@ -111,7 +115,7 @@ public class SymbolTable implements BrokerPoolService {
     /**
      * set to true if the symbol table needs to be saved
      */
-    private boolean changed = false;
+    private volatile boolean changed = false;
 
     /**
      * the underlying symbols.dbx file
@@ -167,7 +171,7 @@ public class SymbolTable implements BrokerPoolService {
      * @param element
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(final Element element) {
+    public short getSymbol(final Element element) {
         return (short) localNameSymbols.getId(element.getLocalName());
     }
 
@@ -177,7 +181,7 @@ public class SymbolTable implements BrokerPoolService {
      * @param attr
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(final Attr attr) {
+    public short getSymbol(final Attr attr) {
         final String key = ATTR_NAME_PREFIX + attr.getLocalName();
         return (short) localNameSymbols.getId(key);
     }
@@ -189,7 +193,7 @@ public class SymbolTable implements BrokerPoolService {
      * @param name
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(final String name) {
+    public short getSymbol(final String name) {
         if(name.length() == 0) {
             throw new IllegalArgumentException("name is empty");
         }
@@ -202,14 +206,14 @@ public class SymbolTable implements BrokerPoolService {
      * @param ns
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getNSSymbol(final String ns) {
+    public short getNSSymbol(final String ns) {
         if(ns == null || ns.length() == 0) {
             return 0;
         }
         return (short) namespaceSymbols.getId(ns);
     }
 
-    public synchronized int getMimeTypeId(final String mimeType) {
+    public int getMimeTypeId(final String mimeType) {
         return mimeTypeSymbols.getId(mimeType);
     }
 
@@ -217,7 +221,7 @@ public class SymbolTable implements BrokerPoolService {
      * Returns true if the symbol table needs to be saved
      * to persistent storage.
      */
-    public synchronized boolean hasChanged() {
+    public boolean hasChanged() {
         return changed;
     }
 
@@ -227,11 +231,11 @@ public class SymbolTable implements BrokerPoolService {
      *
      * @param id
      */
-    public synchronized String getName(final short id) {
+    public String getName(final short id) {
         return localNameSymbols.getSymbol(id);
     }
 
-    public synchronized String getMimeType(final int id) {
+    public String getMimeType(final int id) {
         return mimeTypeSymbols.getSymbol(id);
     }
 
@@ -242,7 +246,7 @@ public class SymbolTable implements BrokerPoolService {
      *
      * @param id
      */
-    public synchronized String getNamespace(final short id) {
+    public String getNamespace(final short id) {
         return namespaceSymbols.getSymbol(id);
     }
 
@@ -437,21 +441,24 @@ public class SymbolTable implements BrokerPoolService {
         /**
          * Maps mimetype names to an integer id (persisted to disk)
          */
-        private final Object2IntHashMap<String> symbolsByName;
+        private final Map<String, Integer> symbolsByName;
 
         /**
-         * Maps int ids to mimetype names (transient map for fast reverse lookup of symbolsByName)
+         * Maps int ids to mimetype names (transient map for fast reverse lookup of symbolsByName).
+         * Grown by copying, so that readers always see a complete array.
          */
-        private String[] symbolsById;
+        private volatile String[] symbolsById;
 
         /**
-         * contains the offset of the last symbol
+         * contains the offset of the last symbol. Only updated after the
+         * symbol has been stored in symbolsById, and before it is added to
+         * symbolsByName, so that an id found by name can always be resolved.
          */
-        protected short offset = 0;
+        protected volatile short offset = 0;
 
         public SymbolCollection(final SymbolType symbolType, final int initialSize) {
             this.symbolType = symbolType;
-            symbolsByName = new Object2IntHashMap<>(initialSize);
+            symbolsByName = new ConcurrentHashMap<>(initialSize);
             symbolsById = new String[initialSize];
         }
 
@@ -460,12 +467,15 @@ public class SymbolTable implements BrokerPoolService {
         }
 
         private int add(final int id, final String name) {
-            symbolsById = ensureCapacity(symbolsById, id);
+            final String[] ids = ensureCapacity(symbolsById, id);
+            if(ids != symbolsById) {
+                symbolsById = ids;
+            }
             addSymbolById(id, name);
-            addSymbolByName(name, id);
             if(id > offset) {
                 offset = (short) id;
             }
+            addSymbolByName(name, id);
             return id;
         }
 
@@ -490,16 +500,33 @@ public class SymbolTable implements BrokerPoolService {
             offset = 0;
         }
 
-        public synchronized String getSymbol(final int id) {
+        public String getSymbol(final int id) {
             if(id <= 0 || id > offset) {
                 return ""; //TODO : raise an exception ? -pb
             }
             return symbolsById[id];
         }
 
-        public synchronized int getId(final String name) {
-            int id = symbolsByName.get(name);
+        public int getId(final String name) {
+            final Integer id = symbolsByName.get(name);
+            if(id != null) {
+                return id;
+            }
+            synchronized(SymbolTable.this) {
+                return addSymbol(name);
+            }
+        }
+
+        /**
+         * Register a new symbol. Must be called while holding
+         * the lock on the symbol table.
+         *
+         * @param name
+         */
+        private int addSymbol(final String name) {
+            int id = symbolsByName.getOrDefault(name, -1);
             if(id != -1) {
+                // added by another thread
                 return id;
             }
             // symbol space exceeded. return -1 to indicate.
@@ -507,18 +534,18 @@ public class SymbolTable implements BrokerPoolService {
                 return -1;
             }
 
-            id = add(++offset, name);
-            //we use "++offset" here instead of "offset++", 
-            //because the system expects id's to start at 1, not 0
+            //we use "offset + 1" here, because the system expects id's to start at 1, not 0.
+            //add() publishes the name last, once getSymbol(id) can resolve it
+            id = add(offset + 1, name);
             write(id, name);
             changed = true;
             return id;
         }
 
         protected final void write(final VariableByteOutputStream os) throws IOException {
-            for(final Iterator<String> i = symbolsByName.iterator(); i.hasNext(); ) {
-                final String symbol = i.next();
-                final int id = symbolsByName.get(symbol);
+            for(final Map.Entry<String, Integer> entry : symbolsByName.entrySet()) {
+                final String symbol = entry.getKey();
+                final int id = entry.getValue();
                 if(id < 0) {
                     LOG.error("Symbol Table: symbolTypeId=" + getSymbolType() +
                         ", symbol='" + symbol + "', id=" + id);
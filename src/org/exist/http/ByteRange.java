@@ -0,0 +1,105 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http;
+
+/**
+ * A single range of bytes requested with an HTTP Range header, see RFC 7233.
+ *
+ * Requests for several ranges are answered with the complete resource, which
+ * the RFC allows, so only one range is supported.
+ */
+final class ByteRange {
+
+    /** returned by {@link #parse(String, long)} if no byte of the requested range exists */
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final long first;
+    private final long last;
+
+    ByteRange(final long first, final long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Parse the value of a Range header.
+     *
+     * @param header the value of the header
+     * @param length the length of the resource
+     * @return the range, null if the header is invalid or requests several
+     *     ranges and should be ignored, or {@link #UNSATISFIABLE}
+     */
+    static ByteRange parse(final String header, final long length) {
+        if (header == null) {
+            return null;
+        }
+        final String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        final String spec = value.substring(6).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            if (dash == 0) {
+                // suffix range: the last n bytes
+                final long suffix = Long.parseLong(spec.substring(1).trim());
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            final long first = Long.parseLong(spec.substring(0, dash).trim());
+            final String lastSpec = spec.substring(dash + 1).trim();
+            final long last = lastSpec.isEmpty() ? length - 1 : Long.parseLong(lastSpec);
+            if (first < 0 || last < first && !lastSpec.isEmpty()) {
+                return null;
+            }
+            if (first >= length) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(first, Math.min(last, length - 1));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long getFirst() {
+        return first;
+    }
+
+    long getLast() {
+        return last;
+    }
+
+    long getLength() {
+        return last - first + 1;
+    }
+
+    /**
+     * @param length the length of the resource
+     * @return the value of the Content-Range header for this range
+     */
+    String toContentRange(final long length) {
+        return "bytes " + first + '-' + last + '/' + length;
+    }
+}
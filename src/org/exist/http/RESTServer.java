@@ -21,6 +21,7 @@
  */
 package org.exist.http;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -32,11 +33,20 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.XMLConstants;
@@ -95,6 +105,7 @@ import org.exist.util.MimeTable;
 import org.exist.util.MimeType;
 import org.exist.util.VirtualTempFile;
 import org.exist.util.VirtualTempFileInputSource;
+import org.exist.util.ZipEntryInputSource;
 import org.exist.util.io.FilterInputStreamCacheFactory.FilterInputStreamCacheConfiguration;
 import org.exist.util.serializer.SAXSerializer;
 import org.exist.util.serializer.SerializerPool;
@@ -105,6 +116,7 @@ import org.exist.xqj.Marshaller;
 import org.exist.xquery.CompiledXQuery;
 import org.exist.xquery.Constants;
 import org.exist.xquery.NameTest;
+import org.exist.xquery.QueryPlan;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQuery;
 import org.exist.xquery.XQueryContext;
@@ -254,6 +266,11 @@ public class RESTServer {
      * <li>_xsl: an URI pointing to an XSL stylesheet that will be applied to
      * the returned XML.</li>
      *
+     * <li>_explain: if set to "yes", the query is compiled but not executed and
+     * its plan is returned instead of the results. If set to "analyze", the
+     * query is executed and the plan includes the time and number of items
+     * for each evaluated expression, see {@link QueryPlan}.</li>
+     *
      * @param broker
      * @param request
      * @param response
@@ -291,6 +308,7 @@ public class RESTServer {
         boolean wrap = true;
         boolean source = false;
         boolean cache = false;
+        String explain = null;
         final Properties outputProperties = new Properties(defaultOutputKeysProperties);
 
         String query = null;
@@ -345,6 +363,9 @@ public class RESTServer {
         if ((option = getParameter(request, Cache)) != null) {
             cache = "yes".equals(option);
         }
+        if ((option = getParameter(request, Explain)) != null) {
+            explain = option;
+        }
         if ((option = getParameter(request, Indent)) != null) {
             outputProperties.setProperty(OutputKeys.INDENT, option);
         }
@@ -381,7 +402,7 @@ public class RESTServer {
             // query parameter specified, search method does all the rest of the work
             try {
                 search(broker, query, path, namespaces, variables, howmany, start, typed, outputProperties,
-                        wrap, cache, request, response);
+                        wrap, cache, explain, request, response);
 
             } catch (final XPathException e) {
                 if (MimeType.XML_TYPE.getName().equals(mimeType)) {
@@ -575,6 +596,10 @@ public class RESTServer {
                 // must be set so
                 response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
                 setCreatedAndLastModifiedHeaders(response, metadata.getCreated(), metadata.getLastModified());
+                if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
+                    response.setHeader("ETag", getETag(resource));
+                    response.setHeader("Accept-Ranges", "bytes");
+                }
             } else {
                 final Collection col = broker.getCollection(pathUri);
                 //no resource or collection
@@ -721,6 +746,7 @@ public class RESTServer {
             ElementImpl variables = null;
             boolean enclose = true;
             boolean cache = false;
+            String explain = null;
             String query = null;
 
             final TransactionManager transact = broker.getBrokerPool().getTransactionManager();
@@ -788,6 +814,11 @@ public class RESTServer {
                             cache = "yes".equals(option);
                         }
 
+                        if ((option = root.getAttribute(Explain.xmlKey())) != null
+                                && option.length() > 0) {
+                            explain = option;
+                        }
+
                         if ((option = root.getAttribute(Session.xmlKey())) != null
                                 && option.length() > 0) {
                             outputProperties.setProperty(
@@ -845,7 +876,7 @@ public class RESTServer {
                         try {
                             search(broker, query, path, nsExtractor.getNamespaces(), variables,
                                     howmany, start, typed, outputProperties,
-                                    enclose, cache, request, response);
+                                    enclose, cache, explain, request, response);
 
                             transact.commit(transaction);
 
@@ -1053,6 +1084,20 @@ public class RESTServer {
                 transact.abort(transaction);
                 throw new BadRequestException("Bad path: " + path);
             }
+            // a zip archive put to an existing collection is unpacked into it
+            final Collection target = broker.getCollection(path);
+            if (target != null && isZipArchive(request.getContentType())) {
+                final File archive = vtempFile.toFile();
+                try {
+                    storeArchive(broker, transaction, target, archive);
+                } finally {
+                    archive.delete();
+                }
+                response.setStatus(HttpServletResponse.SC_CREATED);
+                transact.commit(transaction);
+                return;
+            }
+
             // TODO : use getOrCreateCollection() right now ?
             Collection collection = broker.getCollection(collUri);
             if (collection == null) {
@@ -1128,6 +1173,90 @@ public class RESTServer {
         }
     }
 
+    private static boolean isZipArchive(final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final int semicolon = contentType.indexOf(';');
+        return "application/zip".equalsIgnoreCase(semicolon < 0 ? contentType.trim() : contentType.substring(0, semicolon).trim());
+    }
+
+    /**
+     * Stores the entries of a zip archive into a collection, creating a
+     * sub-collection for each directory of the archive. The XML documents of
+     * a collection are stored as one batch, so that the indexes are flushed
+     * once per collection instead of after every document.
+     */
+    private void storeArchive(final DBBroker broker, final Txn transaction, final Collection target, final File archive)
+            throws BadRequestException, IOException, EXistException, PermissionDeniedException, TriggerException,
+            SAXException, LockException {
+        try (final ZipFile zipFile = new ZipFile(archive)) {
+            final Map<XmldbURI, Map<XmldbURI, InputSource>> documents = new LinkedHashMap<>();
+            final Map<XmldbURI, Map<XmldbURI, ZipEntry>> binaries = new LinkedHashMap<>();
+            final Map<XmldbURI, String> mimeTypes = new HashMap<>();
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final XmldbURI entryUri;
+                try {
+                    entryUri = XmldbURI.xmldbUriFor(entry.getName().replace('\\', '/'), true);
+                } catch (final URISyntaxException e) {
+                    throw new BadRequestException("Bad zip entry name: " + entry.getName());
+                }
+                for (final XmldbURI segment : entryUri.getPathSegments()) {
+                    if ("..".equals(segment.toString())) {
+                        throw new BadRequestException("Bad zip entry name: " + entry.getName());
+                    }
+                }
+                final XmldbURI collUri = entryUri.numSegments() > 1 ?
+                        target.getURI().append(entryUri.removeLastSegment()) : target.getURI();
+                final XmldbURI docUri = entryUri.lastSegment();
+
+                MimeType mime = MimeTable.getInstance().getContentTypeFor(docUri);
+                if (mime == null) {
+                    mime = MimeType.BINARY_TYPE;
+                }
+                if (mime.isXMLType()) {
+                    documents.computeIfAbsent(collUri, k -> new LinkedHashMap<>())
+                            .put(docUri, new ZipEntryInputSource(zipFile, entry));
+                    mimeTypes.put(collUri.append(docUri), mime.getName());
+                } else {
+                    binaries.computeIfAbsent(collUri, k -> new LinkedHashMap<>()).put(docUri, entry);
+                    mimeTypes.put(collUri.append(docUri), mime.getName());
+                }
+            }
+
+            final Set<XmldbURI> collections = new LinkedHashSet<>(documents.keySet());
+            collections.addAll(binaries.keySet());
+            for (final XmldbURI collUri : collections) {
+                Collection collection = broker.getCollection(collUri);
+                if (collection == null) {
+                    LOG.debug("creating collection " + collUri);
+                    collection = broker.getOrCreateCollection(transaction, collUri);
+                    broker.saveCollection(transaction, collection);
+                }
+                final Map<XmldbURI, InputSource> xml = documents.get(collUri);
+                if (xml != null) {
+                    collection.storeDocuments(transaction, broker, xml, info ->
+                            info.getDocument().getMetadata().setMimeType(
+                                    mimeTypes.get(collUri.append(info.getDocument().getFileURI()))));
+                }
+                final Map<XmldbURI, ZipEntry> binary = binaries.get(collUri);
+                if (binary != null) {
+                    for (final Map.Entry<XmldbURI, ZipEntry> entry : binary.entrySet()) {
+                        try (final InputStream is = zipFile.getInputStream(entry.getValue())) {
+                            collection.addBinaryResource(transaction, broker, entry.getKey(), is,
+                                    mimeTypes.get(collUri.append(entry.getKey())), entry.getValue().getSize());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     public void doDelete(final DBBroker broker, final String path, final HttpServletRequest request, final HttpServletResponse response)
             throws PermissionDeniedException, NotFoundException, IOException, BadRequestException {
         final XmldbURI pathURI = XmldbURI.createInternal(path);
@@ -1257,13 +1386,15 @@ public class RESTServer {
     /**
      * TODO: pass request and response objects to XQuery.
      *
+     * @param explain "yes" or "analyze" to return the plan of the query
+     * instead of its results, see {@link RESTServerParameter#Explain}
      * @throws XPathException
      */
     protected void search(final DBBroker broker, final String query,
         final String path, final List<Namespace> namespaces,
         final ElementImpl variables, final int howmany, final int start,
         final boolean typed, final Properties outputProperties,
-        final boolean wrap, final boolean cache,
+        final boolean wrap, final boolean cache, final String explain,
         final HttpServletRequest request,
         final HttpServletResponse response) throws BadRequestException,
         PermissionDeniedException, XPathException {
@@ -1299,16 +1430,20 @@ public class RESTServer {
             }
         }
 
+        final QueryPlan plan = explain == null || "no".equals(explain) ? null : new QueryPlan("analyze".equals(explain));
+
         final XmldbURI pathUri = XmldbURI.createInternal(path);
         try {
             final Source source = new StringSource(query);
             final XQuery xquery = broker.getBrokerPool().getXQueryService();
             final XQueryPool pool = broker.getBrokerPool().getXQueryPool();
-            CompiledXQuery compiled = pool.borrowCompiledXQuery(broker, source);
+            // the plan has to see the decisions made while compiling
+            CompiledXQuery compiled = plan == null ? pool.borrowCompiledXQuery(broker, source) : null;
 
             XQueryContext context;
             if (compiled == null) {
                 context = new XQueryContext(broker.getBrokerPool());
+                context.getProfiler().setPlan(plan);
             } else {
                 context = compiled.getContext();
             }
@@ -1331,10 +1466,25 @@ public class RESTServer {
             }
 
             try {
+                if (plan != null) {
+                    plan.setQuery(compiled);
+                    if (!plan.isAnalyze()) {
+                        // the query is not executed, so the context is not reset
+                        context.getProfiler().setPlan(null);
+                        writeResults(response, broker, plan.toNode(context), 1, 1, false, outputProperties, false,
+                                compilationTime, 0);
+                        return;
+                    }
+                }
+
                 final long executeStart = System.currentTimeMillis();
-                final Sequence resultSequence = xquery.execute(broker, compiled, null, outputProperties);
+                Sequence resultSequence = xquery.execute(broker, compiled, null, outputProperties);
                 final long executionTime = System.currentTimeMillis() - executeStart;
 
+                if (plan != null) {
+                    resultSequence = plan.toNode(context);
+                }
+
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Found " + resultSequence.getItemCount() + " in " + executionTime + "ms.");
                 }
@@ -1638,6 +1788,57 @@ public class RESTServer {
         response.addDateHeader("Created", created);
     }
 
+    /**
+     * Returns the entity tag of a binary resource, which changes whenever the resource is replaced.
+     */
+    private static String getETag(final DocumentImpl resource) {
+        return "\"" + Long.toHexString(resource.getMetadata().getLastModified()) + '-' +
+                Long.toHexString(resource.getContentLength()) + "\"";
+    }
+
+    /**
+     * Checks if an entity tag is contained in the value of an If-None-Match header,
+     * using the weak comparison of RFC 7232.
+     */
+    private static boolean matchesETag(final String header, final String etag) {
+        if ("*".equals(header.trim())) {
+            return true;
+        }
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the If-Range header of a request, which makes a range request
+     * conditional on the resource being unchanged.
+     */
+    private static boolean isRangeCurrent(final HttpServletRequest request, final String etag,
+            final long lastModified) {
+        final String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        final String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            // a weak entity tag never matches
+            return value.equals(etag);
+        }
+        try {
+            // HTTP dates have a precision of seconds
+            return request.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     // writes out a resource, uses asMimeType as the specified mime-type or if
     // null uses the type of the resource
     private void writeResourceAs(final DocumentImpl resource, final DBBroker broker,
@@ -1656,13 +1857,32 @@ public class RESTServer {
         final long lastModified = metadata.getLastModified();
         setCreatedAndLastModifiedHeaders(response, metadata.getCreated(), lastModified);
 
+        // the serialization of XML resources depends on the request, so only binary resources have an entity tag
+        final String etag;
+        if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
+            etag = getETag(resource);
+            response.setHeader("ETag", etag);
+            response.setHeader("Accept-Ranges", "bytes");
+
+            // handle If-None-Match request header, which takes precedence over If-Modified-Since
+            final String ifNoneMatch = request.getHeader("If-None-Match");
+            if (ifNoneMatch != null) {
+                if (matchesETag(ifNoneMatch, etag)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+            }
+        } else {
+            etag = null;
+        }
 
         /**
          * HTTP 1.1 RFC 2616 Section 14.25 *
          */
         //handle If-Modified-Since request header
         try {
-            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            final long ifModifiedSince = etag != null && request.getHeader("If-None-Match") != null ?
+                    -1 : request.getDateHeader("If-Modified-Since");
             if (ifModifiedSince > -1) {
 
                 /*
@@ -1704,14 +1924,36 @@ public class RESTServer {
                 response.setContentType(asMimeType);
             }
 
+            // handle Range request header, unless If-Range shows that the client has an older version
+            final long length = resource.getContentLength();
+            ByteRange range = null;
+            final String rangeHeader = request.getHeader("Range");
+            if (rangeHeader != null && isRangeCurrent(request, etag, lastModified)) {
+                range = ByteRange.parse(rangeHeader, length);
+                if (range == ByteRange.UNSATISFIABLE) {
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+            }
+
             // As HttpServletResponse.setContentLength is limited to integers,
             // (see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4187336)
             // next sentence:
             //	response.setContentLength(resource.getContentLength());
             // must be set so
-            response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
-            final OutputStream os = response.getOutputStream();
-            broker.readBinaryResource((BinaryDocument) resource, os);
+            final OutputStream os;
+            if (range == null) {
+                response.addHeader("Content-Length", Long.toString(length));
+                os = response.getOutputStream();
+                broker.readBinaryResource((BinaryDocument) resource, os);
+            } else {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", range.toContentRange(length));
+                response.addHeader("Content-Length", Long.toString(range.getLength()));
+                os = response.getOutputStream();
+                broker.readBinaryResource((BinaryDocument) resource, range.getFirst(), range.getLength(), os);
+            }
             os.flush();
         } else {
             // xml resource
@@ -224,6 +224,23 @@ enum RESTServerParameter {
      */
     Cache,
 
+    /**
+     * Can be used in either the Query String of a GET request
+     * or in the body of a POST request when supplying an XPath or XQuery,
+     * it causes the plan of the query to be returned instead of its results.
+     * 
+     * With "yes", the query is compiled only and the plan shows the
+     * optimized query and the decisions of the optimizer. With "analyze",
+     * the query is also executed and the plan lists the evaluated
+     * expressions with the number of calls, the items passed in and
+     * returned, and the time spent in nanoseconds.
+     * 
+     * Contexts: GET, POST
+     * 
+     * The value of the parameter should be "yes", "analyze" or "no".
+     */
+    Explain,
+
     /**
      * Can be used in the Query String of a GET request
      * to indicate that an XML result should be indented.
@@ -195,6 +195,35 @@ public class IndexController {
         indexWorkers.values().forEach(IndexWorker::flush);
     }  
 
+    /**
+     * Flushes the index workers which can not defer flushing to the end
+     * of a batch of documents, see {@link IndexWorker#isDeferredFlushSupported()}.
+     */
+    public void flushDocument() {
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            if (!indexWorker.isDeferredFlushSupported()) {
+                indexWorker.flush();
+            }
+        }
+    }
+
+    /**
+     * Start loading the index workers which support it in bulk, see
+     * {@link IndexWorker#beginBulkLoad()}.
+     */
+    public void beginBulkLoad() {
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            indexWorker.beginBulkLoad();
+        }
+    }
+
+    /**
+     * Write the entries collected by the index workers since {@link #beginBulkLoad()}.
+     */
+    public void endBulkLoad() {
+        indexWorkers.values().forEach(IndexWorker::endBulkLoad);
+    }
+
     /**
      * Remove all indexes defined on the specified collection.
      *
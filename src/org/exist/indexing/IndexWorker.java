@@ -169,6 +169,37 @@ public interface IndexWorker {
      */
     void flush();
 
+    /**
+     * Returns true if this worker can keep the pending entries of several documents,
+     * stored one after the other, until {@link #flush()} is called. When documents are
+     * stored as a batch, see {@link org.exist.storage.DBBroker#beginIndexBatch()}, such
+     * a worker is only flushed at the end of the batch, all others after each document.
+     *
+     * @return true if flushing may be deferred to the end of a batch
+     */
+    default boolean isDeferredFlushSupported() {
+        return false;
+    }
+
+    /**
+     * Start loading the whole index in bulk, while all documents of the database are
+     * reindexed into an empty index, e.g. by {@link org.exist.storage.DBBroker#repair()}.
+     * A worker which supports it may collect its entries, sort them and write them to
+     * the index at once in {@link #endBulkLoad()}. Until then, the entries are not
+     * visible to queries and the caller must make sure that nobody else writes to the index.
+     *
+     * @return true if the worker loads its entries in bulk until {@link #endBulkLoad()}
+     */
+    default boolean beginBulkLoad() {
+        return false;
+    }
+
+    /**
+     * Write the entries collected since {@link #beginBulkLoad()} to the index.
+     */
+    default void endBulkLoad() {
+    }
+
     /**
      * Remove all indexes for the given collection, its subcollections and
      * all resources..
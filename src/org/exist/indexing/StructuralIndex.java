@@ -46,6 +46,14 @@ public interface StructuralIndex {
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent);
 
+    /**
+     * Like {@link #findElementsByTagName(byte, DocumentSet, QName, NodeSelector, Expression)}, but
+     * may stop once the first limit matching nodes in document order have been found.
+     *
+     * @param limit the number of nodes needed, or -1 to find all nodes
+     */
+    public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent, int limit);
+
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
         DocumentSet docs, NodeSet contextSet,  int contextId);
 
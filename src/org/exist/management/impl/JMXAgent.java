@@ -109,6 +109,17 @@ public class JMXAgent implements Agent {
 
             addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=ProcessReport",
                     new ProcessReport(instance));
+
+            if (instance.getJournalManager().isPresent()) {
+                addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=JournalStatistics",
+                        new JournalStatistics(instance.getJournalManager().get()));
+            }
+
+            addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=XQueryPoolStatistics",
+                    new XQueryPoolStatistics(instance.getXQueryPool()));
+
+            addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=XQueryResultCacheStatistics",
+                    new XQueryResultCacheStatistics(instance.getXQueryResultCache()));
                         
         } catch (final DatabaseConfigurationException e) {
             LOG.warn("Exception while registering database mbean.", e);
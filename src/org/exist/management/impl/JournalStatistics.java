@@ -0,0 +1,63 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.journal.JournalManager;
+
+public class JournalStatistics implements JournalStatisticsMXBean {
+
+    private final JournalManager journalManager;
+
+    public JournalStatistics(final JournalManager journalManager) {
+        this.journalManager = journalManager;
+    }
+
+    @Override
+    public boolean isGroupCommit() {
+        return journalManager.isGroupCommits();
+    }
+
+    @Override
+    public long getGroupCommits() {
+        return journalManager.getGroupCommits();
+    }
+
+    @Override
+    public long getGroupFlushes() {
+        return journalManager.getGroupFlushes();
+    }
+
+    @Override
+    public double getAverageGroupCommitBatch() {
+        final long flushes = journalManager.getGroupFlushes();
+        return flushes == 0 ? 0 : journalManager.getGroupCommits() / (double) flushes;
+    }
+
+    @Override
+    public int getMaxGroupCommitBatch() {
+        return journalManager.getMaxGroupCommitBatch();
+    }
+
+    @Override
+    public double getAverageCommitLatencyMillis() {
+        final long commits = journalManager.getGroupCommits();
+        return commits == 0 ? 0 : journalManager.getGroupCommitNanos() / (double) commits / 1000000.0;
+    }
+}
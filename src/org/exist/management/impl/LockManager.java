@@ -23,6 +23,7 @@ package org.exist.management.impl;
 
 import org.exist.storage.lock.DeadlockDetection;
 import org.exist.storage.lock.LockInfo;
+import org.exist.storage.lock.PageLatches;
 
 import javax.management.openmbean.*;
 import java.util.ArrayList;
@@ -43,4 +44,13 @@ public class LockManager implements LockManagerMXBean {
         }
         return lockList;
     }
+
+    @Override
+    public List<PageLatchStatistics> getPageLatches() {
+        final List<PageLatchStatistics> statistics = new ArrayList<>();
+        for (final PageLatches latches : PageLatches.getOpenLatches()) {
+            statistics.add(new PageLatchStatistics(latches));
+        }
+        return statistics;
+    }
 }
\ No newline at end of file
@@ -29,4 +29,10 @@ import java.util.List;
 public interface LockManagerMXBean {
 
     public List<Lock> getWaitingThreads();
+
+    /**
+     * Contention on the page latches of the open database files,
+     * empty unless page latches are enabled in conf.xml.
+     */
+    public List<PageLatchStatistics> getPageLatches();
 }
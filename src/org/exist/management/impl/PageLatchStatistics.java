@@ -0,0 +1,59 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.lock.PageLatches;
+
+/**
+ * Contention on the page latches of a database file.
+ */
+public class PageLatchStatistics {
+
+    private final String file;
+    private final long acquisitions;
+    private final long contended;
+    private final long waitTime;
+
+    public PageLatchStatistics(final PageLatches latches) {
+        this.file = latches.getId();
+        this.acquisitions = latches.getAcquisitions();
+        this.contended = latches.getContended();
+        this.waitTime = latches.getWaitTime();
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    public long getContended() {
+        return contended;
+    }
+
+    /**
+     * @return the total time spent waiting for latches in milliseconds
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+}
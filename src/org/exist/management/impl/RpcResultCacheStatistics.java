@@ -0,0 +1,66 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.xmlrpc.QueryResultCache;
+
+public class RpcResultCacheStatistics implements RpcResultCacheStatisticsMXBean {
+
+    private final QueryResultCache resultCache;
+
+    public RpcResultCacheStatistics(final QueryResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    @Override
+    public int getSize() {
+        return resultCache.getSize();
+    }
+
+    @Override
+    public long getMemory() {
+        return resultCache.getMemory();
+    }
+
+    @Override
+    public long getMaxMemory() {
+        return resultCache.getMaxMemory();
+    }
+
+    @Override
+    public int getMaxResultsPerUser() {
+        return resultCache.getMaxResultsPerUser();
+    }
+
+    @Override
+    public long getEvictions() {
+        return resultCache.getEvictions();
+    }
+
+    @Override
+    public long getQuotaEvictions() {
+        return resultCache.getQuotaEvictions();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return resultCache.getTimeouts();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.XQueryPool;
+
+public class XQueryPoolStatistics implements XQueryPoolStatisticsMXBean {
+
+    private final XQueryPool xqueryPool;
+
+    public XQueryPoolStatistics(final XQueryPool xqueryPool) {
+        this.xqueryPool = xqueryPool;
+    }
+
+    @Override
+    public int getSize() {
+        return xqueryPool.getSize();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return xqueryPool.getMaxSize();
+    }
+
+    @Override
+    public long getHits() {
+        return xqueryPool.getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return xqueryPool.getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long hits = xqueryPool.getHits();
+        final long total = hits + xqueryPool.getMisses();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return xqueryPool.getEvictions();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return xqueryPool.getInvalidations();
+    }
+
+    @Override
+    public long getCompilationTimeSaved() {
+        return xqueryPool.getCompilationTimeSaved();
+    }
+}
@@ -289,7 +289,9 @@ public class DLN extends DLNBase implements NodeId {
                 return IS_SELF;
             }
             if (bitIndex > other.bitIndex && isLevelSeparator(other.bitIndex + 1)) {
-                if (getLevelCount(other.bitIndex + 2) == 1) {
+                // the level counts are cached, so this is cheaper than
+                // counting the levels following the ancestor's id
+                if (getLevelCount(0) == other.getLevelCount(0) + 1) {
                     return IS_CHILD;
                 }
                 return IS_DESCENDANT;
@@ -326,10 +328,19 @@ public class DLN extends DLNBase implements NodeId {
         final DLN other = (DLN) otherId;
         final int a1len = bits.length;
         final int a2len = other.bits.length;
+
+        // most ids fit into the first 8 bytes, which are compared as one word
+        final int cmp = Long.compareUnsigned(prefix, other.prefix);
+        if(cmp != 0) {
+            return cmp;
+        }
+        if(a1len <= 8 || a2len <= 8) {
+            return a1len - a2len;
+        }
+
         final int limit = a1len <= a2len ? a1len : a2len;
         final byte[] obits = other.bits;
-        
-        for(int i = 0; i < limit; i++) {
+        for(int i = 8; i < limit; i++) {
             final byte b1 = bits[i];
             final byte b2 = obits[i];
             if(b1 != b2) {
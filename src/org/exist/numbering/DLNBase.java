@@ -97,6 +97,13 @@ public class DLNBase {
     // for appending new bits
     protected int bitIndex = -1;
 
+    // the first 8 bytes of the byte[], packed into a long in
+    // big-endian order, so ids can be compared a word at a time
+    protected long prefix = 0;
+
+    // the number of levels in this id, or -1 if not yet computed
+    private int levelCount = -1;
+
     public DLNBase() {
         bits = new byte[1];
     }
@@ -105,6 +112,8 @@ public class DLNBase {
         this.bits = new byte[dln.bits.length];
         System.arraycopy(dln.bits, 0, this.bits, 0, dln.bits.length);
         this.bitIndex = dln.bitIndex;
+        this.prefix = dln.prefix;
+        this.levelCount = dln.levelCount;
     }
 
     public DLNBase(final int units, final byte[] data, final int startOffset) {
@@ -118,6 +127,7 @@ public class DLNBase {
         bits = new byte[blen];
         System.arraycopy(data, startOffset, bits, 0, blen);
         bitIndex = units - 1;
+        updatePrefix();
     }
 
     protected DLNBase(final byte[] data, final int nbits) {
@@ -137,6 +147,7 @@ public class DLNBase {
             bits[len] = b;
         }
         bitIndex = nbits - 1;
+        updatePrefix();
     }
 
     public DLNBase(final short bitCnt, final VariableByteInput is) throws IOException {
@@ -147,6 +158,7 @@ public class DLNBase {
         bits = new byte[blen];
         is.read(bits);
         bitIndex = bitCnt - 1;
+        updatePrefix();
     }
 
     public DLNBase(final byte prefixLen, final DLNBase previous, final short bitCnt, final VariableByteInput is) throws IOException {
@@ -161,6 +173,7 @@ public class DLNBase {
         System.arraycopy(previous.bits, 0, bits, 0, prefixLen);
         is.read(bits, prefixLen, blen - prefixLen);
         bitIndex = bitCnt - 1;
+        updatePrefix();
     }
 
     /**
@@ -218,6 +231,7 @@ public class DLNBase {
             final byte[] nbits = new byte[blen];
             System.arraycopy(bits, 0, nbits, 0, blen);
             bits = nbits;
+            updatePrefix();
         }
     }
 
@@ -308,6 +322,9 @@ public class DLNBase {
      * @return the number of levels in this id
      */
     public int getLevelCount(final int startOffset) {
+        if (startOffset == 0 && levelCount > -1) {
+            return levelCount;
+        }
         int bit = startOffset;
         int count = 0;
         while (bit > -1 && bit <= bitIndex) {
@@ -322,6 +339,9 @@ public class DLNBase {
                 ++count;
             }
         }
+        if (startOffset == 0) {
+            levelCount = count;
+        }
         return count;
     }
 
@@ -425,6 +445,28 @@ public class DLNBase {
         else {
             bits[bitIndex >> UNIT_SHIFT] &= ~(1 << ((7 - bitIndex) & 7));
         }
+        if (bitIndex < 64) {
+            if (value) {
+                prefix |= 1L << (63 - bitIndex);
+            } else {
+                prefix &= ~(1L << (63 - bitIndex));
+            }
+        }
+        levelCount = -1;
+    }
+
+    /**
+     * Pack the first 8 bytes of the bit set into {@link #prefix}.
+     * Must be called whenever the byte[] is replaced.
+     */
+    protected void updatePrefix() {
+        long p = 0;
+        final int len = Math.min(bits.length, 8);
+        for (int i = 0; i < len; i++) {
+            p |= (bits[i] & 0xFFL) << (56 - (i << 3));
+        }
+        prefix = p;
+        levelCount = -1;
     }
 
     /**
@@ -466,6 +508,7 @@ public class DLNBase {
         final byte[] nbits = new byte[blen];
         System.arraycopy(bits, 0, nbits, 0, blen);
         this.bits = nbits;
+        updatePrefix();
     }
 
     public void serialize(final byte[] data, final int offset) {
@@ -528,9 +571,17 @@ public class DLNBase {
         if (other.bitIndex > bitIndex) {
             return false;
         }
+        if (other.bitIndex < 64) {
+            // compare the leading other.bitIndex + 1 bits in one go
+            final long mask = -1L << (63 - other.bitIndex);
+            return ((prefix ^ other.prefix) & mask) == 0;
+        }
+        if (prefix != other.prefix) {
+            return false;
+        }
         final int bytes = other.bitIndex / 8;
         final int remaining = other.bitIndex % 8;
-        for (int i = 0; i < bytes; i++) {
+        for (int i = 8; i < bytes; i++) {
             if (bits[i] != other.bits[i]) {
                 return false;
             }
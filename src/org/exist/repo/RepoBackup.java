@@ -1,9 +1,9 @@
 package org.exist.repo;
 
+import org.exist.dom.persistent.BinaryDocument;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.DBBroker;
-import org.exist.storage.NativeBroker;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.util.FileUtils;
 import org.exist.xmldb.XmldbURI;
@@ -43,7 +43,7 @@ public class RepoBackup {
             if (doc.getResourceType() != DocumentImpl.BINARY_FILE)
                 {throw new IOException(docPath + " is not a binary resource");}
 
-            final Path file = ((NativeBroker)broker).getCollectionBinaryFileFsPath(doc.getURI());
+            final Path file = broker.getBinaryFile((BinaryDocument) doc);
             final Path directory = ExistRepository.getRepositoryDir(broker.getConfiguration());
             unzip(file, directory);
         } finally {
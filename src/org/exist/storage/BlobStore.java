@@ -0,0 +1,392 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.Value;
+import org.exist.storage.index.CollectionStore;
+import org.exist.storage.journal.JournalManager;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnListener;
+import org.exist.util.ByteConversion;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the content of binary documents addressed by its SHA-256 digest,
+ * so that documents with the same content share one file.
+ *
+ * The files are stored in the directory <code>blobs</code> of the data directory,
+ * named by the hex encoded digest. The number of documents referring to each file
+ * is kept in collections.dbx, under a {@link CollectionStore.BlobKey}.
+ *
+ * A new file is visible to other transactions at once, and the reference counts
+ * are shared between transactions, so undoing one transaction during recovery
+ * can not restore them. The files are thus not journaled: a file whose last
+ * reference is released is only removed after the releasing transaction has
+ * committed and the journal has been synced, by {@link #deleteReleased()}. After a
+ * recovery, {@link #repair(Txn, Map)} recounts the references from the recovered
+ * documents and removes the files no document refers to.
+ *
+ * There is one blob store per database instance, shared by all brokers.
+ *
+ * A document refers to a blob by {@link org.exist.dom.persistent.BinaryDocument#getBlobId()}.
+ * Documents stored before the blob store was enabled keep their own files in the
+ * fs directory.
+ */
+class BlobStore {
+
+    private final static Logger LOG = LogManager.getLogger(BlobStore.class);
+
+    final static String DIR_NAME = "blobs";
+    final static String DIGEST_ALGORITHM = "SHA-256";
+
+    final static String TEMP_DIR_NAME = "tmp";
+
+    private final static String CONFIG_KEY = "db-connection.blob-store.instance";
+
+    /** the value of a blob key: the number of references and the size of the content */
+    private final static int LENGTH_REFERENCES = 4;
+    private final static int LENGTH_SIZE = 8;
+
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final CollectionStore collectionsDb;
+    private final Path blobDir;
+    private final Optional<JournalManager> logManager;
+
+    /** the blobs whose last reference was released by a committed transaction */
+    private final Set<String> released = new HashSet<>();
+
+    BlobStore(final CollectionStore collectionsDb, final Path dataDir, final Optional<JournalManager> logManager) {
+        this.collectionsDb = collectionsDb;
+        this.blobDir = dataDir.resolve(DIR_NAME);
+        this.logManager = logManager;
+    }
+
+    static String getConfigKey() {
+        return CONFIG_KEY;
+    }
+
+    /**
+     * @return the directory of the blob files, which may not exist yet
+     */
+    Path getDirectory() {
+        return blobDir;
+    }
+
+    /**
+     * Returns the file of a blob. The file must not be modified, as it
+     * may be shared by several documents.
+     *
+     * @param blobId the digest of the content
+     * @return the file of the blob
+     */
+    Path getPath(final byte[] blobId) {
+        final String name = toHex(blobId);
+        return blobDir.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    /**
+     * Store content and add a reference to it. If content with the
+     * same digest is stored already, only the reference is added.
+     *
+     * @param transaction the transaction
+     * @param is the content
+     * @return the id of the blob, i.e. the digest of the content
+     * @throws IOException if the content can not be read or stored
+     */
+    byte[] store(final Txn transaction, final InputStream is) throws IOException {
+        final Path tempDir = Files.createDirectories(blobDir.resolve(TEMP_DIR_NAME));
+        final Path tempFile = tempDir.resolve(UUID.randomUUID().toString());
+        final MessageDigest digest = newDigest();
+        try {
+            try (final DigestInputStream dis = new DigestInputStream(is, digest)) {
+                Files.copy(dis, tempFile);
+            }
+            final byte[] blobId = digest.digest();
+            final long size = Files.size(tempFile);
+
+            final Lock lock = collectionsDb.getLock();
+            try {
+                lock.acquire(LockMode.WRITE_LOCK);
+                final Value key = new CollectionStore.BlobKey(blobId);
+                final Value value = collectionsDb.get(key);
+                if (value != null) {
+                    // identical content is stored already
+                    putReferences(transaction, key, getReferences(value) + 1, size);
+                } else {
+                    final Path blobFile = getPath(blobId);
+                    Files.createDirectories(blobFile.getParent());
+                    // a file without a reference was released, or is left over from a crash
+                    Files.move(tempFile, blobFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    putReferences(transaction, key, 1, size);
+                }
+            } catch (final LockException e) {
+                throw new IOException("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+            } finally {
+                lock.release(LockMode.WRITE_LOCK);
+            }
+            return blobId;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Add a reference to a blob, e.g. for a copy of a document.
+     *
+     * @param transaction the transaction
+     * @param blobId the id of the blob
+     * @throws IOException if the blob does not exist
+     */
+    void addReference(final Txn transaction, final byte[] blobId) throws IOException {
+        final Lock lock = collectionsDb.getLock();
+        try {
+            lock.acquire(LockMode.WRITE_LOCK);
+            final Value key = new CollectionStore.BlobKey(blobId);
+            final Value value = collectionsDb.get(key);
+            if (value == null) {
+                throw new IOException("No blob " + toHex(blobId));
+            }
+            putReferences(transaction, key, getReferences(value) + 1, getSize(value));
+        } catch (final LockException e) {
+            throw new IOException("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+        } finally {
+            lock.release(LockMode.WRITE_LOCK);
+        }
+    }
+
+    /**
+     * Release a reference to a blob. The file of the blob is removed by
+     * {@link #deleteReleased()} once the transaction releasing the last
+     * reference has committed.
+     *
+     * @param transaction the transaction
+     * @param blobId the id of the blob
+     * @throws IOException if the lock on collections.dbx can not be acquired
+     */
+    void release(final Txn transaction, final byte[] blobId) throws IOException {
+        final Lock lock = collectionsDb.getLock();
+        try {
+            lock.acquire(LockMode.WRITE_LOCK);
+            final Value key = new CollectionStore.BlobKey(blobId);
+            final Value value = collectionsDb.get(key);
+            if (value == null) {
+                LOG.warn("Releasing a reference to blob " + toHex(blobId) + ", which does not exist");
+                return;
+            }
+            final int references = getReferences(value) - 1;
+            if (references > 0) {
+                putReferences(transaction, key, references, getSize(value));
+                return;
+            }
+
+            collectionsDb.remove(transaction, key);
+            // if the transaction does not commit, a recovery will restore its documents
+            transaction.registerListener(new TxnListener() {
+                @Override
+                public void commit() {
+                    synchronized (released) {
+                        released.add(toHex(blobId));
+                    }
+                }
+
+                @Override
+                public void abort() {
+                }
+            });
+        } catch (final LockException e) {
+            throw new IOException("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+        } finally {
+            lock.release(LockMode.WRITE_LOCK);
+        }
+    }
+
+    /**
+     * @param blobId the id of the blob
+     * @return the number of documents referring to the blob, 0 if it does not exist
+     */
+    int getReferenceCount(final byte[] blobId) {
+        final Lock lock = collectionsDb.getLock();
+        try {
+            lock.acquire(LockMode.READ_LOCK);
+            final Value value = collectionsDb.get(new CollectionStore.BlobKey(blobId));
+            return value == null ? 0 : getReferences(value);
+        } catch (final LockException e) {
+            LOG.warn("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+            return 0;
+        } finally {
+            lock.release(LockMode.READ_LOCK);
+        }
+    }
+
+    /**
+     * Remove the files of the blobs released by committed transactions, unless
+     * they were stored again since. The journal is synced first, so that the
+     * commits can not be rolled back by a recovery.
+     *
+     * @throws IOException if a file can not be removed
+     */
+    void deleteReleased() throws IOException {
+        final List<String> blobs;
+        synchronized (released) {
+            if (released.isEmpty()) {
+                return;
+            }
+            blobs = new ArrayList<>(released);
+            released.clear();
+        }
+        // the commit records were written before the blobs were added to released
+        if (logManager.isPresent()) {
+            logManager.get().flush(true, true);
+        }
+
+        final Lock lock = collectionsDb.getLock();
+        try {
+            lock.acquire(LockMode.WRITE_LOCK);
+            for (final String blob : blobs) {
+                final byte[] blobId = fromHex(blob);
+                if (collectionsDb.get(new CollectionStore.BlobKey(blobId)) == null) {
+                    Files.deleteIfExists(getPath(blobId));
+                }
+            }
+        } catch (final LockException e) {
+            throw new IOException("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+        } finally {
+            lock.release(LockMode.WRITE_LOCK);
+        }
+    }
+
+    /**
+     * Recount the references to all blobs after a recovery, and remove the files
+     * which no document refers to. Recovery undoes the changes of uncommitted
+     * transactions to the shared reference counts, including those which other,
+     * committed, transactions had made since, so the counts can not be trusted.
+     * Must not run concurrently with other transactions.
+     *
+     * @param transaction the transaction
+     * @param references the number of documents referring to each blob, by the hex encoded id of the blob
+     * @throws IOException if the reference counts can not be written or a file not be removed
+     */
+    void repair(final Txn transaction, final Map<String, Integer> references) throws IOException {
+        final Map<String, Integer> missing = new HashMap<>(references);
+        final Lock lock = collectionsDb.getLock();
+        try {
+            lock.acquire(LockMode.WRITE_LOCK);
+            collectionsDb.removeAll(transaction, new IndexQuery(IndexQuery.TRUNC_RIGHT, new CollectionStore.BlobKey(new byte[0])));
+
+            if (Files.isDirectory(blobDir)) {
+                final List<Path> files;
+                try (final Stream<Path> paths = Files.walk(blobDir)) {
+                    files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+                }
+                for (final Path file : files) {
+                    final String name = FileUtils.fileName(file);
+                    final Integer count = TEMP_DIR_NAME.equals(FileUtils.fileName(file.getParent())) ?
+                            null : missing.remove(name);
+                    if (count == null) {
+                        Files.delete(file);
+                    } else {
+                        putReferences(transaction, new CollectionStore.BlobKey(fromHex(name)), count, Files.size(file));
+                    }
+                }
+            }
+            synchronized (released) {
+                released.clear();
+            }
+        } catch (final LockException e) {
+            throw new IOException("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+        } catch (final BTreeException e) {
+            throw new IOException("Failed to remove the blob reference counts: " + e.getMessage(), e);
+        } finally {
+            lock.release(LockMode.WRITE_LOCK);
+        }
+
+        for (final Map.Entry<String, Integer> blob : missing.entrySet()) {
+            LOG.error("The content of blob " + blob.getKey() + " is missing, it is referred to by " +
+                    blob.getValue() + " documents");
+        }
+    }
+
+    private void putReferences(final Txn transaction, final Value key, final int references, final long size) {
+        final byte[] data = new byte[LENGTH_REFERENCES + LENGTH_SIZE];
+        ByteConversion.intToByte(references, data, 0);
+        ByteConversion.longToByte(size, data, LENGTH_REFERENCES);
+        collectionsDb.put(transaction, key, data, true);
+    }
+
+    private static int getReferences(final Value value) {
+        return ByteConversion.byteToInt(value.data(), value.start());
+    }
+
+    private static long getSize(final Value value) {
+        return ByteConversion.byteToLong(value.data(), value.start() + LENGTH_REFERENCES);
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    static String toHex(final byte[] blobId) {
+        final char[] chars = new char[blobId.length * 2];
+        for (int i = 0; i < blobId.length; i++) {
+            chars[i * 2] = HEX[(blobId[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[blobId[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static byte[] fromHex(final String hex) {
+        final byte[] blobId = new byte[hex.length() / 2];
+        for (int i = 0; i < blobId.length; i++) {
+            blobId[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return blobId;
+    }
+}
@@ -308,6 +308,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private XQueryPool xQueryPool;
 
+    /**
+     * The cache in which the results of XQueries are stored across requests.
+     */
+    private XQueryResultCache xQueryResultCache;
+
     /**
      * The monitor in which the database instance's strong>running</strong> XQueries are managed.
      */
@@ -449,6 +454,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         this.cacheManager = servicesManager.register(new DefaultCacheManager(this));
         this.xQueryPool = servicesManager.register(new XQueryPool());
+        this.xQueryResultCache = servicesManager.register(new XQueryResultCache());
         this.processMonitor = servicesManager.register(new ProcessMonitor());
         this.xqueryStats = servicesManager.register(new PerformanceStats(this));
         final XMLReaderObjectFactory xmlReaderObjectFactory = servicesManager.register(new XMLReaderObjectFactory());
@@ -992,6 +998,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xQueryPool;
     }
 
+    /**
+     * Returns the cache in which the results of XQueries are stored across requests.
+     *
+     * @return The cache
+     */
+    public XQueryResultCache getXQueryResultCache() {
+        return xQueryResultCache;
+    }
+
     /**
      * Retuns the XQuery Service
      *
@@ -1216,6 +1231,34 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         }
     }
 
+    /**
+     * Returns an active broker for the database instance, like {@link #get(Optional)},
+     * but does not wait if no broker is available.
+     *
+     * @param subject Optionally a subject to set on the broker, if a user is not provided then the
+     *                current user assigned to the broker will be re-used
+     * @return The broker, or empty if all brokers are in use or the instance is in service mode
+     * @throws EXistException If the instance is not available (stopped or not configured)
+     */
+    public Optional<DBBroker> tryGet(final Optional<Subject> subject) throws EXistException {
+        Objects.requireNonNull(subject, "Subject cannot be null, use BrokerPool#getBroker() instead");
+
+        if(activeBrokers.containsKey(Thread.currentThread())) {
+            return Optional.of(get(subject));
+        }
+
+        // holding the monitor, get() will neither wait for service mode to end nor for a free broker
+        synchronized(this) {
+            if(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.of(serviceModeUser))) {
+                return Optional.empty();
+            }
+            if(inactiveBrokers.isEmpty() && brokersCount >= maxBrokers) {
+                return Optional.empty();
+            }
+            return Optional.of(get(subject));
+        }
+    }
+
     /**
      * Releases a broker for the database instance. If it is no more used, make if invactive.
      * If there are pending system maintenance tasks,
@@ -55,6 +55,7 @@ import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -205,6 +206,38 @@ public abstract class DBBroker extends Observable implements AutoCloseable {
         // do nothing
     }
 
+    /**
+     * Flush the index data of the document which has just been stored.
+     * Within a batch, see {@link #beginIndexBatch()}, the indexes which
+     * support it keep their data until the end of the batch.
+     */
+    public void flushDocument() {
+        flush();
+    }
+
+    /**
+     * Start storing a batch of documents: until the matching call to
+     * {@link #endIndexBatch()}, indexes which support it, see
+     * {@link org.exist.indexing.IndexWorker#isDeferredFlushSupported()},
+     * buffer the entries of all documents and write them sorted, at once,
+     * at the end of the batch or when the index buffers are full. Index
+     * entries of the batch's documents may thus not be visible to queries
+     * before the batch ends, and the caller must keep the documents locked
+     * until then. At the moment only the structural index supports this.
+     * Batches may be nested.
+     */
+    public void beginIndexBatch() {
+        // do nothing
+    }
+
+    /**
+     * End a batch started with {@link #beginIndexBatch()}. Ending the
+     * outermost batch flushes all indexes.
+     */
+    public void endIndexBatch() {
+        // do nothing
+    }
+
     /** Observer Design Pattern: List of ContentLoadingObserver objects */
     protected List<ContentLoadingObserver> contentLoadingObservers = new ArrayList<ContentLoadingObserver>();	
 
@@ -589,7 +622,9 @@ public abstract class DBBroker extends Observable implements AutoCloseable {
      * @param blob
      *            the binary document descriptor
      * @param is
-     *            the document binary data as input stream
+     *            the document binary data as input stream, or null to add a
+     *            reference to the content in the blob store given by
+     *            {@link BinaryDocument#getBlobId()}, e.g. for a copy
      */
     public abstract void storeBinaryResource(Txn transaction,
         BinaryDocument blob, InputStream is) throws IOException;
@@ -599,6 +634,36 @@ public abstract class DBBroker extends Observable implements AutoCloseable {
     public abstract void readBinaryResource(final BinaryDocument blob,
         final OutputStream os) throws IOException;
 
+    /**
+     * Writes a range of the data of a binary resource to a stream. The data
+     * is not copied through buffers on the heap where the stream allows it,
+     * see {@link org.exist.util.io.ChannelTransfer}.
+     *
+     * @param blob the binary document
+     * @param offset the offset of the first byte to write
+     * @param length the number of bytes to write
+     * @param os the stream to write to
+     */
+    public abstract void readBinaryResource(final BinaryDocument blob,
+        final long offset, final long length, final OutputStream os) throws IOException;
+
+    /**
+     * Opens a read-only channel on the data of a binary resource, which
+     * the caller has to close.
+     *
+     * @param blob the binary document
+     * @return the channel
+     */
+    public abstract FileChannel getBinaryResourceChannel(final BinaryDocument blob)
+           throws IOException;
+
+    /**
+     * Returns the file holding the data of a binary resource. The file
+     * must not be modified, as it may be shared with other resources.
+     *
+     * @param blob the binary document
+     * @return the file
+     */
     public abstract Path getBinaryFile(final BinaryDocument blob) throws IOException;
 
 	public abstract InputStream getBinaryResource(final BinaryDocument blob)
@@ -26,7 +26,14 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.cache.BTreeCache;
+import org.exist.storage.cache.BTreeCacheable;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.Cacheable;
+import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.StripedBTreeCache;
+import org.exist.storage.cache.StripedCache;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
@@ -76,6 +83,13 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    /** Page caches which must be guarded by the lock of the file they belong to. */
+    public static final String  CACHE_TYPE_DEFAULT              			= "default";
+    /** Thread-safe page caches, see {@link StripedCache}. */
+    public static final String  CACHE_TYPE_STRIPED              			= "striped";
+    public static final String  CACHE_TYPE_ATTRIBUTE           			= "cacheType";
+    public static final String  PROPERTY_CACHE_TYPE             			= "db-connection.cache-type";
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<Cache>();
 
@@ -107,6 +121,9 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    /** The type of the page caches created by this cache manager, either {@link #CACHE_TYPE_DEFAULT} or {@link #CACHE_TYPE_STRIPED}. */
+    private final String        cacheType;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -125,6 +142,15 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         shrinkThreshold = configuration.getInteger( SHRINK_THRESHOLD_PROPERTY );
 
+        final String configuredCacheType = (String)configuration.getProperty( PROPERTY_CACHE_TYPE );
+        if( configuration.getProperty( Paged.PROPERTY_PAGE_LATCHES, false ) && !CACHE_TYPE_STRIPED.equals( configuredCacheType ) ) {
+            // readers sharing a file lock access the page caches concurrently
+            LOG.info( "Page latches are enabled, using cacheType \"" + CACHE_TYPE_STRIPED + "\"" );
+            cacheType = CACHE_TYPE_STRIPED;
+        } else {
+            cacheType = configuredCacheType == null ? CACHE_TYPE_DEFAULT : configuredCacheType;
+        }
+
         totalMem        = cacheSize * 1024L * 1024L;
         
         final Boolean checkMaxCache = (Boolean)configuration.getProperty( PROPERTY_CACHE_CHECK_MAX_SIZE );
@@ -153,7 +179,8 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         
         LOG.info( "Cache settings: " + nf.format( totalMem / 1024L ) + "k; totalPages: " + nf.format( totalPageCount ) + 
         	      "; maxCacheSize: " + nf.format( maxCacheSize ) + 
-        	      "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) 
+        	      "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) +
+        	      "; cacheType: " + cacheType
         );
         
         registerMBean();
@@ -350,6 +377,59 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     }
 
 
+    /**
+     * Returns the type of the page caches created by this cache manager.
+     *
+     * @return either {@link #CACHE_TYPE_DEFAULT} or {@link #CACHE_TYPE_STRIPED}
+     */
+    public String getCacheType()
+    {
+        return( cacheType );
+    }
+
+
+    /**
+     * Creates a new cache for btree pages, using the cache type configured in conf.xml.
+     * The cache is not registered with this cache manager.
+     *
+     * @param  name            The name of the cache
+     * @param  cacheableClazz  The class of the pages held by the cache
+     * @param  size            The initial number of buffers
+     * @param  growthFactor    The factor by which the cache should grow
+     * @param  growthThreshold The amount of thrashing allowed before the cache requests to grow
+     *
+     * @return  The new cache
+     */
+    public <T extends BTreeCacheable> Cache<T> newBTreeCache( String name, Class<T> cacheableClazz, int size, double growthFactor, double growthThreshold )
+    {
+        if( CACHE_TYPE_STRIPED.equals( cacheType ) ) {
+            return( new StripedBTreeCache<>( name, cacheableClazz, size, growthFactor, growthThreshold, BTREE_CACHE ) );
+        }
+        return( new BTreeCache<>( name, size, growthFactor, growthThreshold, BTREE_CACHE ) );
+    }
+
+
+    /**
+     * Creates a new cache for data pages, using the cache type configured in conf.xml.
+     * The cache is not registered with this cache manager.
+     *
+     * @param  name            The name of the cache
+     * @param  cacheableClazz  The class of the pages held by the cache
+     * @param  size            The initial number of buffers
+     * @param  growthFactor    The factor by which the cache should grow
+     * @param  growthThreshold The amount of thrashing allowed before the cache requests to grow
+     *
+     * @return  The new cache
+     */
+    public <T extends Cacheable> Cache<T> newDataCache( String name, Class<T> cacheableClazz, int size, double growthFactor, double growthThreshold )
+    {
+        if( CACHE_TYPE_STRIPED.equals( cacheType ) ) {
+            return( new StripedCache<>( name, cacheableClazz, size, growthFactor, growthThreshold, DATA_CACHE ) );
+        }
+        return( new LRUCache<>( name, size, growthFactor, growthThreshold, DATA_CACHE ) );
+    }
+
+
     private void registerMBean()
     {
         final Agent agent = AgentFactory.getInstance();
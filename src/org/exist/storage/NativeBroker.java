@@ -66,9 +66,11 @@ import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.serializers.NativeSerializer;
 import org.exist.storage.serializers.Serializer;
 import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionException;
 import org.exist.storage.txn.TransactionManager;
 import org.exist.storage.txn.Txn;
 import org.exist.util.*;
+import org.exist.util.io.ChannelTransfer;
 import com.evolvedbinary.j8fu.function.ConsumerE;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.TerminatedException;
@@ -80,10 +82,12 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.function.Function;
@@ -141,6 +145,10 @@ public class NativeBroker extends DBBroker {
     public static final String INDEX_DEPTH_ATTRIBUTE = "index-depth";
 
     public static final String PROPERTY_INDEX_DEPTH = "indexer.index-depth";
+    public static final String REINDEX_THREADS_ATTRIBUTE = "reindex-threads";
+    public static final String PROPERTY_REINDEX_THREADS = "indexer.reindex-threads";
+    public static final String BLOB_STORE_ATTRIBUTE = "blobStore";
+    public static final String PROPERTY_BLOB_STORE = "db-connection.blob-store";
     private static final byte[] ALL_STORAGE_FILES = {
         COLLECTIONS_DBX_ID, VALUES_DBX_ID, DOM_DBX_ID
     };
@@ -150,6 +158,7 @@ public class NativeBroker extends DBBroker {
 
     public static final String DEFAULT_DATA_DIR = "data";
     public static final int DEFAULT_INDEX_DEPTH = 1;
+    public static final int DEFAULT_REINDEX_THREADS = 1;
 
     /** check available memory after storing DEFAULT_NODES_BEFORE_MEMORY_CHECK nodes */
     public static final int DEFAULT_NODES_BEFORE_MEMORY_CHECK = 500;
@@ -158,9 +167,6 @@ public class NativeBroker extends DBBroker {
 
     public final static String INIT_COLLECTION_CONFIG = "collection.xconf.init";
 
-    /** in-memory buffer size to use when copying binary resources */
-    private final static int BINARY_RESOURCE_BUF_SIZE = 65536;
-
     /** the database files */
     private final CollectionStore collectionsDb;
     private final DOMFile domDb;
@@ -172,6 +178,8 @@ public class NativeBroker extends DBBroker {
 
     private int defaultIndexDepth;
 
+    private int reindexThreads;
+
     private final Serializer xmlSerializer;
 
     /** used to count the nodes inserted after the last memory check */
@@ -179,9 +187,19 @@ public class NativeBroker extends DBBroker {
 
     private int nodesCountThreshold = DEFAULT_NODES_BEFORE_MEMORY_CHECK;
 
+    /** the number of nested index batches, see {@link #beginIndexBatch()} */
+    private int indexBatches = 0;
+
     private final Path dataDir;
     private final Path fsDir;
     private final Optional<Path> fsJournalDir;
+
+    /** the content of binary documents, shared by documents with the same content */
+    private final BlobStore blobStore;
+
+    /** if true, new binary documents are stored in the blob store */
+    private final boolean blobStoreEnabled;
+
     private int pageSize;
 
     private final byte prepend;
@@ -241,6 +259,13 @@ public class NativeBroker extends DBBroker {
             defaultIndexDepth = DEFAULT_INDEX_DEPTH;
         }
 
+        reindexThreads = config.getInteger(PROPERTY_REINDEX_THREADS);
+        if(reindexThreads < 1) {
+            reindexThreads = DEFAULT_REINDEX_THREADS;
+        }
+
+        this.blobStoreEnabled = config.getProperty(PROPERTY_BLOB_STORE, false);
+
         final String docIdProp = (String) config.getProperty(BrokerPool.DOC_ID_MODE_PROPERTY);
         if(docIdProp != null) {
             incrementalDocIds = docIdProp.equalsIgnoreCase("incremental");
@@ -290,6 +315,15 @@ public class NativeBroker extends DBBroker {
         } finally {
             popSubject();
         }
+
+        // documents stored in the blob store remain readable if it is disabled later
+        final BlobStore configuredBlobStore = (BlobStore) config.getProperty(BlobStore.getConfigKey());
+        if(configuredBlobStore != null) {
+            this.blobStore = configuredBlobStore;
+        } else {
+            this.blobStore = new BlobStore(collectionsDb, dataDir, logManager);
+            config.setProperty(BlobStore.getConfigKey(), blobStore);
+        }
     }
 
     /**
@@ -301,6 +335,10 @@ public class NativeBroker extends DBBroker {
         return fsDir;
     }
 
+    BlobStore getBlobStore() {
+        return blobStore;
+    }
+
     @Override
     public ElementIndex getElementIndex() {
         return null;
@@ -521,6 +559,12 @@ public class NativeBroker extends DBBroker {
         }
         pool.getSymbols().backupToArchive(backup);
         backupBinary(backup, getFsDir(), "");
+        final Path blobDir = blobStore.getDirectory();
+        if(Files.isDirectory(blobDir)) {
+            for(final Path p : FileUtils.list(blobDir, p -> !BlobStore.TEMP_DIR_NAME.equals(FileUtils.fileName(p)))) {
+                backupBinary(backup, p, "/" + FileUtils.fileName(blobDir));
+            }
+        }
         pool.getIndexManager().backupToArchive(backup);
         //TODO backup counters
         //TODO USE zip64 or tar to create snapshots larger then 4Gb
@@ -1179,8 +1223,15 @@ public class NativeBroker extends DBBroker {
                 }
                 newDoc.setDocId(getNextResourceId(transaction, destination));
 
-                try(final InputStream is = getBinaryResource((BinaryDocument) child)) {
-                    storeBinaryResource(transaction, newDoc, is);
+                final byte[] blobId = ((BinaryDocument) child).getBlobId();
+                if(blobId != null) {
+                    // the copy shares the content in the blob store
+                    newDoc.setBlobId(blobId);
+                    storeBinaryResource(transaction, newDoc, (InputStream) null);
+                } else {
+                    try(final InputStream is = getBinaryResource((BinaryDocument) child)) {
+                        storeBinaryResource(transaction, newDoc, is);
+                    }
                 }
                 storeXMLResource(transaction, newDoc);
                 destCollection._2.addDocument(transaction, this, newDoc);
@@ -1345,6 +1396,16 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    /**
+     * Notify the {@link NotificationService} about all documents of a collection,
+     * e.g. because their URIs change when the collection is moved.
+     */
+    private void notifyDocuments(final Collection collection, final int event) throws PermissionDeniedException, LockException {
+        for(final Iterator<DocumentImpl> i = collection.iterator(this); i.hasNext(); ) {
+            pool.getNotificationService().notifyUpdate(i.next(), event);
+        }
+    }
+
     //TODO bug the trigger param is reused as this is a recursive method, but in the current design triggers
     // are only meant to be called once for each action and then destroyed!
     /**
@@ -1394,8 +1455,10 @@ public class NativeBroker extends DBBroker {
                 collectionsCache.remove(collection);
                 final Value key = new CollectionStore.CollectionKey(uri.toString());
                 collectionsDb.remove(transaction, key);
+                notifyDocuments(collection, UpdateListener.REMOVE);
                 //TODO : resolve URIs destination.getURI().resolve(newName)
                 collection.setPath(destination.getURI().append(newName));
+                notifyDocuments(collection, UpdateListener.ADD);
                 collection.setCreationTime(System.currentTimeMillis());
                 destination.addCollection(this, collection, false);
                 if(parent != null) {
@@ -1645,7 +1708,12 @@ public class NativeBroker extends DBBroker {
                             }
                         }.run();
 
+                        if(doc.getResourceType() == DocumentImpl.BINARY_FILE && ((BinaryDocument) doc).getBlobId() != null) {
+                            blobStore.release(transaction, ((BinaryDocument) doc).getBlobId());
+                        }
+
                         docTrigger.afterDeleteDocument(this, transaction, doc.getURI());
+                        pool.getNotificationService().notifyUpdate(doc, UpdateListener.REMOVE);
 
                         //Make doc's id available again
                         collectionsDb.freeResourceId(doc.getDocId());
@@ -1798,12 +1866,17 @@ public class NativeBroker extends DBBroker {
 
         final long start = System.currentTimeMillis();
 
-        try(final Txn transaction = transact.beginTransaction()) {
+        try {
             LOG.info(String.format("Start indexing collection %s", collection.getURI().toString()));
-            pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, collection.getURI());
-            reindexCollection(transaction, collection, mode);
-            transact.commit(transaction);
-
+            if(reindexThreads > 1) {
+                new ParallelReindex(pool, this, reindexThreads).reindex(collection, mode);
+            } else {
+                try(final Txn transaction = transact.beginTransaction()) {
+                    pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, collection.getURI());
+                    reindexCollection(transaction, collection, mode);
+                    transact.commit(transaction);
+                }
+            }
         } catch(final Exception e) {
             LOG.warn("An error occurred during reindex: " + e.getMessage(), e);
 
@@ -2126,6 +2199,11 @@ public class NativeBroker extends DBBroker {
     @Override
     public void storeBinaryResource(final Txn transaction, final BinaryDocument blob, final byte[] data)
             throws IOException {
+        if(blobStoreEnabled) {
+            storeBinaryResource(transaction, blob, new ByteArrayInputStream(data));
+            return;
+        }
+        blob.setBlobId(null);
         storeBinaryResource(transaction, blob, dest -> {
             try(final InputStream is = new ByteArrayInputStream(data)) {
                 Files.copy(is, dest);
@@ -2136,7 +2214,19 @@ public class NativeBroker extends DBBroker {
     @Override
     public void storeBinaryResource(final Txn transaction, final BinaryDocument blob, final InputStream is)
             throws IOException {
-        storeBinaryResource(transaction, blob, dest -> Files.copy(is, dest));
+        if(is == null) {
+            if(blob.getBlobId() == null) {
+                throw new IOException("No content for binary resource " + blob.getURI());
+            }
+            blob.setPage(Page.NO_PAGE);
+            blobStore.addReference(transaction, blob.getBlobId());
+        } else if(blobStoreEnabled) {
+            blob.setPage(Page.NO_PAGE);
+            blob.setBlobId(blobStore.store(transaction, is));
+        } else {
+            blob.setBlobId(null);
+            storeBinaryResource(transaction, blob, dest -> Files.copy(is, dest));
+        }
     }
 
     /**
@@ -2266,37 +2356,47 @@ public class NativeBroker extends DBBroker {
     @Override
     public void readBinaryResource(final BinaryDocument blob, final OutputStream os)
         throws IOException {
-        InputStream is = null;
-        try {
-            is = getBinaryResource(blob);
-            final byte[] buffer = new byte[BINARY_RESOURCE_BUF_SIZE];
-            int len;
-            while((len = is.read(buffer)) >= 0) {
-                os.write(buffer, 0, len);
-            }
-        } finally {
-            if(is != null) {
-                is.close();
+        try(final FileChannel channel = getBinaryResourceChannel(blob)) {
+            ChannelTransfer.transfer(channel, 0, channel.size(), os);
+        }
+    }
+
+    @Override
+    public void readBinaryResource(final BinaryDocument blob, final long offset, final long length,
+            final OutputStream os) throws IOException {
+        try(final FileChannel channel = getBinaryResourceChannel(blob)) {
+            if(offset < 0 || length < 0 || offset + length > channel.size()) {
+                throw new IOException("Range " + offset + "+" + length + " is outside of binary resource " +
+                    blob.getURI() + " of " + channel.size() + " bytes");
             }
+            ChannelTransfer.transfer(channel, offset, length, os);
         }
     }
 
+    @Override
+    public FileChannel getBinaryResourceChannel(final BinaryDocument blob) throws IOException {
+        return FileChannel.open(getBinaryFile(blob), StandardOpenOption.READ);
+    }
+
     @Override
     public long getBinaryResourceSize(final BinaryDocument blob)
         throws IOException {
-        final Path binFile = getCollectionFile(getFsDir(), blob.getURI(), false);
-        return Files.size(binFile);
+        return Files.size(getBinaryFile(blob));
     }
 
     @Override
     public Path getBinaryFile(final BinaryDocument blob) throws IOException {
+        final byte[] blobId = blob.getBlobId();
+        if(blobId != null) {
+            return blobStore.getPath(blobId);
+        }
         return getCollectionFile(getFsDir(), blob.getURI(), false);
     }
 
     @Override
     public InputStream getBinaryResource(final BinaryDocument blob)
         throws IOException {
-        return Files.newInputStream(getCollectionFile(getFsDir(), blob.getURI(), false));
+        return Files.newInputStream(getBinaryFile(blob));
     }
 
     //TODO : consider a better cooperation with Collection -pb
@@ -2499,7 +2599,13 @@ public class NativeBroker extends DBBroker {
                 trigger.beforeCopyDocument(this, transaction, doc, newURI);
 
                 DocumentImpl newDocument = null;
-                if(doc.getResourceType() == DocumentImpl.BINARY_FILE) {
+                if(doc.getResourceType() == DocumentImpl.BINARY_FILE && ((BinaryDocument) doc).getBlobId() != null) {
+                    // the copy shares the content in the blob store
+                    final BinaryDocument newDoc = new BinaryDocument(pool, destination, newName);
+                    newDoc.setBlobId(((BinaryDocument) doc).getBlobId());
+                    newDocument = destination.addBinaryResource(transaction, this, newDoc, null,
+                            doc.getMetadata().getMimeType(), doc.getContentLength(), null, null);
+                } else if(doc.getResourceType() == DocumentImpl.BINARY_FILE) {
                     InputStream is = null;
                     try {
                         is = getBinaryResource((BinaryDocument) doc);
@@ -2653,6 +2759,7 @@ public class NativeBroker extends DBBroker {
                 }
             }
 
+            pool.getNotificationService().notifyUpdate(doc, UpdateListener.REMOVE);
             collection.unlinkDocument(this, doc);
             if(!renameOnly) {
                 saveCollection(transaction, collection);
@@ -2669,8 +2776,8 @@ public class NativeBroker extends DBBroker {
                     // reindexing
                     reindexXMLResource(transaction, doc, IndexMode.REPAIR);
                 }
-            } else {
-                // binary resource
+            } else if(((BinaryDocument) doc).getBlobId() == null) {
+                // binary resource, the files in the blob store do not depend on the name of the document
                 final Path colDir = getCollectionFile(getFsDir(), destination.getURI(), true);
                 final Path binFile = colDir.resolve(newName.lastSegment().toString());
                 final Path sourceFile = getCollectionFile(getFsDir(), doc.getURI(), false);
@@ -2692,6 +2799,7 @@ public class NativeBroker extends DBBroker {
             }
             storeXMLResource(transaction, doc);
             saveCollection(transaction, destination);
+            pool.getNotificationService().notifyUpdate(doc, UpdateListener.ADD);
 
             trigger.afterMoveDocument(this, transaction, doc, oldURI);
 
@@ -2794,7 +2902,9 @@ public class NativeBroker extends DBBroker {
         }
 
         final Path binFile = getCollectionFile(getFsDir(), blob.getURI(), false);
-        if(Files.exists(binFile)) {
+        if(blob.getBlobId() != null) {
+            blobStore.release(transaction, blob.getBlobId());
+        } else if(Files.exists(binFile)) {
             if(fsJournalDir.isPresent()) {
 	            final Path binBackupFile = getCollectionFile(fsJournalDir.get(), transaction, blob.getURI(), true);
     	        Files.move(binFile, binBackupFile, StandardCopyOption.ATOMIC_MOVE);
@@ -3615,8 +3725,39 @@ public class NativeBroker extends DBBroker {
 
         initIndexModules();
         LOG.info("Reindexing database files ...");
-        //Reindex from root collection
-        reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        // the indexes are empty: those which support it sort their entries and load them at the end
+        indexController.beginBulkLoad();
+        try {
+            //Reindex from root collection
+            reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        } finally {
+            indexController.endBulkLoad();
+        }
+
+        repairBlobStore();
+    }
+
+    /**
+     * Recount the references to the blob store from the binary documents,
+     * and remove the blobs which are no longer referenced.
+     */
+    private void repairBlobStore() throws PermissionDeniedException, IOException {
+        final Map<String, Integer> references = new HashMap<>();
+        for(final Iterator<DocumentImpl> i = getAllXMLResources(new DefaultDocumentSet()).getDocumentIterator(); i.hasNext(); ) {
+            final DocumentImpl doc = i.next();
+            if(doc.getResourceType() == DocumentImpl.BINARY_FILE && ((BinaryDocument) doc).getBlobId() != null) {
+                references.merge(BlobStore.toHex(((BinaryDocument) doc).getBlobId()), 1, Integer::sum);
+            }
+        }
+
+        LOG.info("Repairing the blob store ...");
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final Txn transaction = transact.beginTransaction()) {
+            blobStore.repair(transaction, references);
+            transact.commit(transaction);
+        } catch(final TransactionException e) {
+            throw new IOException(e.getMessage(), e);
+        }
     }
 
     @Override
@@ -3653,6 +3794,35 @@ public class NativeBroker extends DBBroker {
         nodesCount = 0;
     }
 
+    @Override
+    public void flushDocument() {
+        if(indexBatches == 0) {
+            flush();
+            return;
+        }
+        // nodesCount is not reset, so that the entries buffered during the
+        // batch are flushed once they exceed the nodes buffer
+        notifyFlush();
+        try {
+            pool.getSymbols().flush();
+        } catch(final EXistException e) {
+            LOG.warn(e);
+        }
+        indexController.flushDocument();
+    }
+
+    @Override
+    public void beginIndexBatch() {
+        ++indexBatches;
+    }
+
+    @Override
+    public void endIndexBatch() {
+        if(--indexBatches == 0) {
+            flush();
+        }
+    }
+
     long nextReportTS = System.currentTimeMillis();
 
     @Override
@@ -3685,6 +3855,12 @@ public class NativeBroker extends DBBroker {
                 notifySync();
                 pool.getIndexManager().sync();
 
+                try {
+                    blobStore.deleteReleased();
+                } catch(final IOException e) {
+                    LOG.warn("Failed to remove released blobs: " + e.getMessage(), e);
+                }
+
                 if (System.currentTimeMillis() > nextReportTS) {
 	                final NumberFormat nf = NumberFormat.getNumberInstance();
     	            LOG_STATS.info("Memory: " + nf.format(run.totalMemory() / 1024) + "K total; " +
@@ -0,0 +1,263 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionCache;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.Permission;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.storage.DBBroker.IndexMode;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reindexes a collection and its descendants with several threads.
+ *
+ * The indexes of all collections are dropped and the documents to reindex
+ * are collected up front, using the calling broker. The documents are then
+ * handed out in batches to worker threads, each of which reindexes its
+ * batch with its own broker and transaction.
+ *
+ * Collection configuration documents are reindexed by the calling thread
+ * before the workers are started: the configuration of their collection is
+ * disabled while they are reindexed, which must not affect the other
+ * documents of the collection.
+ *
+ * Unlike the serial reindex, the workers do not run while the collection
+ * cache is locked, so each of them write-locks a document while reindexing
+ * it and skips documents which have been removed or replaced in the meantime.
+ */
+final class ParallelReindex {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelReindex.class);
+
+    /** number of documents a worker reindexes within one transaction */
+    static final int BATCH_SIZE = 100;
+
+    private final BrokerPool pool;
+    private final NativeBroker broker;
+    private final int threads;
+
+    ParallelReindex(final BrokerPool pool, final NativeBroker broker, final int threads) {
+        this.pool = pool;
+        this.broker = broker;
+        // keep a broker for the calling thread
+        this.threads = Math.max(1, Math.min(threads, pool.getMax() - 1));
+    }
+
+    void reindex(final Collection collection, final IndexMode mode)
+            throws PermissionDeniedException, IOException, EXistException {
+        final TransactionManager transact = pool.getTransactionManager();
+        final ProcessMonitor.Monitor monitor = new ProcessMonitor.Monitor();
+        final Progress progress = new Progress(collection.getURI());
+        pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, progress, monitor);
+
+        final List<DocumentImpl> configDocs = new ArrayList<>();
+        final List<DocumentImpl> docs = new ArrayList<>();
+        try (final Txn transaction = transact.beginTransaction()) {
+            prepare(transaction, collection, mode, configDocs, docs);
+            progress.total = configDocs.size() + docs.size();
+            for (final DocumentImpl doc : configDocs) {
+                broker.reindexXMLResource(transaction, doc, mode);
+                progress.done.incrementAndGet();
+            }
+            transact.commit(transaction);
+        }
+
+        if (docs.isEmpty()) {
+            return;
+        }
+
+        final Subject subject = broker.getCurrentSubject();
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final int workers = Math.min(threads, (docs.size() + BATCH_SIZE - 1) / BATCH_SIZE);
+        LOG.debug("Reindexing " + docs.size() + " documents of collection " + collection.getURI() + " with " + workers + " threads");
+
+        final AtomicInteger threadId = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(workers,
+                runnable -> new Thread(runnable, "reindex-" + collection.getURI() + "-" + threadId.getAndIncrement()));
+        try {
+            final List<Future<Void>> results = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(() -> {
+                    reindexBatches(subject, docs, nextBatch, mode, progress, monitor);
+                    return null;
+                }));
+            }
+            for (final Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (final ExecutionException e) {
+                    // the other workers stop after their current batch
+                    monitor.stop();
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof PermissionDeniedException) {
+                        throw (PermissionDeniedException) cause;
+                    } else if (cause instanceof EXistException) {
+                        throw (EXistException) cause;
+                    }
+                    throw new IOException("Error while reindexing collection " + collection.getURI() + ": " + cause.getMessage(), cause);
+                }
+            }
+        } catch (final InterruptedException e) {
+            monitor.stop();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reindexing collection " + collection.getURI(), e);
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Drop the indexes of the collection and its descendants and collect
+     * their documents, in the same order in which the serial reindex visits them.
+     */
+    private void prepare(final Txn transaction, final Collection collection, final IndexMode mode,
+            final List<DocumentImpl> configDocs, final List<DocumentImpl> docs) throws PermissionDeniedException, IOException {
+        final CollectionCache collectionsCache = pool.getCollectionsCache();
+        synchronized(collectionsCache) {
+            if(!collection.getPermissionsNoLock().validate(broker.getCurrentSubject(), Permission.WRITE)) {
+                throw new PermissionDeniedException("Account " + broker.getCurrentSubject().getName() + " have insufficient privileges on collection " + collection.getURI());
+            }
+            LOG.debug("Reindexing collection " + collection.getURI());
+            if(mode == IndexMode.STORE) {
+                broker.dropCollectionIndex(transaction, collection, true);
+            }
+            try {
+                for (final Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
+                    final DocumentImpl next = i.next();
+                    if (next.isCollectionConfig()) {
+                        configDocs.add(next);
+                    } else {
+                        docs.add(next);
+                    }
+                }
+            } catch(final LockException e) {
+                LOG.error("LockException while reindexing documents of collection '" + collection.getURI() + ". Skipping...", e);
+            }
+
+            try {
+                for (final Iterator<XmldbURI> i = collection.collectionIterator(broker); i.hasNext(); ) {
+                    final XmldbURI next = i.next();
+                    final Collection child = broker.getCollection(collection.getURI().append(next));
+                    if (child == null) {
+                        LOG.warn("Collection '" + next + "' not found");
+                    } else {
+                        prepare(transaction, child, mode, configDocs, docs);
+                    }
+                }
+            } catch(final LockException e) {
+                LOG.error("LockException while reindexing child collections of collection '" + collection.getURI() + ". Skipping...", e);
+            }
+        }
+    }
+
+    private void reindexBatches(final Subject subject, final List<DocumentImpl> docs, final AtomicInteger nextBatch,
+            final IndexMode mode, final Progress progress, final ProcessMonitor.Monitor monitor)
+            throws EXistException, PermissionDeniedException, LockException {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker worker = pool.get(Optional.of(subject))) {
+            int start;
+            while (monitor.proceed() && (start = nextBatch.getAndIncrement() * BATCH_SIZE) < docs.size()) {
+                final int end = Math.min(start + BATCH_SIZE, docs.size());
+                try (final Txn transaction = transact.beginTransaction()) {
+                    for (int i = start; i < end; i++) {
+                        reindexDocument(worker, transaction, docs.get(i), mode);
+                        progress.done.incrementAndGet();
+                    }
+                    transact.commit(transaction);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reindex a document while holding a write lock on it. The documents were
+     * collected before the workers started, so a document which has been removed
+     * or replaced since is skipped: it was removed from the indexes with it, or
+     * its replacement has been indexed when it was stored.
+     */
+    private void reindexDocument(final DBBroker worker, final Txn transaction, final DocumentImpl doc, final IndexMode mode)
+            throws PermissionDeniedException, LockException {
+        final Collection collection = worker.getCollection(doc.getCollection().getURI());
+        if (collection == null) {
+            LOG.debug("Collection " + doc.getCollection().getURI() + " was removed while reindexing, skipping " + doc.getFileURI());
+            return;
+        }
+        final DocumentImpl current = collection.getDocumentWithLock(worker, doc.getFileURI(), LockMode.WRITE_LOCK);
+        try {
+            if (current == null || current.getDocId() != doc.getDocId()) {
+                LOG.debug("Document " + doc.getURI() + " was removed or replaced while reindexing, skipping");
+                return;
+            }
+            worker.reindexXMLResource(transaction, current, mode);
+        } finally {
+            collection.releaseDocument(current, LockMode.WRITE_LOCK);
+        }
+    }
+
+    /**
+     * Reported as additional information of the reindex job by the
+     * {@link ProcessMonitor}.
+     */
+    private static final class Progress {
+
+        private final XmldbURI collection;
+        private final AtomicInteger done = new AtomicInteger();
+        private volatile int total = -1;
+
+        Progress(final XmldbURI collection) {
+            this.collection = collection;
+        }
+
+        @Override
+        public String toString() {
+            if (total < 0) {
+                return collection.toString();
+            }
+            return collection + " (" + done.get() + " of " + total + " documents)";
+        }
+    }
+}
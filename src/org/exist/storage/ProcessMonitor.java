@@ -322,7 +322,7 @@ public class ProcessMonitor implements BrokerPoolService {
 
     public final static class Monitor {
 
-        boolean stop = false;
+        volatile boolean stop = false;
 
         public boolean proceed() {
             return !stop;
@@ -23,7 +23,12 @@
 package org.exist.storage;
 
 import java.text.NumberFormat;
-import java.util.*;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
@@ -34,7 +39,6 @@ import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
 import org.exist.source.Source;
 import org.exist.util.Configuration;
-import org.exist.util.hashtable.Object2ObjectHashMap;
 import org.exist.xquery.*;
 
 /**
@@ -45,11 +49,16 @@ import org.exist.xquery.*;
  * expression will be removed from the pool if it has not been used for a
  * pre-defined timeout. These settings can be configured in conf.xml.
  *
+ * The pool does not lock as a whole: sources are kept in a concurrent map,
+ * and the compiled expressions for each source in a lock-free stack. If the
+ * pool is full when a new source is added, timed out sources are removed
+ * first, then the least recently used one.
+ *
  * @author wolf
  */
 @ConfigurationClass("query-pool")
 @ThreadSafe
-public class XQueryPool extends Object2ObjectHashMap implements BrokerPoolService {
+public class XQueryPool implements BrokerPoolService {
 
     private final static int MAX_POOL_SIZE = 128;
     private final static int MAX_STACK_SIZE = 5;
@@ -58,8 +67,19 @@ public class XQueryPool extends Object2ObjectHashMap implements BrokerPoolServic
 
     private final static Logger LOG = LogManager.getLogger(XQueryPool.class);
 
-    private long lastTimeOutCheck;
-    private long lastTimeOfCleanup;
+    private final Map<Source, Entry> pool = new ConcurrentHashMap<>(DEFAULT_SIZE);
+
+    /** guards the removal of timed out or least recently used entries */
+    private final Object evictionLock = new Object();
+
+    private volatile long lastTimeOutCheck;
+    private volatile long lastTimeOfCleanup;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder compilationTimeSaved = new LongAdder();
 
     @ConfigurationFieldAsAttribute("size")
     private int maxPoolSize;
@@ -87,7 +107,6 @@ public class XQueryPool extends Object2ObjectHashMap implements BrokerPoolServic
     private final static int DEFAULT_SIZE = 27;
 
     public XQueryPool() {
-        super(DEFAULT_SIZE);
         this.lastTimeOutCheck = lastTimeOfCleanup = System.currentTimeMillis();
     }
 
@@ -134,123 +153,210 @@ public class XQueryPool extends Object2ObjectHashMap implements BrokerPoolServic
         returnObject(source, xquery);
     }
 
-    private synchronized void returnObject(final Source source, final CompiledXQuery xquery) {
+    private void returnObject(final Source source, final CompiledXQuery xquery) {
         final long ts = source.getCacheTimestamp();
-        if (ts == 0 || ts > lastTimeOfCleanup) {
-            if (size() >= maxPoolSize) {
-                timeoutCheck();
-            }
+        if (ts != 0 && ts <= lastTimeOfCleanup) {
+            // compiled before the pool was last cleared
+            return;
+        }
 
-            if (size() < maxPoolSize) {
-                Deque<CompiledXQuery> stack = (Deque<CompiledXQuery>)get(source);
-                if (stack == null) {
-                    stack = new ArrayDeque<>();
-                    source.setCacheTimestamp(System.currentTimeMillis());
-                    put(source, stack);
-                }
-
-                if (stack.size() < maxStackSize) {
-                    // check if the query is already in pool before adding,
-                    // may happen for modules, don't add it a second time!
-                    if(!stack.contains(xquery)) {
-                        stack.push(xquery);
-                    }
+        Entry entry = pool.get(source);
+        if (entry == null) {
+            if (pool.size() >= maxPoolSize) {
+                evict();
+                if (pool.size() >= maxPoolSize) {
+                    return;
                 }
             }
+            source.setCacheTimestamp(System.currentTimeMillis());
+            entry = pool.computeIfAbsent(source, Entry::new);
         }
+        entry.push(xquery, maxStackSize);
     }
 
-    private Object borrowObject(final DBBroker broker, final Source source) {
-        final Source key;
-        final CompiledXQuery query;
-        synchronized (this) {
-            final int idx = getIndex(source);
-            if (idx < 0) {
-                return null;
-            }
-            key = (Source) keys[idx];
-            int validity = key.isValid(broker);
-            if (validity == Source.UNKNOWN) {
-                validity = key.isValid(source);
-            }
+    private CompiledXQuery borrowObject(final DBBroker broker, final Source source) {
+        final Entry entry = pool.get(source);
+        if (entry == null) {
+            return null;
+        }
 
-            if (validity == Source.INVALID || validity == Source.UNKNOWN) {
-                keys[idx] = REMOVED;
-                values[idx] = null;
-                LOG.debug(source.getKey() + " is invalid");
-                return null;
-            }
-            final Deque<CompiledXQuery> stack = (Deque<CompiledXQuery>)values[idx];
-            if (stack == null || stack.isEmpty()) {
-                return null;
-            }
+        final Source key = entry.source;
+        int validity = key.isValid(broker);
+        if (validity == Source.UNKNOWN) {
+            validity = key.isValid(source);
+        }
 
-            // now check if the compiled expression is valid
-            // it might become invalid if an imported module has changed.
-            query = stack.pop();
-            final XQueryContext context = query.getContext();
-            //context.setBroker(broker);
+        if (validity == Source.INVALID || validity == Source.UNKNOWN) {
+            pool.remove(key, entry);
+            invalidations.increment();
+            LOG.debug(source.getKey() + " is invalid");
+            return null;
         }
 
-        // query.isValid() may open collections which in turn tries to acquire
-        // org.exist.storage.lock.ReentrantReadWriteLock. In order to avoid
-        // deadlocks with concurrent queries holding that lock while borrowing
-        // we must not hold onto the XQueryPool while calling isValid().
+        final CompiledXQuery query = entry.pop();
+        if (query == null) {
+            return null;
+        }
+
+        // now check if the compiled expression is valid
+        // it might become invalid if an imported module has changed.
 
+        // query.isValid() may open collections which in turn tries to acquire
+        // org.exist.storage.lock.ReentrantReadWriteLock. This is safe as
+        // the pool itself is never locked while calling isValid().
         if (!query.isValid()) {
-            synchronized (this) {
-                // the compiled query is no longer valid: one of the imported
-                // modules may have changed
-                remove(key);
-                return null;
-            }
-        } else {
-            return query;
+            // the compiled query is no longer valid: one of the imported
+            // modules may have changed
+            pool.remove(key, entry);
+            invalidations.increment();
+            return null;
         }
+        return query;
     }
 
-    public synchronized CompiledXQuery borrowCompiledXQuery(final DBBroker broker, final Source source) throws PermissionDeniedException {
-        final CompiledXQuery query = (CompiledXQuery) borrowObject(broker, source);
+    public CompiledXQuery borrowCompiledXQuery(final DBBroker broker, final Source source) throws PermissionDeniedException {
+        final CompiledXQuery query = borrowObject(broker, source);
         if (query == null) {
+            misses.increment();
             return null;
         }
 
         //check execution permission
         source.validate(broker.getCurrentSubject(), Permission.EXECUTE);
 
-        // now check if the compiled expression is valid
-        // it might become invalid if an imported module has changed.
-        //final XQueryContext context = query.getContext();
-        //context.setBroker(broker);
+        hits.increment();
+        final XQueryContext context = query.getContext();
+        if (context != null) {
+            compilationTimeSaved.add(context.getCompilationTime());
+        }
         return query;
     }
 
-    public synchronized void clear() {
+    public void clear() {
         lastTimeOfCleanup = System.currentTimeMillis();
+        pool.clear();
+    }
+
+    /**
+     * Make room for a new source: remove all sources which have timed out.
+     * If none has, remove the least recently used source.
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            if (pool.size() < maxPoolSize) {
+                // another thread made room already
+                return;
+            }
+
+            final long currentTime = System.currentTimeMillis();
+            if (timeoutCheckInterval >= 0L && currentTime - lastTimeOutCheck >= timeoutCheckInterval) {
+                for (final Entry entry : pool.values()) {
+                    if (currentTime - entry.lastAccess > timeout && pool.remove(entry.source, entry)) {
+                        evictions.increment();
+                    }
+                }
+                lastTimeOutCheck = currentTime;
+            }
 
-        for (final Iterator i = iterator(); i.hasNext(); ) {
-            final Source next = (Source) i.next();
-            remove(next);
+            if (pool.size() >= maxPoolSize) {
+                Entry lru = null;
+                for (final Entry entry : pool.values()) {
+                    if (lru == null || entry.lastAccess < lru.lastAccess) {
+                        lru = entry;
+                    }
+                }
+                if (lru != null && pool.remove(lru.source, lru)) {
+                    evictions.increment();
+                }
+            }
         }
     }
 
-    private void timeoutCheck() {
-        if (timeoutCheckInterval < 0L) {
-            return;
-        }
+    /**
+     * @return the number of sources in the pool
+     */
+    public int getSize() {
+        return pool.size();
+    }
 
-        final long currentTime = System.currentTimeMillis();
-        if (currentTime - lastTimeOutCheck < timeoutCheckInterval) {
-            return;
+    public int getMaxSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @return the number of borrow requests which were served from the pool,
+     *     i.e. the number of compilations avoided
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of borrow requests for which no valid compiled
+     *     expression was available
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of sources removed because they timed out or
+     *     were least recently used when the pool was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of sources removed because the source or one of
+     *     its imported modules had changed
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return the sum of the compilation times in milliseconds of all
+     *     expressions served from the pool
+     */
+    public long getCompilationTimeSaved() {
+        return compilationTimeSaved.sum();
+    }
+
+    /**
+     * The compiled expressions for a single source.
+     */
+    private static final class Entry {
+        private final Source source;
+        private final Deque<CompiledXQuery> stack = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger stackSize = new AtomicInteger();
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(final Source source) {
+            this.source = source;
         }
 
-        for (final Iterator i = iterator(); i.hasNext(); ) {
-            final Source next = (Source) i.next();
-            if (currentTime - next.getCacheTimestamp() > timeout) {
-                remove(next);
+        void push(final CompiledXQuery xquery, final int maxStackSize) {
+            lastAccess = System.currentTimeMillis();
+            // check if the query is already in pool before adding,
+            // may happen for modules, don't add it a second time!
+            if (stack.contains(xquery)) {
+                return;
             }
+            if (stackSize.incrementAndGet() > maxStackSize) {
+                stackSize.decrementAndGet();
+                return;
+            }
+            stack.push(xquery);
         }
 
-        lastTimeOutCheck = currentTime;
+        CompiledXQuery pop() {
+            lastAccess = System.currentTimeMillis();
+            final CompiledXQuery query = stack.poll();
+            if (query != null) {
+                stackSize.decrementAndGet();
+            }
+            return query;
+        }
     }
 }
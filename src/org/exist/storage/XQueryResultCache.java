@@ -0,0 +1,550 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.ExternalModule;
+import org.exist.xquery.Module;
+import org.exist.xquery.Option;
+import org.exist.xquery.Variable;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.functions.array.ArrayModule;
+import org.exist.xquery.functions.map.MapModule;
+import org.exist.xquery.functions.xmldb.XMLDBModule;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+/**
+ * Global cache for the results of XQueries, shared by all requests.
+ *
+ * Only queries which declare <code>declare option exist:cache "yes";</code>
+ * are cached. The result is looked up by the source of the query, the
+ * executing user, the statically known documents and the values of the
+ * variables bound by the caller, which must all be atomic. Results are only
+ * cached if they consist of atomic values and stored nodes, and if they are
+ * not larger than the configured maximum number of items.
+ *
+ * While a cached query is evaluated, the collections and documents it reads
+ * through fn:collection, fn:doc, xmldb:document or the statically known
+ * documents are recorded. The cache listens to the {@link NotificationService}
+ * and removes an entry as soon as one of these documents, or a document
+ * within one of these collections, is added, updated or removed.
+ *
+ * A query which may read documents in another way, or depend on other input
+ * such as the HTTP request or the current time, is never cached: it is marked
+ * by {@link XQueryContext#markResultUncacheable()} when it calls a function
+ * which is not known to be safe, see {@link #isCacheable(QName)}, contains an
+ * update expression, or reads a document from a URL.
+ *
+ * Before a cached result is returned, the documents of its nodes are locked
+ * and checked to be unchanged, and the nodes are bound to the current
+ * instances of their documents.
+ *
+ * The cache holds at most the configured number of entries and removes the
+ * least recently used entry when it is full.
+ */
+@ThreadSafe
+public class XQueryResultCache implements BrokerPoolService {
+
+    private final static Logger LOG = LogManager.getLogger(XQueryResultCache.class);
+
+    public static final String CONFIGURATION_ELEMENT_NAME = "query-result-cache";
+    public static final String SIZE_ATTRIBUTE = "size";
+    public static final String MAX_ITEMS_ATTRIBUTE = "max-items";
+
+    public static final String PROPERTY_SIZE = "db-connection.query-result-cache.size";
+    public static final String PROPERTY_MAX_ITEMS = "db-connection.query-result-cache.max-items";
+
+    public static final int DEFAULT_SIZE = 128;
+    public static final int DEFAULT_MAX_ITEMS = 10000;
+
+    /** the modules whose functions only depend on their arguments, except for {@link #UNCACHEABLE_FUNCTIONS} */
+    private static final Set<String> CACHEABLE_MODULES = new HashSet<>(Arrays.asList(
+            Namespaces.XPATH_FUNCTIONS_NS,
+            Namespaces.XPATH_FUNCTIONS_MATH_NS,
+            MapModule.NAMESPACE_URI,
+            ArrayModule.NAMESPACE_URI));
+
+    /** functions of the standard library which depend on the dynamic context or read untracked input */
+    private static final Set<String> UNCACHEABLE_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "current-date", "current-dateTime", "current-time", "implicit-timezone",
+            "environment-variable", "available-environment-variables",
+            "json-doc", "function-lookup", "load-xquery-module"));
+
+    /** least recently used entry first, guarded by this */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** number of document updates, results computed during an update are not cached */
+    private final AtomicLong updates = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private final UpdateListener listener = new InvalidationListener();
+
+    private int maxSize = DEFAULT_SIZE;
+    private int maxItems = DEFAULT_MAX_ITEMS;
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final int size = configuration.getInteger(PROPERTY_SIZE);
+        if (size >= 0) {
+            maxSize = size;
+        }
+        final int items = configuration.getInteger(PROPERTY_MAX_ITEMS);
+        if (items >= 0) {
+            maxItems = items;
+        }
+        LOG.info("QueryResultCache: size = " + maxSize + "; maxItems = " + maxItems);
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        brokerPool.getNotificationService().subscribe(listener);
+    }
+
+    /**
+     * Check if a call to a built-in function allows the result of a query to be
+     * cached. This is the case for the functions of the standard function library
+     * which only depend on their arguments or read documents by fn:doc and
+     * fn:collection, and for xmldb:document, whose documents are recorded.
+     *
+     * @param function the name of the function
+     * @return true if the result of a query calling the function may be cached
+     */
+    public static boolean isCacheable(final QName function) {
+        final String ns = function.getNamespaceURI();
+        if (CACHEABLE_MODULES.contains(ns)) {
+            return !(Namespaces.XPATH_FUNCTIONS_NS.equals(ns) && UNCACHEABLE_FUNCTIONS.contains(function.getLocalPart()));
+        }
+        return XMLDBModule.NAMESPACE_URI.equals(ns) && "document".equals(function.getLocalPart());
+    }
+
+    /**
+     * Check if the result of the query may be cached and create the key to
+     * look it up. Must be called before the query is evaluated, as the cache
+     * starts recording the documents the query reads.
+     *
+     * @param broker the broker executing the query
+     * @param expression the compiled query
+     * @return the key, or null if the query does not ask for its result to
+     *     be cached or its result cannot be cached
+     */
+    public Key createKey(final DBBroker broker, final CompiledXQuery expression) {
+        if (maxSize == 0) {
+            return null;
+        }
+        final XQueryContext context = expression.getContext();
+        final Option option = context.getOption(Option.CACHE_QNAME);
+        if (option == null || !"yes".equals(option.getContents().trim())) {
+            return null;
+        }
+
+        final Source source = context.getSource();
+        if (!context.isResultCacheable()) {
+            LOG.debug("Not caching the result of " + source.path() + ": it depends on input which is not tracked");
+            return null;
+        }
+        if (context.lockDocumentsOnLoad()) {
+            // the caller expects the documents to stay locked
+            return null;
+        }
+        final StringBuilder key = new StringBuilder();
+        key.append(source.type()).append(':').append(source.getKey()).append('\n');
+        key.append(context.getRealUser() == null ? "" : context.getRealUser().getName()).append('/');
+        key.append(broker.getCurrentSubject().getName()).append('\n');
+        final XmldbURI[] staticDocs = context.getStaticallyKnownDocumentPaths();
+        if (staticDocs != null) {
+            for (final XmldbURI uri : staticDocs) {
+                key.append(uri).append(' ');
+            }
+        }
+        key.append('\n');
+        try {
+            // sorted by name
+            for (final Variable var : new TreeMap<>(context.getGlobalVariables()).values()) {
+                key.append(var.getQName()).append('=');
+                final Sequence value = var.getValue();
+                if (value != null) {
+                    for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+                        final Item item = i.nextItem();
+                        if (!Type.subTypeOf(item.getType(), Type.ATOMIC)) {
+                            // only atomic values can be compared by their string value
+                            return null;
+                        }
+                        key.append(Type.getTypeName(item.getType())).append('(').append(item.getStringValue()).append(')');
+                    }
+                }
+                key.append('\n');
+            }
+        } catch (final XPathException e) {
+            LOG.debug("Not caching the result of " + source.path() + ": " + e.getMessage());
+            return null;
+        }
+
+        final Dependencies dependencies = new Dependencies();
+        // a change to the query or one of its modules stored in the db changes the result
+        if (source instanceof DBSource) {
+            dependencies.addDocument(((DBSource) source).getDocumentPath());
+        }
+        for (final Iterator<Module> i = context.getAllModules(); i.hasNext(); ) {
+            final Module module = i.next();
+            if (module instanceof ExternalModule && ((ExternalModule) module).getSource() instanceof DBSource) {
+                dependencies.addDocument(((DBSource) ((ExternalModule) module).getSource()).getDocumentPath());
+            }
+        }
+        return new Key(key.toString(), source, updates.get(), dependencies);
+    }
+
+    /**
+     * Get the cached result of a query.
+     *
+     * @param broker the broker executing the query
+     * @param key the key of the query
+     * @return the result, or null if it is not in the cache
+     */
+    public Sequence get(final DBBroker broker, final Key key) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key.key);
+        }
+        if (entry == null || !isValid(broker, entry.source, key.source)) {
+            if (entry != null) {
+                remove(key.key, entry);
+            }
+            misses.increment();
+            return null;
+        }
+
+        // lock the documents of the result while checking that they are unchanged
+        final List<DocumentImpl> locked = new ArrayList<>(entry.documents.size());
+        try {
+            final Map<Integer, DocumentImpl> documents = new HashMap<>(entry.documents.size());
+            boolean unchanged = true;
+            for (final CachedDocument cached : entry.documents.values()) {
+                final DocumentImpl doc = broker.getXMLResource(cached.uri, LockMode.READ_LOCK);
+                if (doc == null) {
+                    unchanged = false;
+                    break;
+                }
+                locked.add(doc);
+                if (doc.getDocId() != cached.docId || doc.getMetadata().getLastModified() != cached.lastModified) {
+                    unchanged = false;
+                    break;
+                }
+                documents.put(doc.getDocId(), doc);
+            }
+            if (!unchanged) {
+                // a notification may still be on its way
+                remove(key.key, entry);
+                misses.increment();
+                return null;
+            }
+
+            hits.increment();
+            final ValueSequence result = new ValueSequence(entry.items.length);
+            for (final Item item : entry.items) {
+                if (item instanceof NodeProxy) {
+                    final NodeProxy node = (NodeProxy) item;
+                    result.add(new NodeProxy(documents.get(node.getOwnerDocument().getDocId()), node.getNodeId(),
+                            node.getNodeType(), node.getInternalAddress()));
+                } else {
+                    result.add(item);
+                }
+            }
+            return result;
+        } catch (final PermissionDeniedException e) {
+            misses.increment();
+            return null;
+        } finally {
+            for (final DocumentImpl doc : locked) {
+                doc.getUpdateLock().release(LockMode.READ_LOCK);
+            }
+        }
+    }
+
+    private static boolean isValid(final DBBroker broker, final Source cached, final Source current) {
+        int validity = cached.isValid(broker);
+        if (validity == Source.UNKNOWN) {
+            validity = cached.isValid(current);
+        }
+        return validity == Source.VALID;
+    }
+
+    /**
+     * Cache the result of a query, unless it cannot be cached or a document
+     * was updated while the query was evaluated.
+     *
+     * @param key the key created before the query was evaluated
+     * @param result the result of the query
+     */
+    public void put(final Key key, final Sequence result) {
+        final int count = result.getItemCount();
+        if (count > maxItems) {
+            return;
+        }
+        final Item[] items = new Item[count];
+        final Map<Integer, CachedDocument> documents = new HashMap<>();
+        try {
+            int n = 0;
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                final Item item = i.nextItem();
+                if (Type.subTypeOf(item.getType(), Type.NODE)) {
+                    if (!(item instanceof NodeProxy)) {
+                        // in-memory nodes belong to the context of the query
+                        return;
+                    }
+                    final DocumentImpl doc = ((NodeProxy) item).getOwnerDocument();
+                    key.dependencies.addDocument(doc.getURI());
+                    documents.putIfAbsent(doc.getDocId(), new CachedDocument(doc));
+                } else if (!Type.subTypeOf(item.getType(), Type.ATOMIC)) {
+                    return;
+                }
+                items[n++] = item;
+            }
+        } catch (final XPathException e) {
+            LOG.debug("Not caching the result of " + key.source.path() + ": " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            if (updates.get() != key.updates) {
+                // the result may reflect the state before or after an update
+                return;
+            }
+            entries.put(key.key, new Entry(key.source, items, documents, key.dependencies));
+            if (entries.size() > maxSize) {
+                final Iterator<Entry> i = entries.values().iterator();
+                i.next();
+                i.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private synchronized void remove(final String key, final Entry entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+            invalidations.increment();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * @return the number of executions of cached queries which were served from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of executions of cached queries whose result was not in the cache
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results removed because they were least recently
+     *     used when the cache was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of results removed because a document they
+     *     depend on, or the query itself, had changed
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private synchronized void invalidate(final XmldbURI docUri) {
+        for (final Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+            if (i.next().dependencies.dependsOn(docUri)) {
+                i.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Identifies the result of a single execution of a query.
+     */
+    public static final class Key {
+        private final String key;
+        private final Source source;
+        private final long updates;
+        private final Dependencies dependencies;
+
+        private Key(final String key, final Source source, final long updates, final Dependencies dependencies) {
+            this.key = key;
+            this.source = source;
+            this.updates = updates;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * @return the collections and documents read by the query, to be
+         *     recorded while it is evaluated
+         */
+        public Dependencies getDependencies() {
+            return dependencies;
+        }
+    }
+
+    /**
+     * The collections and documents a query has read. Collections include
+     * their descendant collections.
+     */
+    public static final class Dependencies {
+        private final Set<XmldbURI> collections = new HashSet<>();
+        private final Set<XmldbURI> documents = new HashSet<>();
+
+        public synchronized void addCollection(final XmldbURI uri) {
+            collections.add(uri.toCollectionPathURI());
+        }
+
+        public synchronized void addDocument(final XmldbURI uri) {
+            documents.add(uri.toCollectionPathURI());
+        }
+
+        synchronized boolean dependsOn(final XmldbURI docUri) {
+            final XmldbURI uri = docUri.toCollectionPathURI();
+            if (documents.contains(uri)) {
+                return true;
+            }
+            for (XmldbURI collection = uri.removeLastSegment(); collection.numSegments() > 0; collection = collection.removeLastSegment()) {
+                if (collections.contains(collection)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Source source;
+        private final Item[] items;
+        /** the documents of the nodes in items, by document id */
+        private final Map<Integer, CachedDocument> documents;
+        private final Dependencies dependencies;
+
+        Entry(final Source source, final Item[] items, final Map<Integer, CachedDocument> documents,
+                final Dependencies dependencies) {
+            this.source = source;
+            this.items = items;
+            this.documents = documents;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Identifies the version of a document whose nodes are part of a cached result.
+     */
+    private static final class CachedDocument {
+        private final XmldbURI uri;
+        private final int docId;
+        private final long lastModified;
+
+        CachedDocument(final DocumentImpl doc) {
+            this.uri = doc.getURI();
+            this.docId = doc.getDocId();
+            this.lastModified = doc.getMetadata().getLastModified();
+        }
+    }
+
+    private final class InvalidationListener implements UpdateListener {
+
+        @Override
+        public void documentUpdated(final DocumentImpl document, final int event) {
+            updates.incrementAndGet();
+            invalidate(document.getURI());
+        }
+
+        @Override
+        public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+            // the document has been updated before
+        }
+
+        @Override
+        public void unsubscribe() {
+            // nothing to do
+        }
+
+        @Override
+        public void debug() {
+            LOG.debug("UpdateListener: " + XQueryResultCache.class.getName());
+        }
+    }
+}
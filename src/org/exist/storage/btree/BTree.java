@@ -76,12 +76,13 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.storage.BrokerPool;
 import org.exist.storage.BufferStats;
-import org.exist.storage.CacheManager;
 import org.exist.storage.DefaultCacheManager;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.cache.*;
 import org.exist.storage.journal.*;
 import org.exist.storage.lock.Lock;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.PageLatches;
 import org.exist.storage.txn.Txn;
 import org.exist.util.ByteConversion;
 import org.exist.util.FileUtils;
@@ -119,6 +120,18 @@ public class BTree extends Paged implements Lockable {
 
     protected final static int MIN_SPACE_PER_KEY = 32;
 
+    /**
+     * The maximum number of leading bytes a key in a leaf page can share with the
+     * previous key. The length of the shared prefix is stored as an unsigned byte.
+     */
+    protected final static int MAX_LEAF_PREFIX_LEN = 0xFF;
+
+    public static final String FILL_FACTOR_ATTRIBUTE = "fillFactor";
+    public static final String PROPERTY_FILL_FACTOR = "db-connection.fill-factor";
+
+    /** the space of a page, in percent, used for keys by bulk loading and rebuilding */
+    public static final int DEFAULT_FILL_FACTOR = 90;
+
     /** Log entry type for an insert value operation */
     public final static byte LOG_INSERT_VALUE = 0x20;
     /** Log entry type for creation of a new BTree node */
@@ -161,6 +174,8 @@ public class BTree extends Paged implements Lockable {
 
     private double splitFactor = -1;
 
+    private final double fillFactor;
+
     protected BTree(final BrokerPool pool, final byte fileId, final boolean recoveryEnabled,
             final DefaultCacheManager cacheManager) throws DBException {
         super(pool);
@@ -175,6 +190,8 @@ public class BTree extends Paged implements Lockable {
         } else {
             this.logManager = Optional.empty();
         }
+        final int fill = pool.getConfiguration() == null ? -1 : pool.getConfiguration().getInteger(PROPERTY_FILL_FACTOR);
+        this.fillFactor = (fill > 0 && fill <= 100 ? fill : DEFAULT_FILL_FACTOR) / 100.0;
     }
 
     protected boolean isRecoveryEnabled() {
@@ -240,8 +257,8 @@ public class BTree extends Paged implements Lockable {
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
-            0, CacheManager.BTREE_CACHE);
+        this.cache = cacheManager.newBTreeCache(FileUtils.fileName(getFile()), BTreeNode.class,
+            cacheManager.getDefaultInitialSize(), 1.5, 0);
         cacheManager.registerCache(cache);
     }
 
@@ -460,21 +477,57 @@ public class BTree extends Paged implements Lockable {
      */
     private BTreeNode getBTreeNode(final long pageNum) {
         try {
-            BTreeNode node = cache.get(pageNum);
-            if (node == null) {
-                final Page page = getPage(pageNum);
-                node = new BTreeNode(page, false);
-                node.read();
-            }
-            final int increment = node.pageHeader.getStatus() == BRANCH ? 2 : 1;
-            cache.add(node, increment);
-            return node;
+            return getCachedNode(pageNum, false);
         } catch (final IOException e) {
             LOG.error("Failed to get BTree node on page " + pageNum, e);
             return null;
         }
     }
 
+    /**
+     * Get a node from the cache, or read it from its page and add it to the
+     * cache. If page latches are enabled, the page is latched while it is read,
+     * so that concurrent readers load and cache each node only once.
+     *
+     * @param pageNum the page of the node
+     * @param root true if the node is the root node
+     * @return The BTree node
+     * @throws IOException
+     */
+    private BTreeNode getCachedNode(final long pageNum, final boolean root) throws IOException {
+        BTreeNode node = cache.get(pageNum);
+        final PageLatches latches = getPageLatches();
+        if (node == null && latches != null) {
+            latches.acquire(pageNum, LockMode.WRITE_LOCK);
+            try {
+                node = cache.get(pageNum);
+                if (node == null) {
+                    node = readBTreeNode(pageNum);
+                }
+                cache.add(node, getRefIncrement(node, root));
+                return node;
+            } finally {
+                latches.release(pageNum, LockMode.WRITE_LOCK);
+            }
+        }
+        if (node == null) {
+            node = readBTreeNode(pageNum);
+        }
+        cache.add(node, getRefIncrement(node, root));
+        return node;
+    }
+
+    private BTreeNode readBTreeNode(final long pageNum) throws IOException {
+        final Page page = getPage(pageNum);
+        final BTreeNode node = new BTreeNode(page, false);
+        node.read();
+        return node;
+    }
+
+    private static int getRefIncrement(final BTreeNode node, final boolean root) {
+        return root || node.pageHeader.getStatus() == BRANCH ? 2 : 1;
+    }
+
     /**
      * Set the root node of the tree.
      * 
@@ -505,14 +558,7 @@ public class BTree extends Paged implements Lockable {
      */
     protected BTreeNode getRootNode() {
         try {
-            BTreeNode node = cache.get(fileHeader.getRootPage());
-            if (node == null) {
-                final Page page = getPage(fileHeader.getRootPage());
-                node = new BTreeNode(page, false);
-                node.read();
-            }
-            cache.add(node, 2);
-            return node;
+            return getCachedNode(fileHeader.getRootPage(), true);
         } catch (final IOException e) {
             LOG.warn("Failed to get root btree node", e);
             return null;
@@ -666,8 +712,8 @@ public class BTree extends Paged implements Lockable {
     }
 
     /**
-     * Rebuild the btree: removes all branches and rebuilds the tree by scanning
-     * through leaf pages.
+     * Rebuild the btree: removes all branches and rebuilds them bottom-up by
+     * scanning through leaf pages, filling them up to the configured fill factor.
      *
      * @throws TerminatedException
      * @throws IOException
@@ -680,67 +726,255 @@ public class BTree extends Paged implements Lockable {
             setRootNode(root);
             cache.add(root);
         } else {
-            // create a new root node
-            final BTreeNode root = createBTreeNode(null, BRANCH, null, false);
-            setRootNode(root);
-            // insert a pointer to the first page into the root
-            BTreeNode node = getBTreeNode(info.firstPage);
-            root.insertPointer(info.firstPage, 0);
-            cache.add(root);
-            node.setParent(root);
-            node.saved = false;
-            cache.add(node);
+            // build the branches bottom-up on top of the chain of leaf pages
+            final BulkLoader loader = new BulkLoader(null, fillFactor);
+            long pageNum = info.firstPage;
+            while (pageNum != Page.NO_PAGE) {
+                final BTreeNode node = getBTreeNode(pageNum);
+                pageNum = node.pageHeader.getNextPage();
+                loader.addLeaf(node);
+            }
+            loader.finishBranches();
+        }
+    }
+
+    /**
+     * Start bulk loading this btree, using the configured fill factor.
+     *
+     * @see #bulkLoad(Txn, double)
+     */
+    public BulkLoader bulkLoad(final Txn transaction) throws BTreeException {
+        return bulkLoad(transaction, fillFactor);
+    }
+
+    /**
+     * Start bulk loading this btree, which must be empty. Instead of inserting
+     * keys one by one, splitting pages as they fill up, the {@link BulkLoader}
+     * takes the keys in ascending order and fills the leaf pages one after the
+     * other up to the given fill factor, building the branch pages bottom-up
+     * along the way.
+     *
+     * @param transaction the transaction, or null
+     * @param fillFactor the part of a page to fill with keys, leaving the rest
+     *                   for keys inserted later: 0 &lt; fillFactor &lt;= 1
+     *
+     * @return the bulk loader
+     * @throws BTreeException if the btree is not empty
+     */
+    public BulkLoader bulkLoad(final Txn transaction, final double fillFactor) throws BTreeException {
+        if (fillFactor <= 0 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("fillFactor should be <= 1 > 0");
+        }
+        final BTreeNode root = getRootNode();
+        if (root.pageHeader.getStatus() != LEAF || root.nKeys > 0) {
+            throw new BTreeException("Bulk loading requires an empty btree: " + FileUtils.fileName(getFile()));
+        }
+        final BulkLoader loader = new BulkLoader(transaction, fillFactor);
+        loader.levels.add(new BulkLevel(root));
+        return loader;
+    }
 
-            // scan through chain of pages and add them to the tree
-            long rightPageNum = node.pageHeader.getNextPage();
-            while (rightPageNum != Page.NO_PAGE) {
+    /**
+     * Builds a btree bottom-up from keys given in ascending order, see
+     * {@link #bulkLoad(Txn, double)}. Keys and pointers are passed to
+     * {@link #add(Value, long)}; the tree is complete once {@link #finish()}
+     * has been called. The keys must not be modified while loading.
+     *
+     * Every level of the tree has one node which is being filled. Once a
+     * node is full, it is written and the first key of the next node is
+     * added as separator to the level above, which is created when the
+     * level below gets its second node. The leaf pages are journaled as
+     * they would be by a split.
+     */
+    public final class BulkLoader {
 
-                node = getBTreeNode(rightPageNum);
+        private final Txn transaction;
+        private final int maxDataLen;
 
-                rightPageNum = node.pageHeader.getNextPage();
+        /** the levels of the tree being built, the leaves first */
+        private final List<BulkLevel> levels = new ArrayList<>();
 
-                // promote first key of page to parent
-                if (node.nKeys < 1) {
-    //                throw new IOException("No keys found in page " + node.page.getPageNum());
-                    continue;
-                }
-                final Value key = node.keys[0];
-                final BTreeNode parent = findParent(key);
-                if (parent == null) {
-                    throw new IOException("Parent is null for page " + node.page.getPageNum());
-                }
-                if (parent.pageHeader.getStatus() != BRANCH) {
-                    throw new IOException("Not a branch page: " + parent.page.getPageNum());
+        private Value lastKey = null;
+
+        private BulkLoader(final Txn transaction, final double fillFactor) {
+            this.transaction = transaction;
+            this.maxDataLen = (int) (fileHeader.getWorkSize() * fillFactor);
+        }
+
+        public Txn getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * Add a key to the tree.
+         *
+         * @param key the key, greater than all keys added before
+         * @param pointer the pointer associated with the key
+         *
+         * @throws IOException if a page can not be written
+         * @throws BTreeException if the key is not in ascending order or too large
+         */
+        public void add(final Value key, final long pointer) throws IOException, BTreeException {
+            if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                throw new BTreeException("Keys must be bulk loaded in ascending order: '" + key +
+                    "' after '" + lastKey + "'");
+            }
+            final BulkLevel leaves = levels.get(0);
+            int len = leafEntryLen(leaves.keys.isEmpty() ? null : lastKey, key);
+            if (!leaves.keys.isEmpty() && leaves.dataLen + len > maxDataLen) {
+                final BTreeNode leaf = createBTreeNode(transaction, LEAF, null, false);
+                if (transaction != null && isRecoveryEnabled()) {
+                    final Loggable log = new SetPageLinkLoggable(transaction, fileId,
+                        leaves.node.page.getPageNum(), leaf.page.getPageNum());
+                    writeToLog(log, leaves.node);
                 }
+                leaves.node.pageHeader.setNextPage(leaf.page.getPageNum());
+                writeNode(leaves);
+                leaves.start(leaf);
+                addChild(1, key, leaf);
+                len = leafEntryLen(null, key);
+            }
+            if (len > fileHeader.getWorkSize()) {
+                throw new BTreeException("Key too large for bulk loading: " + key.getLength() + " bytes");
+            }
+            leaves.add(key, pointer, len);
+            lastKey = key;
+        }
 
-                parent.promoteValue(null, key, node);
+        /**
+         * Write the nodes which are still being filled and make the
+         * top node the root of the tree.
+         *
+         * @throws IOException if a page can not be written
+         */
+        public void finish() throws IOException {
+            writeNode(levels.get(0));
+            finishBranches();
+        }
+
+        /**
+         * Add an existing leaf, the leaves being passed in the order of
+         * their chain, to build the branches on top of them.
+         */
+        private void addLeaf(final BTreeNode leaf) throws IOException {
+            if (levels.isEmpty()) {
+                levels.add(new BulkLevel(leaf));
+            } else if (leaf.nKeys > 0) {
+                addChild(1, leaf.keys[0], leaf);
             }
         }
+
+        private void finishBranches() throws IOException {
+            for (int height = 1; height < levels.size(); height++) {
+                writeNode(levels.get(height));
+            }
+            setRootNode(levels.get(levels.size() - 1).node);
+        }
+
+        /**
+         * Add a node to its parent level at the given height,
+         * using separator as the key pointing to it.
+         */
+        private void addChild(final int height, final Value separator, final BTreeNode child) throws IOException {
+            if (height == levels.size()) {
+                // the level below got its second node: create its parent
+                final BTreeNode branch = createBTreeNode(transaction, BRANCH, null, false);
+                final BulkLevel level = new BulkLevel(branch);
+                final BTreeNode first = getBTreeNode(levels.get(height - 1).firstPage);
+                level.add(null, first.page.getPageNum(), 8);
+                setParent(first, branch);
+                levels.add(level);
+            }
+            final BulkLevel level = levels.get(height);
+            final int len = 8 + separator.getLength() + (fileHeader.getFixedKeyLen() < 0 ? 2 : 0);
+            if (level.nPtrs > 1 && level.dataLen + len > maxDataLen) {
+                // the separator moves up to the next level, which points to the new branch
+                final BTreeNode branch = createBTreeNode(transaction, BRANCH, null, false);
+                writeNode(level);
+                level.start(branch);
+                addChild(height + 1, separator, branch);
+                level.add(null, child.page.getPageNum(), 8);
+            } else {
+                level.add(separator, child.page.getPageNum(), len);
+            }
+            setParent(child, level.node);
+        }
+
+        private void setParent(final BTreeNode child, final BTreeNode parent) {
+            if (transaction != null && isRecoveryEnabled() && child.pageHeader.getStatus() == LEAF) {
+                final Loggable log = new SetParentLoggable(transaction, fileId, child.page.getPageNum(),
+                    parent.page.getPageNum());
+                writeToLog(log, child);
+            }
+            child.setParent(parent);
+        }
+
+        private void writeNode(final BulkLevel level) {
+            final BTreeNode node = level.node;
+            final Value[] keys = level.keys.toArray(new Value[level.keys.size()]);
+            final long[] ptrs = Arrays.copyOf(level.ptrs, level.nPtrs);
+            if (transaction != null && isRecoveryEnabled() && node.pageHeader.getStatus() == LEAF) {
+                final Loggable log = new UpdatePageLoggable(transaction, fileId, node.page.getPageNum(),
+                    node.prefix, keys, keys.length, ptrs, ptrs.length);
+                writeToLog(log, node);
+            }
+            node.setValues(keys);
+            node.setPointers(ptrs);
+            if (node.pageHeader.getStatus() == BRANCH) {
+                node.prefix = Value.EMPTY_VALUE;
+                node.growPrefix();
+            }
+            node.recalculateDataLen();
+            cache.add(node, node.pageHeader.getStatus() == BRANCH ? 2 : 1);
+        }
+
+        /**
+         * The space a key takes in a leaf, stored without the prefix
+         * it shares with the previous key.
+         */
+        private int leafEntryLen(final Value previous, final Value key) {
+            int len = 8 + key.getLength() + (fileHeader.getFixedKeyLen() < 0 ? 2 : 0);
+            if (previous != null) {
+                len += 1 - Math.min(key.commonPrefix(previous), MAX_LEAF_PREFIX_LEN);
+            }
+            return len;
+        }
     }
 
     /**
-     * Walk the tree to find the parent page to which key should
-     * be promoted.
-     *
-     * @param key
-     * @return
-     * @throws IOException
+     * The node being filled at one level of a {@link BulkLoader}.
      */
-    private BTreeNode findParent(final Value key) throws IOException {
-        BTreeNode node = getRootNode();
-        BTreeNode last = node;
-        while (node.pageHeader.getStatus() != LEAF) {
-            last = node;
-            try {
-                int idx = node.searchKey(key);
-                idx = idx < 0 ? - (idx + 1) : idx + 1;
-                node = node.getChildNode(idx);
-            } catch (final Exception e) {
-                e.printStackTrace();
-                throw new IOException("Error while scanning page " + node.page.getPageNum());
+    private static final class BulkLevel {
+        private final long firstPage;
+        private BTreeNode node;
+        private final List<Value> keys = new ArrayList<>();
+        private long[] ptrs = new long[64];
+        private int nPtrs;
+        private int dataLen;
+
+        BulkLevel(final BTreeNode node) {
+            this.firstPage = node.page.getPageNum();
+            start(node);
+        }
+
+        void start(final BTreeNode node) {
+            this.node = node;
+            keys.clear();
+            nPtrs = 0;
+            // branches store the length of their prefix
+            dataLen = node.pageHeader.getStatus() == BRANCH ? 2 : 0;
+        }
+
+        void add(final Value key, final long pointer, final int len) {
+            if (key != null) {
+                keys.add(key);
             }
+            if (nPtrs == ptrs.length) {
+                ptrs = Arrays.copyOf(ptrs, nPtrs * 2);
+            }
+            ptrs[nPtrs++] = pointer;
+            dataLen += len;
         }
-        return last;
     }
 
     /* -------------------------------------------------------------------------
@@ -1099,11 +1333,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
-                    currentDataLen += keys[i].getLength() - prefix;
+                    currentDataLen += keys[i].getLength() - calculatePrefixLen(i, i - 1);
                 } else {
                     currentDataLen += keys[i].getLength();
                 }
@@ -1148,12 +1378,12 @@ public class BTree extends Paged implements Lockable {
             }
         }
 
+        /**
+         * Returns the number of leading bytes the key at idx0 shares with the key at idx1,
+         * limited to {@link #MAX_LEAF_PREFIX_LEN} as the length is stored in one byte.
+         */
         private int calculatePrefixLen(final int idx0, final int idx1) {
-            int prefix = keys[idx0].commonPrefix(keys[idx1]);
-            if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                prefix = 0;
-            }
-            return prefix;
+            return Math.min(keys[idx0].commonPrefix(keys[idx1]), MAX_LEAF_PREFIX_LEN);
         }
 
         /**
@@ -1172,11 +1402,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
-                    currentLen += keys[i].getLength() - prefix;
+                    currentLen += keys[i].getLength() - calculatePrefixLen(i, i - 1);
                 } else {
                     currentLen += keys[i].getLength();
                 }
@@ -1194,11 +1420,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
-                    totalLen += keys[i].getLength() - prefix;
+                    totalLen += keys[i].getLength() - calculatePrefixLen(i, i - 1);
                 } else {
                     totalLen += keys[i].getLength();
                 }
@@ -1236,33 +1458,14 @@ public class BTree extends Paged implements Lockable {
             }
             nKeys = pageHeader.getValueCount();
             keys = new Value[(nKeys * 3) / 2 + 1];
-            for (int i = 0; i < nKeys; i++) {
-                if (keyLen < 0) {
-                    valSize = ByteConversion.byteToShort(data, p);
-                    p += 2;
-                }
-                if (pageHeader.getStatus() == LEAF && i > 0) {
-                    // for leaf pages, we use prefix compression to increase the number of
-                    // keys that can be stored on one page. Each key is stored as follows:
-                    // [valSize, prefixLen, value], where prefixLen specifies the number of
-                    // leading bytes the key has in common with the previous key.
-                    final int prefixLen = (data[p++] & 0xFF);
-                    try {
-                        final byte[] t = new byte[valSize];
-                        if (prefixLen > 0) {
-                            // copy prefixLen leading bytes from the previous key
-                            System.arraycopy(keys[i - 1].data(), keys[i - 1].start(), t, 0, prefixLen);
-                        }
-                        // read the remaining bytes
-                        System.arraycopy(data, p, t, prefixLen, valSize - prefixLen);
-                        p += valSize - prefixLen;
-                        keys[i] = new Value(t);
-                    } catch (final Exception e) {
-                        e.printStackTrace();
-                        LOG.error("prefixLen = " + prefixLen + "; i = " + i + "; nKeys = " + nKeys);
-                        throw new IOException(e.getMessage());
+            if (pageHeader.getStatus() == LEAF) {
+                p = readLeafKeys(data, p);
+            } else {
+                for (int i = 0; i < nKeys; i++) {
+                    if (keyLen < 0) {
+                        valSize = ByteConversion.byteToShort(data, p);
+                        p += 2;
                     }
-                } else {
                     keys[i] = new Value(data, p, valSize);
                     p += valSize;
                 }
@@ -1276,6 +1479,61 @@ public class BTree extends Paged implements Lockable {
             }
         }
 
+        /**
+         * Decode the prefix compressed keys of a leaf page. For leaf pages, we use prefix
+         * compression to increase the number of keys that can be stored on one page. Each key
+         * but the first is stored as follows: [valSize, prefixLen, value], where prefixLen
+         * specifies the number of leading bytes the key has in common with the previous key.
+         *
+         * All keys are decoded into a single array, so that the node does not keep a separate
+         * array per key, nor the page data, while it is cached.
+         *
+         * @return the position after the keys
+         */
+        private int readLeafKeys(final byte[] data, final int start) throws IOException {
+            final short keyLen = fileHeader.getFixedKeyLen();
+            // first pass: determine the size of the decoded keys
+            int decodedLen = 0;
+            int p = start;
+            for (int i = 0; i < nKeys; i++) {
+                int valSize = keyLen;
+                if (keyLen < 0) {
+                    valSize = ByteConversion.byteToShort(data, p);
+                    p += 2;
+                }
+                decodedLen += valSize;
+                p += i > 0 ? valSize - (data[p] & 0xFF) + 1 : valSize;
+            }
+
+            final byte[] decoded = new byte[decodedLen];
+            int d = 0;
+            p = start;
+            for (int i = 0; i < nKeys; i++) {
+                int valSize = keyLen;
+                if (keyLen < 0) {
+                    valSize = ByteConversion.byteToShort(data, p);
+                    p += 2;
+                }
+                final int prefixLen = i > 0 ? (data[p++] & 0xFF) : 0;
+                try {
+                    if (prefixLen > 0) {
+                        // copy prefixLen leading bytes from the previous key
+                        System.arraycopy(keys[i - 1].data(), keys[i - 1].start(), decoded, d, prefixLen);
+                    }
+                    // read the remaining bytes
+                    System.arraycopy(data, p, decoded, d + prefixLen, valSize - prefixLen);
+                } catch (final Exception e) {
+                    e.printStackTrace();
+                    LOG.error("prefixLen = " + prefixLen + "; i = " + i + "; nKeys = " + nKeys);
+                    throw new IOException(e.getMessage());
+                }
+                p += valSize - prefixLen;
+                keys[i] = new Value(decoded, d, valSize);
+                d += valSize;
+            }
+            return p;
+        }
+
         /**
          * Write the node to the underlying page.
          * 
@@ -1309,9 +1567,7 @@ public class BTree extends Paged implements Lockable {
                     // keys that can be stored on one page. Each key is stored as follows:
                     // [valSize, prefixLen, value], where prefixLen specifies the number of
                     // leading bytes the key has in common with the previous key.
-                    int prefixLen = keys[i].commonPrefix(keys[i - 1]); // determine the common prefix
-                    if (prefixLen < 0 || prefixLen > Byte.MAX_VALUE)
-                        {prefixLen = 0;}
+                    final int prefixLen = calculatePrefixLen(i, i - 1); // determine the common prefix
                     // store the length of the prefix
                     temp[p++] = (byte) prefixLen;
                     // copy the remaining bytes, starting at prefixLen
@@ -2539,14 +2795,22 @@ public class BTree extends Paged implements Lockable {
             }
             int low = 0;
             int high = nKeys - 1;
+            // the number of leading bytes the key has in common with the keys
+            // below low and above high: as the keys are sorted, all keys in
+            // between share at least the smaller of both, so the comparison
+            // can skip these bytes
+            int lowPrefix = 0;
+            int highPrefix = 0;
             while (low <= high) {
                 final int mid = (low + high) >> 1;
                 final Value  midVal = keys[mid];
-                final int cmp = midVal.compareTo(key);
+                final int cmp = midVal.compareTo(key, Math.min(lowPrefix, highPrefix));
                 if (cmp < 0) {
                     low = mid + 1;
+                    lowPrefix = -cmp - 1;
                 } else if (cmp > 0) {
                     high = mid - 1;
+                    highPrefix = cmp - 1;
                 } else {
                     return mid;  // key found
                 }
@@ -2616,6 +2880,12 @@ public class BTree extends Paged implements Lockable {
         } else {
             buf.append(nf.format(cache.getHits() / (float)(cache.getFails() + cache.getHits())));
         }
+        final CompressedPageStore compressed = getCompressedPageStore();
+        if (compressed != null) {
+            buf.append(" Compression ratio : ").append(nf.format(compressed.getCompressionRatio()));
+            buf.append(" Decode time : ").append(compressed.getDecodeTime() / 1000000).append("ms");
+            buf.append(" for ").append(compressed.getPagesRead()).append(" pages");
+        }
         LOGSTATS.info(buf.toString());
     }
 
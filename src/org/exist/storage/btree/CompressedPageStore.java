@@ -0,0 +1,350 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.btree;
+
+import org.exist.util.ByteConversion;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the pages of a {@link Paged} file in compressed form.
+ *
+ * Instead of a fixed slot per page, each page is deflated and written to an
+ * extent of the data file whose size is a multiple of {@link #GRANULE} bytes.
+ * The file header keeps its place at the start of the data file. A separate
+ * page directory file, named like the data file plus {@link #DIRECTORY_SUFFIX},
+ * maps each page number to the offset and size of its extent:
+ *
+ * <pre>
+ * directory entry: [offset: long][capacity: int]   (offset 0 = page never written)
+ * extent:          [codec: byte][length: int][length bytes of page data]
+ * </pre>
+ *
+ * Only the page header and the used part of the page are compressed; the
+ * remainder of the page reads as zeros. Pages which do not shrink when
+ * deflated are stored as they are.
+ *
+ * A page is never overwritten in place: the new version is written to a free
+ * extent first, then the directory entry is updated, and only then the old
+ * extent is released. A page thus always reads either completely in its old
+ * or completely in its new version, carrying the LSN of that version, so that
+ * recovery redoes the journal entries exactly as for uncompressed files.
+ *
+ * Free extents are only kept in memory and are rebuilt from the directory
+ * when the file is opened.
+ */
+public final class CompressedPageStore {
+
+    public static final String DIRECTORY_SUFFIX = ".cpd";
+
+    /** the unit in which extents are allocated */
+    static final int GRANULE = 64;
+
+    private static final int DIRECTORY_ENTRY_LENGTH = 12;
+    private static final int EXTENT_HEADER_LENGTH = 5;
+
+    private static final byte CODEC_NONE = 0;
+    private static final byte CODEC_DEFLATE = 1;
+
+    /**
+     * Reads bytes of the data file, so that extents are read through the
+     * same channel, or memory mapping, as uncompressed pages.
+     */
+    @FunctionalInterface
+    interface DataReader {
+        void read(long offset, byte[] buf, int len) throws IOException;
+    }
+
+    private final RandomAccessFile data;
+    private final DataReader reader;
+    private final RandomAccessFile directory;
+    private final int pageSize;
+    private final long dataStart;
+
+    private long[] offsets;
+    private int[] capacities;
+    private long end;
+
+    /** free extents, indexed by their size in granules */
+    private final ArrayDeque<Long>[] freeExtents;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] extent;
+    private final byte[] directoryEntry = new byte[DIRECTORY_ENTRY_LENGTH];
+
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder pagesRead = new LongAdder();
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+    private final LongAdder bytesAfterCompression = new LongAdder();
+    private final LongAdder decodeTime = new LongAdder();
+
+    /**
+     * @param data the data file, also holding the file header
+     * @param reader reads from the data file
+     * @param directoryFile the page directory file, created if it does not exist
+     * @param headerSize the size of the file header at the start of the data file
+     * @param pageSize the size of an uncompressed page
+     * @param readOnly true if the files must not be modified
+     *
+     * @throws IOException if the page directory can not be read
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    CompressedPageStore(final RandomAccessFile data, final DataReader reader, final Path directoryFile,
+            final int headerSize, final int pageSize, final boolean readOnly) throws IOException {
+        this.data = data;
+        this.reader = reader;
+        this.directory = new RandomAccessFile(directoryFile.toFile(), readOnly ? "r" : "rw");
+        this.pageSize = pageSize;
+        this.dataStart = granules(headerSize) * (long) GRANULE;
+        this.extent = new byte[granules(EXTENT_HEADER_LENGTH + pageSize) * GRANULE];
+        this.freeExtents = new ArrayDeque[granules(extent.length) + 1];
+        for (int i = 0; i < freeExtents.length; i++) {
+            freeExtents[i] = new ArrayDeque<>();
+        }
+        loadDirectory();
+    }
+
+    private static int granules(final int len) {
+        return (len + GRANULE - 1) / GRANULE;
+    }
+
+    private void loadDirectory() throws IOException {
+        final int count = (int) (directory.length() / DIRECTORY_ENTRY_LENGTH);
+        final byte[] buf = new byte[count * DIRECTORY_ENTRY_LENGTH];
+        directory.seek(0);
+        directory.readFully(buf);
+        offsets = new long[Math.max(count, 16)];
+        capacities = new int[offsets.length];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = ByteConversion.byteToLong(buf, i * DIRECTORY_ENTRY_LENGTH);
+            capacities[i] = ByteConversion.byteToInt(buf, i * DIRECTORY_ENTRY_LENGTH + 8);
+        }
+
+        // every gap between the extents in use is free
+        final long[][] used = new long[count][];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] != 0) {
+                used[n++] = new long[] { offsets[i], capacities[i] };
+            }
+        }
+        Arrays.sort(used, 0, n, (a, b) -> Long.compare(a[0], b[0]));
+        end = dataStart;
+        for (int i = 0; i < n; i++) {
+            if (used[i][0] > end) {
+                release(end, used[i][0] - end);
+            }
+            end = Math.max(end, used[i][0] + used[i][1]);
+        }
+    }
+
+    /**
+     * Read a page into buf. Pages which have never been written read as zeros.
+     *
+     * @param pageNum the page number
+     * @param buf receives the page, must hold at least page size bytes
+     *
+     * @throws IOException if the page can not be read or decoded
+     */
+    synchronized void read(final long pageNum, final byte[] buf) throws IOException {
+        Arrays.fill(buf, 0, pageSize, (byte) 0);
+        if (pageNum >= offsets.length || offsets[(int) pageNum] == 0) {
+            return;
+        }
+        final int p = (int) pageNum;
+        reader.read(offsets[p], extent, capacities[p]);
+        final byte codec = extent[0];
+        final int len = ByteConversion.byteToInt(extent, 1);
+        if (codec == CODEC_NONE) {
+            System.arraycopy(extent, EXTENT_HEADER_LENGTH, buf, 0, len);
+        } else {
+            final long start = System.nanoTime();
+            inflater.reset();
+            inflater.setInput(extent, EXTENT_HEADER_LENGTH, len);
+            try {
+                int pos = 0;
+                while (!inflater.finished() && pos < pageSize) {
+                    final int inflated = inflater.inflate(buf, pos, pageSize - pos);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated compressed page " + pageNum);
+                    }
+                    pos += inflated;
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException("Corrupted compressed page " + pageNum + ": " + e.getMessage(), e);
+            }
+            decodeTime.add(System.nanoTime() - start);
+        }
+        pagesRead.increment();
+    }
+
+    /**
+     * Write the first len bytes of a page. The remainder of the page reads as zeros.
+     *
+     * @param pageNum the page number
+     * @param buf the page
+     * @param len the number of bytes of the page to store
+     *
+     * @throws IOException if the page can not be written
+     */
+    synchronized void write(final long pageNum, final byte[] buf, final int len) throws IOException {
+        if (pageNum >= Integer.MAX_VALUE) {
+            throw new IOException("page limit reached: " + pageNum);
+        }
+        deflater.reset();
+        deflater.setInput(buf, 0, len);
+        deflater.finish();
+        int stored = deflater.deflate(extent, EXTENT_HEADER_LENGTH, len);
+        if (deflater.finished() && stored < len) {
+            extent[0] = CODEC_DEFLATE;
+        } else {
+            extent[0] = CODEC_NONE;
+            System.arraycopy(buf, 0, extent, EXTENT_HEADER_LENGTH, len);
+            stored = len;
+        }
+        ByteConversion.intToByte(stored, extent, 1);
+
+        final int capacity = granules(EXTENT_HEADER_LENGTH + stored) * GRANULE;
+        final long offset = allocate(capacity);
+        // the data file is shared with the reads of the owning file
+        synchronized (data) {
+            data.seek(offset);
+            data.write(extent, 0, EXTENT_HEADER_LENGTH + stored);
+        }
+
+        final int p = (int) pageNum;
+        ensureCapacity(p);
+        final long oldOffset = offsets[p];
+        final int oldCapacity = capacities[p];
+        offsets[p] = offset;
+        capacities[p] = capacity;
+        writeDirectoryEntry(p);
+        if (oldOffset != 0) {
+            release(oldOffset, oldCapacity);
+        }
+
+        pagesWritten.increment();
+        bytesBeforeCompression.add(len);
+        bytesAfterCompression.add(stored);
+    }
+
+    private void ensureCapacity(final int pageNum) {
+        if (pageNum >= offsets.length) {
+            final int newLength = Math.max(pageNum + 1, (int) Math.min(Integer.MAX_VALUE, offsets.length * 2L));
+            offsets = Arrays.copyOf(offsets, newLength);
+            capacities = Arrays.copyOf(capacities, newLength);
+        }
+    }
+
+    private void writeDirectoryEntry(final int pageNum) throws IOException {
+        ByteConversion.longToByte(offsets[pageNum], directoryEntry, 0);
+        ByteConversion.intToByte(capacities[pageNum], directoryEntry, 8);
+        directory.seek((long) pageNum * DIRECTORY_ENTRY_LENGTH);
+        directory.write(directoryEntry);
+    }
+
+    /**
+     * Find a free extent of the given size, preferring an extent of exactly
+     * this size, then splitting a larger one, and finally appending to the file.
+     */
+    private long allocate(final int capacity) {
+        final int size = capacity / GRANULE;
+        for (int i = size; i < freeExtents.length; i++) {
+            final Long offset = freeExtents[i].pollLast();
+            if (offset != null) {
+                if (i > size) {
+                    freeExtents[i - size].addLast(offset + capacity);
+                }
+                return offset;
+            }
+        }
+        final long offset = end;
+        end += capacity;
+        return offset;
+    }
+
+    private void release(long offset, final long capacity) {
+        final int max = freeExtents.length - 1;
+        long size = capacity / GRANULE;
+        while (size > 0) {
+            final int chunk = (int) Math.min(size, max);
+            freeExtents[chunk].addLast(offset);
+            offset += (long) chunk * GRANULE;
+            size -= chunk;
+        }
+    }
+
+    void close() throws IOException {
+        directory.close();
+    }
+
+    /**
+     * @return the number of pages written since the file was opened
+     */
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    /**
+     * @return the number of pages read since the file was opened
+     */
+    public long getPagesRead() {
+        return pagesRead.sum();
+    }
+
+    /**
+     * @return the number of bytes of the pages written, before compression
+     */
+    public long getBytesBeforeCompression() {
+        return bytesBeforeCompression.sum();
+    }
+
+    /**
+     * @return the number of bytes of the pages written, after compression
+     */
+    public long getBytesAfterCompression() {
+        return bytesAfterCompression.sum();
+    }
+
+    /**
+     * @return the size of the written pages after compression relative to
+     * their size before, or 1 if no page has been written yet
+     */
+    public double getCompressionRatio() {
+        final long before = getBytesBeforeCompression();
+        return before == 0 ? 1.0 : getBytesAfterCompression() / (double) before;
+    }
+
+    /**
+     * @return the time in nanoseconds spent decompressing pages
+     */
+    public long getDecodeTime() {
+        return decodeTime.sum();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2017 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.util.io.TemporaryFileManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the keys of a btree to be built by a {@link BTree.BulkLoader}, when
+ * the keys are produced in any order and there may be too many of them to sort
+ * in memory. Keys are buffered with their pointers; once the buffer is full,
+ * it is sorted and written to a run in a temporary file. {@link #load(BTree.BulkLoader)}
+ * merges the runs and the buffer, passing the keys in ascending order. If a key
+ * was added more than once, only the pointer added first is kept.
+ *
+ * The temporary files are removed by {@link #close()}.
+ */
+public class KeySorter implements AutoCloseable {
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = (e1, e2) -> e1.key.compareTo(e2.key);
+
+    private final Entry[] buffer;
+    private int count = 0;
+
+    private final List<Run> runs = new ArrayList<>();
+
+    /**
+     * @param bufferSize the number of keys sorted in memory at once
+     */
+    public KeySorter(final int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize should be > 0");
+        }
+        this.buffer = new Entry[bufferSize];
+    }
+
+    /**
+     * Add a key.
+     *
+     * @param key the key, which must not be modified afterwards
+     * @param pointer the pointer associated with the key
+     *
+     * @throws IOException if the buffer is full and can not be written to a run
+     */
+    public void add(final Value key, final long pointer) throws IOException {
+        buffer[count++] = new Entry(key, pointer);
+        if (count == buffer.length) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the number of runs written to temporary files so far
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Pass all keys added so far to the loader in ascending order. This
+     * is done once, after the last key was added; the caller finishes the loader.
+     *
+     * @param loader the bulk loader
+     *
+     * @throws IOException if a run can not be read or a page not be written
+     * @throws BTreeException if a key is too large
+     */
+    public void load(final BTree.BulkLoader loader) throws IOException, BTreeException {
+        // sources which come first win on equal keys: the runs in the order they were written, then the buffer
+        final PriorityQueue<Source> queue = new PriorityQueue<>(runs.size() + 1,
+            Comparator.comparing((Source source) -> source.current, ENTRY_COMPARATOR)
+                .thenComparingInt(source -> source.order));
+        final List<Source> sources = new ArrayList<>(runs.size() + 1);
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                sources.add(new RunSource(runs.get(i), i));
+            }
+            Arrays.sort(buffer, 0, count, ENTRY_COMPARATOR);
+            sources.add(new BufferSource(runs.size()));
+            for (final Source source : sources) {
+                offer(queue, source);
+            }
+
+            Value lastKey = null;
+            Source source;
+            while ((source = queue.poll()) != null) {
+                final Entry entry = source.current;
+                if (lastKey == null || entry.key.compareTo(lastKey) != 0) {
+                    loader.add(entry.key, entry.pointer);
+                    lastKey = entry.key;
+                }
+                offer(queue, source);
+            }
+        } finally {
+            for (final Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    private static void offer(final PriorityQueue<Source> queue, final Source source) throws IOException {
+        if (source.advance()) {
+            queue.add(source);
+        }
+    }
+
+    /**
+     * Sort the buffer and write it to a new run.
+     */
+    private void spill() throws IOException {
+        Arrays.sort(buffer, 0, count, ENTRY_COMPARATOR);
+        final Run run = new Run(TemporaryFileManager.getInstance().getTemporaryFile());
+        runs.add(run);
+        try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.file)))) {
+            for (int i = 0; i < count; i++) {
+                final Entry entry = buffer[i];
+                os.writeInt(entry.key.getLength());
+                os.write(entry.key.data(), entry.key.start(), entry.key.getLength());
+                os.writeLong(entry.pointer);
+            }
+        }
+        run.size = count;
+        Arrays.fill(buffer, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Remove the runs and discard the buffered keys.
+     */
+    @Override
+    public void close() {
+        for (final Run run : runs) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(run.file);
+        }
+        runs.clear();
+        Arrays.fill(buffer, 0, count, null);
+        count = 0;
+    }
+
+    private static final class Entry {
+        final Value key;
+        final long pointer;
+
+        Entry(final Value key, final long pointer) {
+            this.key = key;
+            this.pointer = pointer;
+        }
+    }
+
+    private static final class Run {
+        final Path file;
+        int size;
+
+        Run(final Path file) {
+            this.file = file;
+        }
+    }
+
+    private abstract static class Source {
+        final int order;
+        Entry current;
+
+        Source(final int order) {
+            this.order = order;
+        }
+
+        /**
+         * Move to the next entry.
+         *
+         * @return false if there are no more entries
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() {
+        }
+    }
+
+    private class BufferSource extends Source {
+        private int next = 0;
+
+        BufferSource(final int order) {
+            super(order);
+        }
+
+        @Override
+        boolean advance() {
+            if (next < count) {
+                current = buffer[next++];
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static class RunSource extends Source {
+        private final DataInputStream is;
+        private int remaining;
+
+        RunSource(final Run run, final int order) throws IOException {
+            super(order);
+            this.is = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file)));
+            this.remaining = run.size;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            final byte[] data = new byte[is.readInt()];
+            is.readFully(data);
+            current = new Entry(new Value(data), is.readLong());
+            return true;
+        }
+
+        @Override
+        void close() {
+            try {
+                is.close();
+            } catch (final IOException e) {
+                // ignore
+            }
+        }
+    }
+}
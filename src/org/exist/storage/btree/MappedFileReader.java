@@ -0,0 +1,143 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads pages of a {@link Paged} file through read-only memory mappings
+ * instead of seek + read calls on a {@link java.io.RandomAccessFile}.
+ *
+ * The file is mapped in segments of a fixed size, which are created lazily
+ * when a page within the segment is first read. Segments are never mapped
+ * beyond the current end of file: if the file has grown since a segment was
+ * mapped, the segment is mapped again on the next read which needs the new
+ * region.
+ *
+ * Pages are still written through the file channel, which shares the
+ * operating system's page cache with the mappings. Writes are thus
+ * immediately visible to readers, and the order in which pages and journal
+ * entries reach the disk is the same as without memory mapping.
+ */
+final class MappedFileReader {
+
+    /** default size of a mapped segment: 64MB */
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    MappedFileReader(final FileChannel channel, final int pageSize) {
+        this(channel, pageSize, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedFileReader(final FileChannel channel, final int pageSize, final int segmentSize) {
+        this.channel = channel;
+        // segments always hold a whole number of pages
+        this.segmentSize = Math.max(pageSize, segmentSize - (segmentSize % pageSize));
+    }
+
+    /**
+     * Read len bytes starting at the given file offset into buf.
+     * Like {@link java.io.RandomAccessFile#read(byte[], int, int)},
+     * bytes beyond the end of file are left untouched in buf.
+     *
+     * @param offset the offset into the file
+     * @param buf the buffer to read into
+     * @param bufOffset the offset into buf
+     * @param len the number of bytes to read
+     *
+     * @throws IOException if the file can not be read
+     */
+    void read(final long offset, final byte[] buf, final int bufOffset, final int len) throws IOException {
+        final int segment = (int) (offset / segmentSize);
+        final int position = (int) (offset % segmentSize);
+        if (position + len <= segmentSize) {
+            final MappedByteBuffer mapped = getSegment(segment, position + len);
+            if (mapped != null) {
+                final ByteBuffer view = mapped.duplicate();
+                view.position(position);
+                view.get(buf, bufOffset, len);
+                return;
+            }
+        }
+
+        // crosses a segment boundary or lies beyond the end of file
+        final ByteBuffer dst = ByteBuffer.wrap(buf, bufOffset, len);
+        long pos = offset;
+        while (dst.hasRemaining()) {
+            final int read = channel.read(dst, pos);
+            if (read < 0) {
+                break;
+            }
+            pos += read;
+        }
+    }
+
+    private MappedByteBuffer getSegment(final int segment, final int required) throws IOException {
+        final MappedByteBuffer[] current = segments;
+        if (segment < current.length) {
+            final MappedByteBuffer mapped = current[segment];
+            if (mapped != null && mapped.capacity() >= required) {
+                return mapped;
+            }
+        }
+        return mapSegment(segment, required);
+    }
+
+    private synchronized MappedByteBuffer mapSegment(final int segment, final int required) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (segment < current.length) {
+            final MappedByteBuffer mapped = current[segment];
+            if (mapped != null && mapped.capacity() >= required) {
+                return mapped;
+            }
+        }
+
+        final long start = (long) segment * segmentSize;
+        final long length = Math.min(segmentSize, channel.size() - start);
+        if (length < required) {
+            return null;
+        }
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+        if (segment >= current.length) {
+            current = Arrays.copyOf(current, segment + 1);
+        } else {
+            current = current.clone();
+        }
+        current[segment] = mapped;
+        segments = current;
+        return mapped;
+    }
+
+    /**
+     * Release all mappings. The memory is returned to the
+     * operating system once the mappings are garbage collected.
+     */
+    synchronized void close() {
+        segments = new MappedByteBuffer[0];
+    }
+}
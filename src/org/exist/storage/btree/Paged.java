@@ -75,6 +75,10 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.journal.Lsn;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.lock.MultiReadReentrantLock;
+import org.exist.storage.lock.PageLatches;
+import org.exist.storage.lock.ReentrantReadWriteLock;
 import org.exist.util.ByteConversion;
 import org.exist.util.FileUtils;
 import org.exist.xquery.Constants;
@@ -124,19 +128,48 @@ public abstract class Paged implements AutoCloseable {
 
     protected static int PAGE_SIZE = 4096;
 
+    public static final String MEMORY_MAPPED_ATTRIBUTE = "memoryMapped";
+    public static final String PROPERTY_MEMORY_MAPPED = "db-connection.memory-mapped";
+
+    public static final String COMPRESS_PAGES_ATTRIBUTE = "compressPages";
+    public static final String PROPERTY_COMPRESS_PAGES = "db-connection.compress-pages";
+
+    public static final String PAGE_LATCHES_ATTRIBUTE = "pageLatches";
+    public static final String PROPERTY_PAGE_LATCHES = "db-connection.page-latches";
+
     private RandomAccessFile raf;
     private Path file;
     private final FileHeader fileHeader;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
 
+    /** if memory mapping is enabled, pages are read through this reader instead of raf */
+    private final boolean memoryMapped;
+    private MappedFileReader mappedReader = null;
+
+    /** if page compression is enabled, new files store their pages through a compressed page store */
+    private final boolean compressPages;
+    private CompressedPageStore compressedStore = null;
+
+    /**
+     * if page latches are enabled, readers share the file lock and
+     * pages are latched while they are loaded
+     */
+    private final boolean latchPages;
+    private PageLatches pageLatches = null;
+
+    /** pages are written through this buffer, guarded by its monitor */
     private final byte[] tempPageData;
-    private final byte[] tempHeaderData;
 	
     public Paged(final BrokerPool pool) {
         this.fileHeader = createFileHeader(pool.getPageSize());
         this.tempPageData = new byte[fileHeader.pageSize];
-        this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        this.memoryMapped = pool.getConfiguration() != null &&
+                pool.getConfiguration().getProperty(PROPERTY_MEMORY_MAPPED, false);
+        this.compressPages = pool.getConfiguration() != null &&
+                pool.getConfiguration().getProperty(PROPERTY_COMPRESS_PAGES, false);
+        this.latchPages = pool.getConfiguration() != null &&
+                pool.getConfiguration().getProperty(PROPERTY_PAGE_LATCHES, false);
     }
 
     public abstract short getFileVersion();
@@ -153,6 +186,59 @@ public abstract class Paged implements AutoCloseable {
         return readOnly;
     }
 
+    /**
+     * Returns true if pages of this file are read through
+     * memory mappings.
+     *
+     * @return true if memory mapping is used
+     */
+    public final boolean isMemoryMapped() {
+        return mappedReader != null;
+    }
+
+    /**
+     * Returns true if the pages of this file are stored compressed.
+     *
+     * @return true if page compression is used
+     */
+    public final boolean isCompressed() {
+        return compressedStore != null;
+    }
+
+    /**
+     * Returns the compressed page store, which reports the compression
+     * ratio and decode time of this file.
+     *
+     * @return the compressed page store or null if the pages are not compressed
+     */
+    public final CompressedPageStore getCompressedPageStore() {
+        return compressedStore;
+    }
+
+    /**
+     * Returns the latches guarding the loading of pages of this file.
+     *
+     * @return the page latches or null if page latches are disabled
+     */
+    public final PageLatches getPageLatches() {
+        return pageLatches;
+    }
+
+    /**
+     * Create the lock of this file. If page latches are enabled,
+     * readers share the lock, otherwise it is exclusive.
+     *
+     * @param id the id of the lock
+     * @return a new lock
+     */
+    protected final Lock createLock(final String id) {
+        return latchPages ? new MultiReadReentrantLock(id) : new ReentrantReadWriteLock(id);
+    }
+
+    private Path getDirectoryFile() {
+        return file.resolveSibling(FileUtils.fileName(file) + CompressedPageStore.DIRECTORY_SUFFIX);
+    }
+
     /**
      * Close the underlying files.
      *
@@ -161,6 +247,15 @@ public abstract class Paged implements AutoCloseable {
     @Override
     public void close() throws DBException {
         try {
+            if (mappedReader != null) {
+                mappedReader.close();
+            }
+            if (compressedStore != null) {
+                compressedStore.close();
+            }
+            if (pageLatches != null) {
+                pageLatches.close();
+            }
             raf.close();
         } catch (final IOException e) {
             throw new DBException("an error occurred while closing database file: " + e.getMessage());
@@ -223,6 +318,18 @@ public abstract class Paged implements AutoCloseable {
      * @throws IOException
      */
     public void backupToStream(final OutputStream os) throws IOException {
+        if (compressedStore != null) {
+            // write the pages uncompressed, at their fixed offsets, so that
+            // the backup can be used like any uncompressed file
+            final byte[] buf = new byte[fileHeader.pageSize];
+            readAt(0, buf, fileHeader.headerSize);
+            os.write(buf, 0, fileHeader.headerSize);
+            for (long pageNum = 0; pageNum < fileHeader.totalCount; pageNum++) {
+                compressedStore.read(pageNum, buf);
+                os.write(buf);
+            }
+            return;
+        }
         raf.seek(0);
         final byte[] buf = new byte[4096];
         int len;
@@ -255,12 +362,22 @@ public abstract class Paged implements AutoCloseable {
      */
     public void closeAndRemove() {
         try {
+            if (mappedReader != null) {
+                mappedReader.close();
+            }
+            if (compressedStore != null) {
+                compressedStore.close();
+            }
+            if (pageLatches != null) {
+                pageLatches.close();
+            }
             raf.close();
         } catch (final IOException e) {
             //TODO : forward the exception ? -pb
             LOG.error("Failed to close data file: " + file.toAbsolutePath().toString());
         }
         FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(getDirectoryFile());
     }
 
     protected final Page getFreePage() throws IOException {
@@ -406,6 +523,44 @@ public abstract class Paged implements AutoCloseable {
             LOG.warn("An exception occurred while opening database file " +
                 file.toAbsolutePath().toString() + ": " + e.getMessage(), e);
         }
+        if (memoryMapped && raf != null) {
+            mappedReader = new MappedFileReader(raf.getChannel(), fileHeader.pageSize);
+        }
+        // the format of an existing file does not change: it is compressed
+        // if and only if it has a page directory
+        final Path directoryFile = getDirectoryFile();
+        if (raf != null && (Files.exists(directoryFile) || (fileIsNew && compressPages && !readOnly))) {
+            try {
+                compressedStore = new CompressedPageStore(raf, this::readAt, directoryFile,
+                        fileHeader.headerSize, fileHeader.pageSize, readOnly);
+            } catch (final IOException e) {
+                throw new DBException("Failed to open page directory " +
+                        directoryFile.toAbsolutePath().toString() + ": " + e.getMessage());
+            }
+        }
+        if (latchPages) {
+            pageLatches = PageLatches.open(file.toAbsolutePath().toString());
+        }
+    }
+
+    /**
+     * Read len bytes from the file, starting at offset, either through
+     * the memory mapping or the random access file.
+     *
+     * Seeking and reading the random access file is synchronized on it,
+     * as readers sharing the file lock may read pages concurrently.
+     */
+    private void readAt(final long offset, final byte[] buf, final int len) throws IOException {
+        if (mappedReader != null) {
+            mappedReader.read(offset, buf, 0, len);
+        } else {
+            synchronized (raf) {
+                if (raf.getFilePointer() != offset) {
+                    raf.seek(offset);
+                }
+                raf.read(buf, 0, len);
+            }
+        }
     }
 
     /**
@@ -802,9 +957,11 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void write() throws IOException {
-            raf.seek(0);
             write(buf);
-            raf.write(buf);
+            synchronized (raf) {
+                raf.seek(0);
+                raf.write(buf);
+            }
             dirty = false;
         }
     }
@@ -898,16 +1055,21 @@ public abstract class Paged implements AutoCloseable {
 
         public byte[] read() throws IOException {
             try {
-                if (raf.getFilePointer() != offset) {
-                    raf.seek(offset);
+                // pages may be read concurrently, so they are read into local buffers
+                if (compressedStore != null) {
+                    final byte[] pageData = new byte[fileHeader.pageSize];
+                    compressedStore.read(pageNum, pageData);
+                    header.read(pageData, 0);
+                    return Arrays.copyOfRange(pageData, fileHeader.pageHeaderSize,
+                            fileHeader.pageHeaderSize + header.dataLen);
                 }
-                Arrays.fill(tempHeaderData, (byte)0);
-                raf.read(tempHeaderData);
+                final byte[] headerData = new byte[fileHeader.pageHeaderSize];
+                readAt(offset, headerData, headerData.length);
                 // Read in the header
-                header.read(tempHeaderData, 0);
+                header.read(headerData, 0);
                 // Read the working data
                 final byte[] workData = new byte[header.dataLen];
-                raf.read(workData);
+                readAt(offset + headerData.length, workData, workData.length);
                 return workData;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: " + getPageInfo(), e);
@@ -925,6 +1087,13 @@ public abstract class Paged implements AutoCloseable {
         }
 
         private final void write(final byte[] data) throws IOException {
+            // readers sharing the file lock may write out pages evicted from the cache
+            synchronized (tempPageData) {
+                writePage(data);
+            }
+        }
+
+        private void writePage(final byte[] data) throws IOException {
             if(data == null) {
                 // Removed page: fill with 0
                 Arrays.fill(tempPageData, (byte)0);
@@ -940,10 +1109,19 @@ public abstract class Paged implements AutoCloseable {
                     System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
                 }
             }
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
+            if (compressedStore != null) {
+                // only the used part of the page is read back
+                final int len = Math.max(header.dataLen, data == null ? 0 : data.length);
+                compressedStore.write(pageNum, tempPageData,
+                        Math.min(fileHeader.pageSize, fileHeader.pageHeaderSize + len));
+                return;
+            }
+            synchronized (raf) {
+                if (raf.getFilePointer() != offset) {
+                    raf.seek(offset);
+                }
+                raf.write(tempPageData);
             }
-            raf.write(tempPageData);
         }
 
         @Override
@@ -963,11 +1141,12 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public void dumpPage() throws IOException {
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
             final byte[] data = new byte[fileHeader.pageSize];
-            raf.read(data);
+            if (compressedStore != null) {
+                compressedStore.read(pageNum, data);
+            } else {
+                readAt(offset, data, data.length);
+            }
             LOG.debug("Contents of page " + pageNum + ": " + hexDump(data));
         }
     }
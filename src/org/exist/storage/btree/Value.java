@@ -159,8 +159,22 @@ public class Value implements Comparable<Object> {
     }
 
     public final int compareTo(Value value) {
+        return compareTo(value, 0);
+    }
+
+    /**
+     * Compare to another value, which is known to start with the
+     * same offset bytes as this value.
+     *
+     * @param value the value to compare to
+     * @param offset the number of leading bytes both values have in common
+     * @return as {@link #compareTo(Value)}: 0 if the values are equal, otherwise
+     * the number of leading bytes both values have in common plus one, negated
+     * if this value is smaller
+     */
+    public final int compareTo(Value value, int offset) {
         final int stop = len > value.len ? value.len : len;
-        for (int i = 0; i < stop; i++) {
+        for (int i = Math.min(offset, stop); i < stop; i++) {
             final byte b1 = data[pos + i];
             final byte b2 = value.data[value.pos + i];
             if (b1 != b2){
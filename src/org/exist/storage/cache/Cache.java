@@ -154,6 +154,14 @@ public interface Cache<T extends Cacheable> {
      */
     int getFails();
 
+    /**
+     * Get the number of times where an object has been
+     * replaced to make room for another one.
+     *
+     * @return number of replaced objects
+     */
+    int getEvictions();
+
     /**
      * Get the load factor if the cache
      *
@@ -234,6 +234,11 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 		return accounting.getMisses();
 	}
 
+	@Override
+	public int getEvictions() {
+		return accounting.getEvictions();
+	}
+
     public int getThrashing() {
         return accounting.getThrashing();
     }
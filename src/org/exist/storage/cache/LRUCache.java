@@ -152,6 +152,11 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	public int getFails() {
 		return accounting.getMisses();
 	}
+
+	@Override
+	public int getEvictions() {
+		return accounting.getEvictions();
+	}
  
     public int getThrashing() {
         return accounting.getThrashing();
@@ -0,0 +1,40 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Thread-safe counterpart of {@link BTreeCache}: the clock hand
+ * will only replace inner btree pages if a complete sweep over
+ * a stripe did not find a replaceable leaf page.
+ */
+@ThreadSafe
+public class StripedBTreeCache<T extends BTreeCacheable> extends StripedCache<T> {
+
+    public StripedBTreeCache(final String name, final Class<T> cacheableClazz, final int size, final double growthFactor, final double growthThreshold, final String type) {
+        super(name, cacheableClazz, size, growthFactor, growthThreshold, type);
+    }
+
+    @Override
+    protected boolean isReplaceable(final T cached, final int sweeps) {
+        return sweeps > 0 || !cached.isInnerPage();
+    }
+}
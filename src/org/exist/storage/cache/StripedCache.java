@@ -0,0 +1,470 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+import org.exist.util.hashtable.Long2ObjectHashMap;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe cache implementation which partitions its buffers into a fixed
+ * number of independently locked stripes.
+ *
+ * Each page is assigned to a stripe by its key. Within a stripe, pages are
+ * replaced using the GClock algorithm (see {@link GClockCache}): a clock hand
+ * sweeps over the buffers, decrementing the reference count of each page, and
+ * the first page whose count drops below one and which allows to be unloaded
+ * is replaced.
+ *
+ * Lookups and reference count updates only take the read lock of a single
+ * stripe, so concurrent readers never block each other. Insertions, removals and
+ * replacements take the write lock of the affected stripe only. Resizing the
+ * cache locks all stripes in order.
+ *
+ * Hits, misses and evictions are maintained in striped counters and are
+ * therefore cheap to update from many threads.
+ *
+ * @param <T> The type that implements {@link Cacheable}
+ */
+@ThreadSafe
+public class StripedCache<T extends Cacheable> implements Cache<T> {
+    private final static Logger LOG = LogManager.getLogger(StripedCache.class);
+
+    /** the maximum number of stripes used by a cache */
+    public final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /** the minimum number of buffers a single stripe should hold */
+    private final static int MIN_STRIPE_SIZE = 4;
+
+    private final String name;
+    private final Class<T> cacheableClazz;
+    private final double growthFactor;
+    private final String type;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private volatile int size;
+
+    private final Accounting accounting;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile int hitsOld = 0;
+    private volatile CacheManager cacheManager = null;
+
+    public StripedCache(final String name, final Class<T> cacheableClazz, final int size, final double growthFactor, final double growthThreshold, final String type) {
+        this(name, cacheableClazz, size, growthFactor, growthThreshold, type, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public StripedCache(final String name, final Class<T> cacheableClazz, final int size, final double growthFactor, final double growthThreshold, final String type, final int concurrencyLevel) {
+        this.name = name;
+        this.cacheableClazz = cacheableClazz;
+        this.size = size;
+        this.growthFactor = growthFactor;
+        this.type = type;
+        this.accounting = new Accounting(growthThreshold);
+        this.accounting.setTotalSize(size);
+
+        int stripeCount = 1;
+        while (stripeCount < concurrencyLevel && (stripeCount << 1) * MIN_STRIPE_SIZE <= size) {
+            stripeCount <<= 1;
+        }
+        this.stripeMask = stripeCount - 1;
+        @SuppressWarnings("unchecked")
+        final Stripe[] stripes = (Stripe[]) new StripedCache<?>.Stripe[stripeCount];
+        this.stripes = stripes;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeCapacity(size, stripeCount, i));
+        }
+    }
+
+    /**
+     * Distributes the total capacity as evenly as possible
+     * between the stripes.
+     */
+    private static int stripeCapacity(final int size, final int stripeCount, final int stripe) {
+        final int capacity = size / stripeCount + (stripe < size % stripeCount ? 1 : 0);
+        return Math.max(1, capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] createArray(final int size) {
+        return (T[]) Array.newInstance(cacheableClazz, size);
+    }
+
+    private Stripe stripeFor(final long key) {
+        // spread the bits of the page number, as consecutive pages are often accessed together
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 32);
+        return stripes[(int) h & stripeMask];
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item) {
+        add(item, 1);
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        final Stripe stripe = stripeFor(item.getKey());
+
+        // fast path: the item is already cached, only bump its reference count
+        stripe.lock.readLock().lock();
+        try {
+            final T old = stripe.map.get(item.getKey());
+            if (old != null) {
+                old.incReferenceCount();
+                return;
+            }
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+
+        final boolean replaced;
+        stripe.lock.writeLock().lock();
+        try {
+            replaced = stripe.add(item, initialRefCount);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+
+        // must be called without holding a stripe lock, as a resize locks all stripes
+        if (replaced) {
+            evictions.increment();
+            final boolean resizeNeeded;
+            synchronized (accounting) {
+                accounting.replacedPage(item);
+                resizeNeeded = accounting.resizeNeeded();
+            }
+            final CacheManager manager = cacheManager;
+            if (manager != null && growthFactor > 1.0 && resizeNeeded) {
+                manager.requestMem(this);
+            }
+        }
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        final Stripe stripe = stripeFor(key);
+        final T item;
+        stripe.lock.readLock().lock();
+        try {
+            item = stripe.map.get(key);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+        if (item == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return item;
+    }
+
+    @Override
+    public void remove(final T item) {
+        final Stripe stripe = stripeFor(item.getKey());
+        stripe.lock.writeLock().lock();
+        try {
+            stripe.remove(item.getKey());
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        boolean flushed = false;
+        int written = 0;
+        for (final Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                for (int i = 0; i < stripe.count; i++) {
+                    final T cached = stripe.items[i];
+                    if (cached != null && cached.sync(false)) {
+                        ++written;
+                        flushed = true;
+                    }
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace(written + " pages written to disk");
+        }
+        return flushed;
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        for (final Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                for (int i = 0; i < stripe.count; i++) {
+                    final T cached = stripe.items[i];
+                    if (cached != null && cached.isDirty()) {
+                        return true;
+                    }
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getBuffers() {
+        return size;
+    }
+
+    @Override
+    public int getUsedBuffers() {
+        int used = 0;
+        for (final Stripe stripe : stripes) {
+            used += stripe.used;
+        }
+        return used;
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public int getHits() {
+        return (int) hits.sum();
+    }
+
+    @Override
+    public int getFails() {
+        return (int) misses.sum();
+    }
+
+    @Override
+    public int getEvictions() {
+        return (int) evictions.sum();
+    }
+
+    public int getThrashing() {
+        synchronized (accounting) {
+            return accounting.getThrashing();
+        }
+    }
+
+    /**
+     * Returns the number of independently locked stripes.
+     *
+     * @return the number of stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        for (final Stripe stripe : stripes) {
+            stripe.lock.writeLock().lock();
+        }
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i].resize(stripeCapacity(newSize, stripes.length, i));
+            }
+            this.size = newSize;
+            synchronized (accounting) {
+                accounting.reset();
+                accounting.setTotalSize(newSize);
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public int getLoad() {
+        final int currentHits = getHits();
+        if (hitsOld == 0) {
+            hitsOld = currentHits;
+            return Integer.MAX_VALUE;
+        }
+        final int load = currentHits - hitsOld;
+        hitsOld = currentHits;
+        return load;
+    }
+
+    /**
+     * Determines if a page may be replaced by the clock hand.
+     * Subclasses may override this to protect certain pages
+     * during the first sweeps.
+     *
+     * @param cached the page to check
+     * @param sweeps the number of complete sweeps over the stripe which did not
+     *               find a replaceable page
+     *
+     * @return true if the page may be replaced
+     */
+    protected boolean isReplaceable(final T cached, final int sweeps) {
+        return true;
+    }
+
+    /**
+     * A single stripe of the cache: a GClock buffer ring with its own
+     * map and lock. All fields are guarded by {@link #lock}.
+     */
+    private final class Stripe {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        T[] items;
+        Long2ObjectHashMap<T> map;
+        int capacity;
+        int count = 0;
+        volatile int used = 0;
+        int hand = 0;
+
+        Stripe(final int capacity) {
+            this.capacity = capacity;
+            this.items = createArray(capacity);
+            this.map = new Long2ObjectHashMap<>(capacity * 2);
+        }
+
+        /**
+         * @return true if a cached page had to be replaced
+         */
+        boolean add(final T item, final int initialRefCount) {
+            final T old = map.get(item.getKey());
+            if (old != null) {
+                old.incReferenceCount();
+                return false;
+            }
+            item.setReferenceCount(initialRefCount);
+            if (count < capacity) {
+                items[count++] = item;
+                map.put(item.getKey(), item);
+                used++;
+                return false;
+            }
+            return replace(item);
+        }
+
+        boolean replace(final T item) {
+            int sweeps = 0;
+            int scanned = 0;
+            while (true) {
+                final int bucket = hand;
+                hand = (hand + 1) % count;
+                final T old = items[bucket];
+                if (old == null) {
+                    items[bucket] = item;
+                    map.put(item.getKey(), item);
+                    used++;
+                    return false;
+                }
+                if (old.decReferenceCount() < 1 && old.getKey() != item.getKey()
+                        && old.allowUnload() && isReplaceable(old, sweeps)) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace(name + " replacing " + old.getKey() + " for " + item.getKey());
+                    }
+                    map.remove(old.getKey());
+                    old.sync(true);
+                    items[bucket] = item;
+                    map.put(item.getKey(), item);
+                    return true;
+                }
+                if (++scanned == count) {
+                    scanned = 0;
+                    sweeps++;
+                }
+            }
+        }
+
+        void remove(final long key) {
+            if (map.remove(key) == null) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (items[i] != null && items[i].getKey() == key) {
+                    items[i] = null;
+                    used--;
+                    return;
+                }
+            }
+            LOG.error("item not found in list");
+        }
+
+        void resize(final int newCapacity) {
+            if (newCapacity < count) {
+                // unload pages until the remaining ones fit into the new capacity
+                final T[] newItems = createArray(newCapacity);
+                final Long2ObjectHashMap<T> newMap = new Long2ObjectHashMap<>(newCapacity * 2);
+                int newCount = 0;
+                for (int i = 0; i < count; i++) {
+                    final T cached = items[i];
+                    if (cached == null) {
+                        continue;
+                    }
+                    if (newCount < newCapacity) {
+                        newItems[newCount++] = cached;
+                        newMap.put(cached.getKey(), cached);
+                    } else {
+                        cached.sync(true);
+                    }
+                }
+                items = newItems;
+                map = newMap;
+                count = newCount;
+                used = newCount;
+            } else {
+                final T[] newItems = createArray(newCapacity);
+                System.arraycopy(items, 0, newItems, 0, count);
+                items = newItems;
+            }
+            capacity = newCapacity;
+            hand = 0;
+        }
+    }
+}
@@ -47,7 +47,6 @@ import org.exist.numbering.NodeId;
 import org.exist.stax.EmbeddedXMLStreamReader;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.BufferStats;
-import org.exist.storage.CacheManager;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeBroker.NodeRef;
@@ -61,13 +60,13 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.journal.JournalException;
 import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Loggable;
 import org.exist.storage.journal.Lsn;
 import org.exist.storage.lock.Lock;
-import org.exist.storage.lock.ReentrantReadWriteLock;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.PageLatches;
 import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.util.hashtable.Object2LongIdentityHashMap;
@@ -188,11 +187,11 @@ public class DOMFile extends BTree implements Lockable {
 
     public DOMFile(final BrokerPool pool, final byte id, final Path dataDir, final Configuration config) throws DBException {
         super(pool, id, true, pool.getCacheManager());
-        lock = new ReentrantReadWriteLock(getFileName());
+        lock = createLock(getFileName());
         fileHeader = (BTreeFileHeader)getFileHeader();
         fileHeader.setPageCount(0);
         fileHeader.setTotalCount(0);
-        dataCache = new LRUCache<>(getFileName(), 256, 0.0, 1.0, CacheManager.DATA_CACHE);
+        dataCache = cacheManager.newDataCache(getFileName(), DOMPage.class, 256, 0.0, 1.0);
         cacheManager.registerCache(dataCache);
         final Path file = dataDir.resolve(getFileName());
         setFile(file);
@@ -251,7 +250,23 @@ public class DOMFile extends BTree implements Lockable {
     protected final DOMPage getDOMPage(final long pointer) {
         DOMPage page = dataCache.get(pointer);
         if (page == null) {
-            page = new DOMPage(pointer);
+            final PageLatches latches = getPageLatches();
+            if (latches == null || lock.isLockedForWrite()) {
+                page = new DOMPage(pointer);
+            } else {
+                // readers share the file lock: latch the page and cache it,
+                // so that it is loaded only once
+                latches.acquire(pointer, LockMode.WRITE_LOCK);
+                try {
+                    page = dataCache.get(pointer);
+                    if (page == null) {
+                        page = new DOMPage(pointer);
+                        dataCache.add(page);
+                    }
+                } finally {
+                    latches.release(pointer, LockMode.WRITE_LOCK);
+                }
+            }
         }
         return page;
     }
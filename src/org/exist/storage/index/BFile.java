@@ -25,7 +25,6 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.storage.BrokerPool;
 import org.exist.storage.BufferStats;
-import org.exist.storage.CacheManager;
 import org.exist.storage.DefaultCacheManager;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.StorageAddress;
@@ -37,7 +36,6 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
@@ -47,7 +45,7 @@ import org.exist.storage.journal.Loggable;
 import org.exist.storage.journal.Lsn;
 import org.exist.storage.lock.Lock;
 import org.exist.storage.lock.Lock.LockMode;
-import org.exist.storage.lock.ReentrantReadWriteLock;
+import org.exist.storage.lock.PageLatches;
 import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.util.sanity.SanityCheck;
@@ -148,10 +146,10 @@ public class BFile extends BTree {
             final double cacheGrowth, final double thresholdData) throws DBException {
         super(pool, fileId, recoveryEnabled, cacheManager, file);
         fileHeader = (BFileHeader) getFileHeader();
-        dataCache = new LRUCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, CacheManager.DATA_CACHE);
+        dataCache = cacheManager.newDataCache(FileUtils.fileName(file), DataPage.class, 64, cacheGrowth, thresholdData);
         cacheManager.registerCache(dataCache);
         minFree = PAGE_MIN_FREE;
-        lock = new ReentrantReadWriteLock(FileUtils.fileName(file));
+        lock = createLock(FileUtils.fileName(file));
         maxValueSize = fileHeader.getWorkSize() / 2;
         
         if(exists()) {
@@ -547,16 +545,11 @@ public class BFile extends BTree {
     private DataPage getDataPage(final long pos, final boolean initialize) throws IOException {
         final DataPage wp = (DataPage) dataCache.get(pos);
         if (wp == null) {
-            final Page page = getPage(pos);
-            if (page == null) {
-                LOG.debug("page " + pos + " not found!");
-                return null;
+            final PageLatches latches = getPageLatches();
+            if (initialize && latches != null && !lock.isLockedForWrite()) {
+                return getLatchedDataPage(latches, pos);
             }
-            final byte[] data = page.read();
-            if (page.getPageHeader().getStatus() == MULTI_PAGE) {
-                return new OverflowPage(page, data);
-            }
-            return new SinglePage(page, data, initialize);
+            return readDataPage(pos, initialize);
         } else if (wp.getPageHeader().getStatus() == MULTI_PAGE) {
             return new OverflowPage(wp);
         } else {
@@ -564,6 +557,40 @@ public class BFile extends BTree {
         }
     }
 
+    /**
+     * Readers share the file lock if page latches are enabled: latch the page
+     * while it is read and cache it, so that it is loaded only once.
+     */
+    private DataPage getLatchedDataPage(final PageLatches latches, final long pos) throws IOException {
+        latches.acquire(pos, LockMode.WRITE_LOCK);
+        try {
+            final DataPage wp = (DataPage) dataCache.get(pos);
+            if (wp != null) {
+                return wp.getPageHeader().getStatus() == MULTI_PAGE ? new OverflowPage(wp) : wp;
+            }
+            final DataPage page = readDataPage(pos, true);
+            if (page != null) {
+                dataCache.add(page.getFirstPage());
+            }
+            return page;
+        } finally {
+            latches.release(pos, LockMode.WRITE_LOCK);
+        }
+    }
+
+    private DataPage readDataPage(final long pos, final boolean initialize) throws IOException {
+        final Page page = getPage(pos);
+        if (page == null) {
+            LOG.debug("page " + pos + " not found!");
+            return null;
+        }
+        final byte[] data = page.read();
+        if (page.getPageHeader().getStatus() == MULTI_PAGE) {
+            return new OverflowPage(page, data);
+        }
+        return new SinglePage(page, data, initialize);
+    }
+
     private SinglePage getSinglePage(final long pos) throws IOException {
         return getSinglePage(pos, false);
     }
@@ -704,6 +731,24 @@ public class BFile extends BTree {
         }
     }
 
+    /**
+     * Store a value while bulk loading the file, see {@link BTree#bulkLoad(Txn, double)}.
+     * The value is written to the data pages, its key is added to the loader.
+     *
+     * @param loader the bulk loader of this file
+     * @param key the key, greater than all keys loaded before
+     * @param value the value
+     * @return the address of the stored value
+     *
+     * @throws IOException if the value can not be stored
+     * @throws BTreeException if the key is not in ascending order or too large
+     */
+    public long put(final BulkLoader loader, final Value key, final ByteArray value) throws IOException, BTreeException {
+        final long p = storeValue(loader.getTransaction(), value);
+        loader.add(key, p);
+        return p;
+    }
+
     public void remove(final Value key) {
         remove(null, key);
     }
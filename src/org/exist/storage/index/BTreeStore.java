@@ -5,7 +5,6 @@ import org.exist.storage.DefaultCacheManager;
 import org.exist.storage.btree.BTree;
 import org.exist.storage.btree.DBException;
 import org.exist.storage.lock.Lock;
-import org.exist.storage.lock.ReentrantReadWriteLock;
 import org.exist.util.FileUtils;
 
 import java.nio.file.Path;
@@ -18,7 +17,7 @@ public class BTreeStore extends BTree {
 
     public BTreeStore(final BrokerPool pool, final byte fileId, final boolean recoverEnabled, final Path file, final DefaultCacheManager cacheManager) throws DBException {
         super(pool, fileId, recoverEnabled, cacheManager, file);
-        lock = new ReentrantReadWriteLock(FileUtils.fileName(file));
+        lock = createLock(FileUtils.fileName(file));
 
         if(exists()) {
             open(FILE_FORMAT_VERSION_ID);
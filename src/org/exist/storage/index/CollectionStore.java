@@ -36,6 +36,7 @@ public class CollectionStore extends BFile {
 
     public final static byte KEY_TYPE_COLLECTION = 0;
     public final static byte KEY_TYPE_DOCUMENT = 1;
+    public final static byte KEY_TYPE_BLOB = 2;
 
     private Stack<Integer> freeResourceIds = new Stack<>();
     private Stack<Integer> freeCollectionIds = new Stack<>();
@@ -228,4 +229,23 @@ public class CollectionStore extends BFile {
             pos = OFFSET_TYPE;
         }
     }
+
+    /**
+     * The key of the reference count of a blob in the blob store,
+     * see {@link org.exist.dom.persistent.BinaryDocument#getBlobId()}.
+     */
+    public static class BlobKey extends Value {
+
+        public static final int OFFSET_TYPE = 0;
+        public static final int LENGTH_TYPE = 1; //sizeof byte
+        public static final int OFFSET_VALUE = OFFSET_TYPE + LENGTH_TYPE; //1
+
+        public BlobKey(byte[] blobId) {
+            len = LENGTH_TYPE + blobId.length;
+            data = new byte[len];
+            data[OFFSET_TYPE] = KEY_TYPE_BLOB;
+            System.arraycopy(blobId, 0, data, OFFSET_VALUE, blobId.length);
+            pos = OFFSET_TYPE;
+        }
+    }
 }
@@ -23,6 +23,7 @@ package org.exist.storage.journal;
 
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Sync the current journal file by calling {@link java.nio.channels.FileChannel#force(boolean)}.
@@ -41,7 +42,7 @@ public class FileSyncThread extends Thread {
 
 	// guarded by latch
     private FileChannel endOfLog;
-    private Object latch;
+    private final Lock latch;
     
     // guarded by this
     private boolean syncTriggered = false;
@@ -55,7 +56,7 @@ public class FileSyncThread extends Thread {
      * 
      * @param latch
      */
-    public FileSyncThread(Object latch) {
+    public FileSyncThread(final Lock latch) {
         super();
         this.latch = latch;
     }
@@ -68,9 +69,12 @@ public class FileSyncThread extends Thread {
      * @param channel
      */
     public void setChannel(FileChannel channel) {
-    	synchronized (latch) {
-            endOfLog = channel;			
-		}
+        latch.lock();
+        try {
+            endOfLog = channel;
+        } finally {
+            latch.unlock();
+        }
     }
 
     /**
@@ -95,7 +99,8 @@ public class FileSyncThread extends Thread {
      * Close the underlying channel.
      */
     public void closeChannel() {
-        synchronized (latch) {
+        latch.lock();
+        try {
         	if (endOfLog != null) {
         		try {
         			endOfLog.close();
@@ -103,6 +108,8 @@ public class FileSyncThread extends Thread {
         			// may occur during shutdown
         		}
         	}
+        } finally {
+            latch.unlock();
         }
     }
 
@@ -129,7 +136,8 @@ public class FileSyncThread extends Thread {
     }
 
     private void sync() {
-        synchronized (latch) {
+        latch.lock();
+        try {
         	//endOfLog may be null if setChannel wasn't called for some reason.
         	if (endOfLog != null) {
         		try {
@@ -139,6 +147,8 @@ public class FileSyncThread extends Thread {
         		}
         	}
             syncTriggered = false;
+        } finally {
+            latch.unlock();
         }
     }
 }
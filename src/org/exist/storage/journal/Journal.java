@@ -30,6 +30,8 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
@@ -54,6 +56,12 @@ import org.exist.util.sanity.SanityCheck;
  * A buffer is used to temporarily buffer journal entries. To guarantee consistency, the buffer will be flushed
  * and the journal is synched after every commit or whenever a db page is written to disk.
  * 
+ * If group commit is enabled, committing transactions call {@link #flushToLsn(long)} instead. The first
+ * committer to arrive becomes the leader: it swaps the journal buffer against a spare one, writes
+ * (and syncs) the full buffer while other threads continue to append entries to the new buffer, and then
+ * wakes up all committers whose entries were contained in the batch. This way, many concurrent commits
+ * share a single write and sync of the journal.
+ * 
  * Each entry has the structure:
  * 
  * <pre>[byte: entryType, long: transactionId, short length, byte[] data, short backLink]</pre>
@@ -119,7 +127,7 @@ public class Journal {
     private final FileSyncThread syncThread;
 
     /** latch used to synchronize writes to the channel */
-    private final Object latch = new Object();
+    private final ReentrantLock latch = new ReentrantLock();
 
     /** the data directory where journal files are written to */
     @ConfigurationFieldAsAttribute("journal-dir")
@@ -137,11 +145,14 @@ public class Journal {
     /** temp buffer */
     private ByteBuffer currentBuffer;
 
+    /** spare buffer, swapped with currentBuffer by group commits. Guarded by latch */
+    private ByteBuffer spareBuffer;
+
     /** the last LSN written by the JournalManager */
     private long currentLsn = Lsn.LSN_INVALID;
 
     /** the last LSN actually written to the file */
-    private long lastLsnWritten = Lsn.LSN_INVALID;
+    private volatile long lastLsnWritten = Lsn.LSN_INVALID;
 
     /** stores the current LSN of the last file sync on the file */ 
     private long lastSyncLsn = Lsn.LSN_INVALID;
@@ -160,11 +171,31 @@ public class Journal {
 
     private final Path fsJournalDir;
 
+    /** guards the group commit state below */
+    private final Object groupCommitMonitor = new Object();
+
+    /** true while a group commit leader is writing a batch. Guarded by groupCommitMonitor */
+    private boolean groupFlushInProgress = false;
+
+    /** the last LSN written (and synced if syncOnCommit) by a group commit. Guarded by groupCommitMonitor */
+    private long lastGroupFlushedLsn = Lsn.LSN_INVALID;
+
+    /** number of commits waiting for the next group flush. Guarded by groupCommitMonitor */
+    private int pendingGroupCommits = 0;
+
+    /** the largest number of commits written by a single group flush. Guarded by groupCommitMonitor */
+    private int maxGroupCommitBatch = 0;
+
+    private final LongAdder groupCommits = new LongAdder();
+    private final LongAdder groupFlushes = new LongAdder();
+    private final LongAdder groupCommitNanos = new LongAdder();
+
     public Journal(final BrokerPool pool, final Path directory) throws EXistException {
         this.pool = pool;
         this.fsJournalDir = directory.resolve("fs.journal");
         // we use a 1 megabyte buffer:
         currentBuffer = ByteBuffer.allocateDirect(1024 * 1024);
+        spareBuffer = ByteBuffer.allocateDirect(1024 * 1024);
 
         syncThread = new FileSyncThread(latch);
         syncThread.start();
@@ -298,6 +329,125 @@ public class Journal {
         }
     }
 
+    /**
+     * Wait until the journal entry with the given LSN has been written to the journal file
+     * and, if sync-on-commit is enabled, forced to disk.
+     * 
+     * Used for group commits: concurrent callers share a single write and sync. The method
+     * must not be called while holding the monitor of this journal, as the calling thread might
+     * have to wait for another thread which is writing the current batch.
+     * 
+     * An interrupt does not end the wait early; the interrupt status is restored
+     * once the entry has been flushed.
+     * 
+     * @param lsn the LSN of the journal entry, usually a commit record
+     */
+    public void flushToLsn(final long lsn) {
+        if (inRecovery || lsn == Lsn.LSN_INVALID) {
+            return;
+        }
+        final long start = System.nanoTime();
+        boolean leader = false;
+        boolean interrupted = false;
+        synchronized (groupCommitMonitor) {
+            pendingGroupCommits++;
+            while (!isFlushed(lsn)) {
+                if (!groupFlushInProgress) {
+                    groupFlushInProgress = true;
+                    leader = true;
+                    break;
+                }
+                try {
+                    groupCommitMonitor.wait();
+                } catch (final InterruptedException e) {
+                    // the commit must not be reported before its record is on disk:
+                    // keep waiting and restore the interrupt status afterwards
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (leader) {
+            long flushedLsn = Lsn.LSN_INVALID;
+            int batch = 0;
+            try {
+                synchronized (groupCommitMonitor) {
+                    // all commits which are waiting now have their entries in the buffer
+                    batch = pendingGroupCommits;
+                    pendingGroupCommits = 0;
+                }
+                flushedLsn = writeGroup();
+            } finally {
+                synchronized (groupCommitMonitor) {
+                    groupFlushInProgress = false;
+                    if (flushedLsn > lastGroupFlushedLsn) {
+                        lastGroupFlushedLsn = flushedLsn;
+                    }
+                    if (batch > maxGroupCommitBatch) {
+                        maxGroupCommitBatch = batch;
+                    }
+                    groupCommitMonitor.notifyAll();
+                }
+            }
+            groupFlushes.increment();
+        }
+
+        groupCommits.increment();
+        groupCommitNanos.add(System.nanoTime() - start);
+    }
+
+    private boolean isFlushed(final long lsn) {
+        return lastGroupFlushedLsn >= lsn || (!syncOnCommit && lastLsnWritten >= lsn);
+    }
+
+    /**
+     * Swap the current buffer against the spare buffer and write its contents
+     * to the journal file. Appending threads only have to wait for the swap, not
+     * for the write and sync.
+     * 
+     * @return the last LSN contained in the written buffer
+     */
+    private long writeGroup() {
+        final ByteBuffer buffer;
+        final long lsn;
+        synchronized (this) {
+            if (currentBuffer == null || channel == null) {
+                return Lsn.LSN_INVALID; // the db has probably been shut down already or not fully initialized
+            }
+            // acquire the latch before other threads may append and flush again,
+            // so the buffers are written in the order they were filled
+            latch.lock();
+            buffer = currentBuffer;
+            currentBuffer = spareBuffer;
+            spareBuffer = null;
+            inFilePos += buffer.position();
+            lsn = currentLsn;
+        }
+        try {
+            if (buffer.position() > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                lastLsnWritten = lsn;
+            }
+            if (syncOnCommit) {
+                channel.force(false);
+            }
+            return lsn;
+        } catch (final IOException e) {
+            LOG.warn("Flushing log file failed!", e);
+            return Lsn.LSN_INVALID;
+        } finally {
+            buffer.clear();
+            spareBuffer = buffer;
+            latch.unlock();
+        }
+    }
+
     /**
      * 
      */
@@ -305,26 +455,78 @@ public class Journal {
         if (currentBuffer == null || channel == null) {
             return; // the db has probably been shut down already or not fully initialized
         }
-        synchronized (latch) {
-            try {
-                if (currentBuffer.position() > 0) {
-                    currentBuffer.flip();
-                    final int size = currentBuffer.remaining();
-                    while (currentBuffer.hasRemaining()) {
-                        channel.write(currentBuffer);
-                    }
-                    
-                    inFilePos += size;
-                    lastLsnWritten = currentLsn;
+        latch.lock();
+        try {
+            if (currentBuffer.position() > 0) {
+                currentBuffer.flip();
+                final int size = currentBuffer.remaining();
+                while (currentBuffer.hasRemaining()) {
+                    channel.write(currentBuffer);
                 }
-            } catch (final IOException e) {
-                LOG.warn("Flushing log file failed!", e);
-            } finally {
-                currentBuffer.clear();
+
+                inFilePos += size;
+                lastLsnWritten = currentLsn;
             }
+        } catch (final IOException e) {
+            LOG.warn("Flushing log file failed!", e);
+        } finally {
+            currentBuffer.clear();
+            latch.unlock();
         }
     }
 
+    /**
+     * Returns the number of commits which waited for a group flush.
+     *
+     * @return number of group commits
+     */
+    public long getGroupCommits() {
+        return groupCommits.sum();
+    }
+
+    /**
+     * Returns the number of writes (and syncs) of the journal file
+     * done on behalf of group commits.
+     *
+     * @return number of group flushes
+     */
+    public long getGroupFlushes() {
+        return groupFlushes.sum();
+    }
+
+    /**
+     * Returns the last LSN written (and synced if sync-on-commit is enabled)
+     * by a group flush.
+     *
+     * @return the last LSN flushed by a group commit
+     */
+    long getLastGroupFlushedLsn() {
+        synchronized (groupCommitMonitor) {
+            return lastGroupFlushedLsn;
+        }
+    }
+
+    /**
+     * Returns the largest number of commits written by a single group flush.
+     *
+     * @return the largest batch size
+     */
+    public int getMaxGroupCommitBatch() {
+        synchronized (groupCommitMonitor) {
+            return maxGroupCommitBatch;
+        }
+    }
+
+    /**
+     * Returns the total time in nanoseconds committing threads have spent
+     * waiting for group flushes.
+     *
+     * @return total commit latency in nanoseconds
+     */
+    public long getGroupCommitNanos() {
+        return groupCommitNanos.sum();
+    }
+
     /**
      * Write a checkpoint record to the journal and flush it. If switchLogFiles is true,
      * a new journal will be started, but only if the file is larger than
@@ -414,7 +616,8 @@ public class Journal {
             LOG.debug("Creating new journal: " + file.toAbsolutePath().toString());
         }
 
-        synchronized (latch) {
+        latch.lock();
+        try {
             close();
             try {
                 //RandomAccessFile raf = new RandomAccessFile(file, "rw");
@@ -425,6 +628,8 @@ public class Journal {
             } catch (final FileNotFoundException e) {
                 throw new LogException("Failed to open new journal: " + file.toAbsolutePath().toString(), e);
             }
+        } finally {
+            latch.unlock();
         }
         inFilePos = 0;
     }
@@ -104,6 +104,25 @@ public class JournalManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Wait until an entry written by {@link #journalGroup(Loggable)} has been
+     * written to disk. If group commits are enabled, concurrent callers share
+     * a single write and sync of the journal, otherwise the entry has already
+     * been flushed by {@link #journalGroup(Loggable)} and this is a no-op.
+     *
+     * Deliberately not synchronized, so that other threads can continue
+     * to write to the journal while waiting.
+     *
+     * @see Journal#flushToLsn(long)
+     *
+     * @param loggable The entry which was written by {@link #journalGroup(Loggable)}
+     */
+    public void flushGroup(final Loggable loggable) {
+        if(!journallingDisabled && groupCommits) {
+            journal.flushToLsn(loggable.getLsn());
+        }
+    }
+
     /**
      * @see Journal#checkpoint(long, boolean)
      *
@@ -159,6 +178,48 @@ public class JournalManager implements BrokerPoolService {
 
 
 
+    /**
+     * @return the journal, or null if journalling is disabled
+     */
+    Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return true if group commits are enabled
+     */
+    public boolean isGroupCommits() {
+        return groupCommits;
+    }
+
+    /**
+     * @see Journal#getGroupCommits()
+     */
+    public long getGroupCommits() {
+        return journal == null ? 0 : journal.getGroupCommits();
+    }
+
+    /**
+     * @see Journal#getGroupFlushes()
+     */
+    public long getGroupFlushes() {
+        return journal == null ? 0 : journal.getGroupFlushes();
+    }
+
+    /**
+     * @see Journal#getMaxGroupCommitBatch()
+     */
+    public int getMaxGroupCommitBatch() {
+        return journal == null ? 0 : journal.getMaxGroupCommitBatch();
+    }
+
+    /**
+     * @see Journal#getGroupCommitNanos()
+     */
+    public long getGroupCommitNanos() {
+        return journal == null ? 0 : journal.getGroupCommitNanos();
+    }
+
     public RecoveryManager.JournalRecoveryAccessor getRecoveryAccessor(final RecoveryManager recoveryManager) {
         return recoveryManager.new JournalRecoveryAccessor(
                 journal::setInRecovery, journal::getFiles, journal::getFile, journal::setCurrentFileNum,
@@ -0,0 +1,159 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.storage.lock.Lock.LockMode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short term read/write latches on the pages of a paged file.
+ *
+ * A latch is held only while a page is read from or written to disk, never
+ * across calls into other files, so latches can not deadlock with each other
+ * or with the file locks. Pages share a fixed number of latches, picked by
+ * page number.
+ *
+ * Contention on the latches is counted and reported through JMX, see
+ * {@link #getOpenLatches()}.
+ */
+public final class PageLatches {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private static final List<PageLatches> OPEN_LATCHES = new CopyOnWriteArrayList<>();
+
+    private final String id;
+    private final java.util.concurrent.locks.ReentrantReadWriteLock[] latches;
+    private final int mask;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+
+    PageLatches(final String id, final int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes must be a power of two: " + stripes);
+        }
+        this.id = id;
+        this.latches = new java.util.concurrent.locks.ReentrantReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            latches[i] = new java.util.concurrent.locks.ReentrantReadWriteLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * Create the latches for a file and make their statistics
+     * available through {@link #getOpenLatches()} until they are closed.
+     *
+     * @param id the id of the file, usually its path
+     * @return the latches
+     */
+    public static PageLatches open(final String id) {
+        final PageLatches latches = new PageLatches(id, DEFAULT_STRIPES);
+        OPEN_LATCHES.add(latches);
+        return latches;
+    }
+
+    /**
+     * Stop reporting the statistics of these latches.
+     */
+    public void close() {
+        OPEN_LATCHES.remove(this);
+    }
+
+    /**
+     * @return the latches of all open files
+     */
+    public static List<PageLatches> getOpenLatches() {
+        return Collections.unmodifiableList(OPEN_LATCHES);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Latch a page, waiting until the latch is available.
+     *
+     * @param page the page number
+     * @param mode {@link LockMode#READ_LOCK} to share the page with other readers,
+     *     {@link LockMode#WRITE_LOCK} for exclusive access
+     */
+    public void acquire(final long page, final LockMode mode) {
+        final java.util.concurrent.locks.Lock latch = latchFor(page, mode);
+        acquisitions.increment();
+        if (!latch.tryLock()) {
+            contended.increment();
+            final long start = System.nanoTime();
+            latch.lock();
+            waitTime.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Release a page latch acquired by {@link #acquire(long, LockMode)}.
+     *
+     * @param page the page number
+     * @param mode the mode the latch was acquired with
+     */
+    public void release(final long page, final LockMode mode) {
+        latchFor(page, mode).unlock();
+    }
+
+    private java.util.concurrent.locks.Lock latchFor(final long page, final LockMode mode) {
+        final java.util.concurrent.locks.ReentrantReadWriteLock latch =
+                latches[(int) (page ^ (page >>> 32)) & mask];
+        switch (mode) {
+            case READ_LOCK:
+                return latch.readLock();
+            case WRITE_LOCK:
+                return latch.writeLock();
+            default:
+                throw new IllegalArgumentException("Page latches can not be acquired in mode " + mode);
+        }
+    }
+
+    /**
+     * @return the number of latches acquired since the file was opened
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * @return the number of acquisitions which had to wait for another thread
+     */
+    public long getContended() {
+        return contended.sum();
+    }
+
+    /**
+     * @return the total time spent waiting for latches in milliseconds
+     */
+    public long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.sum());
+    }
+}
@@ -108,6 +108,28 @@ public class DataGuide {
         return temp.getMaxDepth();
     }
 
+    /**
+     * Returns the number of elements with the given name.
+     *
+     * @param qname the name of the elements
+     * @return the number of elements in all paths ending in qname
+     */
+    public long getNodeCount(QName qname) {
+        return root.getNodeCount(qname);
+    }
+
+    /**
+     * Returns the number of elements with name childName which
+     * are children of an element with name parentName.
+     *
+     * @param parentName the name of the parent elements
+     * @param childName the name of the child elements
+     * @return the number of child elements
+     */
+    public long getChildCount(QName parentName, QName childName) {
+        return root.getChildCount(parentName, childName);
+    }
+
     public String toString() {
         final List<StringBuilder> paths = new ArrayList<StringBuilder>();
         root.dump(new StringBuilder(), paths);
@@ -71,6 +71,14 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         return dataGuide.getMaxParentDepth(qname);
     }
 
+    public long getNodeCount(QName qname) {
+        return dataGuide.getNodeCount(qname);
+    }
+
+    public long getChildCount(QName parentName, QName childName) {
+        return dataGuide.getChildCount(parentName, childName);
+    }
+
     protected void mergeStats(DataGuide other) {
         dataGuide = other.mergeInto(dataGuide);
     }
@@ -110,7 +118,8 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
     }
 
     public void sync() throws DBException {
-        try(final SeekableByteChannel chan = Files.newByteChannel(dataFile,StandardOpenOption.WRITE)) {
+        try(final SeekableByteChannel chan = Files.newByteChannel(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
             dataGuide.write(chan, getBrokerPool().getSymbols());
         } catch (final IOException e) {
             LOG.error(e.getMessage(), e);
@@ -137,6 +137,31 @@ class NodeStats {
         }
     }
 
+    protected long getNodeCount(QName name) {
+        long count = qname != null && qname.equals(name) ? nodeCount : 0;
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                count += children[i].getNodeCount(name);
+            }
+        }
+        return count;
+    }
+
+    protected long getChildCount(QName parentName, QName childName) {
+        long count = 0;
+        if (children != null) {
+            final boolean isParent = qname != null && qname.equals(parentName);
+            for (int i = 0; i < children.length; i++) {
+                final NodeStats child = children[i];
+                if (isParent && child.qname.equals(childName)) {
+                    count += child.nodeCount;
+                }
+                count += child.getChildCount(parentName, childName);
+            }
+        }
+        return count;
+    }
+
     protected void write(ByteBuffer buffer, SymbolTable symbols) {
         buffer.putShort(symbols.getNSSymbol(qname.getNamespaceURI()));
         buffer.putShort(symbols.getSymbol(qname.getLocalPart()));
@@ -40,7 +40,9 @@ import org.exist.numbering.NodeId;
 import org.exist.storage.*;
 import org.exist.storage.btree.BTree;
 import org.exist.storage.btree.BTreeCallback;
+import org.exist.storage.btree.BTreeException;
 import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.KeySorter;
 import org.exist.storage.btree.Value;
 import org.exist.storage.lock.Lock;
 import org.exist.storage.lock.Lock.LockMode;
@@ -54,6 +56,7 @@ import org.exist.xquery.NodeTest;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
 import java.util.*;
 import org.exist.security.PermissionDeniedException;
 
@@ -74,6 +77,19 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     //nameType out of QName
     private Map<QName, List<NodeProxy>> pending = new TreeMap<>(new TypedQNameComparator());
 
+    /**
+     * True if the pending entries are to be stored. They may belong to several
+     * documents if flushing is deferred to the end of a batch.
+     */
+    private boolean pendingStore = false;
+
+    /** the number of entries sorted in memory at once while bulk loading the index */
+    private static final int BULK_LOAD_BUFFER_SIZE = 100000;
+
+    /** the entries collected while bulk loading the index, see {@link #beginBulkLoad()} */
+    private KeySorter bulkKeys = null;
+    private BTree.BulkLoader bulkLoader = null;
+
     public NativeStructuralIndexWorker(NativeStructuralIndex index) {
         this.index = index;
     }
@@ -105,31 +121,64 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     }
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent) {
-        final Lock lock = index.btree.getLock();
         final NewArrayNodeSet result = new NewArrayNodeSet();
         final FindElementsCallback callback = new FindElementsCallback(type, qname, result, docs, selector, parent);
 
         // for each document id range, scan the index to find matches
         for (final Range range : getDocIdRanges(docs)) {
-            final byte[] fromKey = computeKey(type, qname, range.start);
-            final byte[] toKey = computeKey(type, qname, range.end + 1);
-            final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
-            try {
-                lock.acquire(LockMode.READ_LOCK);
-                index.btree.query(query, callback);
-            } catch (final LockException e) {
-                NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
-            } catch (final TerminatedException e) {
-                NativeStructuralIndex.LOG.warn("Query was terminated while searching structural index: " + e.getMessage(), e);
-            } catch (final Exception e) {
-                NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
-            } finally {
-                lock.release(LockMode.READ_LOCK);
+            queryRange(type, qname, range, callback);
+        }
+        return result;
+    }
+
+    /**
+     * Keys are ordered by document id and node id, so the index returns matches in
+     * document order. If only the first limit matches are needed, the documents are
+     * scanned in batches of growing size, starting with the lowest document id, until
+     * enough matches were found. The result may contain more than limit nodes.
+     */
+    public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent, int limit) {
+        if (limit <= 0) {
+            return findElementsByTagName(type, docs, qname, selector, parent);
+        }
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        final FindElementsCallback callback = new FindElementsCallback(type, qname, result, docs, selector, parent);
+
+        final int[] docIds = new int[docs.getDocumentCount()];
+        int count = 0;
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            docIds[count++] = i.next().getDocId();
+        }
+        Arrays.sort(docIds, 0, count);
+
+        int batch = 1;
+        for (int start = 0; start < count && result.getLength() < limit; start += batch, batch = Math.min(batch * 2, count)) {
+            for (final Range range : getDocIdRanges(docIds, start, Math.min(start + batch, count))) {
+                queryRange(type, qname, range, callback);
             }
         }
         return result;
     }
 
+    private void queryRange(byte type, QName qname, Range range, FindElementsCallback callback) {
+        final Lock lock = index.btree.getLock();
+        final byte[] fromKey = computeKey(type, qname, range.start);
+        final byte[] toKey = computeKey(type, qname, range.end + 1);
+        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+        try {
+            lock.acquire(LockMode.READ_LOCK);
+            index.btree.query(query, callback);
+        } catch (final LockException e) {
+            NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
+        } catch (final TerminatedException e) {
+            NativeStructuralIndex.LOG.warn("Query was terminated while searching structural index: " + e.getMessage(), e);
+        } catch (final Exception e) {
+            NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
+        } finally {
+            lock.release(LockMode.READ_LOCK);
+        }
+    }
+
     /**
      * Scan the document set to find document id ranges to query
      *
@@ -157,6 +206,33 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         return ranges;
     }
 
+    /**
+     * Find the contiguous ranges within a slice of sorted document ids.
+     *
+     * @param docIds sorted document ids
+     * @param from index of the first document id in the slice
+     * @param to index after the last document id in the slice
+     * @return List of contiguous document id ranges
+     */
+    List<Range> getDocIdRanges(final int[] docIds, final int from, final int to) {
+        final List<Range> ranges = new ArrayList<>();
+        Range next = null;
+        for (int i = from; i < to; i++) {
+            if (next == null) {
+                next = new Range(docIds[i]);
+            } else if (next.end + 1 == docIds[i]) {
+                next.end++;
+            } else {
+                ranges.add(next);
+                next = new Range(docIds[i]);
+            }
+        }
+        if (next != null) {
+            ranges.add(next);
+        }
+        return ranges;
+    }
+
     /**
      * Internal helper class used by
      * {@link NativeStructuralIndexWorker#findElementsByTagName(byte, org.exist.dom.persistent.DocumentSet, org.exist.dom.QName, org.exist.xquery.NodeSelector)}.
@@ -440,11 +516,19 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     @Override
     public void setDocument(DocumentImpl doc, ReindexMode mode) {
         this.document = doc;
-        this.mode = mode;
+        setMode(mode);
     }
 
     @Override
     public void setMode(ReindexMode mode) {
+        if (pendingStore && mode != ReindexMode.STORE && mode != ReindexMode.UNKNOWN) {
+            // store the entries kept from a batch of documents before removing anything
+            processPending();
+        }
+        if (bulkKeys != null && (mode == ReindexMode.REMOVE_ALL_NODES || mode == ReindexMode.REMOVE_SOME_NODES)) {
+            // nodes are removed from the btree, which must contain all entries collected so far
+            endBulkLoad();
+        }
         this.mode = mode;
     }
 
@@ -483,6 +567,72 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                 break;
             case REMOVE_SOME_NODES:
                 removeSome();
+                break;
+            default:
+                if (pendingStore) {
+                    processPending();
+                }
+        }
+    }
+
+    @Override
+    public boolean isDeferredFlushSupported() {
+        return true;
+    }
+
+    /**
+     * Start bulk loading the index if its btree is empty. The entries are then
+     * collected and sorted, in temporary files if need be, and written to the btree
+     * bottom-up by {@link #endBulkLoad()}, which fills the pages instead of
+     * splitting them as entries are inserted in document order.
+     */
+    @Override
+    public boolean beginBulkLoad() {
+        if (bulkKeys != null) {
+            return true;
+        }
+        final Lock lock = index.btree.getLock();
+        try {
+            lock.acquire(LockMode.WRITE_LOCK);
+            bulkLoader = index.btree.bulkLoad(null);
+            bulkKeys = new KeySorter(BULK_LOAD_BUFFER_SIZE);
+            return true;
+        } catch (final BTreeException e) {
+            // the index is not empty
+            return false;
+        } catch (final LockException e) {
+            NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
+            return false;
+        } finally {
+            lock.release(LockMode.WRITE_LOCK);
+        }
+    }
+
+    @Override
+    public void endBulkLoad() {
+        if (bulkKeys == null) {
+            return;
+        }
+        if (pendingStore) {
+            processPending();
+        }
+        final Lock lock = index.btree.getLock();
+        try {
+            lock.acquire(LockMode.WRITE_LOCK);
+            bulkKeys.load(bulkLoader);
+            bulkLoader.finish();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Bulk loaded structural index, merging " + bulkKeys.getRunCount() + " sorted runs");
+            }
+        } catch (final LockException e) {
+            NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
+        } catch (final Exception e) {
+            NativeStructuralIndex.LOG.warn("Exception caught while bulk loading structural index: " + e.getMessage(), e);
+        } finally {
+            lock.release(LockMode.WRITE_LOCK);
+            bulkKeys.close();
+            bulkKeys = null;
+            bulkLoader = null;
         }
     }
 
@@ -587,6 +737,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
 
     @Override
     public void removeCollection(Collection collection, DBBroker broker, boolean reindex) throws PermissionDeniedException {
+        endBulkLoad();
         try {
             for (final Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
                 final DocumentImpl doc = i.next();
@@ -686,10 +837,13 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         }
         //Add node's proxy to the list
         buf.add(proxy);
+        pendingStore = mode == ReindexMode.STORE;
     }
 
     /**
      * Process the map of pending entries and store them into the btree.
+     * The entries may belong to several documents. They are stored in key
+     * order, i.e. sorted by document and node id for each qname.
      */
     private void processPending() {
         if (pending.size() == 0)
@@ -702,15 +856,22 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                 try {
                     lock.acquire(LockMode.WRITE_LOCK);
                     final List<NodeProxy> nodes = entry.getValue();
+                    Collections.sort(nodes);
+                    int docId = -1;
                     for (final NodeProxy proxy : nodes) {
+                        if (proxy.getOwnerDocument().getDocId() != docId) {
+                            addDocKey(qname, docId);
+                            docId = proxy.getOwnerDocument().getDocId();
+                        }
                         final NodeId nodeId = proxy.getNodeId();
-                        final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
-                        index.btree.addValue(new Value(key), computeValue(proxy));
-                    }
-                    final Value docKey = new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname));
-                    if (index.btree.findValue(docKey) == -1) {
-                        index.btree.addValue(docKey, 0);
+                        final byte[] key = computeKey(qname.getNameType(), qname, docId, nodeId);
+                        if (bulkKeys != null) {
+                            bulkKeys.add(new Value(key), computeValue(proxy));
+                        } else {
+                            index.btree.addValue(new Value(key), computeValue(proxy));
+                        }
                     }
+                    addDocKey(qname, docId);
                 } catch (final LockException e) {
                     NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
                 // } catch (ReadOnlyException e) {
@@ -723,6 +884,22 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             }
         } finally {
             pending.clear();
+            pendingStore = false;
+        }
+    }
+
+    /**
+     * Record that the document contains nodes with the given qname.
+     */
+    private void addDocKey(QName qname, int docId) throws IOException, BTreeException {
+        if (docId < 0)
+            {return;}
+        final Value docKey = new Value(computeDocKey(qname.getNameType(), docId, qname));
+        if (bulkKeys != null) {
+            // duplicates are dropped when the sorted keys are merged
+            bulkKeys.add(docKey, 0);
+        } else if (index.btree.findValue(docKey) == -1) {
+            index.btree.addValue(docKey, 0);
         }
     }
 
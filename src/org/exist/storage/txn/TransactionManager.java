@@ -123,10 +123,11 @@ public class TransactionManager implements BrokerPoolService {
             return;
         }
 
+        final TxnCommit commitRecord = new TxnCommit(txn.getId());
         withLock(broker -> {
             if(journalManager.isPresent()) {
                 try {
-                    journalManager.get().journalGroup(new TxnCommit(txn.getId()));
+                    journalManager.get().journalGroup(commitRecord);
                 } catch(final JournalException e) {
                     LOG.error("Failed to write commit record to journal: " + e.getMessage());
                 }
@@ -140,6 +141,10 @@ public class TransactionManager implements BrokerPoolService {
                 LOG.debug("Committed transaction: " + txn.getId());
             }
         });
+
+        // with group commits, wait for the commit record outside of the lock,
+        // so that concurrent commits can share a single journal write
+        journalManager.ifPresent(manager -> manager.flushGroup(commitRecord));
     }
 	
     public void abort(final Txn txn) {
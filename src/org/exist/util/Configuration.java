@@ -51,6 +51,10 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.XQueryResultCache;
+import org.exist.xmlrpc.QueryResultCache;
+import org.exist.storage.btree.BTree;
+import org.exist.storage.btree.Paged;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
@@ -329,6 +333,50 @@ public class Configuration implements ErrorHandler
         config.put( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration.parseBoolean( raiseErrorOnFailedRetrieval, XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT ) );
         LOG.debug( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL + ": " + config.get( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL ) );
 
+        final String groupBySpillThreshold = getConfigAttributeValue( xquery, XQueryContext.GROUPBY_SPILL_THRESHOLD_ATTRIBUTE );
+        if( groupBySpillThreshold != null ) {
+            try {
+                config.put( XQueryContext.PROPERTY_GROUPBY_SPILL_THRESHOLD, Integer.valueOf( groupBySpillThreshold ) );
+                LOG.debug( XQueryContext.PROPERTY_GROUPBY_SPILL_THRESHOLD + ": " + config.get( XQueryContext.PROPERTY_GROUPBY_SPILL_THRESHOLD ) );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn( nfe );
+            }
+        }
+
+        final String orderBySpillThreshold = getConfigAttributeValue( xquery, XQueryContext.ORDERBY_SPILL_THRESHOLD_ATTRIBUTE );
+        if( orderBySpillThreshold != null ) {
+            try {
+                config.put( XQueryContext.PROPERTY_ORDERBY_SPILL_THRESHOLD, Integer.valueOf( orderBySpillThreshold ) );
+                LOG.debug( XQueryContext.PROPERTY_ORDERBY_SPILL_THRESHOLD + ": " + config.get( XQueryContext.PROPERTY_ORDERBY_SPILL_THRESHOLD ) );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn( nfe );
+            }
+        }
+
+        final String parallelism = getConfigAttributeValue( xquery, XQueryContext.PARALLELISM_ATTRIBUTE );
+        if( parallelism != null ) {
+            try {
+                config.put( XQueryContext.PROPERTY_PARALLELISM, Integer.valueOf( parallelism ) );
+                LOG.debug( XQueryContext.PROPERTY_PARALLELISM + ": " + config.get( XQueryContext.PROPERTY_PARALLELISM ) );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn( nfe );
+            }
+        }
+
+        final String memtreeOffHeapThreshold = getConfigAttributeValue( xquery, XQueryContext.MEMTREE_OFF_HEAP_THRESHOLD_ATTRIBUTE );
+        if( memtreeOffHeapThreshold != null ) {
+            try {
+                config.put( XQueryContext.PROPERTY_MEMTREE_OFF_HEAP_THRESHOLD, Integer.valueOf( memtreeOffHeapThreshold ) );
+                LOG.debug( XQueryContext.PROPERTY_MEMTREE_OFF_HEAP_THRESHOLD + ": " + config.get( XQueryContext.PROPERTY_MEMTREE_OFF_HEAP_THRESHOLD ) );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn( nfe );
+            }
+        }
+
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
@@ -837,6 +885,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        String cacheType = getConfigAttributeValue( con, DefaultCacheManager.CACHE_TYPE_ATTRIBUTE );
+
+        if( cacheType != null ) {
+            cacheType = cacheType.toLowerCase();
+
+            if( DefaultCacheManager.CACHE_TYPE_DEFAULT.equals( cacheType ) || DefaultCacheManager.CACHE_TYPE_STRIPED.equals( cacheType ) ) {
+                config.put( DefaultCacheManager.PROPERTY_CACHE_TYPE, cacheType );
+                LOG.debug( DefaultCacheManager.PROPERTY_CACHE_TYPE + ": " + config.get( DefaultCacheManager.PROPERTY_CACHE_TYPE ) );
+            } else {
+                LOG.warn( "Unknown " + DefaultCacheManager.CACHE_TYPE_ATTRIBUTE + " '" + cacheType + "', using '" + DefaultCacheManager.CACHE_TYPE_DEFAULT + "'" );
+            }
+        }
+
         String collectionCache = getConfigAttributeValue(con, CollectionCacheManager.CACHE_SIZE_ATTRIBUTE);
         if(collectionCache != null) {
             collectionCache = collectionCache.toLowerCase();
@@ -883,6 +944,47 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String memoryMapped = getConfigAttributeValue( con, Paged.MEMORY_MAPPED_ATTRIBUTE );
+
+        if( memoryMapped != null ) {
+            config.put( Paged.PROPERTY_MEMORY_MAPPED, parseBoolean( memoryMapped, false ) );
+            LOG.debug( Paged.PROPERTY_MEMORY_MAPPED + ": " + config.get( Paged.PROPERTY_MEMORY_MAPPED ) );
+        }
+
+        final String compressPages = getConfigAttributeValue( con, Paged.COMPRESS_PAGES_ATTRIBUTE );
+
+        if( compressPages != null ) {
+            config.put( Paged.PROPERTY_COMPRESS_PAGES, parseBoolean( compressPages, false ) );
+            LOG.debug( Paged.PROPERTY_COMPRESS_PAGES + ": " + config.get( Paged.PROPERTY_COMPRESS_PAGES ) );
+        }
+
+        final String blobStore = getConfigAttributeValue( con, NativeBroker.BLOB_STORE_ATTRIBUTE );
+
+        if( blobStore != null ) {
+            config.put( NativeBroker.PROPERTY_BLOB_STORE, parseBoolean( blobStore, false ) );
+            LOG.debug( NativeBroker.PROPERTY_BLOB_STORE + ": " + config.get( NativeBroker.PROPERTY_BLOB_STORE ) );
+        }
+
+        final String pageLatches = getConfigAttributeValue( con, Paged.PAGE_LATCHES_ATTRIBUTE );
+
+        if( pageLatches != null ) {
+            config.put( Paged.PROPERTY_PAGE_LATCHES, parseBoolean( pageLatches, false ) );
+            LOG.debug( Paged.PROPERTY_PAGE_LATCHES + ": " + config.get( Paged.PROPERTY_PAGE_LATCHES ) );
+        }
+
+        final String fillFactor = getConfigAttributeValue( con, BTree.FILL_FACTOR_ATTRIBUTE );
+
+        if( fillFactor != null ) {
+
+            try {
+                config.put( BTree.PROPERTY_FILL_FACTOR, Integer.valueOf(fillFactor) );
+                LOG.debug( BTree.PROPERTY_FILL_FACTOR + ": " + config.get( BTree.PROPERTY_FILL_FACTOR ) );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn( nfe );
+            }
+        }
+
         //Not clear : rather looks like a buffers count
         final String collCacheSize = getConfigAttributeValue( con, BrokerPool.COLLECTION_CACHE_SIZE_ATTRIBUTE );
 
@@ -1051,6 +1153,18 @@ public class Configuration implements ErrorHandler
             configureXQueryPool( (Element)queryPoolConf.item( 0 ) );
         }
 
+        final NodeList queryResultCacheConf = con.getElementsByTagName( XQueryResultCache.CONFIGURATION_ELEMENT_NAME );
+
+        if( queryResultCacheConf.getLength() > 0 ) {
+            configureXQueryResultCache( (Element)queryResultCacheConf.item( 0 ) );
+        }
+
+        final NodeList rpcResultCacheConf = con.getElementsByTagName( QueryResultCache.CONFIGURATION_ELEMENT_NAME );
+
+        if( rpcResultCacheConf.getLength() > 0 ) {
+            configureRpcResultCache( (Element)rpcResultCacheConf.item( 0 ) );
+        }
+
         final NodeList watchConf = con.getElementsByTagName( XQueryWatchDog.CONFIGURATION_ELEMENT_NAME );
 
         if( watchConf.getLength() > 0 ) {
@@ -1224,6 +1338,78 @@ public class Configuration implements ErrorHandler
         }
     }
     
+    /**
+     * Configure the cache for the results of XQueries.
+     *
+     * @param  queryResultCache
+     */
+    private void configureXQueryResultCache( Element queryResultCache )
+    {
+        final String size = getConfigAttributeValue( queryResultCache, XQueryResultCache.SIZE_ATTRIBUTE );
+
+        if( size != null ) {
+
+            try {
+                config.put( XQueryResultCache.PROPERTY_SIZE, Integer.valueOf(size) );
+                LOG.debug( XQueryResultCache.PROPERTY_SIZE + ": " + config.get( XQueryResultCache.PROPERTY_SIZE ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String maxItems = getConfigAttributeValue( queryResultCache, XQueryResultCache.MAX_ITEMS_ATTRIBUTE );
+
+        if( maxItems != null ) {
+
+            try {
+                config.put( XQueryResultCache.PROPERTY_MAX_ITEMS, Integer.valueOf(maxItems) );
+                LOG.debug( XQueryResultCache.PROPERTY_MAX_ITEMS + ": " + config.get( XQueryResultCache.PROPERTY_MAX_ITEMS ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+    }
+    
+    /**
+     * Configure the cache for the results of queries run through XML-RPC.
+     *
+     * @param  rpcResultCache
+     */
+    private void configureRpcResultCache( Element rpcResultCache )
+    {
+        String maxMemory = getConfigAttributeValue( rpcResultCache, QueryResultCache.MAX_MEMORY_ATTRIBUTE );
+
+        if( maxMemory != null ) {
+
+            if( maxMemory.endsWith( "M" ) || maxMemory.endsWith( "m" ) ) {
+                maxMemory = maxMemory.substring( 0, maxMemory.length() - 1 );
+            }
+
+            try {
+                config.put( QueryResultCache.PROPERTY_MAX_MEMORY, Integer.valueOf(maxMemory) );
+                LOG.debug( QueryResultCache.PROPERTY_MAX_MEMORY + ": " + config.get( QueryResultCache.PROPERTY_MAX_MEMORY ) + "m" );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String maxResultsPerUser = getConfigAttributeValue( rpcResultCache, QueryResultCache.MAX_RESULTS_PER_USER_ATTRIBUTE );
+
+        if( maxResultsPerUser != null ) {
+
+            try {
+                config.put( QueryResultCache.PROPERTY_MAX_RESULTS_PER_USER, Integer.valueOf(maxResultsPerUser) );
+                LOG.debug( QueryResultCache.PROPERTY_MAX_RESULTS_PER_USER + ": " + config.get( QueryResultCache.PROPERTY_MAX_RESULTS_PER_USER ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+    }
+    
     public static class StartupTriggerConfig {
         private final String clazz;
         private final Map<String, List<? extends Object>> params;
@@ -1398,6 +1584,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String reindexThreads = getConfigAttributeValue( indexer, NativeBroker.REINDEX_THREADS_ATTRIBUTE );
+
+        if( reindexThreads != null ) {
+
+            try {
+                config.put( NativeBroker.PROPERTY_REINDEX_THREADS, Integer.valueOf(reindexThreads) );
+                LOG.debug( NativeBroker.PROPERTY_REINDEX_THREADS + ": " + config.get( NativeBroker.PROPERTY_REINDEX_THREADS ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         final String suppressWS = getConfigAttributeValue( indexer, Indexer.SUPPRESS_WHITESPACE_ATTRIBUTE );
 
         if( suppressWS != null ) {
@@ -290,6 +290,14 @@ public class VirtualTempFile
 		return data;
 	}
 	
+	/**
+	 * @return the maximum number of bytes which are kept in memory before
+	 * the content is written to a temporary file
+	 */
+	public int getMaxMemorySize() {
+		return maxMemorySize;
+	}
+	
 	public boolean exists() {
 		return tempFile!=null || tempBuffer!=null || baBuffer!=null;
 	}
@@ -472,10 +480,20 @@ public class VirtualTempFile
 	public File toFile()
 		throws IOException
 	{
-		// First, forcing the write to temp file
-		writeSwitch();
-		// Second, close
-		if(os!=null)  {close();}
+		if(tempFile==null && baBuffer==null && tempBuffer!=null) {
+			// Already closed, with the content kept in memory
+			tempFile = File.createTempFile(temp_prefix, temp_postfix);
+			tempFile.deleteOnExit();
+			LOG.debug("Writing to temporary file: " + tempFile.getName());
+			try(final OutputStream fos = new FileOutputStream(tempFile)) {
+				fos.write(tempBuffer);
+			}
+		} else {
+			// First, forcing the write to temp file
+			writeSwitch();
+			// Second, close
+			if(os!=null)  {close();}
+		}
 		
 		final File retFile = tempFile;
 		
@@ -0,0 +1,139 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copies a region of a file to an output stream without passing the data
+ * through buffers on the Java heap where possible.
+ *
+ * If the stream is a channel, e.g. a socket, the region is handed to
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets
+ * the operating system send it directly. The output stream of a response in
+ * Jetty is written from memory mapped parts of the file, so the data is copied
+ * once, from the page cache to the socket. Any other stream is written through
+ * a small buffer.
+ *
+ * Mapped files can not be deleted on Windows until they are garbage collected,
+ * so the file is never mapped there.
+ */
+public final class ChannelTransfer {
+
+    private final static Logger LOG = LogManager.getLogger(ChannelTransfer.class);
+
+    /** regions smaller than this are not worth mapping */
+    private final static long MIN_MAPPED_SIZE = 64 * 1024;
+
+    /** the size of the parts a region is mapped in */
+    private final static long MAPPED_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final static boolean MAP_FILES =
+            !System.getProperty("os.name", "").toLowerCase().startsWith("windows") && JettyOutput.isAvailable();
+
+    private ChannelTransfer() {
+    }
+
+    /**
+     * Copy a region of a file to an output stream.
+     *
+     * @param channel the file
+     * @param position the offset of the region in the file
+     * @param count the number of bytes to copy
+     * @param os the stream to write to, it is not flushed or closed
+     * @throws IOException if the file can not be read, the stream not be written,
+     *     or the file ends before the end of the region
+     */
+    public static void transfer(final FileChannel channel, final long position, final long count,
+            final OutputStream os) throws IOException {
+        if (os instanceof WritableByteChannel) {
+            transfer(channel, position, count, (WritableByteChannel) os);
+        } else if (MAP_FILES && count >= MIN_MAPPED_SIZE && JettyOutput.isJettyOutput(os)) {
+            long offset = position;
+            final long end = position + count;
+            while (offset < end) {
+                final long size = Math.min(MAPPED_CHUNK_SIZE, end - offset);
+                JettyOutput.write(os, channel.map(FileChannel.MapMode.READ_ONLY, offset, size));
+                offset += size;
+            }
+        } else {
+            transfer(channel, position, count, Channels.newChannel(os));
+        }
+    }
+
+    private static void transfer(final FileChannel channel, final long position, final long count,
+            final WritableByteChannel target) throws IOException {
+        long offset = position;
+        final long end = position + count;
+        while (offset < end) {
+            final long transferred = channel.transferTo(offset, end - offset, target);
+            if (transferred <= 0) {
+                if (offset >= channel.size()) {
+                    throw new IOException("Unexpected end of file at offset " + offset + ", expected " + end + " bytes");
+                }
+                // the target may not accept data right now
+                Thread.yield();
+            }
+            offset += transferred;
+        }
+    }
+
+    /**
+     * Isolates the references to Jetty, which is missing
+     * if eXist is deployed in another servlet container.
+     */
+    private final static class JettyOutput {
+
+        private final static boolean AVAILABLE;
+        static {
+            boolean available;
+            try {
+                Class.forName("org.eclipse.jetty.server.HttpOutput", false, ChannelTransfer.class.getClassLoader());
+                available = true;
+            } catch (final ClassNotFoundException | LinkageError e) {
+                available = false;
+            }
+            AVAILABLE = available;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Writing memory mapped files to Jetty responses: " + available);
+            }
+        }
+
+        static boolean isAvailable() {
+            return AVAILABLE;
+        }
+
+        static boolean isJettyOutput(final OutputStream os) {
+            return os instanceof org.eclipse.jetty.server.HttpOutput;
+        }
+
+        static void write(final OutputStream os, final MappedByteBuffer buffer) throws IOException {
+            ((org.eclipse.jetty.server.HttpOutput) os).write(buffer);
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package org.exist.xmldb;
 
 import java.util.Date;
+import java.util.List;
 
 import org.xmldb.api.base.Collection;
 import org.xmldb.api.base.Resource;
@@ -46,6 +47,19 @@ public interface CollectionImpl extends Collection {
 
     void storeResource(Resource res, Date a, Date b) throws XMLDBException;
 
+    /**
+     * Store several resources at once. An embedded collection stores them
+     * within a single transaction and flushes the indexes once for the whole
+     * batch, rather than after every document.
+     *
+     * @param resources the resources to store
+     */
+    default void storeResources(final List<Resource> resources) throws XMLDBException {
+        for (final Resource resource : resources) {
+            storeResource(resource);
+        }
+    }
+
     XmldbURI getPathURI();
 
     void setTriggersEnabled(boolean triggersEnabled) throws XMLDBException;
@@ -19,7 +19,9 @@
  */
 package org.exist.xmldb;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.util.*;
 import javax.xml.transform.OutputKeys;
@@ -28,10 +30,12 @@ import org.apache.logging.log4j.Logger;
 import org.exist.EXistException;
 import org.exist.collections.Collection;
 import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockToken;
 import org.exist.security.Account;
 import org.exist.security.Permission;
+import org.exist.security.PermissionDeniedException;
 import org.exist.security.Subject;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
@@ -40,6 +44,7 @@ import org.exist.storage.serializers.EXistOutputKeys;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.txn.Txn;
 import org.exist.util.HtmlToXmlParser;
+import org.exist.util.LockException;
 import com.evolvedbinary.j8fu.Either;
 import com.evolvedbinary.j8fu.function.FunctionE;
 import org.exist.xmldb.function.LocalXmldbCollectionFunction;
@@ -517,90 +522,171 @@ public class LocalCollection extends AbstractLocal implements CollectionImpl {
     }
 
     private void storeBinaryResource(final LocalBinaryResource res) throws XMLDBException {
-        final XmldbURI resURI;
+        final XmldbURI resURI = resourceURI(res);
+        modify().apply((collection, broker, transaction) -> {
+            storeBinaryResource(collection, broker, transaction, res, resURI);
+            return null;
+        });
+    }
+
+    private void storeBinaryResource(final Collection collection, final DBBroker broker, final Txn transaction,
+            final LocalBinaryResource res, final XmldbURI resURI) throws XMLDBException, PermissionDeniedException,
+            LockException, TriggerException, IOException {
         try {
-            resURI = XmldbURI.xmldbUriFor(res.getId());
-        } catch(final URISyntaxException e) {
-            throw new XMLDBException(ErrorCodes.INVALID_URI,e);
+            final long conLength = res.getStreamLength();
+            if (conLength != -1) {
+                try (InputStream is = res.getStreamContent()) {
+                    collection.addBinaryResource(transaction, broker, resURI, is, res.getMimeType(), conLength, res.datecreated, res.datemodified);
+                }
+            } else {
+                collection.addBinaryResource(transaction, broker, resURI, (byte[]) res.getContent(), res.getMimeType(), res.datecreated, res.datemodified);
+            }
+        } catch(final EXistException e) {
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
         }
+    }
 
+    private void storeXMLResource(final LocalXMLResource res) throws XMLDBException {
+        final XmldbURI resURI = resourceURI(res);
         modify().apply((collection, broker, transaction) -> {
-            try {
-                final long conLength = res.getStreamLength();
-                if (conLength != -1) {
-                    try (InputStream is = res.getStreamContent()) {
-                        collection.addBinaryResource(transaction, broker, resURI, is, res.getMimeType(), conLength, res.datecreated, res.datemodified);
-                    }
-                } else {
-                    collection.addBinaryResource(transaction, broker, resURI, (byte[]) res.getContent(), res.getMimeType(), res.datecreated, res.datemodified);
-                }
-            } catch(final EXistException e) {
-                throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
-            }
+            storeXMLResource(collection, broker, transaction, res, resURI);
             return null;
         });
     }
 
-    private void storeXMLResource(final LocalXMLResource res) throws XMLDBException {
-        final XmldbURI resURI;
-        try {
-            resURI = XmldbURI.xmldbUriFor(res.getId());
-        } catch(final URISyntaxException e) {
-            throw new XMLDBException(ErrorCodes.INVALID_URI,e);
+    private void storeXMLResource(final Collection collection, final DBBroker broker, final Txn transaction,
+            final LocalXMLResource res, final XmldbURI resURI) throws XMLDBException, PermissionDeniedException,
+            LockException, TriggerException, IOException {
+        String uri = null;
+        if(res.file != null) {
+            uri = res.file.toUri().toASCIIString();
         }
 
-        modify().apply((collection, broker, transaction) -> {
-            String uri = null;
-            if(res.file != null) {
-                uri = res.file.toUri().toASCIIString();
+//      for(final Observer observer : observers) {
+//          collection.addObserver(observer);
+//      }
+
+        try {
+            final IndexInfo info;
+            if (uri != null || res.inputSource != null) {
+                setupParser(collection, res);
+                info = collection.validateXMLResource(transaction, broker, resURI, (uri != null) ? new InputSource(uri) : res.inputSource);
+            } else if (res.root != null) {
+                info = collection.validateXMLResource(transaction, broker, resURI, res.root);
+            } else {
+                info = collection.validateXMLResource(transaction, broker, resURI, res.content);
+            }
+            //Notice : the document should now have a LockMode.WRITE_LOCK update lock
+            //TODO : check that no exception occurs in order to allow it to be released
+            setMetadata(info, res.getMimeType(), res);
+
+            if (uri != null || res.inputSource != null) {
+                collection.store(transaction, broker, info, (uri != null) ? new InputSource(uri) : res.inputSource);
+            } else if (res.root != null) {
+                collection.store(transaction, broker, info, res.root);
+            } else {
+                collection.store(transaction, broker, info, res.content);
             }
 
-//          for(final Observer observer : observers) {
-//              collection.addObserver(observer);
-//          }
+//          collection.deleteObservers();
+        } catch(final EXistException | SAXException e) {
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
+        }
+    }
 
-            try {
-                final IndexInfo info;
-                if (uri != null || res.inputSource != null) {
-                    setupParser(collection, res);
-                    info = collection.validateXMLResource(transaction, broker, resURI, (uri != null) ? new InputSource(uri) : res.inputSource);
-                } else if (res.root != null) {
-                    info = collection.validateXMLResource(transaction, broker, resURI, res.root);
-                } else {
-                    info = collection.validateXMLResource(transaction, broker, resURI, res.content);
-                }
-                //Notice : the document should now have a LockMode.WRITE_LOCK update lock
-                //TODO : check that no exception occurs in order to allow it to be released
-                info.getDocument().getMetadata().setMimeType(res.getMimeType());
-                if (res.datecreated != null) {
-                    info.getDocument().getMetadata().setCreated(res.datecreated.getTime());
-                }
-                if (res.datemodified != null) {
-                    info.getDocument().getMetadata().setLastModified(res.datemodified.getTime());
-                }
+    private static void setMetadata(final IndexInfo info, final String mimeType, final LocalXMLResource res) {
+        info.getDocument().getMetadata().setMimeType(mimeType);
+        if (res.datecreated != null) {
+            info.getDocument().getMetadata().setCreated(res.datecreated.getTime());
+        }
+        if (res.datemodified != null) {
+            info.getDocument().getMetadata().setLastModified(res.datemodified.getTime());
+        }
+    }
 
-                if (uri != null || res.inputSource != null) {
-                    collection.store(transaction, broker, info, (uri != null) ? new InputSource(uri) : res.inputSource);
-                } else if (res.root != null) {
-                    collection.store(transaction, broker, info, res.root);
-                } else {
-                    collection.store(transaction, broker, info, res.content);
+    private static XmldbURI resourceURI(final Resource res) throws XMLDBException {
+        try {
+            return XmldbURI.xmldbUriFor(res.getId());
+        } catch(final URISyntaxException e) {
+            throw new XMLDBException(ErrorCodes.INVALID_URI,e);
+        }
+    }
+
+    /**
+     * Stores all resources within a single transaction. The XML resources
+     * given as a file, an input source or a string are passed to
+     * {@link Collection#storeDocuments(Txn, DBBroker, Map, java.util.function.Consumer)},
+     * so that the indexes are flushed once for the whole batch. Resources
+     * given as a DOM node or to be converted from HTML, as well as binary
+     * resources, are stored one by one within the same transaction.
+     */
+    @Override
+    public void storeResources(final List<Resource> resources) throws XMLDBException {
+        final Map<XmldbURI, InputSource> batch = new LinkedHashMap<>();
+        final Map<XmldbURI, LocalXMLResource> batched = new HashMap<>();
+        final Map<XmldbURI, String> mimeTypes = new HashMap<>();
+        final Map<XmldbURI, Resource> single = new LinkedHashMap<>();
+        for (final Resource resource : resources) {
+            final XmldbURI resURI = resourceURI(resource);
+            if (resource.getResourceType().equals(XMLResource.RESOURCE_TYPE)) {
+                final LocalXMLResource res = (LocalXMLResource) resource;
+                if (res.root == null && (res.file != null || res.inputSource != null || res.content != null)
+                        && !isHtmlNormalized(res)) {
+                    if (res.file != null) {
+                        batch.put(resURI, new InputSource(res.file.toUri().toASCIIString()));
+                    } else if (res.inputSource != null) {
+                        batch.put(resURI, res.inputSource);
+                    } else {
+                        batch.put(resURI, new InputSource(new StringReader(res.content)));
+                    }
+                    batched.put(resURI, res);
+                    mimeTypes.put(resURI, res.getMimeType());
+                    continue;
                 }
+            } else if (!resource.getResourceType().equals(BinaryResource.RESOURCE_TYPE)) {
+                throw new XMLDBException(ErrorCodes.UNKNOWN_RESOURCE_TYPE, "unknown resource type: " + resource.getResourceType());
+            }
+            single.put(resURI, resource);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("storing " + resources.size() + " resources, " + batch.size() + " of them as a batch");
+        }
 
-                return null;
-            
-//              collection.deleteObservers();
+        modify().apply((collection, broker, transaction) -> {
+            try {
+                collection.storeDocuments(transaction, broker, batch,
+                        info -> {
+                            final LocalXMLResource res = batched.get(info.getDocument().getFileURI());
+                            setMetadata(info, mimeTypes.get(info.getDocument().getFileURI()), res);
+                        });
             } catch(final EXistException | SAXException e) {
                 throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
             }
+            for (final Map.Entry<XmldbURI, Resource> entry : single.entrySet()) {
+                if (entry.getValue() instanceof LocalXMLResource) {
+                    storeXMLResource(collection, broker, transaction, (LocalXMLResource) entry.getValue(), entry.getKey());
+                } else {
+                    storeBinaryResource(collection, broker, transaction, (LocalBinaryResource) entry.getValue(), entry.getKey());
+                }
+            }
+            return null;
         });
+
+        for (final Resource resource : resources) {
+            ((AbstractEXistResource)resource).isNewResource = false;
+        }
+        this.needsSync = true;
     }
 
-    private void setupParser(final Collection collection, final LocalXMLResource res) throws XMLDBException {
+    private boolean isHtmlNormalized(final LocalXMLResource res) throws XMLDBException {
         final String normalize = properties.getProperty(NORMALIZE_HTML, "no");
-        if((normalize.equalsIgnoreCase("yes") || normalize.equalsIgnoreCase("true")) &&
+        return (normalize.equalsIgnoreCase("yes") || normalize.equalsIgnoreCase("true")) &&
                 ("text/html".equals(res.getMimeType()) || res.getId().endsWith(".htm") ||
-                    res.getId().endsWith(".html"))) {
+                    res.getId().endsWith(".html"));
+    }
+
+    private void setupParser(final Collection collection, final LocalXMLResource res) throws XMLDBException {
+        if(isHtmlNormalized(res)) {
 
           final Optional<Either<Throwable, XMLReader>> maybeReaderInst = HtmlToXmlParser.getHtmlToXmlParser(brokerPool.getConfiguration());
 
@@ -71,6 +71,15 @@ public abstract class AbstractCachedResult {
         return creationTimestamp;
     }
 
+    /**
+     * Estimate the memory pinned by the cached result, used by
+     * {@link QueryResultCache} to keep the cached results within
+     * its memory budget.
+     *
+     * @return The estimated size in bytes
+     */
+    public abstract long getSizeEstimate();
+
     /**
      * This abstract method must be used
      * to free internal variables.
@@ -40,6 +40,10 @@ import org.exist.xquery.value.BinaryValue;
 public class QueryResult extends AbstractCachedResult {
 
     private final static Logger LOG = LogManager.getLogger(QueryResult.class);
+
+    /** estimated memory used by a single item of the result */
+    public final static int ESTIMATED_ITEM_SIZE = 128;
+
     protected Sequence result;
     protected Properties serialization = null;
     // set upon failure
@@ -75,6 +79,14 @@ public class QueryResult extends AbstractCachedResult {
         return result;
     }
 
+    /**
+     * Nodes and atomic values are counted with a fixed size per item.
+     */
+    @Override
+    public long getSizeEstimate() {
+        return result == null ? 0 : (long) result.getItemCount() * ESTIMATED_ITEM_SIZE;
+    }
+
     @Override
     public void free() {
         if (result != null) {
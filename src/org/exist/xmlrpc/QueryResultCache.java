@@ -19,50 +19,112 @@
  */
 package org.exist.xmlrpc;
 
+import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Used by {@link XmldbRequestProcessorFactory} to cache query results. Each query result
  * is identified by a unique integer id.
+ *
+ * Results are kept in a concurrent map, so adding and retrieving a result does not
+ * depend on the number of cached results. Results which have not been used for
+ * {@link #TIMEOUT} milliseconds are removed by {@link #checkTimestamps()}.
+ * In addition, the cache limits
+ *
+ * <ul>
+ *     <li>the memory pinned by all results, estimated by
+ *     {@link AbstractCachedResult#getSizeEstimate()}: when a new result exceeds the
+ *     budget, the least recently used results are removed</li>
+ *     <li>the number of results per user: when a user adds a result beyond the quota,
+ *     the least recently used result of the user is removed</li>
+ * </ul>
+ *
+ * so that clients which do not release their results cannot exhaust the memory.
  */
+@ThreadSafe
 public class QueryResultCache {
 
     public final static int TIMEOUT = 180000;
 
-    private static final int INITIAL_SIZE = 254;
+    public static final String CONFIGURATION_ELEMENT_NAME = "rpc-result-cache";
+    public static final String MAX_MEMORY_ATTRIBUTE = "max-memory";
+    public static final String MAX_RESULTS_PER_USER_ATTRIBUTE = "max-results-per-user";
 
-    private AbstractCachedResult[] results;
+    public static final String PROPERTY_MAX_MEMORY = "db-connection.rpc-result-cache.max-memory";
+    public static final String PROPERTY_MAX_RESULTS_PER_USER = "db-connection.rpc-result-cache.max-results-per-user";
+
+    /** in megabytes */
+    public static final int DEFAULT_MAX_MEMORY = 64;
+    public static final int DEFAULT_MAX_RESULTS_PER_USER = 256;
 
     private static final Logger LOG = LogManager.getLogger(QueryResultCache.class);
 
+    private final Map<Integer, Entry> results = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> resultsPerUser = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicLong memory = new AtomicLong();
+
+    /** guards the removal of least recently used results */
+    private final Object evictionLock = new Object();
+
+    private final long maxMemory;
+    private final int maxResultsPerUser;
+
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder quotaEvictions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
     public QueryResultCache() {
-        results = new AbstractCachedResult[INITIAL_SIZE];
+        this(DEFAULT_MAX_MEMORY * 1024L * 1024L, DEFAULT_MAX_RESULTS_PER_USER);
+    }
+
+    /**
+     * @param maxMemory the estimated memory in bytes all results may use
+     * @param maxResultsPerUser the number of results a single user may keep
+     */
+    public QueryResultCache(final long maxMemory, final int maxResultsPerUser) {
+        this.maxMemory = maxMemory;
+        this.maxResultsPerUser = maxResultsPerUser;
     }
 
-    public int add(final AbstractCachedResult qr) {
-        for (int i = 0; i < results.length; i++) {
-            if (results[i] == null) {
-                results[i] = qr;
-                return i;
+    /**
+     * Add a result to the cache. The result is always added, possibly removing
+     * other results to stay within the memory budget and the quota of the user.
+     *
+     * @param user the name of the user owning the result
+     * @param qr the result
+     * @return the id of the result
+     */
+    public int add(final String user, final AbstractCachedResult qr) {
+        final Entry entry = new Entry(user, qr, qr.getSizeEstimate());
+
+        final AtomicInteger userResults = resultsPerUser.computeIfAbsent(user, u -> new AtomicInteger());
+        if (userResults.incrementAndGet() > maxResultsPerUser) {
+            evictLeastRecentlyUsed(user);
+        }
+        if (memory.addAndGet(entry.size) > maxMemory) {
+            evictLeastRecentlyUsed(null);
+        }
+
+        while (true) {
+            final int id = nextId.getAndIncrement() & Integer.MAX_VALUE;
+            if (results.putIfAbsent(id, entry) == null) {
+                return id;
             }
         }
-        // no empty bucket. need to resize.
-        final AbstractCachedResult[] temp = new AbstractCachedResult[(results.length * 3) / 2];
-        System.arraycopy(results, 0, temp, 0, results.length);
-        final int pos = results.length;
-        temp[pos] = qr;
-        results = temp;
-        return pos;
     }
 
     public AbstractCachedResult get(final int pos) {
-        if (pos < 0 || pos >= results.length) {
-            return null;
-        }
-        return results[pos];
+        final Entry entry = results.get(pos);
+        return entry == null ? null : entry.result;
     }
 
     public QueryResult getResult(final int pos) {
@@ -76,42 +138,136 @@ public class QueryResultCache {
     }
 
     public void remove(final int pos) {
-        if (pos > -1 && pos < results.length) {
+        final Entry entry = results.remove(pos);
+        if (entry != null) {
+            removed(entry);
             // Perhaps we should not free resources here
             // but an explicit remove implies you want
             // to free resources
-
-            if (results[pos] != null) { // Prevent NPE
-                results[pos].free();
-                results[pos] = null;
-            }
+            entry.result.free();
         }
     }
 
     public void remove(final int pos, final int hash) {
-        if (pos > -1 && pos < results.length && (results[pos] != null && results[pos].hashCode() == hash)) {
+        final Entry entry = results.get(pos);
+        if (entry != null && entry.result.hashCode() == hash && results.remove(pos, entry)) {
+            removed(entry);
             // Perhaps we should not free resources here
             // but an explicit remove implies you want
             // to free resources
-            results[pos].free();
-            results[pos] = null;
+            entry.result.free();
         }
     }
 
     public void checkTimestamps() {
         final long now = System.currentTimeMillis();
-        for (int i = 0; i < results.length; i++) {
-            final AbstractCachedResult result = results[i];
-            if (result != null) {
-                if (now - result.getTimestamp() > TIMEOUT) {
+        for (final Map.Entry<Integer, Entry> next : results.entrySet()) {
+            final Entry entry = next.getValue();
+            if (now - entry.result.getTimestamp() > TIMEOUT && results.remove(next.getKey(), entry)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Removing result set " + new Date(entry.result.getTimestamp()).toString());
+                }
+                // Here we should not free resources, because they could be still in use
+                // by other threads, so leave the work to the garbage collector
+                removed(entry);
+                timeouts.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used results, either of the given user until
+     * the user's quota is met, or of all users until the memory budget is met.
+     * At least one result is always kept.
+     */
+    private void evictLeastRecentlyUsed(final String user) {
+        synchronized (evictionLock) {
+            while (user != null ? resultsPerUser.get(user).get() > maxResultsPerUser : memory.get() > maxMemory) {
+                Map.Entry<Integer, Entry> lru = null;
+                for (final Map.Entry<Integer, Entry> next : results.entrySet()) {
+                    if ((user == null || user.equals(next.getValue().user)) &&
+                            (lru == null || next.getValue().result.getTimestamp() < lru.getValue().result.getTimestamp())) {
+                        lru = next;
+                    }
+                }
+                if (lru == null) {
+                    // only the new result is left
+                    return;
+                }
+                if (results.remove(lru.getKey(), lru.getValue())) {
                     if (LOG.isDebugEnabled()) {
-                        LOG.debug("Removing result set " + new Date(result.getTimestamp()).toString());
+                        LOG.debug("Removing result set of user " + lru.getValue().user + " to make room: " +
+                                (user == null ? "memory budget exceeded" : "quota exceeded"));
+                    }
+                    // the result may still be in use by other threads, as for timed out results
+                    removed(lru.getValue());
+                    if (user == null) {
+                        evictions.increment();
+                    } else {
+                        quotaEvictions.increment();
                     }
-                    // Here we should not free resources, because they could be still in use
-                    // by other threads, so leave the work to the garbage collector
-                    results[i] = null;
                 }
             }
         }
     }
+
+    private void removed(final Entry entry) {
+        memory.addAndGet(-entry.size);
+        resultsPerUser.get(entry.user).decrementAndGet();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int getSize() {
+        return results.size();
+    }
+
+    /**
+     * @return the estimated memory in bytes used by the cached results
+     */
+    public long getMemory() {
+        return memory.get();
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public int getMaxResultsPerUser() {
+        return maxResultsPerUser;
+    }
+
+    /**
+     * @return the number of results removed to stay within the memory budget
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of results removed because their user exceeded the quota
+     */
+    public long getQuotaEvictions() {
+        return quotaEvictions.sum();
+    }
+
+    /**
+     * @return the number of results removed because they were not used for {@link #TIMEOUT} milliseconds
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    private static final class Entry {
+        private final String user;
+        private final AbstractCachedResult result;
+        private final long size;
+
+        Entry(final String user, final AbstractCachedResult result, final long size) {
+            this.user = user;
+            this.result = result;
+            this.size = size;
+        }
+    }
 }
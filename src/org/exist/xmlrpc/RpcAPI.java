@@ -51,6 +51,8 @@ public interface RpcAPI {
     public static final String LINE = "line";
     public static final String COLUMN = "column";
     public static final String MODULE_LOAD_PATH = "module-load-path";
+    /** "yes" or "analyze" to return the plan of a query instead of its results, see {@link org.exist.xquery.QueryPlan} */
+    public static final String EXPLAIN = "explain";
 
     /**
      * Return the database version.
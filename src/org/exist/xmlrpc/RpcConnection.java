@@ -235,6 +235,15 @@ public class RpcConnection implements RpcAPI {
         final XQuery xquery = broker.getBrokerPool().getXQueryService();
 
         checkPragmas(compiled.getContext(), parameters);
+        final QueryPlan plan = compiled.getContext().getProfiler().getPlan();
+        if (plan != null) {
+            plan.setQuery(compiled);
+            if (!plan.isAnalyze()) {
+                // the query is not executed, so the context is not reset
+                compiled.getContext().getProfiler().setPlan(null);
+                return new QueryResult(plan.toNode(compiled.getContext()), new Properties());
+            }
+        }
         LockedDocumentMap lockedDocuments = null;
         try {
             final long start = System.currentTimeMillis();
@@ -243,10 +252,13 @@ public class RpcConnection implements RpcAPI {
                 compiled.getContext().setProtectedDocs(lockedDocuments);
             }
             final Properties outputProperties = new Properties();
-            final Sequence result = xquery.execute(broker, compiled, contextSet, outputProperties);
+            Sequence result = xquery.execute(broker, compiled, contextSet, outputProperties);
             // pass last modified date to the HTTP response
             HTTPUtils.addLastModifiedHeader(result, compiled.getContext());
             LOG.info("query took " + (System.currentTimeMillis() - start) + "ms.");
+            if (plan != null) {
+                result = plan.toNode(compiled.getContext());
+            }
             return new QueryResult(result, outputProperties);
         } catch (final XPathException e) {
             return new QueryResult(e);
@@ -285,10 +297,14 @@ public class RpcConnection implements RpcAPI {
     private CompiledXQuery compile(final DBBroker broker, final Source source, final Map<String, Object> parameters) throws XPathException, IOException, PermissionDeniedException {
         final XQuery xquery = broker.getBrokerPool().getXQueryService();
         final XQueryPool pool = broker.getBrokerPool().getXQueryPool();
-        CompiledXQuery compiled = pool.borrowCompiledXQuery(broker, source);
+        final String explain = (String) parameters.get(RpcAPI.EXPLAIN);
+        final QueryPlan plan = explain == null || "no".equals(explain) ? null : new QueryPlan("analyze".equals(explain));
+        // the plan has to see the decisions made while compiling
+        CompiledXQuery compiled = plan == null ? pool.borrowCompiledXQuery(broker, source) : null;
         XQueryContext context;
         if (compiled == null) {
             context = new XQueryContext(broker.getBrokerPool());
+            context.getProfiler().setPlan(plan);
         } else {
             context = compiled.getContext();
         }
@@ -400,7 +416,7 @@ public class RpcConnection implements RpcAPI {
                     throw new EXistException(result.getException());
                 }
                 result.queryTime = System.currentTimeMillis() - startTime;
-                return factory.resultSets.add(result);
+                return factory.resultSets.add(user.getName(), result);
             } catch (final XPathException e) {
                 throw new EXistException(e);
             }
@@ -654,7 +670,7 @@ public class RpcConnection implements RpcAPI {
             if (vtempFile.length() > MAX_DOWNLOAD_CHUNK_SIZE) {
                 offset = firstChunk.length;
 
-                final int handle = factory.resultSets.add(new SerializedResult(vtempFile));
+                final int handle = factory.resultSets.add(user.getName(), new SerializedResult(vtempFile));
                 result.put("handle", Integer.toString(handle));
                 result.put("supports-long-offset", Boolean.TRUE);
             } else {
@@ -1500,7 +1516,7 @@ public class RpcConnection implements RpcAPI {
             vtempFile = new VirtualTempFile(MAX_DOWNLOAD_CHUNK_SIZE, MAX_DOWNLOAD_CHUNK_SIZE);
             vtempFile.setTempPrefix("rpc");
             vtempFile.setTempPostfix(".xml");
-            final int handle = factory.resultSets.add(new SerializedResult(vtempFile));
+            final int handle = factory.resultSets.add(user.getName(), new SerializedResult(vtempFile));
             fileName = Integer.toString(handle);
         } else {
 //            LOG.debug("appending to file " + fileName);
@@ -1727,7 +1743,7 @@ public class RpcConnection implements RpcAPI {
 
                 queryResult.result = resultSeq;
                 queryResult.queryTime = (System.currentTimeMillis() - startTime);
-                final int id = factory.resultSets.add(queryResult);
+                final int id = factory.resultSets.add(user.getName(), queryResult);
                 ret.put("id", id);
                 ret.put("hash", queryResult.hashCode());
                 ret.put("results", result);
@@ -1816,7 +1832,7 @@ public class RpcConnection implements RpcAPI {
 
                 queryResult.result = resultSeq;
                 queryResult.queryTime = (System.currentTimeMillis() - startTime);
-                final int id = factory.resultSets.add(queryResult);
+                final int id = factory.resultSets.add(user.getName(), queryResult);
                 ret.put("id", id);
                 ret.put("hash", queryResult.hashCode());
                 ret.put("results", result);
@@ -1983,7 +1999,7 @@ public class RpcConnection implements RpcAPI {
             if (vtempFile.length() > MAX_DOWNLOAD_CHUNK_SIZE) {
                 offset = firstChunk.length;
 
-                final int handle = factory.resultSets.add(new SerializedResult(vtempFile));
+                final int handle = factory.resultSets.add(user.getName(), new SerializedResult(vtempFile));
                 result.put("handle", Integer.toString(handle));
                 result.put("supports-long-offset", Boolean.TRUE);
             } else {
@@ -2115,7 +2131,7 @@ public class RpcConnection implements RpcAPI {
             if (vtempFile.length() > MAX_DOWNLOAD_CHUNK_SIZE) {
                 offset = firstChunk.length;
 
-                final int handle = factory.resultSets.add(new SerializedResult(vtempFile));
+                final int handle = factory.resultSets.add(user.getName(), new SerializedResult(vtempFile));
                 result.put("handle", Integer.toString(handle));
                 result.put("supports-long-offset", Boolean.TRUE);
             } else {
@@ -2277,7 +2293,7 @@ public class RpcConnection implements RpcAPI {
             if (vtempFile.length() > MAX_DOWNLOAD_CHUNK_SIZE) {
                 offset = firstChunk.length;
 
-                final int handle = factory.resultSets.add(new SerializedResult(vtempFile));
+                final int handle = factory.resultSets.add(user.getName(), new SerializedResult(vtempFile));
                 result.put("handle", Integer.toString(handle));
                 result.put("supports-long-offset", Boolean.TRUE);
             } else {
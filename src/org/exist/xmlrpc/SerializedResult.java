@@ -55,6 +55,14 @@ public class SerializedResult extends AbstractCachedResult {
         return result;
     }
 
+    /**
+     * Only the part of the result which is not written to a temporary file is counted.
+     */
+    @Override
+    public long getSizeEstimate() {
+        return result == null ? 0 : result.getMaxMemorySize();
+    }
+
     @Override
     public void free() {
         if (result != null) {
@@ -26,10 +26,14 @@ import org.apache.xmlrpc.XmlRpcRequest;
 import org.apache.xmlrpc.common.XmlRpcHttpRequestConfig;
 import org.apache.xmlrpc.server.RequestProcessorFactoryFactory;
 import org.exist.EXistException;
+import org.exist.management.AgentFactory;
+import org.exist.management.impl.RpcResultCacheStatistics;
 import org.exist.security.AuthenticationException;
 import org.exist.security.SecurityManager;
 import org.exist.security.Subject;
 import org.exist.storage.BrokerPool;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
 
 /**
  * Factory creates a new handler for each XMLRPC request. For eXist, the handler is implemented
@@ -43,7 +47,7 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
 
     private final boolean useDefaultUser;
     private final BrokerPool brokerPool;
-    protected final QueryResultCache resultSets = new QueryResultCache();
+    protected final QueryResultCache resultSets;
 
     private long lastCheck = System.currentTimeMillis();
 
@@ -58,6 +62,20 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
             this.databaseId = databaseId;
         }
         this.brokerPool = BrokerPool.getInstance(this.databaseId);
+
+        final Configuration configuration = brokerPool.getConfiguration();
+        final int maxMemory = configuration.getInteger(QueryResultCache.PROPERTY_MAX_MEMORY);
+        final int maxResultsPerUser = configuration.getInteger(QueryResultCache.PROPERTY_MAX_RESULTS_PER_USER);
+        this.resultSets = new QueryResultCache(
+                (maxMemory < 0 ? QueryResultCache.DEFAULT_MAX_MEMORY : maxMemory) * 1024L * 1024L,
+                maxResultsPerUser < 0 ? QueryResultCache.DEFAULT_MAX_RESULTS_PER_USER : maxResultsPerUser);
+        try {
+            AgentFactory.getInstance().addMBean(brokerPool.getId(),
+                    "org.exist.management." + brokerPool.getId() + ":type=RpcResultCacheStatistics",
+                    new RpcResultCacheStatistics(resultSets));
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering mbean for the XML-RPC result cache.", e);
+        }
     }
 
     @Override
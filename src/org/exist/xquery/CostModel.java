@@ -0,0 +1,274 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.xquery.value.Type;
+
+/**
+ * Estimates the number of nodes selected by location steps and the selectivity
+ * of predicates, so the query engine can choose the cheaper of two plans.
+ *
+ * Node counts are taken from the element statistics collected by
+ * {@link IndexStatistics}, which are only available if the index-stats module
+ * is enabled in conf.xml. They cover the entire database, so they are an upper
+ * bound for a query on a subset of the documents. Without statistics, all
+ * estimates are {@link #UNKNOWN} and callers fall back to their fixed heuristics.
+ *
+ * Costs are expressed in units of reading one entry from an index.
+ */
+public class CostModel {
+
+    public final static long UNKNOWN = -1;
+
+    /**
+     * The cost of a lookup in the structural index for one node or document,
+     * compared to reading one entry.
+     */
+    public final static int INDEX_SEEK_COST = 16;
+
+    /**
+     * The cost of loading the value of one node and comparing it,
+     * compared to reading one index entry.
+     */
+    public final static int NODE_VALUE_COST = 4;
+
+    /** selectivity assumed for predicates the model does not recognize */
+    public final static double DEFAULT_SELECTIVITY = 0.5;
+
+    private final static double EQUALITY_SELECTIVITY = 0.1;
+    private final static double RANGE_SELECTIVITY = 1.0 / 3;
+    private final static double INEQUALITY_SELECTIVITY = 0.9;
+    private final static double INDEX_FUNCTION_SELECTIVITY = 0.1;
+
+    private final IndexStatistics statistics;
+
+    public CostModel(IndexStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public boolean hasStatistics() {
+        return statistics != null;
+    }
+
+    /**
+     * Returns the number of elements in the database matching the node test.
+     *
+     * @param test the node test
+     * @return the number of elements, or {@link #UNKNOWN} if the test does not
+     * select elements by name or no statistics are available
+     */
+    public long getNodeCount(NodeTest test) {
+        final QName name = getElementName(test);
+        if (name == null) {
+            return UNKNOWN;
+        }
+        return statistics.getNodeCount(name);
+    }
+
+    /**
+     * Estimates the number of nodes selected by a location step on
+     * the child or descendant axis, including its predicates.
+     *
+     * @param step the location step
+     * @return the estimated number of nodes or {@link #UNKNOWN}
+     */
+    public long estimateCardinality(LocationStep step) {
+        switch (step.getAxis()) {
+            case Constants.CHILD_AXIS:
+            case Constants.DESCENDANT_AXIS:
+            case Constants.DESCENDANT_SELF_AXIS:
+                break;
+            default:
+                return UNKNOWN;
+        }
+        final long count = getNodeCount(step.getTest());
+        if (count == UNKNOWN) {
+            return UNKNOWN;
+        }
+        double estimate = count;
+        for (final Predicate predicate : step.getPredicates()) {
+            if (predicate.getExecutionMode() == Predicate.POSITIONAL) {
+                continue;
+            }
+            final double selectivity = estimateSelectivity(predicate, step);
+            estimate *= selectivity < 0 ? DEFAULT_SELECTIVITY : selectivity;
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Estimates the fraction of the nodes selected by the step which
+     * pass the predicate.
+     *
+     * Recognized are comparisons of a relative path with a value which does
+     * not depend on the context, existence tests for a child element, calls
+     * to functions which can use an index, and their combinations with and/or.
+     *
+     * @param predicate the predicate
+     * @param step the step the predicate is attached to
+     * @return the selectivity between 0 and 1, or -1 if the predicate is not recognized
+     */
+    public double estimateSelectivity(Predicate predicate, LocationStep step) {
+        if (predicate.getLength() != 1) {
+            return -1;
+        }
+        return estimateSelectivity(predicate.getExpression(0), step.getTest());
+    }
+
+    private double estimateSelectivity(Expression expr, NodeTest contextTest) {
+        expr = simplify(expr);
+        if (expr instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) expr;
+            if (!Type.subTypeOf(comparison.getLeft().returnsType(), Type.NODE) ||
+                    (comparison.getRight().getDependencies() & (Dependency.CONTEXT_ITEM | Dependency.CONTEXT_SET)) != 0) {
+                return -1;
+            }
+            switch (comparison.getRelation()) {
+                case EQ:
+                case IN:
+                    return EQUALITY_SELECTIVITY;
+                case NEQ:
+                    return INEQUALITY_SELECTIVITY;
+                default:
+                    return RANGE_SELECTIVITY;
+            }
+        } else if (expr instanceof OpAnd || expr instanceof OpOr) {
+            final LogicalOp op = (LogicalOp) expr;
+            final double left = estimateSelectivity(op.getLeft(), contextTest);
+            final double right = estimateSelectivity(op.getRight(), contextTest);
+            if (left < 0 || right < 0) {
+                return -1;
+            }
+            return expr instanceof OpAnd ? left * right : left + right - left * right;
+        } else if (expr instanceof Function && expr instanceof Optimizable) {
+            return INDEX_FUNCTION_SELECTIVITY;
+        } else if (expr instanceof LocationStep) {
+            // existence test for a child element: [foo]
+            final LocationStep step = (LocationStep) expr;
+            if (step.getAxis() != Constants.CHILD_AXIS || step.hasPredicates()) {
+                return -1;
+            }
+            final QName parentName = getElementName(contextTest);
+            final QName childName = getElementName(step.getTest());
+            if (parentName == null || childName == null) {
+                return -1;
+            }
+            final long parents = statistics.getNodeCount(parentName);
+            if (parents == 0) {
+                return -1;
+            }
+            // a parent may have several children of the same name, so this over-estimates
+            return Math.min(1.0, (double) statistics.getChildCount(parentName, childName) / parents);
+        }
+        return -1;
+    }
+
+    /**
+     * Decides if the nodes selected by a step should be pre-selected by an index
+     * lookup for one of its predicates (see {@link org.exist.xquery.pragmas.Optimize}),
+     * or if the predicate should rather be evaluated on the nodes found by a scan of
+     * the structural index.
+     *
+     * An index lookup returns the nodes matching the comparison, which then have to be
+     * joined with their ancestors. The scan loads the compared value for each node
+     * selected by the step.
+     *
+     * @param step the location step
+     * @param predicate the predicate with an optimizable expression
+     * @return false if the scan is estimated to be cheaper, true otherwise
+     */
+    public boolean preferIndexLookup(LocationStep step, Predicate predicate) {
+        final long stepCount = getNodeCount(step.getTest());
+        final long indexHits = estimateIndexHits(predicate, step);
+        if (stepCount == UNKNOWN || indexHits == UNKNOWN) {
+            return true;
+        }
+        return indexHits <= stepCount * NODE_VALUE_COST;
+    }
+
+    /**
+     * Estimates how many nodes an index lookup for the predicate returns.
+     *
+     * @param predicate the predicate
+     * @param step the step the predicate is attached to
+     * @return the estimated number of nodes or {@link #UNKNOWN}
+     */
+    public long estimateIndexHits(Predicate predicate, LocationStep step) {
+        if (predicate.getLength() != 1) {
+            return UNKNOWN;
+        }
+        final Expression expr = simplify(predicate.getExpression(0));
+        if (!(expr instanceof GeneralComparison)) {
+            return UNKNOWN;
+        }
+        final Expression left = lastStep(((GeneralComparison) expr).getLeft());
+        final double selectivity = estimateSelectivity(expr, step.getTest());
+        if (!(left instanceof LocationStep) || selectivity < 0) {
+            return UNKNOWN;
+        }
+        final long count = getNodeCount(((LocationStep) left).getTest());
+        return count == UNKNOWN ? UNKNOWN : Math.round(count * selectivity);
+    }
+
+    /**
+     * Decides if the nodes selected by a step on the child or descendant axis should be
+     * found by a separate lookup in the structural index for each context node, or by a
+     * single scan of all matching nodes in the context documents.
+     *
+     * @param test the node test of the step
+     * @param contextSize the number of nodes in the context set
+     * @param documents the number of documents to scan
+     * @return true if per node lookups are cheaper, false if a scan is cheaper,
+     * null if there are no statistics for the test
+     */
+    public Boolean preferContextLookups(NodeTest test, int contextSize, int documents) {
+        final long count = getNodeCount(test);
+        if (count == UNKNOWN) {
+            return null;
+        }
+        // the scan needs one lookup per document and then reads all nodes matching the test
+        return (long) contextSize * INDEX_SEEK_COST < (long) documents * INDEX_SEEK_COST + count;
+    }
+
+    private QName getElementName(NodeTest test) {
+        if (statistics == null || test == null || test.getType() != Type.ELEMENT ||
+                test.isWildcardTest() || test.getName() == null) {
+            return null;
+        }
+        return test.getName();
+    }
+
+    private static Expression simplify(Expression expr) {
+        // only unwrap plain paths, not the subclasses of PathExpr
+        while (expr != null && expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+            expr = ((PathExpr) expr).getExpression(0);
+        }
+        return expr;
+    }
+
+    private static Expression lastStep(Expression expr) {
+        while (expr != null && expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() > 0) {
+            expr = ((PathExpr) expr).getLastExpression();
+        }
+        return expr;
+    }
+}
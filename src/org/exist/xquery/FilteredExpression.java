@@ -81,6 +81,9 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+
+            // (...)[position() le 10]: only the first items of the expression are needed
+            ResultLimit.apply(expression, predicates.get(0).getStaticPositionLimit());
         }
     }
 
@@ -37,6 +37,8 @@ public class ForExpr extends BindingExpression {
     private String positionalVariable = null;
     private boolean allowEmpty = false;
     private boolean isOuterFor = true;
+    // If only the first items of the result are used, see setLimit
+    private int limit = -1;
 
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
@@ -58,6 +60,22 @@ public class ForExpr extends BindingExpression {
         positionalVariable = var;
     }
 
+    /**
+     * Only the first limit items of the result will be used by the
+     * enclosing expression, so the iteration can stop as soon as the
+     * result contains enough items. Must not be set if the result is
+     * reordered or grouped by a subsequent clause.
+     *
+     * @param limit the number of items needed, or -1 to iterate all items
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
@@ -185,8 +203,12 @@ public class ForExpr extends BindingExpression {
             if (in.isEmpty() && allowEmpty) {
                 processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
             } else {
+                int produced = 0;
                 for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
-                    processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    final Sequence returned = processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    if (limit > 0 && (produced += returned.getItemCount()) >= limit) {
+                        break;
+                    }
                 }
             }
         } catch (final QName.IllegalQNameException e) {
@@ -233,7 +255,7 @@ public class ForExpr extends BindingExpression {
         return resultSequence;
     }
 
-    private void processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
+    private Sequence processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
             at, int p) throws XPathException {
         context.proceed(this);
         context.setContextSequencePosition(p, in);
@@ -248,10 +270,12 @@ public class ForExpr extends BindingExpression {
         //Reset the context position
         context.setContextSequencePosition(0, null);
 
-        resultSequence.addAll(returnExpr.eval(null));
+        final Sequence returned = returnExpr.eval(null);
+        resultSequence.addAll(returned);
 
         // free resources
         var.destroy(context, resultSequence);
+        return returned;
     }
 
     private boolean callPostEval() {
@@ -24,6 +24,7 @@ import java.util.List;
 
 import org.exist.Namespaces;
 import org.exist.dom.QName;
+import org.exist.storage.XQueryResultCache;
 import org.exist.xquery.Constants.Comparison;
 import org.exist.xquery.Constants.StringTruncationOperator;
 import org.exist.xquery.parser.XQueryAST;
@@ -244,6 +245,7 @@ public class FunctionFactory {
                 "Java binding is disabled in the current configuration (see conf.xml)." +
                 " Call to " + qname.getStringValue() + " denied.");
         }
+        context.markResultUncacheable();
         final JavaCall call = new JavaCall(context, qname);
         call.setLocation(ast.getLine(), ast.getColumn());
         call.setArguments(params);
@@ -313,6 +315,9 @@ public class FunctionFactory {
             throw new XPathException(ast.getLine(), ast.getColumn(),
                 "Access to deprecated functions is not allowed. Call to '" + qname.getStringValue() + "()' denied. " + def.getSignature().getDeprecated());
         }
+        if (!XQueryResultCache.isCacheable(def.getSignature().getName())) {
+            context.markResultUncacheable();
+        }
         final Function fn = Function.createFunction(context, ast, def);
         fn.setArguments(params);
         fn.setASTNode(ast);
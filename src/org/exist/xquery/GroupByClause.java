@@ -2,11 +2,12 @@ package org.exist.xquery;
 
 import org.exist.dom.QName;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.util.SpillCodec;
 import org.exist.xquery.value.*;
 
+import java.io.IOException;
 import java.text.Collator;
 import java.util.*;
-import java.util.stream.Stream;
 
 /**
  * Implements a "group by" clause inside a FLWOR.
@@ -18,31 +19,102 @@ public class GroupByClause extends AbstractFLWORClause {
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
     private final Deque<GroupByData> stack = new ArrayDeque<>();
+    private Collator[] collators = null;
 
     /**
      * Collect tuples and grouping vars. Because GroupByClause needs to keep
      * state across calls to preEval/eval/postEval, we have to track state data
      * in a separate object and push it to a stack, otherwise recursive calls
      * would overwrite data.
+     *
+     * Groups are kept in a hash map in the order in which they were first seen.
+     * If the number of buffered items exceeds the configured threshold, all tuples
+     * are written to a {@link GroupBySpill} instead and grouped one partition at
+     * a time in {@link #postEval(Sequence)}.
      */
     private class GroupByData {
 
-        private Map<List<AtomicValue>, Tuple> groupedMap = null;
-        private Map<QName, LocalVariable> variables = null;
-        private List<LocalVariable> groupingVars = null;
+        private final Map<GroupKey, Tuple> groupedMap = new LinkedHashMap<>();
+        private final List<LocalVariable> variables = new ArrayList<>();
+        private final Map<QName, Integer> variableIndex = new HashMap<>();
+        private final List<LocalVariable> groupingVars = new ArrayList<>();
 
         private boolean initialized = false;
 
-        public GroupByData() {
-            // check if we can use a hash map
-            if (usesDefaultCollator()) {
-                groupedMap = new HashMap<>();
-            } else {
-                // non-default collation: must use tree map
-                groupedMap = new TreeMap<>(GroupByClause.this::compareKeys);
+        private final int spillThreshold = context.getGroupBySpillThreshold();
+        private long bufferedItems = 0;
+        private boolean spillable = spillThreshold > 0;
+        private GroupBySpill spill = null;
+
+        private void add(final GroupKey key, final Sequence[] groupingValues, final Sequence[] values)
+                throws XPathException {
+            if (spill != null) {
+                if (SpillCodec.isSpillable(groupingValues) && SpillCodec.isSpillable(values)) {
+                    writeToSpill(key, groupingValues, values);
+                    return;
+                }
+                // tuple can not be written to disk: group everything in memory
+                unspill();
+            }
+
+            groupedMap.computeIfAbsent(key, k -> new Tuple(groupingValues)).add(values);
+
+            if (spillable) {
+                for (final Sequence value : values) {
+                    bufferedItems += value.getItemCount();
+                }
+                if (bufferedItems > spillThreshold) {
+                    startSpill();
+                }
+            }
+        }
+
+        private void startSpill() throws XPathException {
+            for (final Tuple tuple : groupedMap.values()) {
+                if (!SpillCodec.isSpillable(tuple.groupingValues) || !SpillCodec.isSpillable(tuple.values)) {
+                    spillable = false;
+                    return;
+                }
+            }
+            spill = new GroupBySpill(context.getBroker().getBrokerPool().getNodeFactory());
+            for (final Map.Entry<GroupKey, Tuple> entry : groupedMap.entrySet()) {
+                writeToSpill(entry.getKey(), entry.getValue().groupingValues, entry.getValue().values);
+            }
+            groupedMap.clear();
+        }
+
+        private void writeToSpill(final GroupKey key, final Sequence[] groupingValues, final Sequence[] values)
+                throws XPathException {
+            try {
+                spill.write(key, groupingValues, values);
+            } catch (final IOException e) {
+                throw new XPathException(GroupByClause.this, "Failed to write group by tuples to disk: " + e.getMessage(), e);
+            }
+        }
+
+        private void unspill() throws XPathException {
+            for (int i = 0; i < GroupBySpill.PARTITIONS; i++) {
+                readPartition(i);
+            }
+            releaseSpill();
+            spillable = false;
+        }
+
+        private void readPartition(final int partition) throws XPathException {
+            try {
+                spill.read(partition, (keyValues, groupingValues, values) ->
+                        groupedMap.computeIfAbsent(new GroupKey(keyValues, collators()), k -> new Tuple(groupingValues))
+                                .add(values));
+            } catch (final IOException e) {
+                throw new XPathException(GroupByClause.this, "Failed to read group by tuples from disk: " + e.getMessage(), e);
+            }
+        }
+
+        private void releaseSpill() {
+            if (spill != null) {
+                spill.close();
+                spill = null;
             }
-            variables = new HashMap<>();
-            groupingVars = new ArrayList<>();
         }
     }
 
@@ -66,9 +138,10 @@ public class GroupByClause extends AbstractFLWORClause {
         final GroupByData data = stack.peek();
 
         // Evaluate group spec to create grouping key sequence
-        final List<Sequence> groupingValues = new ArrayList<>();
-        final List<AtomicValue> groupingKeys = new ArrayList<>();
-        for (GroupSpec spec: groupSpecs) {
+        final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+        final AtomicValue[] groupingKeys = new AtomicValue[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            final GroupSpec spec = groupSpecs[i];
             final Sequence groupingSeq = spec.getGroupExpression().eval(null);
             if (groupingSeq.getItemCount() > 1) {
                 throw new XPathException(this, ErrorCodes.XPTY0004, "Grouping variable " + spec.getKeyVarName() + " " +
@@ -83,29 +156,45 @@ public class GroupByClause extends AbstractFLWORClause {
                 groupingVar.setStaticType(groupingValue.getType());
                 data.groupingVars.add(groupingVar);
             }
-            groupingValues.add(groupingSeq);
-            groupingKeys.add(groupingValue);
+            groupingValues[i] = groupingSeq;
+            groupingKeys[i] = groupingValue;
         }
 
-        // collect the current tuples into the grouping map
-        final Tuple tuple = data.groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
-
-        // scan in-scope variables to collect tuples
+        // scan in-scope variables to collect the current tuple
         LocalVariable nextVar = rootClause.getStartVariable();
         Objects.requireNonNull(nextVar);
+        if (!data.initialized) {
+            // on first call: initialize non-grouping variables for later use
+            for (LocalVariable v = nextVar; v != null; v = v.after) {
+                final LocalVariable var = new LocalVariable(v.getQName());
+                var.setSequenceType(v.getSequenceType());
+                var.setStaticType(v.getStaticType());
+                var.setContextDocs(v.getContextDocs());
+                final Integer index = data.variableIndex.get(var.getQName());
+                if (index == null) {
+                    data.variableIndex.put(var.getQName(), data.variables.size());
+                    data.variables.add(var);
+                } else {
+                    data.variables.set(index, var);
+                }
+            }
+        }
+        final Sequence[] values = new Sequence[data.variables.size()];
         while(nextVar != null) {
-            tuple.add(nextVar.getQName(), nextVar.getValue());
-            if (!data.initialized) {
-                // on first call: initialize non-grouping variable for later use
-                final LocalVariable var = new LocalVariable(nextVar.getQName());
-                var.setSequenceType(nextVar.getSequenceType());
-                var.setStaticType(nextVar.getStaticType());
-                var.setContextDocs(nextVar.getContextDocs());
-                data.variables.put(var.getQName(), var);
+            final int index = data.variableIndex.get(nextVar.getQName());
+            if (values[index] == null) {
+                values[index] = nextVar.getValue();
+            } else {
+                // variable shadowed by another one with the same name: merge the values
+                final ValueSequence merged = new ValueSequence(values[index]);
+                merged.addAll(nextVar.getValue());
+                values[index] = merged;
             }
             nextVar = nextVar.after;
         }
 
+        data.add(new GroupKey(groupingKeys, collators()), groupingValues, values);
+
         data.initialized = true;
         return contextSequence;
     }
@@ -118,36 +207,25 @@ public class GroupByClause extends AbstractFLWORClause {
             final LocalVariable mark = context.markLocalVariables(false);
             try {
                 // declare non-grouping variables
-                for (LocalVariable var : data.variables.values()) {
+                for (LocalVariable var : data.variables) {
                     context.declareVariableBinding(var);
                 }
                 // declare grouping variables
                 for (LocalVariable var : data.groupingVars) {
                     context.declareVariableBinding(var);
                 }
-                // iterate over each group
-                for (Tuple tuple : data.groupedMap.values()) {
-                    context.proceed();
-
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : data.groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
-                            throw new XPathException(this, "Internal error: missing grouping value");
-                        }
+                if (data.spill == null) {
+                    evalGroups(data, result);
+                } else {
+                    // group and process one partition at a time
+                    for (int i = 0; i < GroupBySpill.PARTITIONS; i++) {
+                        data.groupedMap.clear();
+                        data.readPartition(i);
+                        evalGroups(data, result);
                     }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = data.variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
-                    }
-                    final Sequence r = returnExpr.eval(null);
-                    result.addAll(r);
                 }
             } finally {
+                data.releaseSpill();
                 stack.pop();
                 context.popLocalVariables(mark, result);
             }
@@ -161,6 +239,27 @@ public class GroupByClause extends AbstractFLWORClause {
         return seq;
     }
 
+    private void evalGroups(final GroupByData data, final Sequence result) throws XPathException {
+        // iterate over each group
+        for (Tuple tuple : data.groupedMap.values()) {
+            context.proceed();
+
+            // set grouping variable values
+            if (tuple.groupingValues.length != data.groupingVars.size()) {
+                throw new XPathException(this, "Internal error: missing grouping value");
+            }
+            for (int i = 0; i < tuple.groupingValues.length; i++) {
+                data.groupingVars.get(i).setValue(tuple.groupingValues[i]);
+            }
+            // set values of non-grouping variables
+            for (int i = 0; i < tuple.values.length; i++) {
+                data.variables.get(i).setValue(tuple.values[i] == null ? Sequence.EMPTY_SEQUENCE : tuple.values[i]);
+            }
+            final Sequence r = returnExpr.eval(null);
+            result.addAll(r);
+        }
+    }
+
     @Override
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -208,6 +307,7 @@ public class GroupByClause extends AbstractFLWORClause {
             }
         }
         this.groupSpecs = distinctSpecs.toArray(new GroupSpec[distinctSpecs.size()]);
+        this.collators = null;
     }
 
     public GroupSpec[] getGroupSpecs() {
@@ -244,53 +344,118 @@ public class GroupByClause extends AbstractFLWORClause {
         visitor.visitGroupByClause(this);
     }
 
+    private Collator[] collators() {
+        if (collators == null) {
+            final Collator[] c = new Collator[groupSpecs.length];
+            for (int i = 0; i < groupSpecs.length; i++) {
+                c[i] = groupSpecs[i].getCollator();
+            }
+            collators = c;
+        }
+        return collators;
+    }
+
     /**
-     * Compare keys using the collator given in the group spec. Used to
-     * sort keys into the grouping map.
+     * Key of a group in the grouping map. Values are compared using the
+     * collator given in the corresponding group spec, if any: in this case
+     * the hash code is computed from the collation key, so values which are
+     * equal according to the collator end up in the same group.
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
-        final int c1 = s1.size();
-        final int c2 = s2.size();
-        if (c1 == c2) {
-            try {
-                for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
-                    final Collator collator = groupSpecs[i].getCollator();
-                    final int r = v1.compareTo(collator, v2);
-                    if (r != Constants.EQUAL) {
-                        return r;
+    static class GroupKey {
+
+        private final AtomicValue[] values;
+        private final Collator[] collators;
+        private final int hashCode;
+
+        GroupKey(final AtomicValue[] values, final Collator[] collators) throws XPathException {
+            this.values = values;
+            this.collators = collators;
+            int h = 1;
+            for (int i = 0; i < values.length; i++) {
+                final AtomicValue value = values[i];
+                final Collator collator = collators[i];
+                final int vh;
+                if (collator != null && isStringLike(value)) {
+                    vh = Arrays.hashCode(collator.getCollationKey(value.getStringValue()).toByteArray());
+                } else {
+                    vh = value.hashCode();
+                }
+                h = 31 * h + vh;
+            }
+            this.hashCode = h;
+        }
+
+        AtomicValue[] getValues() {
+            return values;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof GroupKey)) {
+                return false;
+            }
+            final GroupKey other = (GroupKey) obj;
+            if (hashCode != other.hashCode || values.length != other.values.length) {
+                return false;
+            }
+            for (int i = 0; i < values.length; i++) {
+                final AtomicValue v1 = values[i];
+                final AtomicValue v2 = other.values[i];
+                final Collator collator = collators[i];
+                if (collator != null && isStringLike(v1) && isStringLike(v2)) {
+                    try {
+                        if (v1.compareTo(collator, v2) != Constants.EQUAL) {
+                            return false;
+                        }
+                    } catch (final XPathException e) {
+                        return false;
                     }
+                } else if (!v1.equals(v2)) {
+                    return false;
                 }
-                return Constants.EQUAL;
-            } catch (XPathException e) {
-                return Constants.INFERIOR;
             }
+            return true;
         }
-        return c1 < c2 ? Constants.INFERIOR : Constants.SUPERIOR;
-    }
 
-    private boolean usesDefaultCollator() {
-        return Stream.of(groupSpecs).allMatch(spec -> spec.getCollator() == null);
+        private static boolean isStringLike(final AtomicValue value) {
+            final int type = value.getType();
+            return Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI;
+        }
     }
 
-    static class Tuple extends HashMap<QName, Sequence> {
+    /**
+     * The values collected for a group: one sequence per non-grouping
+     * variable, indexed like {@link GroupByData#variables}.
+     */
+    static class Tuple {
 
-        private final List<Sequence> groupingValues;
+        private final Sequence[] groupingValues;
+        private ValueSequence[] values = null;
 
-        public Tuple(final List<Sequence> groupingValues) {
-            super();
+        public Tuple(final Sequence[] groupingValues) {
             this.groupingValues = groupingValues;
         }
 
-        public void add(final QName name, final Sequence val) throws XPathException {
-            Sequence seq = get(name);
-            if (seq == null) {
-                final ValueSequence temp = new ValueSequence(val.getItemCount());
-                temp.addAll(val);
-                put(name, temp);
-            } else {
-                seq.addAll(val);
+        public void add(final Sequence[] vals) throws XPathException {
+            if (values == null) {
+                values = new ValueSequence[vals.length];
+            }
+            for (int i = 0; i < vals.length; i++) {
+                if (vals[i] == null) {
+                    continue;
+                }
+                if (values[i] == null) {
+                    values[i] = new ValueSequence(vals[i].getItemCount());
+                }
+                values[i].addAll(vals[i]);
             }
         }
     }
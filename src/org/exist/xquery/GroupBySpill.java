@@ -0,0 +1,156 @@
+package org.exist.xquery;
+
+import org.exist.numbering.NodeIdFactory;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.util.SpillCodec;
+import org.exist.xquery.value.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Temporary storage for the tuples of a {@link GroupByClause} which exceed
+ * its memory budget. Tuples are partitioned by the hash code of their
+ * grouping key, so all tuples of a group end up in the same partition and
+ * each partition can be grouped in memory on its own. Within a partition,
+ * tuples are kept in the order in which they were written.
+ *
+ * Only tuples consisting of atomic values and persistent nodes can be
+ * written, see {@link SpillCodec#isSpillable(Item)}.
+ */
+class GroupBySpill implements AutoCloseable {
+
+    static final int PARTITIONS = 16;
+
+    private final SpillCodec codec;
+    private final Path[] files = new Path[PARTITIONS];
+    private final DataOutputStream[] outputs = new DataOutputStream[PARTITIONS];
+    /** the number of tuples written to each partition */
+    private final int[] counts = new int[PARTITIONS];
+
+    GroupBySpill(final NodeIdFactory nodeFactory) {
+        this.codec = new SpillCodec(nodeFactory);
+    }
+
+    static int partitionOf(final GroupByClause.GroupKey key) {
+        return (key.hashCode() & 0x7fffffff) % PARTITIONS;
+    }
+
+    /**
+     * Append a tuple to the partition of its key.
+     *
+     * @param key the grouping key
+     * @param groupingValues the values of the grouping variables
+     * @param values the values of the non-grouping variables, a slot may be null
+     */
+    void write(final GroupByClause.GroupKey key, final Sequence[] groupingValues, final Sequence[] values)
+            throws IOException, XPathException {
+        final int partition = partitionOf(key);
+        final DataOutputStream os = getOutput(partition);
+        final AtomicValue[] keyValues = key.getValues();
+        os.writeInt(keyValues.length);
+        for (final AtomicValue value : keyValues) {
+            codec.write(os, value);
+        }
+        writeSequences(os, groupingValues);
+        writeSequences(os, values);
+        counts[partition]++;
+    }
+
+    private DataOutputStream getOutput(final int partition) throws IOException {
+        DataOutputStream os = outputs[partition];
+        if (os == null) {
+            files[partition] = TemporaryFileManager.getInstance().getTemporaryFile();
+            os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[partition])));
+            outputs[partition] = os;
+        }
+        return os;
+    }
+
+    private void writeSequences(final DataOutputStream os, final Sequence[] seqs) throws IOException, XPathException {
+        os.writeInt(seqs.length);
+        for (final Sequence seq : seqs) {
+            if (seq == null) {
+                os.writeInt(-1);
+                continue;
+            }
+            os.writeInt(seq.getItemCount());
+            for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+                codec.write(os, i.nextItem());
+            }
+        }
+    }
+
+    /**
+     * Read back all tuples of a partition, in the order in which
+     * they were written. The partition is removed afterwards.
+     */
+    void read(final int partition, final Callback callback) throws IOException, XPathException {
+        final DataOutputStream os = outputs[partition];
+        if (os == null) {
+            return;
+        }
+        os.close();
+        outputs[partition] = null;
+        final int count = counts[partition];
+        counts[partition] = 0;
+
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(files[partition])))) {
+            // available() may answer 0 before the end of the file, so read as many tuples as were written
+            for (int t = 0; t < count; t++) {
+                final AtomicValue[] key = new AtomicValue[is.readInt()];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = (AtomicValue) codec.read(is);
+                }
+                final Sequence[] groupingValues = readSequences(is);
+                final Sequence[] values = readSequences(is);
+                callback.tuple(key, groupingValues, values);
+            }
+        } finally {
+            TemporaryFileManager.getInstance().returnTemporaryFile(files[partition]);
+            files[partition] = null;
+        }
+    }
+
+    private Sequence[] readSequences(final DataInputStream is) throws IOException, XPathException {
+        final Sequence[] seqs = new Sequence[is.readInt()];
+        for (int i = 0; i < seqs.length; i++) {
+            final int count = is.readInt();
+            if (count < 0) {
+                continue;
+            }
+            final ValueSequence seq = new ValueSequence(count);
+            for (int j = 0; j < count; j++) {
+                seq.add(codec.read(is));
+            }
+            seqs[i] = seq;
+        }
+        return seqs;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < PARTITIONS; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (final IOException e) {
+                    // ignore, the file is removed anyway
+                }
+                outputs[i] = null;
+            }
+            counts[i] = 0;
+            if (files[i] != null) {
+                TemporaryFileManager.getInstance().returnTemporaryFile(files[i]);
+                files[i] = null;
+            }
+        }
+        codec.clear();
+    }
+
+    @FunctionalInterface
+    interface Callback {
+        void tuple(AtomicValue[] key, Sequence[] groupingValues, Sequence[] values) throws XPathException;
+    }
+}
@@ -85,6 +85,9 @@ public class LocationStep extends Step {
 
 	protected boolean applyPredicate = true;
 
+	// If only the first nodes of the result are used, see setLimit
+	private int limit = -1;
+
 	// Cache for the current NodeTest type
 	private Integer nodeTestType = null;
 
@@ -173,6 +176,31 @@ public class LocationStep extends Step {
 	 * @param nodes
 	 *            a <code>NodeSet</code> value
 	 */
+	/**
+	 * Only the first limit nodes (in document order) of the step's result
+	 * will be used by the enclosing expression. For steps on the child or
+	 * descendant axis, the structural index lookup can then stop after the
+	 * first documents containing enough matches.
+	 *
+	 * @param limit the number of nodes needed, or -1 to return all nodes
+	 */
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Check if the index lookup can be restricted to the first limit nodes.
+	 * Inside predicates, all nodes are needed to find the matches for each
+	 * context node.
+	 */
+	private boolean useLimit(DocumentSet docs) {
+		return limit > 0 && contextId == Expression.NO_CONTEXT_ID && docs.getDocumentCount() > 1;
+	}
+
 	public void setPreloadedData(DocumentSet docs, NodeSet nodes) {
 		this.preloadedData = true;
 		this.currentDocs = docs;
@@ -473,8 +501,17 @@ public class LocationStep extends Step {
 		// Apply the predicate
 		result = applyPredicate(contextSequence, result);
 
-		if (context.getProfiler().isEnabled())
-			{context.getProfiler().end(this, "", result);}
+		if (context.getProfiler().isEnabled()) {
+			// query plans report the estimate themselves, see QueryPlan
+			if (context.isProfilingEnabled(Profiler.OPTIMIZATIONS)) {
+				final long estimate = context.getCostModel().estimateCardinality(this);
+				if (estimate != CostModel.UNKNOWN) {
+					context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "CARDINALITY",
+							"estimated " + estimate + ", actual " + result.getItemCount());
+				}
+			}
+			context.getProfiler().end(this, "", result);
+		}
 		// actualReturnType = result.getItemType();
 
 		return result;
@@ -630,7 +667,7 @@ public class LocationStep extends Step {
 								"Using structural index '" + index.toString()
 										+ "'");}
 					// TODO : why a null selector here ? We have one below !
-					currentSet = index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), null, this);
+					currentSet = findElementsByTagName(ElementValue.ATTRIBUTE, docs, null, null, -1);
 					currentDocs = docs;
 					registerUpdateListener();
 				}
@@ -654,9 +691,7 @@ public class LocationStep extends Step {
 						"OPTIMIZATION",
 						"Using structural index '" + index.toString() + "'");}
 			if (!contextSet.getProcessInReverseOrder()) {
-				return index.findDescendantsByTagName(ElementValue.ATTRIBUTE,
-						test.getName(), axis, docs, contextSet,
-						contextId, this);
+				return findDescendantsByTagName(ElementValue.ATTRIBUTE, docs, contextSet, this);
 			} else {
 				NodeSelector selector;
 				switch (axis) {
@@ -670,7 +705,7 @@ public class LocationStep extends Step {
 					throw new IllegalArgumentException(
 							"Unsupported axis specified");
 				}
-				return index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), selector, this);
+				return findElementsByTagName(ElementValue.ATTRIBUTE, docs, contextSet, selector, -1);
 			}
 		}
 	}
@@ -732,8 +767,7 @@ public class LocationStep extends Step {
 								"OPTIMIZATION",
 								"Using structural index '" + index.toString()
 										+ "'");}
-					currentSet = index.findElementsByTagName(
-							ElementValue.ELEMENT, docs, test.getName(), null, this);
+					currentSet = findElementsByTagName(ElementValue.ELEMENT, docs, null, null, -1);
 					currentDocs = docs;
 					registerUpdateListener();
 				}
@@ -747,17 +781,15 @@ public class LocationStep extends Step {
 				{context.getProfiler().message(this, Profiler.OPTIMIZATIONS,
 						"OPTIMIZATION",
 						"Using structural index '" + index.toString() + "'");}
-			if (!contextSet.getProcessInReverseOrder() && !(contextSet instanceof VirtualNodeSet) &&
-					contextSet.getLength() < INDEX_SCAN_THRESHOLD) {
-				return index.findDescendantsByTagName(ElementValue.ELEMENT,
-						test.getName(), axis, docs, contextSet,
-						contextId, parent);
+			if (!useLimit(docs) && !contextSet.getProcessInReverseOrder() && !(contextSet instanceof VirtualNodeSet) &&
+					preferContextLookups(contextSet, docs)) {
+				return findDescendantsByTagName(ElementValue.ELEMENT, docs, contextSet, parent);
 			} else {
 				// if (contextSet instanceof VirtualNodeSet)
 				// ((VirtualNodeSet)contextSet).realize();
 				final NodeSelector selector = new ChildSelector(contextSet, contextId);
-				return index.findElementsByTagName(ElementValue.ELEMENT, docs,
-						test.getName(), selector, this);
+				return findElementsByTagName(ElementValue.ELEMENT, docs, contextSet,
+						selector, useLimit(docs) ? limit : -1);
 			}
 		}
 	}
@@ -806,8 +838,7 @@ public class LocationStep extends Step {
 								"OPTIMIZATION",
 								"Using structural index '" + index.toString()
 										+ "'");}
-					currentSet = index.findElementsByTagName(
-							ElementValue.ELEMENT, docs, test.getName(), null, this);
+					currentSet = findElementsByTagName(ElementValue.ELEMENT, docs, null, null, -1);
 					currentDocs = docs;
 					registerUpdateListener();
 				}
@@ -833,10 +864,8 @@ public class LocationStep extends Step {
 						"OPTIMIZATION",
 						"Using structural index '" + index.toString() + "'");
 			}
-			if (!contextSet.getProcessInReverseOrder() && (contextSet instanceof VirtualNodeSet || contextSet.getLength() < INDEX_SCAN_THRESHOLD)) {
-				return index.findDescendantsByTagName(ElementValue.ELEMENT,
-						test.getName(), axis, docs, contextSet,
-						contextId, this);
+			if (!useLimit(docs) && !contextSet.getProcessInReverseOrder() && (contextSet instanceof VirtualNodeSet || preferContextLookups(contextSet, docs))) {
+				return findDescendantsByTagName(ElementValue.ELEMENT, docs, contextSet, this);
 			} else {
 				NodeSelector selector;
 				switch (axis) {
@@ -851,11 +880,95 @@ public class LocationStep extends Step {
 					throw new IllegalArgumentException(
 							"Unsupported axis specified");
 				}
-				return index.findElementsByTagName(ElementValue.ELEMENT, docs,
-						test.getName(), selector, this);
+				return findElementsByTagName(ElementValue.ELEMENT, docs, contextSet,
+						selector, useLimit(docs) ? limit : -1);
+			}
+
+		}
+	}
+
+	/**
+	 * Decide if the nodes matching the node test should be looked up in the
+	 * structural index separately for each node in the context set, or found
+	 * by scanning all matching nodes in the documents. Uses the
+	 * {@link CostModel} if statistics are available.
+	 *
+	 * @param contextSet the context set
+	 * @param docs the documents of the context set
+	 * @return true to look up the nodes for each context node
+	 */
+	private boolean preferContextLookups(final NodeSet contextSet, final DocumentSet docs) {
+		final int contextSize = contextSet.getLength();
+		final Boolean lookups = context.getCostModel().preferContextLookups(test, contextSize,
+				docs.getDocumentCount());
+		if (lookups == null) {
+			return contextSize < INDEX_SCAN_THRESHOLD;
+		}
+		if (context.getProfiler().isEnabled()) {
+			context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+					(lookups ? "Looking up nodes for " : "Scanning nodes instead of lookups for ") + contextSize +
+					" context nodes; estimated " + context.getCostModel().getNodeCount(test) + " nodes");
+		}
+		return lookups;
+	}
+
+	/**
+	 * Find the nodes matching the node test in the structural index. If the
+	 * query allows it, the documents are split into partitions which are
+	 * searched in parallel, see {@link ParallelEvaluation}.
+	 *
+	 * @param type the type of the nodes, {@link ElementValue#ELEMENT} or {@link ElementValue#ATTRIBUTE}
+	 * @param docs the documents to search
+	 * @param contextSet the context set the selector refers to, or null
+	 * @param selector the selector, or null to return all matching nodes
+	 * @param limit the number of nodes to find, or -1 for all
+	 * @return the nodes found
+	 */
+	private NodeSet findElementsByTagName(final byte type, final DocumentSet docs, final NodeSet contextSet,
+			final NodeSelector selector, final int limit) throws XPathException {
+		final int partitions = limit > 0 ? 1 : ParallelEvaluation.getPartitions(context, docs);
+		// the partitions may only share a context set which is not modified by lookups
+		if (partitions > 1 && (selector == null || contextSet instanceof NewArrayNodeSet)) {
+			if (selector != null) {
+				((NewArrayNodeSet) contextSet).sort();
 			}
+			if (context.getProfiler().isEnabled())
+				{context.getProfiler().message(this, Profiler.OPTIMIZATIONS,
+						"OPTIMIZATION",
+						"Searching structural index in " + partitions + " partitions");}
+			return ParallelEvaluation.evaluate(context, this, docs, partitions, (broker, partition) ->
+					broker.getStructuralIndex().findElementsByTagName(type, partition, test.getName(), selector, this));
+		}
+		return context.getBroker().getStructuralIndex().findElementsByTagName(type, docs, test.getName(), selector,
+				this, limit);
+	}
 
+	/**
+	 * Find the nodes matching the node test below the nodes of the context
+	 * set in the structural index. If the query allows it, the context set
+	 * is split by documents into partitions which are searched in parallel.
+	 *
+	 * @param type the type of the nodes, {@link ElementValue#ELEMENT} or {@link ElementValue#ATTRIBUTE}
+	 * @param docs the documents of the context set
+	 * @param contextSet the context set
+	 * @param expr the expression checking the watchdog
+	 * @return the nodes found
+	 */
+	private NodeSet findDescendantsByTagName(final byte type, final DocumentSet docs, final NodeSet contextSet,
+			final Expression expr) throws XPathException {
+		final int partitions = contextSet instanceof NewArrayNodeSet ? ParallelEvaluation.getPartitions(context, docs) : 1;
+		if (partitions > 1) {
+			((NewArrayNodeSet) contextSet).sort();
+			if (context.getProfiler().isEnabled())
+				{context.getProfiler().message(this, Profiler.OPTIMIZATIONS,
+						"OPTIMIZATION",
+						"Searching structural index in " + partitions + " partitions");}
+			return ParallelEvaluation.evaluate(context, this, docs, partitions, (broker, partition) ->
+					broker.getStructuralIndex().findDescendantsByTagName(type, test.getName(), axis, partition,
+							ParallelEvaluation.select(contextSet, partition), contextId, expr));
 		}
+		return context.getBroker().getStructuralIndex().findDescendantsByTagName(type, test.getName(), axis, docs,
+				contextSet, contextId, expr);
 	}
 
 	/**
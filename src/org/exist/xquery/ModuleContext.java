@@ -211,6 +211,26 @@ public class ModuleContext extends XQueryContext {
 	public DocumentSet getStaticallyKnownDocuments() throws XPathException {
 		return parentContext.getStaticallyKnownDocuments();
 	}
+
+	@Override
+	public void addCollectionDependency(XmldbURI uri) {
+		parentContext.addCollectionDependency(uri);
+	}
+
+	@Override
+	public void addDocumentDependency(XmldbURI uri) {
+		parentContext.addDocumentDependency(uri);
+	}
+
+	@Override
+	public void markResultUncacheable() {
+		parentContext.markResultUncacheable();
+	}
+
+	@Override
+	public boolean isResultCacheable() {
+		return parentContext.isResultCacheable();
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.exist.xquery.XQueryContext#getModule(java.lang.String)
@@ -278,6 +298,11 @@ public class ModuleContext extends XQueryContext {
         return parentContext.getProfiler();
     }
 
+    @Override
+    public CostModel getCostModel() {
+        return parentContext.getCostModel();
+    }
+
     /* (non-Javadoc)
 	 * @see org.exist.xquery.XQueryContext#getCalendar()
 	 */
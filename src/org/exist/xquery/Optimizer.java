@@ -37,6 +37,10 @@ import java.util.*;
  * The pragma may also decide that the optimization is not applicable and just execute
  * the expression without any optimization.
  *
+ * If element statistics are available (see {@link CostModel}), the optimizer also orders
+ * the predicates of a step by their estimated selectivity and skips the pragma if evaluating
+ * the predicate on the nodes selected by the step is estimated to be cheaper than an index lookup.
+ *
  * Currently, the optimizer is disabled by default. To enable it, set attribute enable-query-rewriting
  * to yes in conf.xml:
  *
@@ -59,9 +63,12 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     private List<QueryRewriter> rewriters = new ArrayList<QueryRewriter>(5);
 
+    private final CostModel costModel;
+
     public Optimizer(XQueryContext context) {
         this.context = context;
         this.rewriters = context.getBroker().getIndexController().getQueryRewriters(context);
+        this.costModel = context.getCostModel();
     }
 
     public boolean hasOptimized() {
@@ -70,6 +77,7 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     public void visitLocationStep(LocationStep locationStep) {
         super.visitLocationStep(locationStep);
+        orderPredicates(locationStep);
         // check query rewriters if they want to rewrite the location step
         Pragma optimizePragma = null;
         for (QueryRewriter rewriter : rewriters) {
@@ -97,8 +105,16 @@ public class Optimizer extends DefaultExpressionVisitor {
                 pred.accept(find);
                 final List<Optimizable> list = find.getOptimizables();
                 if (list.size() > 0 && canOptimize(list)) {
-                    optimize = true;
-                    break;
+                    if (costModel.preferIndexLookup(locationStep, pred)) {
+                        optimize = true;
+                        break;
+                    }
+                    if (context.getProfiler().isEnabled()) {
+                        context.getProfiler().message(locationStep, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                                "Evaluating predicate on the nodes of the step instead of an index lookup: " +
+                                "estimated " + costModel.getNodeCount(locationStep.getTest()) + " nodes, " +
+                                costModel.estimateIndexHits(pred, locationStep) + " index hits");
+                    }
                 }
             }
         }
@@ -234,6 +250,55 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    /**
+     * Sort the predicates of a step by their estimated selectivity, so the
+     * most selective predicate is evaluated first. Predicates are only reordered
+     * if the cost model recognizes all of them and none depends on the position
+     * of the context item.
+     *
+     * @param step the location step
+     */
+    private void orderPredicates(LocationStep step) {
+        final List<Predicate> preds = step.getPredicates();
+        if (preds.size() < 2 || !costModel.hasStatistics()) {
+            return;
+        }
+        final Map<Predicate, Double> selectivity = new IdentityHashMap<>();
+        for (final Predicate pred : preds) {
+            if (pred.getExecutionMode() == Predicate.POSITIONAL ||
+                    Dependency.dependsOn(pred, Dependency.CONTEXT_POSITION)) {
+                return;
+            }
+            final double estimate = costModel.estimateSelectivity(pred, step);
+            if (estimate < 0) {
+                return;
+            }
+            selectivity.put(pred, estimate);
+        }
+        final List<Predicate> ordered = new ArrayList<>(preds);
+        ordered.sort(Comparator.comparingDouble(selectivity::get));
+        if (ordered.equals(preds)) {
+            return;
+        }
+        hasOptimized = true;
+        preds.clear();
+        preds.addAll(ordered);
+        if (context.getProfiler().isEnabled()) {
+            final StringBuilder estimates = new StringBuilder();
+            for (final Predicate pred : ordered) {
+                if (estimates.length() > 0) {
+                    estimates.append(", ");
+                }
+                estimates.append(String.format(Locale.ROOT, "%.2f", selectivity.get(pred)));
+            }
+            context.getProfiler().message(step, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                    "Predicates reordered by estimated selectivity: " + estimates);
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Reordered predicates: " + ExpressionDumper.dump(step));
+        }
+    }
+
     private boolean hasOptimizable(List<Predicate> preds) {
         // walk through the predicates attached to the current location step.
         // try to find a predicate containing an expression which is an instance
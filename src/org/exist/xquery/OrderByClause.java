@@ -21,6 +21,9 @@ public class OrderByClause extends AbstractFLWORClause {
         to track state in a stack to avoid overwrites if we're called recursively. */
     private final Deque<OrderedValueSequence> stack = new ArrayDeque<>();
 
+    /* If only the first items of the result are used, see {@link #setLimit(int)} */
+    private int limit = -1;
+
     public OrderByClause(XQueryContext context, List<OrderSpec> orderSpecs) {
         super(context);
         this.orderSpecs = orderSpecs.toArray(new OrderSpec[orderSpecs.size()]);
@@ -30,6 +33,50 @@ public class OrderByClause extends AbstractFLWORClause {
         return orderSpecs;
     }
 
+    /**
+     * Only the first limit items of the ordered result will be used
+     * by the enclosing expression, so it is sufficient to keep those
+     * instead of sorting all items.
+     *
+     * @param limit the number of items to keep, or -1 to keep all
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Check if the given expression is a FLWOR expression whose last
+     * clause is an "order by", i.e. the order by determines the order
+     * of the FLWOR's result.
+     *
+     * @param expr the expression to check
+     * @return the order by clause or null
+     */
+    public static OrderByClause getTrailingOrderBy(Expression expr) {
+        while (true) {
+            if (expr instanceof PathExpr && !(expr instanceof Predicate) && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck) {
+                // function arguments
+                expr = expr.getSubExpression(0);
+            } else {
+                break;
+            }
+        }
+        if (!(expr instanceof FLWORClause)) {
+            return null;
+        }
+        FLWORClause clause = (FLWORClause) expr;
+        while (clause.getReturnExpression() instanceof FLWORClause) {
+            clause = (FLWORClause) clause.getReturnExpression();
+        }
+        return clause instanceof OrderByClause ? (OrderByClause) clause : null;
+    }
+
     @Override
     public ClauseType getType() {
         return ClauseType.ORDERBY;
@@ -54,6 +101,11 @@ public class OrderByClause extends AbstractFLWORClause {
         final OrderedValueSequence orderedResult;
         if (stack.isEmpty()) {
             orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            if (limit > 0) {
+                orderedResult.setLimit(limit);
+            } else if (context.getOrderBySpillThreshold() > 0) {
+                orderedResult.enableSpilling(context, context.getOrderBySpillThreshold());
+            }
         } else {
             orderedResult = stack.pop();
         }
@@ -0,0 +1,252 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.util.ExpressionDumper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Evaluates a location step over a large document set in parallel.
+ *
+ * The documents are split into ranges of consecutive document ids, one per
+ * partition. All partitions but the first run on a shared fork-join pool,
+ * each with its own broker and thus its own index workers; the calling thread
+ * evaluates the first partition itself. As the ranges do not overlap, the
+ * partial node sets are merged in document order by concatenating them.
+ *
+ * The number of partitions is limited by the parallelism of the query, see
+ * {@link XQueryContext#getParallelism()}, and by the brokers currently
+ * available. The pool has a thread per processor; further partitions wait
+ * for a free thread. A partition never waits for a broker: if none is free
+ * when it starts, it is evaluated by the calling thread, with the broker of
+ * the query, once the other partitions are done. The partitions check the
+ * {@link XQueryWatchDog} of the query, so that a killed or timed out query
+ * stops all of them.
+ */
+final class ParallelEvaluation {
+
+    /** the minimum number of documents a partition is given */
+    static final int MIN_PARTITION_SIZE = 32;
+
+    private static final Logger LOG = LogManager.getLogger(ParallelEvaluation.class);
+
+    private ParallelEvaluation() {
+    }
+
+    /**
+     * Evaluates a location step on a partition of the documents.
+     */
+    @FunctionalInterface
+    interface PartitionEvaluator {
+
+        /**
+         * @param broker the broker of the current thread
+         * @param partition the documents of the partition
+         * @return the nodes found in the partition
+         */
+        NodeSet evaluate(DBBroker broker, DocumentSet partition) throws XPathException;
+    }
+
+    /**
+     * Determine into how many partitions the documents should be split.
+     *
+     * @param context the context of the query
+     * @param docs the documents to evaluate the step on
+     * @return the number of partitions, 1 if the step should not run in parallel
+     */
+    static int getPartitions(final XQueryContext context, final DocumentSet docs) {
+        final int parallelism = context.getParallelism();
+        if (parallelism <= 1 || docs.getDocumentCount() < 2 * MIN_PARTITION_SIZE) {
+            return 1;
+        }
+        // each partition but the first needs a broker of its own. This is only an estimate,
+        // a partition which finds no free broker is evaluated by the calling thread
+        final BrokerPool pool = context.getBroker().getBrokerPool();
+        final int brokers = pool.getMax() - pool.countActiveBrokers();
+        return Math.max(1, Math.min(Math.min(parallelism, docs.getDocumentCount() / MIN_PARTITION_SIZE), brokers + 1));
+    }
+
+    /**
+     * Evaluate a step by splitting the documents into partitions and
+     * evaluating the partitions in parallel.
+     *
+     * @param context the context of the query
+     * @param expr the step
+     * @param docs the documents to evaluate the step on
+     * @param partitions the number of partitions, see {@link #getPartitions(XQueryContext, DocumentSet)}
+     * @param evaluator evaluates the step on a single partition
+     * @return the nodes found in all partitions
+     *
+     * @throws XPathException if the evaluation of a partition fails, or the query was terminated
+     */
+    static NodeSet evaluate(final XQueryContext context, final Expression expr, final DocumentSet docs,
+            final int partitions, final PartitionEvaluator evaluator) throws XPathException {
+        final DocumentSet[] slices = split(docs, partitions);
+        final BrokerPool pool = context.getBroker().getBrokerPool();
+        final Subject subject = context.getSubject();
+        final XQueryWatchDog watchDog = context.getWatchDog();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Evaluating " + ExpressionDumper.dump(expr) + " on " + docs.getDocumentCount() +
+                    " documents in " + slices.length + " partitions");
+        }
+
+        final List<ForkJoinTask<NodeSet>> tasks = new ArrayList<>(slices.length - 1);
+        for (int i = 1; i < slices.length; i++) {
+            final DocumentSet slice = slices[i];
+            tasks.add(Pool.INSTANCE.submit(() -> {
+                if (watchDog.isTerminating()) {
+                    return NodeSet.EMPTY_SET;
+                }
+                final Optional<DBBroker> broker = pool.tryGet(Optional.of(subject));
+                if (!broker.isPresent()) {
+                    // left to the calling thread
+                    return null;
+                }
+                try (final DBBroker b = broker.get()) {
+                    return evaluator.evaluate(b, slice);
+                }
+            }));
+        }
+
+        final NodeSet[] results = new NodeSet[slices.length];
+        XPathException error = null;
+        try {
+            results[0] = evaluator.evaluate(context.getBroker(), slices[0]);
+        } catch (final XPathException e) {
+            error = e;
+        }
+        // the partitions share the context nodes, so always wait for all of them
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                results[i + 1] = tasks.get(i).get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (error == null) {
+                    error = new XPathException(expr, "Interrupted while evaluating a partition", e);
+                }
+            } catch (final ExecutionException e) {
+                if (error == null) {
+                    final Throwable cause = e.getCause();
+                    error = cause instanceof XPathException ? (XPathException) cause :
+                            new XPathException(expr, "Error while evaluating a partition: " + cause.getMessage(), cause);
+                }
+            }
+        }
+        // the partitions which found no free broker
+        for (int i = 1; i < results.length && error == null; i++) {
+            if (results[i] == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("No broker available for partition " + i + ", evaluating it in the calling thread");
+                }
+                try {
+                    results[i] = evaluator.evaluate(context.getBroker(), slices[i]);
+                } catch (final XPathException e) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        // the partitions swallow a termination of the query, rethrow it here
+        context.proceed(expr);
+
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        for (final NodeSet partial : results) {
+            result.addAll(partial);
+        }
+        return result;
+    }
+
+    /**
+     * Select the nodes of a partition from a context set. The context set
+     * must not change while it is read, so it has to be sorted before the
+     * partitions are started.
+     *
+     * @param contextSet the context set shared by all partitions
+     * @param partition the documents of the partition
+     * @return the nodes of the context set which belong to the partition
+     */
+    static NodeSet select(final NodeSet contextSet, final DocumentSet partition) {
+        final NewArrayNodeSet selected = new NewArrayNodeSet();
+        for (final NodeProxy node : contextSet) {
+            if (partition.contains(node.getOwnerDocument().getDocId())) {
+                selected.add(node);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Split the documents into ranges of consecutive document ids.
+     */
+    private static DocumentSet[] split(final DocumentSet docs, final int partitions) {
+        final DocumentImpl[] sorted = new DocumentImpl[docs.getDocumentCount()];
+        int count = 0;
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            sorted[count++] = i.next();
+        }
+        Arrays.sort(sorted, 0, count, Comparator.comparingInt(DocumentImpl::getDocId));
+
+        final DocumentSet[] slices = new DocumentSet[partitions];
+        for (int p = 0; p < partitions; p++) {
+            final int start = (int) ((long) count * p / partitions);
+            final int end = (int) ((long) count * (p + 1) / partitions);
+            final DefaultDocumentSet slice = new DefaultDocumentSet(end - start);
+            for (int i = start; i < end; i++) {
+                slice.add(sorted[i]);
+            }
+            slices[p] = slice;
+        }
+        return slices;
+    }
+
+    /**
+     * The pool shared by all queries, sized by the number of processors.
+     */
+    private static final class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("exist-parallel-query-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+}
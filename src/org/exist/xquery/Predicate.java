@@ -27,7 +27,10 @@ import org.exist.dom.persistent.NewArrayNodeSet;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.persistent.VirtualNodeSet;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.functions.fn.FunPosition;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
@@ -658,6 +661,78 @@ public class Predicate extends PathExpr {
         return executionMode;
     }
 
+    /**
+     * Check if this predicate selects a leading part of the context
+     * sequence with a constant bound, e.g. [10], [position() le 10]
+     * or [position() lt 11].
+     *
+     * @return the highest position the predicate may select, or -1
+     * if it is not known statically
+     */
+    public int getStaticPositionLimit() {
+        if (getLength() != 1) {
+            return -1;
+        }
+        try {
+            final Expression inner = unwrap(getExpression(0));
+            if (inner instanceof LiteralValue) {
+                return positiveInteger((LiteralValue) inner);
+            }
+            if (inner instanceof GeneralComparison) {
+                final GeneralComparison comparison = (GeneralComparison) inner;
+                final Expression left = unwrap(comparison.getLeft());
+                final Expression right = unwrap(comparison.getRight());
+                final int n;
+                Comparison relation = comparison.getRelation();
+                if (left instanceof FunPosition && right instanceof LiteralValue) {
+                    n = positiveInteger((LiteralValue) right);
+                } else if (right instanceof FunPosition && left instanceof LiteralValue) {
+                    n = positiveInteger((LiteralValue) left);
+                    relation = relation == Comparison.GT ? Comparison.LT :
+                            relation == Comparison.GTEQ ? Comparison.LTEQ : relation;
+                } else {
+                    return -1;
+                }
+                if (n < 0) {
+                    return -1;
+                }
+                switch (relation) {
+                    case EQ:
+                    case LTEQ:
+                        return n;
+                    case LT:
+                        return n > 1 ? n - 1 : -1;
+                    default:
+                        return -1;
+                }
+            }
+        } catch (final XPathException e) {
+            // fall through
+        }
+        return -1;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (expr instanceof PathExpr && !(expr instanceof Predicate) && ((PathExpr) expr).getLength() == 1) {
+            expr = ((PathExpr) expr).getExpression(0);
+        }
+        if (expr instanceof InternalFunctionCall) {
+            expr = ((InternalFunctionCall) expr).getFunction();
+        }
+        return expr;
+    }
+
+    private static int positiveInteger(final LiteralValue literal) throws XPathException {
+        final AtomicValue value = literal.getValue();
+        if (Type.subTypeOf(value.getType(), Type.INTEGER)) {
+            final long n = ((NumericValue) value).getLong();
+            if (n > 0 && n < Integer.MAX_VALUE) {
+                return (int) n;
+            }
+        }
+        return -1;
+    }
+
     /*
      * (non-Javadoc)
      * 
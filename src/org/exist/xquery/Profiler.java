@@ -81,6 +81,8 @@ public class Profiler {
 
     private Database db;
 
+    private QueryPlan plan = null;
+
     public Profiler(Database db) {
         this.db = db;
         this.stats = new PerformanceStats(db);
@@ -136,7 +138,24 @@ public class Profiler {
      * @return True if profiling is enabled
      */
     public final boolean isEnabled() {
-        return enabled;
+        return enabled || plan != null;
+    }
+
+    /**
+     * Record the plan of the current query, see {@link QueryPlan}.
+     * The plan is removed when the query context is reset.
+     *
+     * @param plan the plan to record or null
+     */
+    public final void setPlan(QueryPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return the plan recorded for the current query, or null
+     */
+    public final QueryPlan getPlan() {
+        return plan;
     }
 
     public final boolean isLogEnabled() {
@@ -155,7 +174,7 @@ public class Profiler {
     }
     
     public final boolean traceFunctions() {
-        return stats.isEnabled() || isLogEnabled();
+        return stats.isEnabled() || plan != null || isLogEnabled();
     }
     
     /**
@@ -192,7 +211,12 @@ public class Profiler {
     }
 
     public final void traceIndexUsage(XQueryContext context, String indexType, Expression expression, int mode, long elapsed) {
-        stats.recordIndexUse(expression, indexType, context.getSource().path(), mode, elapsed);
+        if (plan != null) {
+            plan.indexUsed(expression, indexType, mode, elapsed);
+        }
+        if (stats.isEnabled()) {
+            stats.recordIndexUse(expression, indexType, context.getSource().path(), mode, elapsed);
+        }
     }
 
     private void save() {
@@ -219,6 +243,9 @@ public class Profiler {
      * @param message if not null, contains an optional message to print in the log.
      */
     public final void start(Expression expr, String message) {
+        if (plan != null) {
+            plan.start(expr);
+        }
         if (!enabled)
             {return;}
         
@@ -259,6 +286,9 @@ public class Profiler {
      * @param message required: a message to be printed to the log.
      */
     public final void end(Expression expr, String message, Sequence result) {
+        if (plan != null) {
+            plan.end(expr, result);
+        }
         if (!enabled)
             {return;}        
         
@@ -342,6 +372,9 @@ public class Profiler {
      * @param expr 
      */
     public final void message(Expression expr, int level, String title, Sequence sequence) {
+        if (plan != null) {
+            plan.message(expr, level, title, sequence);
+        }
     	if (!enabled)
     		{return;}
         if (level > verbosity)
@@ -368,6 +401,9 @@ public class Profiler {
     }
     
     public final void message(Expression expr, int level, String title, String message) {
+        if (plan != null) {
+            plan.message(expr, level, title, message);
+        }
         if (!enabled)            
             {return;}
         if (level > verbosity)
@@ -394,6 +430,7 @@ public class Profiler {
         if (stack.size() > 0)
             {log.debug("QUERY RESET");}  
         stack.clear();
+        plan = null;
         if (stats.isEnabled() && stats.hasData()) {
             save();
             stats.reset();
@@ -0,0 +1,365 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.dom.persistent.VirtualNodeSet;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.Sequence;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the plan of a single query for EXPLAIN and ANALYZE requests.
+ *
+ * A plan is attached to the {@link Profiler} of a query context with
+ * {@link Profiler#setPlan(QueryPlan)} before the query is compiled. It then
+ * receives the optimizer decisions made during compilation and, if the query
+ * is executed, builds a tree of the evaluated expressions from the calls to
+ * {@link Profiler#start(Expression)} and {@link Profiler#end(Expression, String, Sequence)}.
+ * Repeated evaluations of an expression below the same parent are merged
+ * into one node, which counts the calls, the items passed in and returned,
+ * and the time spent in the expression including its children.
+ *
+ * Recording costs two calls to {@link System#nanoTime()} per evaluated
+ * expression, so a plan may be requested for single production queries. The
+ * size of the tree is limited by {@link #MAX_NODES}.
+ */
+public class QueryPlan {
+
+    /** the maximum number of nodes in the expression tree, further expressions are not recorded */
+    public final static int MAX_NODES = 10000;
+
+    /** the maximum number of distinct optimizer messages kept per expression */
+    public final static int MAX_MESSAGES = 10;
+
+    private final static String[] INDEX_MODES = { "none", "basic", "optimized" };
+
+    private final boolean analyze;
+    private final Thread owner = Thread.currentThread();
+
+    private final PlanNode root = new PlanNode(null);
+    private final List<Frame> stack = new ArrayList<>();
+    private int nodeCount = 0;
+    private boolean truncated = false;
+
+    private final Map<Expression, Set<String>> messages = new IdentityHashMap<>();
+    private final Map<Expression, Map<String, IndexUse>> indexUse = new IdentityHashMap<>();
+
+    private String query = null;
+
+    /**
+     * @param analyze true if the query will be executed and the evaluated
+     * expressions should be recorded, false if only the decisions made
+     * while compiling the query are of interest
+     */
+    public QueryPlan(boolean analyze) {
+        this.analyze = analyze;
+    }
+
+    public boolean isAnalyze() {
+        return analyze;
+    }
+
+    /**
+     * Set the compiled query, which is included in the plan as the
+     * expression tree after optimization.
+     *
+     * @param compiled the compiled query
+     */
+    public void setQuery(CompiledXQuery compiled) {
+        final StringWriter writer = new StringWriter();
+        compiled.dump(writer);
+        query = writer.toString();
+    }
+
+    void start(Expression expr) {
+        if (!analyze || Thread.currentThread() != owner) {
+            return;
+        }
+        final PlanNode parent = stack.isEmpty() ? root : stack.get(stack.size() - 1).node;
+        PlanNode node = parent.getChild(expr);
+        if (node == null) {
+            if (nodeCount < MAX_NODES) {
+                node = parent.addChild(expr);
+                nodeCount++;
+            } else {
+                truncated = true;
+            }
+        }
+        stack.add(new Frame(expr, node == null ? parent : node, node != null));
+    }
+
+    void end(Expression expr, Sequence result) {
+        if (!analyze || Thread.currentThread() != owner) {
+            return;
+        }
+        // an expression which threw an exception never called end(), skip it
+        int top = stack.size() - 1;
+        while (top >= 0 && stack.get(top).expr != expr) {
+            top--;
+        }
+        if (top < 0) {
+            return;
+        }
+        final Frame frame = stack.get(top);
+        while (stack.size() > top) {
+            stack.remove(stack.size() - 1);
+        }
+        if (frame.recorded) {
+            frame.node.calls++;
+            frame.node.time += System.nanoTime() - frame.start;
+            frame.node.itemsOut += itemCount(result);
+        }
+    }
+
+    void message(Expression expr, int level, String title, Sequence sequence) {
+        if (!analyze || Thread.currentThread() != owner || stack.isEmpty()) {
+            return;
+        }
+        final Frame frame = stack.get(stack.size() - 1);
+        if (frame.expr != expr || !frame.recorded || frame.input) {
+            return;
+        }
+        // the context item is only counted if there is no context sequence
+        if ("CONTEXT SEQUENCE".equals(title) || "CONTEXT ITEM".equals(title)) {
+            frame.node.itemsIn += itemCount(sequence);
+            frame.input = true;
+        }
+    }
+
+    void message(Expression expr, int level, String title, String message) {
+        if (level > Profiler.OPTIMIZATIONS || message == null || message.isEmpty() ||
+                Thread.currentThread() != owner) {
+            return;
+        }
+        final Set<String> list = messages.computeIfAbsent(expr, e -> new LinkedHashSet<>());
+        if (list.size() < MAX_MESSAGES) {
+            list.add(message);
+        }
+    }
+
+    void indexUsed(Expression expr, String indexType, int mode, long elapsed) {
+        if (Thread.currentThread() != owner) {
+            return;
+        }
+        final IndexUse use = indexUse.computeIfAbsent(expr, e -> new LinkedHashMap<>())
+                .computeIfAbsent(indexType + ':' + mode, k -> new IndexUse(indexType, mode));
+        use.calls++;
+        use.elapsed += elapsed;
+    }
+
+    private static long itemCount(Sequence sequence) {
+        // counting the nodes of a virtual node set would evaluate it
+        if (sequence == null || sequence instanceof VirtualNodeSet) {
+            return 0;
+        }
+        return sequence.getItemCount();
+    }
+
+    /**
+     * Writes the plan as an XML fragment in the profiling namespace
+     * (see {@link PerformanceStats#XML_NAMESPACE}).
+     *
+     * @param builder the builder to write to
+     */
+    public void toXML(MemTreeBuilder builder) {
+        final AttributesImpl attrs = new AttributesImpl();
+        attrs.addAttribute("", "mode", "mode", "CDATA", analyze ? "analyze" : "explain");
+        if (truncated) {
+            attrs.addAttribute("", "truncated", "truncated", "CDATA", "true");
+        }
+        builder.startElement(qname("plan"), attrs);
+        if (query != null) {
+            builder.startElement(qname("query"), null);
+            builder.characters(query);
+            builder.endElement();
+        }
+        // decisions for expressions which were not evaluated
+        final Set<Expression> evaluated = Collections.newSetFromMap(new IdentityHashMap<>());
+        root.collect(evaluated);
+        for (final Map.Entry<Expression, Set<String>> entry : messages.entrySet()) {
+            if (!evaluated.contains(entry.getKey())) {
+                writeMessages(builder, entry.getKey(), entry.getValue(), attrs);
+            }
+        }
+        for (final PlanNode child : root.children) {
+            writeNode(builder, child, attrs);
+        }
+        builder.endElement();
+    }
+
+    /**
+     * Returns the plan as an in-memory element, see {@link #toXML(MemTreeBuilder)}.
+     *
+     * @param context the context the element is created in
+     * @return the plan element
+     */
+    public NodeValue toNode(XQueryContext context) {
+        final MemTreeBuilder builder = new MemTreeBuilder(context);
+        builder.startDocument();
+        toXML(builder);
+        builder.endDocument();
+        return (NodeValue) builder.getDocument().getDocumentElement();
+    }
+
+    private void writeNode(MemTreeBuilder builder, PlanNode node, AttributesImpl attrs) {
+        attrs.clear();
+        attrs.addAttribute("", "class", "class", "CDATA", node.expr.getClass().getSimpleName());
+        addPosition(attrs, node.expr);
+        attrs.addAttribute("", "calls", "calls", "CDATA", Long.toString(node.calls));
+        attrs.addAttribute("", "items-in", "items-in", "CDATA", Long.toString(node.itemsIn));
+        attrs.addAttribute("", "items-out", "items-out", "CDATA", Long.toString(node.itemsOut));
+        attrs.addAttribute("", "time", "time", "CDATA", Long.toString(node.time));
+        if (node.expr instanceof LocationStep) {
+            final long estimate = node.expr.getContext().getCostModel().estimateCardinality((LocationStep) node.expr);
+            if (estimate != CostModel.UNKNOWN) {
+                attrs.addAttribute("", "estimated", "estimated", "CDATA", Long.toString(estimate));
+            }
+        }
+        attrs.addAttribute("", "expr", "expr", "CDATA", abbreviate(node.expr));
+        builder.startElement(qname("expr"), attrs);
+        final Set<String> decisions = messages.get(node.expr);
+        if (decisions != null) {
+            for (final String message : decisions) {
+                builder.startElement(qname("optimization"), null);
+                builder.characters(message);
+                builder.endElement();
+            }
+        }
+        final Map<String, IndexUse> indexes = indexUse.get(node.expr);
+        if (indexes != null) {
+            for (final IndexUse use : indexes.values()) {
+                attrs.clear();
+                attrs.addAttribute("", "type", "type", "CDATA", use.indexType);
+                attrs.addAttribute("", "optimization", "optimization", "CDATA",
+                        use.mode >= 0 && use.mode < INDEX_MODES.length ? INDEX_MODES[use.mode] : Integer.toString(use.mode));
+                attrs.addAttribute("", "calls", "calls", "CDATA", Long.toString(use.calls));
+                attrs.addAttribute("", "elapsed", "elapsed", "CDATA", Double.toString(use.elapsed / 1000.0));
+                builder.startElement(qname("index"), attrs);
+                builder.endElement();
+            }
+        }
+        for (final PlanNode child : node.children) {
+            writeNode(builder, child, attrs);
+        }
+        builder.endElement();
+    }
+
+    private static void writeMessages(MemTreeBuilder builder, Expression expr, Set<String> list, AttributesImpl attrs) {
+        for (final String message : list) {
+            attrs.clear();
+            addPosition(attrs, expr);
+            attrs.addAttribute("", "expr", "expr", "CDATA", abbreviate(expr));
+            builder.startElement(qname("optimization"), attrs);
+            builder.characters(message);
+            builder.endElement();
+        }
+    }
+
+    private static void addPosition(AttributesImpl attrs, Expression expr) {
+        if (expr.getLine() > 0) {
+            attrs.addAttribute("", "line", "line", "CDATA", Integer.toString(expr.getLine()));
+            attrs.addAttribute("", "column", "column", "CDATA", Integer.toString(expr.getColumn()));
+        }
+    }
+
+    private static String abbreviate(Expression expr) {
+        final String s = expr.toString();
+        return s.length() > 120 ? s.substring(0, 117) + "..." : s;
+    }
+
+    private static QName qname(String localName) {
+        return new QName(localName, PerformanceStats.XML_NAMESPACE, PerformanceStats.XML_PREFIX);
+    }
+
+    private final static class Frame {
+        final Expression expr;
+        final PlanNode node;
+        final boolean recorded;
+        final long start = System.nanoTime();
+        boolean input = false;
+
+        Frame(Expression expr, PlanNode node, boolean recorded) {
+            this.expr = expr;
+            this.node = node;
+            this.recorded = recorded;
+        }
+    }
+
+    private final static class PlanNode {
+        final Expression expr;
+        final List<PlanNode> children = new ArrayList<>(4);
+        long calls = 0;
+        long itemsIn = 0;
+        long itemsOut = 0;
+        long time = 0;
+
+        PlanNode(Expression expr) {
+            this.expr = expr;
+        }
+
+        PlanNode getChild(Expression expr) {
+            // most expressions have few children, a linear search is cheaper than a map
+            for (int i = 0; i < children.size(); i++) {
+                final PlanNode child = children.get(i);
+                if (child.expr == expr) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        PlanNode addChild(Expression expr) {
+            final PlanNode child = new PlanNode(expr);
+            children.add(child);
+            return child;
+        }
+
+        void collect(Set<Expression> expressions) {
+            for (final PlanNode child : children) {
+                expressions.add(child.expr);
+                child.collect(expressions);
+            }
+        }
+    }
+
+    private final static class IndexUse {
+        final String indexType;
+        final int mode;
+        long calls = 0;
+        long elapsed = 0;
+
+        IndexUse(String indexType, int mode) {
+            this.indexType = indexType;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes the knowledge that an enclosing expression only uses the first
+ * items of an expression's result, e.g. <code>(...)[1]</code>,
+ * <code>fn:head</code>, <code>fn:exists</code> or <code>fn:subsequence</code>,
+ * on to the expressions which can then stop early:
+ *
+ * <ul>
+ *     <li>a FLWOR ending in an "order by" only keeps the first items while sorting,
+ *     see {@link OrderByClause#setLimit(int)}</li>
+ *     <li>the "for" clauses of other FLWOR expressions stop iterating once they produced
+ *     enough items, see {@link ForExpr#setLimit(int)}</li>
+ *     <li>the last step of a path expression only scans the structural index until it
+ *     found enough nodes, see {@link LocationStep#setLimit(int)}</li>
+ * </ul>
+ *
+ * Must be called from the analyze method of the enclosing expression, after the
+ * limited expression has been analyzed.
+ */
+public final class ResultLimit {
+
+    private ResultLimit() {
+    }
+
+    /**
+     * Tell the given expression that only the first limit items of its result are used.
+     *
+     * @param expr the expression whose result is used
+     * @param limit the number of items used
+     */
+    public static void apply(Expression expr, final int limit) {
+        if (limit <= 0) {
+            return;
+        }
+        expr = unwrap(expr);
+        if (expr instanceof FLWORClause) {
+            applyToFLWOR((FLWORClause) expr, limit);
+        } else if (expr.getClass() == PathExpr.class) {
+            // the result of the path is the result of its last step
+            final Expression last = ((PathExpr) expr).getLastExpression();
+            if (last instanceof LocationStep) {
+                applyToStep((LocationStep) last, limit);
+            }
+        } else if (expr instanceof LocationStep) {
+            applyToStep((LocationStep) expr, limit);
+        }
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck ||
+                    expr instanceof UntypedValueCheck) {
+                // function arguments
+                expr = expr.getSubExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    private static void applyToFLWOR(final FLWORClause flwor, final int limit) {
+        final OrderByClause orderBy = OrderByClause.getTrailingOrderBy(flwor);
+        if (orderBy != null) {
+            orderBy.setLimit(limit);
+            return;
+        }
+        // without reordering or grouping, the result of each "for" is the
+        // concatenation of the results of its iterations
+        final List<ForExpr> fors = new ArrayList<>();
+        Expression expr = flwor;
+        while (expr instanceof FLWORClause) {
+            final FLWORClause clause = (FLWORClause) expr;
+            switch (clause.getType()) {
+                case FOR:
+                    fors.add((ForExpr) clause);
+                    break;
+                case LET:
+                case WHERE:
+                    break;
+                default:
+                    return;
+            }
+            expr = clause.getReturnExpression();
+        }
+        for (final ForExpr forExpr : fors) {
+            forExpr.setLimit(limit);
+        }
+        // at most limit items of each evaluation of the return expression are used
+        apply(expr, limit);
+    }
+
+    private static void applyToStep(final LocationStep step, final int limit) {
+        if (step.hasPredicates()) {
+            return;
+        }
+        switch (step.getAxis()) {
+            case Constants.CHILD_AXIS:
+            case Constants.DESCENDANT_AXIS:
+            case Constants.DESCENDANT_SELF_AXIS:
+                step.setLimit(limit);
+                break;
+            default:
+                break;
+        }
+    }
+}
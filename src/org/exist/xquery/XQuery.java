@@ -42,6 +42,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryResultCache;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -146,9 +147,11 @@ public class XQuery {
                 }
             }
             
+            final long compilationTime = System.currentTimeMillis() - start;
+            context.setCompilationTime(compilationTime);
             if (LOG.isDebugEnabled()) {
             	final NumberFormat nf = NumberFormat.getNumberInstance();
-            	LOG.debug("Compilation took "  +  nf.format(System.currentTimeMillis() - start) + " ms");
+            	LOG.debug("Compilation took "  +  nf.format(compilationTime) + " ms");
             }
             
             return expr;
@@ -250,7 +253,27 @@ public class XQuery {
             context.getProfiler().traceQueryStart();
             broker.getBrokerPool().getProcessMonitor().queryStarted(context.getWatchDog());
             try {
-                final Sequence result = expression.eval(contextSequence);
+                // the result of a query evaluated for a given context cannot be reused,
+                // a query analyzed for its plan has to be evaluated
+                final XQueryResultCache resultCache = broker.getBrokerPool().getXQueryResultCache();
+                final XQueryResultCache.Key cacheKey = resetContext && contextSequence == null &&
+                        context.getProfiler().getPlan() == null ?
+                        resultCache.createKey(broker, expression) : null;
+                Sequence result = null;
+                if(cacheKey != null) {
+                    result = resultCache.get(broker, cacheKey);
+                    if(result == null) {
+                        context.recordDependencies(cacheKey.getDependencies());
+                    }
+                }
+
+                if(result == null) {
+                    result = expression.eval(contextSequence);
+                    // the query may have read untracked input while it was evaluated
+                    if(cacheKey != null && context.isResultCacheable()) {
+                        resultCache.put(cacheKey, result);
+                    }
+                }
                 if(LOG.isDebugEnabled()) {
                     final NumberFormat nf = NumberFormat.getNumberInstance();
                     LOG.debug("Execution took "  +  nf.format(System.currentTimeMillis() - start) + " ms");
@@ -66,9 +66,11 @@ import org.exist.source.*;
 import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.DBBroker;
 import org.exist.storage.UpdateListener;
+import org.exist.storage.XQueryResultCache;
 import org.exist.storage.lock.Lock;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.LockedDocumentMap;
+import org.exist.storage.statistics.IndexStatistics;
 import org.exist.util.Collations;
 import org.exist.util.Configuration;
 import org.exist.util.LockException;
@@ -100,6 +102,10 @@ public class XQueryContext implements BinaryValueManager, Context
     public static final String                         XQUERY_BACKWARD_COMPATIBLE_ATTRIBUTE             = "backwardCompatible";
     public static final String                         XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_ATTRIBUTE = "raise-error-on-failed-retrieval";
     public static final String						   ENFORCE_INDEX_USE_ATTRIBUTE					    = "enforce-index-use";
+    public static final String                         GROUPBY_SPILL_THRESHOLD_ATTRIBUTE                = "groupby-spill-threshold";
+    public static final String                         ORDERBY_SPILL_THRESHOLD_ATTRIBUTE                = "orderby-spill-threshold";
+    public static final String                         PARALLELISM_ATTRIBUTE                            = "parallelism";
+    public static final String                         MEMTREE_OFF_HEAP_THRESHOLD_ATTRIBUTE             = "memtree-off-heap-threshold";
 
     //TODO : move elsewhere ?
     public static final String                         BUILT_IN_MODULE_URI_ATTRIBUTE                    = "uri";
@@ -111,6 +117,14 @@ public class XQueryContext implements BinaryValueManager, Context
     public static final String                         PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL  = "xquery.raise-error-on-failed-retrieval";
     public static final boolean                        XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT   = false;
     public static final String						   PROPERTY_ENFORCE_INDEX_USE						= "xquery.enforce-index-use";
+    public static final String                         PROPERTY_GROUPBY_SPILL_THRESHOLD                 = "xquery.groupby-spill-threshold";
+    public static final int                            GROUPBY_SPILL_THRESHOLD_DEFAULT                  = 1000000;
+    public static final String                         PROPERTY_ORDERBY_SPILL_THRESHOLD                 = "xquery.orderby-spill-threshold";
+    public static final int                            ORDERBY_SPILL_THRESHOLD_DEFAULT                  = 1000000;
+    public static final String                         PROPERTY_PARALLELISM                             = "xquery.parallelism";
+    public static final int                            PARALLELISM_DEFAULT                              = 1;
+    public static final String                         PROPERTY_MEMTREE_OFF_HEAP_THRESHOLD              = "xquery.memtree-off-heap-threshold";
+    public static final int                            MEMTREE_OFF_HEAP_THRESHOLD_DEFAULT               = 0;
 
     //TODO : move elsewhere ?
     public static final String                         PROPERTY_BUILT_IN_MODULES                        = "xquery.modules";
@@ -218,6 +232,12 @@ public class XQueryContext implements BinaryValueManager, Context
      */
     protected MutableDocumentSet                       modifiedDocuments             = null;
 
+    /** The collections and documents read by the query, only recorded if its result may be cached. */
+    private XQueryResultCache.Dependencies             dependencies                  = null;
+
+    /** False if the result of the query depends on input which is not recorded in dependencies. Never reset. */
+    private boolean                                    resultCacheable               = true;
+
     /** A general-purpose map to set attributes in the current query context. */
     protected Map<String, Object>                      attributes                    = new HashMap<String, Object>();
 
@@ -282,6 +302,9 @@ public class XQueryContext implements BinaryValueManager, Context
     /** The profiler instance used by this context. */
     protected Profiler                                 profiler;
 
+    /** Estimates the cost of evaluation plans, created on first use. */
+    private CostModel                                  costModel                     = null;
+
     //For holding XQuery Context variables for general storage in the XQuery Context
     HashMap<String, Object>                            XQueryContextVars             = new HashMap<String, Object>();
     
@@ -294,6 +317,14 @@ public class XQueryContext implements BinaryValueManager, Context
 
     private boolean                                    raiseErrorOnFailedRetrieval   = XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT;
 
+    private int                                        groupBySpillThreshold         = GROUPBY_SPILL_THRESHOLD_DEFAULT;
+
+    private int                                        orderBySpillThreshold         = ORDERBY_SPILL_THRESHOLD_DEFAULT;
+
+    private int                                        parallelism                   = PARALLELISM_DEFAULT;
+
+    private int                                        memtreeOffHeapThreshold       = MEMTREE_OFF_HEAP_THRESHOLD_DEFAULT;
+
     private boolean                                    isShared                      = false;
 
     private Source source = null;
@@ -305,6 +336,13 @@ public class XQueryContext implements BinaryValueManager, Context
     protected Database db;
 
     private boolean analyzed = false;
+
+    /**
+     * Time in milliseconds it took to compile the expression attached
+     * to this context. Used by {@link org.exist.storage.XQueryPool}
+     * to estimate the compilation time saved by pooling.
+     */
+    private long compilationTime = 0;
     
     /**
      * The Subject of the User that requested the execution of the XQuery
@@ -453,6 +491,7 @@ public class XQueryContext implements BinaryValueManager, Context
         ctx.baseURISetInProlog       = this.baseURISetInProlog;
         ctx.staticDocumentPaths      = this.staticDocumentPaths;
         ctx.staticDocuments          = this.staticDocuments;
+        ctx.dependencies             = this.dependencies;
         ctx.moduleLoadPath           = this.moduleLoadPath;
         ctx.defaultFunctionNamespace = this.defaultFunctionNamespace;
         ctx.defaultElementNamespace  = this.defaultElementNamespace;
@@ -460,6 +499,8 @@ public class XQueryContext implements BinaryValueManager, Context
         ctx.defaultCollator          = this.defaultCollator;
         ctx.backwardsCompatible      = this.backwardsCompatible;
         ctx.enableOptimizer          = this.enableOptimizer;
+        ctx.groupBySpillThreshold    = this.groupBySpillThreshold;
+        ctx.orderBySpillThreshold    = this.orderBySpillThreshold;
         ctx.stripWhitespace          = this.stripWhitespace;
         ctx.preserveNamespaces       = this.preserveNamespaces;
         ctx.inheritNamespaces        = this.inheritNamespaces;
@@ -570,6 +611,25 @@ public class XQueryContext implements BinaryValueManager, Context
     }
 
 
+    /**
+     * Returns the {@link CostModel} used to estimate the cost of alternative
+     * evaluation plans from the statistics of the database.
+     *
+     * @return  the cost model
+     */
+    public CostModel getCostModel()
+    {
+        if( costModel == null ) {
+            IndexStatistics statistics = null;
+            if( db != null && db.getIndexManager() != null ) {
+                statistics = (IndexStatistics)db.getIndexManager().getIndexById( IndexStatistics.ID );
+            }
+            costModel = new CostModel( statistics );
+        }
+        return( costModel );
+    }
+
+
     /**
      * Called from the XQuery compiler to set the root expression for this context.
      *
@@ -1080,6 +1140,68 @@ public class XQueryContext implements BinaryValueManager, Context
     }
 
 
+    public XmldbURI[] getStaticallyKnownDocumentPaths()
+    {
+        return( staticDocumentPaths );
+    }
+
+
+    /**
+     * Record the collections and documents read by the query from now on, until the context is reset.
+     *
+     * @param  dependencies  the recorded collections and documents
+     */
+    public void recordDependencies( XQueryResultCache.Dependencies dependencies )
+    {
+        this.dependencies = dependencies;
+    }
+
+
+    /**
+     * Called when the query reads the documents of a collection and its descendants.
+     *
+     * @param  uri  the collection
+     */
+    public void addCollectionDependency( XmldbURI uri )
+    {
+        if( dependencies != null ) {
+            dependencies.addCollection( uri );
+        }
+    }
+
+
+    /**
+     * Called when the query reads a document, or checks if it exists.
+     *
+     * @param  uri  the document
+     */
+    public void addDocumentDependency( XmldbURI uri )
+    {
+        if( dependencies != null ) {
+            dependencies.addDocument( uri );
+        }
+    }
+
+
+    /**
+     * Called when the query depends on input which is not recorded as a dependency, e.g. the HTTP request,
+     * the current time or a document read from a URL. The result of the query will not be cached.
+     */
+    public void markResultUncacheable()
+    {
+        resultCacheable = false;
+    }
+
+
+    /**
+     * @return  false if the query depends on input which is not recorded as a dependency
+     */
+    public boolean isResultCacheable()
+    {
+        return( resultCacheable );
+    }
+
+
     //TODO : not sure how these 2 options might/have to be related
     public void setCalendar( XMLGregorianCalendar newCalendar )
     {
@@ -1137,6 +1259,19 @@ public class XQueryContext implements BinaryValueManager, Context
      */
     public DocumentSet getStaticallyKnownDocuments() throws XPathException
     {
+        if( dependencies != null ) {
+
+            if( staticDocumentPaths == null || protectedDocuments != null ) {
+                addCollectionDependency( XmldbURI.ROOT_COLLECTION_URI );
+            } else {
+
+                for( final XmldbURI path : staticDocumentPaths ) {
+                    addCollectionDependency( path );
+                    addDocumentDependency( path );
+                }
+            }
+        }
+
         if( staticDocuments != null ) {
 
             // the document set has already been built, return it
@@ -1355,6 +1490,8 @@ public class XQueryContext implements BinaryValueManager, Context
             }
         }
 
+        dependencies = null;
+
         if( modifiedDocuments != null ) {
 
             try {
@@ -1613,7 +1750,10 @@ public class XQueryContext implements BinaryValueManager, Context
             expr.accept( optimizer );
 
             if( optimizer.hasOptimized() ) {
+                // a query plan records the whole compilation
+                final QueryPlan plan = profiler.getPlan();
                 reset( true );
+                profiler.setPlan( plan );
                 expr.resetState( true );
                 expr.analyze( new AnalyzeContextInfo() );
             }
@@ -2110,6 +2250,76 @@ public class XQueryContext implements BinaryValueManager, Context
     }
 
 
+    /**
+     * Returns the number of items a group by clause may keep in memory
+     * before it starts writing its tuples to temporary files. A value
+     * of 0 or less disables spilling to disk.
+     *
+     * @return  the spill threshold in items
+     */
+    public int getGroupBySpillThreshold()
+    {
+        return( groupBySpillThreshold );
+    }
+
+
+    public void setGroupBySpillThreshold( final int groupBySpillThreshold )
+    {
+        this.groupBySpillThreshold = groupBySpillThreshold;
+    }
+
+
+    /**
+     * Returns the number of items an order by clause may sort in memory
+     * before it writes sorted runs to temporary files. A value of 0 or
+     * less disables spilling to disk.
+     *
+     * @return  the spill threshold in items
+     */
+    public int getOrderBySpillThreshold()
+    {
+        return( orderBySpillThreshold );
+    }
+
+
+    public void setOrderBySpillThreshold( final int orderBySpillThreshold )
+    {
+        this.orderBySpillThreshold = orderBySpillThreshold;
+    }
+
+
+    /**
+     * Returns the number of threads the query may use to evaluate a path
+     * step over a large set of documents. A value of 1 or less evaluates
+     * all steps in the calling thread.
+     *
+     * @return  the parallelism of the query
+     */
+    public int getParallelism()
+    {
+        return( parallelism );
+    }
+
+
+    public void setParallelism( final int parallelism )
+    {
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * Returns the number of nodes, attributes or characters above which
+     * the in-memory documents constructed by the query store their node
+     * data off the heap. A value of 0 keeps all node data on the heap.
+     *
+     * @return  the off-heap threshold of in-memory documents
+     */
+    public int getMemtreeOffHeapThreshold()
+    {
+        return( memtreeOffHeapThreshold );
+    }
+
+
     public Database getDatabase() {
     	return db;
     }
@@ -3148,6 +3358,17 @@ public class XQueryContext implements BinaryValueManager, Context
             watchdog.setTimeoutFromOption( option );
         } else if( Option.OUTPUT_SIZE_QNAME.compareTo( qn ) == 0 ) {
             watchdog.setMaxNodesFromOption( option );
+        } else if( Option.PARALLELISM_QNAME.compareTo( qn ) == 0 ) {
+            final String[] params = option.tokenizeContents();
+            if( params.length != 1 ) {
+                throw( new XPathException( "Option 'parallelism' should have exactly one parameter: the number of threads." ) );
+            }
+            try {
+                parallelism = Integer.parseInt( params[0] );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new XPathException( "Error parsing parallelism value in option " + option.getQName().getStringValue() ) );
+            }
         } else if( Option.OPTIMIZE_QNAME.compareTo( qn ) == 0 ) {
             final String[] params = option.tokenizeContents();
 
@@ -3353,6 +3574,22 @@ public class XQueryContext implements BinaryValueManager, Context
         final Boolean option = ( (Boolean)config.getProperty( PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL ) );
         raiseErrorOnFailedRetrieval = ( option != null ) && option.booleanValue();
 
+        // Number of items a group by clause may buffer before it spills to disk
+        param = config.getProperty( PROPERTY_GROUPBY_SPILL_THRESHOLD );
+        groupBySpillThreshold = ( param instanceof Integer ) ? (Integer) param : GROUPBY_SPILL_THRESHOLD_DEFAULT;
+
+        // Number of items an order by clause may sort in memory before it writes sorted runs to disk
+        param = config.getProperty( PROPERTY_ORDERBY_SPILL_THRESHOLD );
+        orderBySpillThreshold = ( param instanceof Integer ) ? (Integer) param : ORDERBY_SPILL_THRESHOLD_DEFAULT;
+
+        // Number of threads a query may use to evaluate a path step
+        param = config.getProperty( PROPERTY_PARALLELISM );
+        parallelism = ( param instanceof Integer ) ? (Integer) param : PARALLELISM_DEFAULT;
+
+        // Size above which constructed documents are stored off heap
+        param = config.getProperty( PROPERTY_MEMTREE_OFF_HEAP_THRESHOLD );
+        memtreeOffHeapThreshold = ( param instanceof Integer ) ? (Integer) param : MEMTREE_OFF_HEAP_THRESHOLD_DEFAULT;
+
         // Get map of built-in modules
         final Map<String, Class<Module>> builtInModules = (Map)config.getProperty( PROPERTY_BUILT_IN_MODULES );
 
@@ -3592,6 +3829,14 @@ public class XQueryContext implements BinaryValueManager, Context
         this.source = source;
     }
 
+    public long getCompilationTime() {
+        return compilationTime;
+    }
+
+    public void setCompilationTime(final long compilationTime) {
+        this.compilationTime = compilationTime;
+    }
+
 
     // ====================================================================================
 
@@ -56,7 +56,7 @@ public class XQueryWatchDog {
     
     private long startTime;
     
-    private boolean terminate = false;
+    private volatile boolean terminate = false;
 
     private String runningThread = null;
 
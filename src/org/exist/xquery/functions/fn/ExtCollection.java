@@ -135,6 +135,7 @@ public class ExtCollection extends Function {
                 MutableDocumentSet ndocs = new DefaultDocumentSet();
                 for (final String next : args) {
                     final XmldbURI uri = new AnyURIValue(next).toXmldbURI();
+                    context.addCollectionDependency(uri);
                     final Collection coll = context.getBroker().getCollection(uri);
                     if (coll == null) {
                         if (context.isRaiseErrorOnFailedRetrieval()) {
@@ -22,11 +22,13 @@
 package org.exist.xquery.functions.fn;
 
 import org.exist.dom.QName;
+import org.exist.xquery.AnalyzeContextInfo;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.Dependency;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.Profiler;
+import org.exist.xquery.ResultLimit;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.BooleanValue;
@@ -57,6 +59,13 @@ public class FunEmpty extends Function {
         super(context, signature);
     }
 
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+        // the first item decides
+        ResultLimit.apply(getArgument(0), 1);
+    }
+
     @Override
     public Sequence eval(final Sequence contextSequence, final Item contextItem)
             throws XPathException {
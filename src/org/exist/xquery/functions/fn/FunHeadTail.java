@@ -9,6 +9,7 @@ import org.exist.xquery.Cardinality;
 import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.ResultLimit;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
@@ -49,6 +50,9 @@ public class FunHeadTail extends BasicFunction {
 			throw new XPathException(this, ErrorCodes.EXXQDY0003, "Function " + 
 					getSignature().getName() + " is only supported for xquery version \"3.0\" and later.");
 		}
+		if (isCalledAs("head")) {
+			ResultLimit.apply(getArgument(0), 1);
+		}
 	}
 	
 	@Override
@@ -25,10 +25,12 @@ import org.exist.dom.persistent.ExtArrayNodeSet;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.QName;
 import org.exist.xquery.*;
+import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.DoubleValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
 import org.exist.xquery.value.SequenceType;
@@ -87,6 +89,38 @@ public class FunSubSequence extends Function {
             if (i == 0)
                 {contextInfo.setStaticReturnType(argContextInfo.getStaticReturnType());}
         }
+
+        // subsequence(..., 1, 10): only the first items of the sequence are needed
+        if (getArgumentCount() == 3) {
+            final int start = staticInteger(getArgument(1));
+            final int length = staticInteger(getArgument(2));
+            if (start > 0 && length >= 0 && (long) start + length - 1 < Integer.MAX_VALUE) {
+                ResultLimit.apply(getArgument(0), start + length - 1);
+            }
+        }
+    }
+
+    private static int staticInteger(Expression expr) throws XPathException {
+        while (true) {
+            if (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck ||
+                    expr instanceof UntypedValueCheck) {
+                expr = expr.getSubExpression(0);
+            } else {
+                break;
+            }
+        }
+        if (expr instanceof LiteralValue) {
+            final AtomicValue value = ((LiteralValue) expr).getValue();
+            if (Type.subTypeOf(value.getType(), Type.INTEGER)) {
+                final long n = ((NumericValue) value).getLong();
+                if (n >= 0 && n < Integer.MAX_VALUE) {
+                    return (int) n;
+                }
+            }
+        }
+        return -1;
     }
 
     /*
@@ -0,0 +1,105 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.security.PermissionDeniedException;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.QueryPlan;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+/**
+ * Returns the plan of a query, see {@link QueryPlan}.
+ */
+public class Explain extends BasicFunction {
+
+    protected static final Logger logger = LogManager.getLogger(Explain.class);
+
+    private final static String DESCRIPTION =
+        "Compiles the XQuery expression given in parameter $expression and returns its plan: the query " +
+        "after optimization and the decisions made by the optimizer. ";
+
+    public final static FunctionSignature signatures[] = {
+        new FunctionSignature(
+            new QName("explain", UtilModule.NAMESPACE_URI, UtilModule.PREFIX),
+            DESCRIPTION + "The expression is not executed.",
+            new SequenceType[] {
+                new FunctionParameterSequenceType("expression", Type.STRING, Cardinality.EXACTLY_ONE, "The XPath/XQuery expression.")
+            },
+            new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the plan of the expression")),
+        new FunctionSignature(
+            new QName("explain", UtilModule.NAMESPACE_URI, UtilModule.PREFIX),
+            DESCRIPTION + "If $analyze is true, the expression is also executed and the plan lists the " +
+            "evaluated expressions with the number of calls, the number of items passed in and returned, the " +
+            "time spent in nanoseconds including nested expressions and the indexes used. The result of the " +
+            "expression is discarded.",
+            new SequenceType[] {
+                new FunctionParameterSequenceType("expression", Type.STRING, Cardinality.EXACTLY_ONE, "The XPath/XQuery expression."),
+                new FunctionParameterSequenceType("analyze", Type.BOOLEAN, Cardinality.EXACTLY_ONE, "Execute the expression.")
+            },
+            new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the plan of the expression"))
+    };
+
+    public Explain(XQueryContext context, FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    public Sequence eval(Sequence[] args, Sequence contextSequence) throws XPathException {
+        final String expr = args[0].getStringValue();
+        final boolean analyze = getArgumentCount() == 2 && args[1].effectiveBooleanValue();
+        if (logger.isDebugEnabled()) {
+            logger.debug("explain: " + expr);
+        }
+
+        final XQueryContext pContext = new XQueryContext(context.getBroker().getBrokerPool());
+        pContext.setModuleLoadPath(context.getModuleLoadPath());
+        final QueryPlan plan = new QueryPlan(analyze);
+        pContext.getProfiler().setPlan(plan);
+
+        final XQuery xquery = context.getBroker().getBrokerPool().getXQueryService();
+        try {
+            final CompiledXQuery compiled = xquery.compile(context.getBroker(), pContext, expr);
+            plan.setQuery(compiled);
+            if (analyze) {
+                xquery.execute(context.getBroker(), compiled, null);
+            }
+        } catch (final PermissionDeniedException e) {
+            throw new XPathException(this, e);
+        } finally {
+            pContext.runCleanupTasks();
+            if (!analyze) {
+                pContext.reset(false);
+            }
+        }
+        return plan.toNode(context);
+    }
+}
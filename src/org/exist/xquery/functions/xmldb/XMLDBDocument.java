@@ -119,6 +119,7 @@ public class XMLDBDocument extends Function {
 	    //	            docs = cachedDocs;
 	    //	        } else {
 	    MutableDocumentSet mdocs = new DefaultDocumentSet();
+            context.addCollectionDependency(XmldbURI.ROOT_COLLECTION_URI);
             try {
                 context.getBroker().getAllXMLResources(mdocs);
             } catch(final PermissionDeniedException pde) {
@@ -134,6 +135,9 @@ public class XMLDBDocument extends Function {
 	    if(cacheIsValid) {
 		result = cached;
 		docs = cachedDocs;
+		for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext();) {
+		    context.addDocumentDependency(i.next().getURI());
+		}
 	    } else {
                 MutableDocumentSet mdocs = new DefaultDocumentSet();
 		for(int i = 0; i < args.size(); i++) {
@@ -146,6 +150,7 @@ public class XMLDBDocument extends Function {
 			if(nextUri.numSegments()==1) {                     
 			    nextUri = context.getBaseURI().toXmldbURI().resolveCollectionPath(nextUri);
 			}
+			context.addDocumentDependency(nextUri);
 			final DocumentImpl doc = context.getBroker().getResource(nextUri, Permission.READ);
 			if(doc == null) { 
 			    if (context.isRaiseErrorOnFailedRetrieval()) {
@@ -80,6 +80,8 @@ public abstract class Modification extends AbstractExpression
         this.select = select;
         this.value = value;
         this.triggers = new Int2ObjectHashMap<>(10);
+        // the update would be skipped if a cached result was returned
+        context.markResultUncacheable();
     }
 
     public int getCardinality() {
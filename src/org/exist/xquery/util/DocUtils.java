@@ -89,6 +89,8 @@ public class DocUtils {
     private static Sequence getDocumentByPathFromURL(final XQueryContext context, final String path) throws XPathException, PermissionDeniedException {
         XMLReader reader = null;
             /* URL */
+        // the document is not tracked as a dependency
+        context.markResultUncacheable();
         try {
             final Source source = SourceFactory.getSource(context.getBroker(), "", path, false);
             try (final InputStream is = source.getInputStream()) {
@@ -159,6 +161,8 @@ public class DocUtils {
                 LOG.error(e);
             }
 
+            context.addDocumentDependency(pathUri);
+
             // try to open the document and acquire a lock
             doc = context.getBroker().getXMLResource(pathUri, lockType);
             if (doc == null) {
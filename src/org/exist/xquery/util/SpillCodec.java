@@ -0,0 +1,186 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.util;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes items to and reads them back from the temporary files used by
+ * query operators which spill intermediate results to disk.
+ *
+ * Only atomic values and persistent nodes can be written, see
+ * {@link #isSpillable(Item)}. Persistent nodes are stored as document id
+ * and node id; the documents themselves are remembered by the codec, so
+ * items must be read back through the same instance which wrote them.
+ */
+public class SpillCodec {
+
+    private static final byte EMPTY = 0;
+    private static final byte ATOMIC = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte FLOAT = 3;
+    private static final byte NODE = 4;
+    private static final byte DOCUMENT = 5;
+
+    private final NodeIdFactory nodeFactory;
+    private final Map<Integer, DocumentImpl> documents = new HashMap<>();
+
+    public SpillCodec(final NodeIdFactory nodeFactory) {
+        this.nodeFactory = nodeFactory;
+    }
+
+    /**
+     * Check if all items of the given sequences can be written, null
+     * sequences are ignored.
+     */
+    public static boolean isSpillable(final Sequence[] seqs) throws XPathException {
+        for (final Sequence seq : seqs) {
+            if (seq != null && !isSpillable(seq)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if all items of the sequence can be written.
+     */
+    public static boolean isSpillable(final Sequence seq) throws XPathException {
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            if (!isSpillable(i.nextItem())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the item can be written. In-memory nodes, function items,
+     * maps, arrays, binary and QName values can not.
+     */
+    public static boolean isSpillable(final Item item) {
+        if (item instanceof NodeProxy) {
+            // full text matches and context information can not be restored
+            final NodeProxy p = (NodeProxy) item;
+            return p.getMatches() == null && p.getContext() == null;
+        }
+        final int type = item.getType();
+        if (item == AtomicValue.EMPTY_VALUE || type == Type.DOUBLE || type == Type.FLOAT) {
+            return true;
+        }
+        return !(item instanceof BinaryValue) && (
+                Type.subTypeOf(type, Type.STRING) ||
+                Type.subTypeOf(type, Type.UNTYPED_ATOMIC) ||
+                Type.subTypeOf(type, Type.ANY_URI) ||
+                Type.subTypeOf(type, Type.BOOLEAN) ||
+                Type.subTypeOf(type, Type.DECIMAL) ||
+                Type.subTypeOf(type, Type.DATE_TIME) ||
+                Type.subTypeOf(type, Type.DATE) ||
+                Type.subTypeOf(type, Type.TIME) ||
+                Type.subTypeOf(type, Type.DURATION) ||
+                type == Type.GYEAR || type == Type.GMONTH || type == Type.GDAY ||
+                type == Type.GYEARMONTH || type == Type.GMONTHDAY);
+    }
+
+    public void write(final DataOutput os, final Item item) throws IOException, XPathException {
+        if (item instanceof NodeProxy) {
+            final NodeProxy p = (NodeProxy) item;
+            final DocumentImpl doc = p.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+            if (p.getNodeId() == NodeId.DOCUMENT_NODE) {
+                os.writeByte(DOCUMENT);
+                os.writeInt(doc.getDocId());
+            } else {
+                os.writeByte(NODE);
+                os.writeInt(doc.getDocId());
+                os.writeShort(p.getNodeType());
+                os.writeLong(p.getInternalAddress());
+                final NodeId nodeId = p.getNodeId();
+                final byte[] data = new byte[nodeId.size()];
+                nodeId.serialize(data, 0);
+                os.writeInt(nodeId.units());
+                os.writeInt(data.length);
+                os.write(data);
+            }
+        } else if (item == AtomicValue.EMPTY_VALUE) {
+            os.writeByte(EMPTY);
+        } else if (item.getType() == Type.DOUBLE) {
+            os.writeByte(DOUBLE);
+            os.writeDouble(((DoubleValue) item).getValue());
+        } else if (item.getType() == Type.FLOAT) {
+            os.writeByte(FLOAT);
+            os.writeFloat(((FloatValue) item).getValue());
+        } else {
+            os.writeByte(ATOMIC);
+            os.writeInt(item.getType());
+            final byte[] data = item.getStringValue().getBytes(StandardCharsets.UTF_8);
+            os.writeInt(data.length);
+            os.write(data);
+        }
+    }
+
+    public Item read(final DataInput is) throws IOException, XPathException {
+        final byte tag = is.readByte();
+        switch (tag) {
+            case EMPTY:
+                return AtomicValue.EMPTY_VALUE;
+            case DOUBLE:
+                return new DoubleValue(is.readDouble());
+            case FLOAT:
+                return new FloatValue(is.readFloat());
+            case ATOMIC:
+                final int type = is.readInt();
+                final byte[] data = new byte[is.readInt()];
+                is.readFully(data);
+                return new StringValue(new String(data, StandardCharsets.UTF_8)).convertTo(type);
+            case DOCUMENT:
+                return new NodeProxy(documents.get(is.readInt()));
+            case NODE:
+                final DocumentImpl doc = documents.get(is.readInt());
+                final short nodeType = is.readShort();
+                final long address = is.readLong();
+                final int units = is.readInt();
+                final byte[] nodeData = new byte[is.readInt()];
+                is.readFully(nodeData);
+                return new NodeProxy(doc, nodeFactory.createFromData(units, nodeData, 0), nodeType, address);
+            default:
+                throw new IOException("Unknown item tag in temporary file: " + tag);
+        }
+    }
+
+    /**
+     * Forget the documents of all nodes written so far.
+     */
+    public void clear() {
+        documents.clear();
+    }
+}
@@ -27,14 +27,20 @@ import org.exist.dom.persistent.AVLTreeNodeSet;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.numbering.NodeId;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.Constants;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.util.SpillCodec;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
-import java.util.Objects;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.stream.Stream;
 
 /**
@@ -44,6 +50,12 @@ import java.util.stream.Stream;
  * Contrary to class {@link org.exist.xquery.value.PreorderedValueSequence},
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
+ * <p>
+ * If spilling is enabled, the buffered items are sorted and written to a
+ * temporary file whenever their number reaches the threshold. After
+ * {@link #sort()}, {@link #iterate()} merges these sorted runs lazily with
+ * the items still in memory; all other accessors merge the runs into memory
+ * first. If a limit is set, only the first items in sort order are kept.
  *
  * @author wolf
  */
@@ -57,6 +69,19 @@ public class OrderedValueSequence extends AbstractSequence {
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
 
+    // top-k: only keep the first limit items in sort order
+    private int limit = -1;
+    private PriorityQueue<Entry> topK = null;
+
+    // external sort
+    private XQueryContext context = null;
+    private int spillThreshold = -1;
+    private SpillCodec codec = null;
+    private List<Run> runs = null;
+    private int spilled = 0;
+    // merge iterators which may still hold open runs
+    private final List<MergeIterator> openIterators = new ArrayList<>();
+
     public OrderedValueSequence(OrderSpec orderSpecs[], int size) {
         this.orderSpecs = orderSpecs;
         if (size == 0) {
@@ -65,10 +90,38 @@ public class OrderedValueSequence extends AbstractSequence {
         this.items = new Entry[size];
     }
 
+    /**
+     * Only keep the first limit items in sort order. Must be called
+     * before items are added.
+     *
+     * @param limit the maximum number of items returned after {@link #sort()}
+     */
+    public void setLimit(final int limit) {
+        this.limit = limit;
+        this.topK = new PriorityQueue<>(Math.min(limit, 1024) + 1, Collections.reverseOrder());
+    }
+
+    /**
+     * Write sorted runs to temporary files whenever threshold items are
+     * buffered in memory. The files are removed when the query's cleanup
+     * tasks are run, or when the runs are merged into memory. Must be
+     * called before items are added.
+     *
+     * @param context the query context
+     * @param threshold the number of items to buffer
+     */
+    public void enableSpilling(final XQueryContext context, final int threshold) {
+        this.context = context;
+        this.spillThreshold = threshold;
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.value.Sequence#iterate()
      */
     public SequenceIterator iterate() throws XPathException {
+        if (runs != null) {
+            return new MergeIterator();
+        }
         return new OrderedValueSequenceIterator();
     }
 
@@ -76,14 +129,14 @@ public class OrderedValueSequence extends AbstractSequence {
      * @see org.exist.xquery.value.AbstractSequence#unorderedIterator()
      */
     public SequenceIterator unorderedIterator() throws XPathException {
-        return new OrderedValueSequenceIterator();
+        return iterate();
     }
 
     /* (non-Javadoc)
      * @see org.exist.xquery.value.Sequence#getLength()
      */
     public int getItemCount() {
-        return (items == null) ? 0 : count;
+        return (items == null) ? 0 : count + spilled;
     }
 
     public boolean isEmpty() {
@@ -105,6 +158,21 @@ public class OrderedValueSequence extends AbstractSequence {
             hasOne = true;
         }
         isEmpty = false;
+        checkItemType(item.getType());
+        setHasChanged();
+
+        if (topK != null) {
+            final Entry entry = new Entry(item, count + spilled);
+            spilled++;
+            if (topK.size() < limit) {
+                topK.add(entry);
+            } else if (entry.compareTo(topK.peek()) < 0) {
+                topK.poll();
+                topK.add(entry);
+            }
+            return;
+        }
+
         if (count == 0 && items.length == 1) {
             items = new Entry[2];
         } else if (count == items.length) {
@@ -112,9 +180,103 @@ public class OrderedValueSequence extends AbstractSequence {
             System.arraycopy(items, 0, newItems, 0, count);
             items = newItems;
         }
-        items[count] = new Entry(item, count++);
-        checkItemType(item.getType());
-        setHasChanged();
+        items[count] = new Entry(item, count + spilled);
+        count++;
+        if (spillThreshold > 0 && count >= spillThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * Sort the buffered items and write them to a new run. If an item
+     * can not be written, spilling is disabled for this sequence.
+     */
+    private void spill() throws XPathException {
+        for (int i = 0; i < count; i++) {
+            if (!SpillCodec.isSpillable(items[i].item) || !isSpillable(items[i].values)) {
+                spillThreshold = -1;
+                return;
+            }
+        }
+        if (codec == null) {
+            codec = new SpillCodec(context.getBroker().getBrokerPool().getNodeFactory());
+            runs = new ArrayList<>();
+            context.registerCleanupTask(ctx -> {
+                closeIterators();
+                discardRuns();
+            });
+        }
+        Arrays.sort(items, 0, count);
+        try {
+            final Run run = new Run(TemporaryFileManager.getInstance().getTemporaryFile(), count);
+            runs.add(run);
+            try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.file)))) {
+                for (int i = 0; i < count; i++) {
+                    final Entry entry = items[i];
+                    os.writeInt(entry.pos);
+                    for (final AtomicValue value : entry.values) {
+                        codec.write(os, value);
+                    }
+                    codec.write(os, entry.item);
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Failed to write sorted run to disk: " + e.getMessage(), e);
+        }
+        spilled += count;
+        Arrays.fill(items, 0, count, null);
+        count = 0;
+    }
+
+    private static boolean isSpillable(final AtomicValue[] values) {
+        for (final AtomicValue value : values) {
+            if (!SpillCodec.isSpillable((Item) value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge all runs into memory and remove their files.
+     */
+    private void materialize() {
+        if (runs == null) {
+            return;
+        }
+        final Entry[] merged = new Entry[count + spilled];
+        try (final MergeIterator i = new MergeIterator()) {
+            int n = 0;
+            while (i.hasNext()) {
+                final Entry entry = i.nextEntry();
+                entry.clear();
+                merged[n++] = entry;
+            }
+        }
+        discardRuns();
+        items = merged;
+        count = merged.length;
+        spilled = 0;
+    }
+
+    /**
+     * Close the merge iterators of callers which stopped iterating
+     * before the end, so that their runs can be removed.
+     */
+    private void closeIterators() {
+        for (final MergeIterator i : new ArrayList<>(openIterators)) {
+            i.close();
+        }
+    }
+
+    private void discardRuns() {
+        if (runs != null) {
+            for (final Run run : runs) {
+                TemporaryFileManager.getInstance().returnTemporaryFile(run.file);
+            }
+            runs = null;
+            codec.clear();
+        }
     }
 
     /* (non-Javadoc)
@@ -134,6 +296,17 @@ public class OrderedValueSequence extends AbstractSequence {
     }
 
     public void sort() {
+        if (topK != null) {
+            items = topK.toArray(new Entry[topK.size()]);
+            count = items.length;
+            spilled = 0;
+            topK = null;
+        }
+        if (runs != null) {
+            // keep the sort keys, they are needed to merge with the runs
+            Arrays.sort(items, 0, count);
+            return;
+        }
 //		FastQSort.sort(items, 0, count - 1);
         items =
                 Stream.of(items).filter(Objects::nonNull)
@@ -150,6 +323,7 @@ public class OrderedValueSequence extends AbstractSequence {
      * @see org.exist.xquery.value.Sequence#itemAt(int)
      */
     public Item itemAt(int pos) {
+        materialize();
         if (items != null && pos > -1 && pos < count) {
             return items[pos].item;
         } else {
@@ -182,6 +356,7 @@ public class OrderedValueSequence extends AbstractSequence {
         if (isEmpty()) {
             return NodeSet.EMPTY_SET;
         }
+        materialize();
         // for this method to work, all items have to be nodes
         if (itemType != Type.ANY_TYPE && Type.subTypeOf(itemType, Type.NODE)) {
             //Was ExtArrayNodeset() which orders the nodes in document order
@@ -252,6 +427,7 @@ public class OrderedValueSequence extends AbstractSequence {
     * @see org.exist.xquery.value.Sequence#isPersistentSet()
     */
     public boolean isPersistentSet() {
+        materialize();
         if (count == 0) {
             return true;
         }
@@ -269,6 +445,7 @@ public class OrderedValueSequence extends AbstractSequence {
     }
 
     public MemoryNodeSet toMemNodeSet() throws XPathException {
+        materialize();
         if (count == 0) {
             return MemoryNodeSet.EMPTY;
         }
@@ -287,6 +464,7 @@ public class OrderedValueSequence extends AbstractSequence {
     }
 
     public String toString() {
+        materialize();
         final StringBuilder builder = new StringBuilder();
         for (int i = 0; i < count; i++) {
             builder.append(items[i].toString());
@@ -323,6 +501,15 @@ public class OrderedValueSequence extends AbstractSequence {
         AtomicValue values[];
         int pos;
 
+        /**
+         * Recreate an entry read back from a sorted run.
+         */
+        Entry(Item item, AtomicValue[] values, int position) {
+            this.item = item;
+            this.values = values;
+            this.pos = position;
+        }
+
         /**
          * @param item     the item in the sequence
          * @param position the original position of the item in the result sequence
@@ -445,4 +632,143 @@ public class OrderedValueSequence extends AbstractSequence {
             return null;
         }
     }
+
+    private static class Run {
+        final Path file;
+        final int size;
+
+        Run(final Path file, final int size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Merges the sorted runs and the sorted items in memory. The iterator
+     * closes itself when it is exhausted, or else when the query is cleaned up.
+     */
+    private class MergeIterator implements SequenceIterator, AutoCloseable {
+
+        private final PriorityQueue<Source> queue;
+
+        MergeIterator() {
+            openIterators.add(this);
+            queue = new PriorityQueue<>(runs.size() + 1, Comparator.comparing(source -> source.current));
+            try {
+                for (final Run run : runs) {
+                    offer(new RunSource(run));
+                }
+            } catch (final IOException e) {
+                close();
+                throw new IllegalStateException("Failed to read sorted run: " + e.getMessage(), e);
+            }
+            offer(new MemorySource());
+        }
+
+        private void offer(final Source source) {
+            if (source.advance()) {
+                queue.add(source);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Item nextItem() {
+            final Entry entry = nextEntry();
+            return entry == null ? null : entry.item;
+        }
+
+        Entry nextEntry() {
+            final Source source = queue.poll();
+            if (source == null) {
+                return null;
+            }
+            final Entry entry = source.current;
+            offer(source);
+            if (queue.isEmpty()) {
+                close();
+            }
+            return entry;
+        }
+
+        @Override
+        public void close() {
+            for (final Source source : queue) {
+                source.close();
+            }
+            queue.clear();
+            openIterators.remove(this);
+        }
+    }
+
+    private abstract static class Source {
+        Entry current;
+
+        /**
+         * Move to the next entry, closing the source when it is exhausted.
+         *
+         * @return false if there are no more entries
+         */
+        abstract boolean advance();
+
+        void close() {
+        }
+    }
+
+    private class MemorySource extends Source {
+        private int next = 0;
+
+        @Override
+        boolean advance() {
+            if (next < count) {
+                current = items[next++];
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private class RunSource extends Source {
+        private final DataInputStream is;
+        private int remaining;
+
+        RunSource(final Run run) throws IOException {
+            this.is = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file)));
+            this.remaining = run.size;
+        }
+
+        @Override
+        boolean advance() {
+            if (remaining == 0) {
+                close();
+                return false;
+            }
+            remaining--;
+            try {
+                final int pos = is.readInt();
+                final AtomicValue[] values = new AtomicValue[orderSpecs.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (AtomicValue) codec.read(is);
+                }
+                current = new Entry(codec.read(is), values, pos);
+                return true;
+            } catch (final IOException | XPathException e) {
+                close();
+                throw new IllegalStateException("Failed to read sorted run: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                is.close();
+            } catch (final IOException e) {
+                // ignore
+            }
+        }
+    }
 }
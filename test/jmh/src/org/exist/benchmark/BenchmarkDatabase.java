@@ -0,0 +1,186 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.benchmark;
+
+import org.exist.EXistException;
+import org.exist.TestDataGenerator;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.MutableDocumentSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.InputSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Embedded database with a collection of generated documents, shared by the
+ * benchmarks. The database uses temporary storage, which is removed when
+ * it is stopped.
+ *
+ * Each document is a book with chapters, sections and paragraphs of random
+ * text, generated by {@link TestDataGenerator}. The integer attribute
+ * <code>@n</code> of each book, chapter and section has a range index.
+ *
+ * Benchmarks which need the database take this state as a parameter of
+ * their setup method and get a broker for their own thread from it.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    public static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("benchmark");
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <create qname=\"@n\" type=\"xs:integer\"/>" +
+            "   </index>" +
+            "</collection>";
+
+    /**
+     * Generates the random text from a fixed vocabulary, as pt:random-text
+     * needs an existing full text index to draw its words from.
+     */
+    private static final String GENERATE_XQ =
+            "declare variable $local:words := tokenize('lorem ipsum dolor sit amet consectetur adipiscing elit " +
+            "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua enim ad minim veniam quis nostrud " +
+            "exercitation ullamco laboris nisi aliquip ex ea commodo consequat duis aute irure in reprehenderit', ' ');" +
+            "declare function local:random-text($max as xs:integer) as xs:string {" +
+            "   string-join(" +
+            "       for $i in 0 to util:random($max)" +
+            "       return $local:words[1 + util:random(count($local:words))]," +
+            "   ' ')" +
+            "};" +
+            "<book id=\"{$filename}\" n=\"{$count}\">" +
+            "   {" +
+            "       for $chapter in 1 to 5 return" +
+            "           <chapter n=\"{$chapter}\">" +
+            "               <title>{local:random-text(7)}</title>" +
+            "               {" +
+            "                   for $section in 1 to 8 return" +
+            "                       <section n=\"{$count * 100 + $chapter * 10 + $section}\">" +
+            "                           <title>{local:random-text(7)}</title>" +
+            "                           {" +
+            "                               for $para in 1 to 10 return" +
+            "                                   <para>{local:random-text(40)}</para>" +
+            "                           }" +
+            "                       </section>" +
+            "               }" +
+            "           </chapter>" +
+            "   }" +
+            "</book>";
+
+    @Param({"20"})
+    public int documents;
+
+    private final ExistEmbeddedServer server = new ExistEmbeddedServer(true, true);
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        server.startDb();
+        final BrokerPool pool = server.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+
+        try(final DBBroker broker = getBroker()) {
+            final Collection collection;
+            try(final Txn transaction = transact.beginTransaction()) {
+                collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+                broker.saveCollection(transaction, collection);
+                final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+                mgr.addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+                transact.commit(transaction);
+            }
+
+            final TestDataGenerator generator = new TestDataGenerator("benchmark", documents);
+            try {
+                final Path[] files = generator.generate(broker, collection, GENERATE_XQ);
+                for (int i = 0; i < files.length; i++) {
+                    try(final Txn transaction = transact.beginTransaction()) {
+                        final InputSource is = new InputSource(files[i].toUri().toASCIIString());
+                        final IndexInfo info = collection.validateXMLResource(transaction, broker,
+                                XmldbURI.create("book" + i + ".xml"), is);
+                        collection.store(transaction, broker, info, is);
+                        transact.commit(transaction);
+                    }
+                }
+            } finally {
+                generator.releaseAll();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        server.stopDb();
+    }
+
+    public BrokerPool getBrokerPool() {
+        return server.getBrokerPool();
+    }
+
+    /**
+     * Get a broker for the system subject. The caller has to close it.
+     */
+    public DBBroker getBroker() throws EXistException {
+        final BrokerPool pool = server.getBrokerPool();
+        return pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+    }
+
+    public DocumentSet getDocuments(final DBBroker broker) throws PermissionDeniedException {
+        final Collection collection = broker.getCollection(COLLECTION_URI);
+        final MutableDocumentSet docs = new DefaultDocumentSet();
+        collection.allDocs(broker, docs, true);
+        return docs;
+    }
+
+    /**
+     * Evaluate an XPath expression against the benchmark collection.
+     *
+     * @param broker the broker to use
+     * @param path an expression returning persistent nodes, relative to the collection
+     */
+    public NodeSet select(final DBBroker broker, final String path) throws XPathException, PermissionDeniedException {
+        final String query = "collection('" + COLLECTION_URI + "')" + path;
+        return getBrokerPool().getXQueryService().execute(broker, query, null).toNodeSet();
+    }
+
+    public static NodeProxy[] toArray(final NodeSet nodes) {
+        final List<NodeProxy> list = new ArrayList<>(nodes.getLength());
+        for (final NodeProxy node : nodes) {
+            list.add(node);
+        }
+        return list.toArray(new NodeProxy[list.size()]);
+    }
+}
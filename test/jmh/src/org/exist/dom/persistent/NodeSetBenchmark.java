@@ -0,0 +1,97 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.benchmark.BenchmarkDatabase;
+import org.exist.storage.DBBroker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks set operations and structural joins on the node set
+ * implementations, filled with nodes from the benchmark documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NodeSetBenchmark {
+
+    @Param({"NewArrayNodeSet", "ExtArrayNodeSet"})
+    public String implementation;
+
+    private NodeProxy[] sections;
+    private NodeProxy[] oddSections;
+    private NodeProxy[] paras;
+
+    private NodeSet sectionSet;
+    private NodeSet oddSectionSet;
+    private NodeSet paraSet;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws Exception {
+        try(final DBBroker broker = database.getBroker()) {
+            sections = BenchmarkDatabase.toArray(database.select(broker, "//section"));
+            oddSections = BenchmarkDatabase.toArray(database.select(broker, "//section[@n mod 2 = 1]"));
+            paras = BenchmarkDatabase.toArray(database.select(broker, "//para"));
+        }
+        sectionSet = newNodeSet(sections);
+        oddSectionSet = newNodeSet(oddSections);
+        paraSet = newNodeSet(paras);
+    }
+
+    private NodeSet newNodeSet(final NodeProxy[] nodes) {
+        final NodeSet set = "ExtArrayNodeSet".equals(implementation) ? new ExtArrayNodeSet() : new NewArrayNodeSet();
+        for (final NodeProxy node : nodes) {
+            set.add(node);
+        }
+        // sort and remove duplicates before measuring
+        set.getLength();
+        return set;
+    }
+
+    @Benchmark
+    public NodeSet build() {
+        return newNodeSet(paras);
+    }
+
+    @Benchmark
+    public NodeSet union() {
+        return sectionSet.union(oddSectionSet);
+    }
+
+    @Benchmark
+    public NodeSet intersection() {
+        return sectionSet.intersection(oddSectionSet);
+    }
+
+    @Benchmark
+    public NodeSet selectParentChild() {
+        return paraSet.selectParentChild(sectionSet, NodeSet.DESCENDANT);
+    }
+
+    @Benchmark
+    public NodeSet selectAncestorDescendant() {
+        return paraSet.selectAncestorDescendant(sectionSet, NodeSet.DESCENDANT, false, -1, true);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.numbering;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks comparisons and relation checks of {@link DLN} node ids,
+ * which dominate sorting of node sets and structural joins.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DLNBenchmark {
+
+    /** the depth of the generated ids; ids deeper than about 10 levels need more than 8 bytes */
+    @Param({"5", "20"})
+    public int depth;
+
+    @Param({"10000"})
+    public int ids;
+
+    private DLN[] nodeIds;
+    private DLN[] sorted;
+    private DLN[] ancestors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(42);
+        nodeIds = new DLN[ids];
+        ancestors = new DLN[ids];
+        for (int i = 0; i < ids; i++) {
+            DLN id = new DLN();
+            for (int level = 1; level < depth; level++) {
+                if (level == depth / 2) {
+                    ancestors[i] = new DLN(id);
+                }
+                id = (DLN) id.getChild(1 + random.nextInt(level < 3 ? 5 : 300));
+            }
+            nodeIds[i] = id;
+        }
+        sorted = nodeIds.clone();
+        Arrays.sort(sorted);
+    }
+
+    @Benchmark
+    public DLN[] sort() {
+        final DLN[] copy = nodeIds.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public void compareNeighbours(final Blackhole blackhole) {
+        for (int i = 1; i < sorted.length; i++) {
+            blackhole.consume(sorted[i - 1].compareTo(sorted[i]));
+        }
+    }
+
+    @Benchmark
+    public void isDescendantOf(final Blackhole blackhole) {
+        for (int i = 0; i < nodeIds.length; i++) {
+            // half of the checks hit the ancestor, half a random other id
+            blackhole.consume(nodeIds[i].isDescendantOf(ancestors[(i & 1) == 0 ? i : (i * 31) % ids]));
+        }
+    }
+
+    @Benchmark
+    public void computeRelation(final Blackhole blackhole) {
+        for (int i = 0; i < nodeIds.length; i++) {
+            blackhole.consume(nodeIds[i].computeRelation(ancestors[(i & 1) == 0 ? i : (i * 31) % ids]));
+        }
+    }
+}
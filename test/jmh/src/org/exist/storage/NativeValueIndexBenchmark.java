@@ -0,0 +1,78 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.benchmark.BenchmarkDatabase;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.XQueryWatchDog;
+import org.exist.xquery.value.IntegerValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks range scans on the range index of the integer
+ * attribute <code>@n</code>, see {@link BenchmarkDatabase}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NativeValueIndexBenchmark {
+
+    private static final QName N = new QName("n", "", ElementValue.ATTRIBUTE);
+
+    /**
+     * fraction of the section attributes matched by the scan
+     */
+    @Param({"0.01", "0.1", "0.5"})
+    public double selectivity;
+
+    private DBBroker broker;
+    private DocumentSet docs;
+    private XQueryWatchDog watchDog;
+    private IntegerValue lowerBound;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws Exception {
+        broker = database.getBroker();
+        docs = database.getDocuments(broker);
+        watchDog = new XQueryContext(database.getBrokerPool()).getWatchDog();
+        // section numbers range from 11 to (documents - 1) * 100 + 58
+        final long max = (database.documents - 1) * 100L + 58;
+        lowerBound = new IntegerValue((long) (max * (1.0 - selectivity)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.close();
+    }
+
+    @Benchmark
+    public NodeSet rangeScan() throws Exception {
+        return broker.getValueIndex().find(watchDog, Comparison.GT, docs, null, NodeSet.ANCESTOR, N, lowerBound);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.storage.BrokerPool;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks key lookups, inserts and range queries on a {@link BTree}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BTreeBenchmark {
+
+    private static final String PREFIX = "key-";
+
+    @Param({"100000"})
+    private int keys;
+
+    private final ExistEmbeddedServer server = new ExistEmbeddedServer(true, true);
+    private Path file;
+    private BTree btree;
+    private long nextKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server.startDb();
+        final BrokerPool pool = server.getBrokerPool();
+        file = Files.createTempFile("benchmark", ".dbx");
+        Files.delete(file);
+
+        btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file);
+        btree.create((short) -1);
+        for (long i = 0; i < keys; i++) {
+            btree.addValue(key(i), i);
+        }
+        btree.flush();
+        nextKey = keys;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        btree.close();
+        FileUtils.deleteQuietly(file);
+        server.stopDb();
+    }
+
+    private static Value key(final long i) {
+        return new Value(PREFIX + i);
+    }
+
+    @Benchmark
+    public long findValue() throws Exception {
+        return btree.findValue(key(ThreadLocalRandom.current().nextInt(keys)));
+    }
+
+    @Benchmark
+    public long addValue() throws Exception {
+        final long k = nextKey++;
+        return btree.addValue(key(k), k);
+    }
+
+    @Benchmark
+    public int rangeQuery() throws Exception {
+        // 1/10th of the keys start with the same digit
+        final String start = PREFIX + (1 + ThreadLocalRandom.current().nextInt(9));
+        final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(start));
+        final int[] count = new int[1];
+        btree.query(query, (value, pointer) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import org.exist.benchmark.BenchmarkDatabase;
+import org.exist.dom.persistent.IStoredNode;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.storage.DBBroker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the retrieval of persistent nodes from {@link DOMFile}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DOMFileBenchmark {
+
+    private DBBroker broker;
+    private NodeProxy[] sections;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws Exception {
+        broker = database.getBroker();
+        sections = BenchmarkDatabase.toArray(database.select(broker, "//section"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.close();
+    }
+
+    private NodeProxy randomSection() {
+        return sections[ThreadLocalRandom.current().nextInt(sections.length)];
+    }
+
+    @Benchmark
+    public IStoredNode loadNode() {
+        return broker.objectWith(randomSection());
+    }
+
+    @Benchmark
+    public String nodeValue() {
+        return broker.getNodeValue(broker.objectWith(randomSection()), false);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.serializers;
+
+import org.exist.benchmark.BenchmarkDatabase;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.storage.DBBroker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the serialization of persistent documents and nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SerializerBenchmark {
+
+    private DBBroker broker;
+    private DocumentImpl[] documents;
+    private NodeProxy[] sections;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws Exception {
+        broker = database.getBroker();
+        final List<DocumentImpl> docs = new ArrayList<>();
+        for (final Iterator<DocumentImpl> i = database.getDocuments(broker).getDocumentIterator(); i.hasNext(); ) {
+            docs.add(i.next());
+        }
+        documents = docs.toArray(new DocumentImpl[docs.size()]);
+        sections = BenchmarkDatabase.toArray(database.select(broker, "//section"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.close();
+    }
+
+    @Benchmark
+    public String serializeDocument() throws Exception {
+        final Serializer serializer = broker.getSerializer();
+        serializer.reset();
+        return serializer.serialize(documents[ThreadLocalRandom.current().nextInt(documents.length)]);
+    }
+
+    @Benchmark
+    public String serializeNode() throws Exception {
+        final Serializer serializer = broker.getSerializer();
+        serializer.reset();
+        return serializer.serialize(sections[ThreadLocalRandom.current().nextInt(sections.length)]);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.benchmark.BenchmarkDatabase;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of compiling a query with the cost of executing it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XQueryBenchmark {
+
+    private static final String QUERY =
+            "declare function local:titles($sections) {" +
+            "   for $section in $sections order by $section/@n descending return $section/title" +
+            "};" +
+            "count(local:titles(collection('" + BenchmarkDatabase.COLLECTION_URI + "')//section[@n > 1000][para]))";
+
+    private DBBroker broker;
+    private XQuery xquery;
+    private CompiledXQuery compiled;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws Exception {
+        broker = database.getBroker();
+        xquery = database.getBrokerPool().getXQueryService();
+        compiled = xquery.compile(broker, new XQueryContext(database.getBrokerPool()), QUERY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.close();
+    }
+
+    @Benchmark
+    public CompiledXQuery compile() throws Exception {
+        return xquery.compile(broker, new XQueryContext(broker.getBrokerPool()), QUERY);
+    }
+
+    @Benchmark
+    public Sequence execute() throws Exception {
+        return xquery.execute(broker, compiled, null);
+    }
+
+    @Benchmark
+    public Sequence compileAndExecute() throws Exception {
+        final CompiledXQuery query = xquery.compile(broker, new XQueryContext(broker.getBrokerPool()), QUERY);
+        return xquery.execute(broker, query, null);
+    }
+}
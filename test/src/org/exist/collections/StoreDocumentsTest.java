@@ -0,0 +1,181 @@
+package org.exist.collections;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing several documents as one batch with
+ * {@link Collection#storeDocuments(Txn, DBBroker, Map, java.util.function.Consumer)}.
+ */
+public class StoreDocumentsTest {
+
+    private static final XmldbURI SINGLE_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-single");
+    private static final XmldbURI BATCH_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-batch");
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void batchIndexesLikeSingleStores() throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        final List<Path> files = FileUtils.list(TestUtils.shakespeareSamples(), p -> FileUtils.fileName(p).endsWith(".xml"));
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection single = broker.getOrCreateCollection(transaction, SINGLE_COLLECTION);
+                broker.saveCollection(transaction, single);
+                for (final Path f : files) {
+                    final IndexInfo info = single.validateXMLResource(transaction, broker,
+                            XmldbURI.create(FileUtils.fileName(f)), new InputSource(f.toUri().toASCIIString()));
+                    single.store(transaction, broker, info, new InputSource(f.toUri().toASCIIString()));
+                }
+
+                final Collection batch = broker.getOrCreateCollection(transaction, BATCH_COLLECTION);
+                broker.saveCollection(transaction, batch);
+                final Map<XmldbURI, InputSource> documents = new LinkedHashMap<>();
+                for (final Path f : files) {
+                    documents.put(XmldbURI.create(FileUtils.fileName(f)), new InputSource(f.toUri().toASCIIString()));
+                }
+                batch.storeDocuments(transaction, broker, documents,
+                        info -> info.getDocument().getMetadata().setMimeType("application/xml"));
+                transact.commit(transaction);
+            }
+
+            for (final String query : new String[] { "//SPEECH", "//SPEECH[SPEAKER = 'HAMLET']", "//ACT/SCENE/TITLE" }) {
+                final String expected = count(broker, SINGLE_COLLECTION, query);
+                assertNotEquals("0", expected);
+                assertEquals(query, expected, count(broker, BATCH_COLLECTION, query));
+            }
+            for (final Path f : files) {
+                assertEquals("application/xml", ((DocumentImpl) broker.getXMLResource(BATCH_COLLECTION.append(FileUtils.fileName(f))))
+                        .getMetadata().getMimeType());
+            }
+        }
+    }
+
+    @Test
+    public void replaceWithinBatch() throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection batch = broker.getOrCreateCollection(transaction, BATCH_COLLECTION);
+                broker.saveCollection(transaction, batch);
+                final Map<XmldbURI, InputSource> documents = new LinkedHashMap<>();
+                documents.put(XmldbURI.create("a.xml"), new InputSource(new StringReader("<a><b/><b/></a>")));
+                documents.put(XmldbURI.create("b.xml"), new InputSource(new StringReader("<a><b/></a>")));
+                batch.storeDocuments(transaction, broker, documents, info -> {});
+                transact.commit(transaction);
+            }
+            assertEquals("3", count(broker, BATCH_COLLECTION, "//b"));
+
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection batch = broker.getCollection(BATCH_COLLECTION);
+                final Map<XmldbURI, InputSource> documents = new LinkedHashMap<>();
+                documents.put(XmldbURI.create("a.xml"), new InputSource(new StringReader("<a><c/><c/></a>")));
+                documents.put(XmldbURI.create("c.xml"), new InputSource(new StringReader("<a><b/><c/></a>")));
+                batch.storeDocuments(transaction, broker, documents, info -> {});
+                transact.commit(transaction);
+            }
+            assertEquals("2", count(broker, BATCH_COLLECTION, "//b"));
+            assertEquals("3", count(broker, BATCH_COLLECTION, "//c"));
+            assertEquals("1", count(broker, BATCH_COLLECTION, "//a[b][c]"));
+        }
+    }
+
+    @Test
+    public void batchLockedUntilFlushed() throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        final List<DocumentImpl> prepared = new ArrayList<>();
+        final List<Boolean> available = new ArrayList<>();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection batch = broker.getOrCreateCollection(transaction, BATCH_COLLECTION);
+                broker.saveCollection(transaction, batch);
+                final Map<XmldbURI, InputSource> documents = new LinkedHashMap<>();
+                documents.put(XmldbURI.create("a.xml"), new InputSource(new StringReader("<a><b/></a>")));
+                documents.put(XmldbURI.create("b.xml"), new InputSource(new StringReader("<a><b/></a>")));
+                batch.storeDocuments(transaction, broker, documents, info -> {
+                    if (!prepared.isEmpty()) {
+                        // the document stored before must not be readable by others yet
+                        available.add(attemptLocks(batch, prepared.get(0)));
+                    }
+                    prepared.add(info.getDocument());
+                });
+                transact.commit(transaction);
+
+                assertEquals(1, available.size());
+                assertFalse(available.get(0));
+                assertTrue(attemptLocks(batch, prepared.get(0)));
+                assertTrue(attemptLocks(batch, prepared.get(1)));
+            }
+        }
+    }
+
+    /**
+     * Attempts to lock the collection and the document from another thread.
+     *
+     * @return true if both locks were available
+     */
+    private static boolean attemptLocks(final Collection collection, final DocumentImpl doc) {
+        final boolean[] locked = new boolean[1];
+        final Thread thread = new Thread(() -> {
+            if (collection.getLock().attempt(LockMode.READ_LOCK)) {
+                try {
+                    if (doc.getUpdateLock().attempt(LockMode.WRITE_LOCK)) {
+                        doc.getUpdateLock().release(LockMode.WRITE_LOCK);
+                        locked[0] = true;
+                    }
+                } finally {
+                    collection.getLock().release(LockMode.READ_LOCK);
+                }
+            }
+        });
+        thread.start();
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return locked[0];
+    }
+
+    private static String count(final DBBroker broker, final XmldbURI collection, final String path)
+            throws EXistException, PermissionDeniedException, XPathException {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        return xquery.execute(broker, "count(collection('" + collection + "')" + path + ")", null)
+                .itemAt(0).getStringValue();
+    }
+}
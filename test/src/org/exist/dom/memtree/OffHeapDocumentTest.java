@@ -0,0 +1,112 @@
+package org.exist.dom.memtree;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Builds and reads in-memory documents whose node data is stored off heap.
+ */
+public class OffHeapDocumentTest {
+
+    private static final int EVENTS = 40000;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(XQueryContext.PROPERTY_MEMTREE_OFF_HEAP_THRESHOLD, 64)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void columnsAcrossChunks() {
+        final int size = 3 * Column.CHUNK_SIZE;
+        final IntColumn ints = new IntColumn(16, -1, 64);
+        ints.ensureCapacity(64);
+        assertFalse(ints.isOffHeap());
+        ints.set(10, 10);
+        ints.ensureCapacity(size);
+        assertTrue(ints.isOffHeap());
+        assertEquals(10, ints.get(10));
+        assertEquals(-1, ints.get(11));
+        assertEquals(-1, ints.get(size - 1));
+        for (int i = 0; i < size; i++) {
+            ints.set(i, i);
+        }
+        for (int i = 0; i < size; i++) {
+            assertEquals(i, ints.get(i));
+        }
+
+        final CharColumn chars = new CharColumn(16, 64);
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; expected.length() < size - 16; i++) {
+            expected.append("text ").append(i).append(' ');
+        }
+        chars.ensureCapacity(expected.length());
+        chars.put(0, expected);
+        assertTrue(chars.isOffHeap());
+        final int start = Column.CHUNK_SIZE - 5;
+        assertEquals(expected.substring(start, start + 10), chars.toString(start, 10));
+        assertEquals(expected.substring(start, start + 10), chars.subSequence(start, 10).toString());
+        assertEquals(expected.substring(10, 20), chars.subSequence(10, 10).toString());
+
+        // move a range over a chunk boundary, to the right and back to the left
+        chars.move(start, start + 3, 10);
+        assertEquals(expected.substring(start, start + 10), chars.toString(start + 3, 10));
+        chars.move(start + 3, start, 10);
+        assertEquals(expected.substring(start, start + 10), chars.toString(start, 10));
+
+        final char[] ch = new char[10];
+        chars.getChars(start, 10, ch, 0);
+        assertEquals(expected.substring(start, start + 10), new String(ch));
+    }
+
+    @Test
+    public void constructLargeDocument() throws EXistException, PermissionDeniedException, XPathException {
+        final String query =
+                "let $doc := document { <log>{ for $i in 1 to " + EVENTS + " return " +
+                "<event n='{$i}' level='{if ($i mod 7 eq 0) then 'ERROR' else 'INFO'}'>message {$i}{comment {concat('c', $i)}}</event>" +
+                "}</log> } " +
+                "return (count($doc//event), sum(for $n in $doc//event/@n return xs:integer($n)), string($doc//event[12345]), " +
+                "count($doc//event[@level = 'ERROR']), string-length(serialize($doc)), " +
+                "serialize(<last>{$doc//event[position() gt " + (EVENTS - 2) + "]}</last>))";
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = xquery.execute(broker, query, null);
+            assertEquals(6, result.getItemCount());
+            assertEquals(String.valueOf(EVENTS), result.itemAt(0).getStringValue());
+            assertEquals(String.valueOf((long) EVENTS * (EVENTS + 1) / 2), result.itemAt(1).getStringValue());
+            assertEquals("message 12345", result.itemAt(2).getStringValue());
+            assertEquals(String.valueOf(EVENTS / 7), result.itemAt(3).getStringValue());
+
+            final StringBuilder expected = new StringBuilder("<log>");
+            for (int i = 1; i <= EVENTS; i++) {
+                expected.append(event(i));
+            }
+            expected.append("</log>");
+            assertEquals(String.valueOf(expected.length()), result.itemAt(4).getStringValue());
+            assertEquals("<last>" + event(EVENTS - 1) + event(EVENTS) + "</last>", result.itemAt(5).getStringValue());
+        }
+    }
+
+    private static String event(final int i) {
+        return "<event n=\"" + i + "\" level=\"" + (i % 7 == 0 ? "ERROR" : "INFO") + "\">message " + i +
+                "<!--c" + i + "--></event>";
+    }
+}
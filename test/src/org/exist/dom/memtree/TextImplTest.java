@@ -22,8 +22,13 @@ package org.exist.dom.memtree;
 
 import org.exist.dom.QName;
 import org.junit.Test;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
 import org.w3c.dom.Text;
 
 import static org.junit.Assert.assertEquals;
@@ -102,6 +107,52 @@ public class TextImplTest {
         assertEquals("goodbyeworld", text2.getTextContent());
     }
 
+    @Test
+    public void setData_shrink_siblings() {
+        final MemTreeBuilder builder = new MemTreeBuilder();
+        builder.startDocument();
+        builder.startElement(new QName("p", null, null), null);
+        builder.characters("helloworld");
+        builder.comment("a comment");
+        builder.cdataSection("some cdata");
+        builder.processingInstruction("target", "pi data");
+        builder.startElement(new QName("span", null, null), null);
+        builder.characters("goodbyeworld");
+        builder.endElement();
+        builder.characters("tail");
+        builder.endElement();
+        builder.endDocument();
+
+        final Document doc = builder.getDocument();
+        final Element p = doc.getDocumentElement();
+        final Text text = (Text) p.getFirstChild();
+
+        // the characters following the shrunk text are moved, not left behind
+        text.setData("hi");
+        assertEquals("hi", text.getData());
+        assertSiblings(p);
+
+        // so growing it again must not overwrite its siblings
+        text.appendData("there");
+        assertEquals("hithere", text.getData());
+        assertSiblings(p);
+
+        text.setData("");
+        assertEquals("", text.getData());
+        assertSiblings(p);
+    }
+
+    private static void assertSiblings(final Element p) {
+        final NodeList children = p.getChildNodes();
+        assertEquals(6, children.getLength());
+        assertEquals("a comment", ((Comment) children.item(1)).getData());
+        assertEquals("some cdata", ((CDATASection) children.item(2)).getData());
+        assertEquals("target", ((ProcessingInstruction) children.item(3)).getTarget());
+        assertEquals("pi data", ((ProcessingInstruction) children.item(3)).getData());
+        assertEquals("goodbyeworld", children.item(4).getFirstChild().getTextContent());
+        assertEquals("tail", ((Text) children.item(5)).getData());
+    }
+
     @Test
     public void setData_expand() {
         final MemTreeBuilder builder = new MemTreeBuilder();
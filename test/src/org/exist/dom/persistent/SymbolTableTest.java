@@ -10,12 +10,22 @@ import org.easymock.EasyMock;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.exist.EXistException;
 import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -25,6 +35,9 @@ public class SymbolTableTest {
 
     private final Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     private final SymbolTable createSymbolTable() throws BrokerPoolServiceException {
         final SymbolTable symbolTable = new SymbolTable();
         final Configuration configuration = createMock(Configuration.class);
@@ -37,6 +50,20 @@ public class SymbolTableTest {
         return symbolTable;
     }
 
+    /**
+     * Creates a symbol table in its own data directory, without mocking
+     * the configuration.
+     */
+    private SymbolTable createIsolatedSymbolTable() throws BrokerPoolServiceException, DatabaseConfigurationException, IOException {
+        final SymbolTable symbolTable = new SymbolTable();
+        final Configuration configuration = new Configuration();
+        configuration.setProperty(BrokerPool.PROPERTY_DATA_DIR, folder.newFolder("data").toPath());
+
+        symbolTable.configure(configuration);
+        symbolTable.prepare(null);
+        return symbolTable;
+    }
+
     @Test
     public void getName_returns_empty_string_when_id_is_zero() throws EXistException, IOException, BrokerPoolServiceException {
         final SymbolTable symbolTable = createSymbolTable();
@@ -157,6 +184,43 @@ public class SymbolTableTest {
         verify(mockIs);
     }
 
+    @Test
+    public void concurrent_lookups_and_inserts_agree() throws Exception {
+        final SymbolTable symbolTable = createIsolatedSymbolTable();
+        final int threads = 8;
+        final int names = 500;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<short[]>> results = new ArrayList<>();
+            final CountDownLatch start = new CountDownLatch(1);
+            for (int t = 0; t < threads; t++) {
+                // each thread starts at a different name, so that readers meet names being inserted
+                final int first = t * (names / threads);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    final short[] ids = new short[names];
+                    for (int n = 0; n < names; n++) {
+                        final int i = (first + n) % names;
+                        final String name = "concurrent-name-" + i;
+                        ids[i] = symbolTable.getSymbol(name);
+                        assertEquals(name, symbolTable.getName(ids[i]));
+                    }
+                    return ids;
+                }));
+            }
+
+            start.countDown();
+
+            final short[] expected = results.get(0).get();
+            for (final Future<short[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+            symbolTable.close();
+        }
+    }
+
     @Test
     public void readLegacyFormat() throws EXistException, IOException, BrokerPoolServiceException {
         final SymbolTable symbolTable = createSymbolTable();
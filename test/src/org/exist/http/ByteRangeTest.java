@@ -0,0 +1,79 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ByteRangeTest {
+
+    @Test
+    public void closedRange() {
+        final ByteRange range = ByteRange.parse("bytes=10-19", 100);
+        assertEquals(10, range.getFirst());
+        assertEquals(19, range.getLast());
+        assertEquals(10, range.getLength());
+        assertEquals("bytes 10-19/100", range.toContentRange(100));
+    }
+
+    @Test
+    public void openRange() {
+        final ByteRange range = ByteRange.parse("bytes=90-", 100);
+        assertEquals(90, range.getFirst());
+        assertEquals(99, range.getLast());
+    }
+
+    @Test
+    public void suffixRange() {
+        ByteRange range = ByteRange.parse("bytes=-10", 100);
+        assertEquals(90, range.getFirst());
+        assertEquals(99, range.getLast());
+
+        range = ByteRange.parse("bytes=-500", 100);
+        assertEquals(0, range.getFirst());
+        assertEquals(100, range.getLength());
+    }
+
+    @Test
+    public void lastBeyondEnd() {
+        final ByteRange range = ByteRange.parse("bytes=50-1000", 100);
+        assertEquals(50, range.getFirst());
+        assertEquals(99, range.getLast());
+    }
+
+    @Test
+    public void unsatisfiable() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-10", 0));
+    }
+
+    @Test
+    public void ignored() {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("items=0-10", 100));
+        assertNull(ByteRange.parse("bytes=20-10", 100));
+        assertNull(ByteRange.parse("bytes=a-b", 100));
+        assertNull(ByteRange.parse("bytes=0-10,20-30", 100));
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2017 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software Foundation
+ *  Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.http;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.http.servlets.EXistServlet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link RESTServer} without a servlet container: storing a zip archive,
+ * and the conditional and range requests for binary resources.
+ */
+public class RESTServerTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-rest-archive");
+    private static final XmldbURI BINARY = XmldbURI.create("data.bin");
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void putZipArchive() throws Exception {
+        final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (final ZipOutputStream zos = new ZipOutputStream(zip)) {
+            addEntry(zos, "a.xml", "<a><b/><b/></a>");
+            addEntry(zos, "b.xml", "<a><b/></a>");
+            addEntry(zos, "sub/c.xml", "<a><b/><c/></a>");
+            addEntry(zos, "sub/d.txt", "some text");
+        }
+        final byte[] data = zip.toByteArray();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+                broker.saveCollection(transaction, collection);
+                transact.commit(transaction);
+            }
+
+            final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+            expect(request.getInputStream()).andReturn(new ByteArrayServletInputStream(data));
+            expect(request.getContentLength()).andReturn(data.length).anyTimes();
+            expect(request.getContentType()).andReturn("application/zip").anyTimes();
+            final HttpServletResponse response = createMock(HttpServletResponse.class);
+            response.setStatus(HttpServletResponse.SC_CREATED);
+            replay(request, response);
+
+            final RESTServer server = new RESTServer(pool, "UTF-8", "UTF-8", true, false,
+                    EXistServlet.FeatureEnabled.TRUE, EXistServlet.FeatureEnabled.TRUE);
+            server.doPut(broker, TEST_COLLECTION, request, response);
+            verify(response);
+
+            // collection() includes the sub-collection
+            assertEquals("4", query(broker, "count(collection('" + TEST_COLLECTION + "')//b)"));
+            assertEquals("1", query(broker, "count(collection('" + TEST_COLLECTION + "/sub')//c)"));
+            final DocumentImpl xml = (DocumentImpl) broker.getXMLResource(TEST_COLLECTION.append("sub/c.xml"));
+            assertNotNull(xml);
+            assertEquals("application/xml", xml.getMetadata().getMimeType());
+            final DocumentImpl binary = (DocumentImpl) broker.getXMLResource(TEST_COLLECTION.append("sub/d.txt"));
+            assertTrue(binary instanceof BinaryDocument);
+            assertEquals("text/plain", binary.getMetadata().getMimeType());
+        }
+    }
+
+    @Test
+    public void getRange() throws Exception {
+        final byte[] data = storeBinary();
+        final Response response = get(header("Range", "bytes=10-19"));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+        assertEquals("bytes 10-19/" + data.length, response.headers.get("Content-Range"));
+        assertEquals("10", response.headers.get("Content-Length"));
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 20), response.body.toByteArray());
+    }
+
+    @Test
+    public void getUnsatisfiableRange() throws Exception {
+        final byte[] data = storeBinary();
+        final Response response = get(header("Range", "bytes=" + data.length + "-"));
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.status);
+        assertEquals("bytes */" + data.length, response.headers.get("Content-Range"));
+        assertEquals(0, response.body.size());
+    }
+
+    @Test
+    public void ifNoneMatch() throws Exception {
+        final byte[] data = storeBinary();
+        final Response first = get();
+        final String etag = first.headers.get("ETag");
+        assertNotNull(etag);
+        assertEquals("bytes", first.headers.get("Accept-Ranges"));
+        assertArrayEquals(data, first.body.toByteArray());
+
+        final Response notModified = get(header("If-None-Match", "\"other\", W/" + etag));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.status);
+        assertEquals(0, notModified.body.size());
+
+        final Response modified = get(header("If-None-Match", "\"other\""));
+        assertEquals(0, modified.status);
+        assertArrayEquals(data, modified.body.toByteArray());
+    }
+
+    @Test
+    public void ifRange() throws Exception {
+        final byte[] data = storeBinary();
+        final String etag = get().headers.get("ETag");
+
+        // an unchanged resource: send the range
+        final Response current = get(header("Range", "bytes=-5"), header("If-Range", etag));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, current.status);
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 5, data.length), current.body.toByteArray());
+
+        // a changed resource: send all of it
+        final Response changed = get(header("Range", "bytes=-5"), header("If-Range", "\"other\""));
+        assertEquals(0, changed.status);
+        assertNull(changed.headers.get("Content-Range"));
+        assertArrayEquals(data, changed.body.toByteArray());
+
+        // a weak entity tag never matches
+        final Response weak = get(header("Range", "bytes=-5"), header("If-Range", "W/" + etag));
+        assertEquals(0, weak.status);
+        assertArrayEquals(data, weak.body.toByteArray());
+
+        // the modification time, with a precision of seconds
+        final long lastModified;
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            lastModified = ((DocumentImpl) broker.getXMLResource(TEST_COLLECTION.append(BINARY)))
+                    .getMetadata().getLastModified();
+        }
+        final Response date = get(header("Range", "bytes=0-0"), header("If-Range", "date"),
+                dateHeader("If-Range", lastModified - lastModified % 1000));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, date.status);
+        assertArrayEquals(new byte[] { data[0] }, date.body.toByteArray());
+
+        final Response oldDate = get(header("Range", "bytes=0-0"), header("If-Range", "date"),
+                dateHeader("If-Range", lastModified - 60000));
+        assertEquals(0, oldDate.status);
+        assertArrayEquals(data, oldDate.body.toByteArray());
+    }
+
+    private byte[] storeBinary() throws Exception {
+        final byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, collection);
+            collection.addBinaryResource(transaction, broker, BINARY, data, "application/octet-stream");
+            transact.commit(transaction);
+        }
+        return data;
+    }
+
+    /**
+     * GET the binary resource with the given request headers.
+     */
+    private Response get(final String[]... headers) throws Exception {
+        final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        for (final String[] header : headers) {
+            if (header.length == 2) {
+                expect(request.getHeader(header[0])).andReturn(header[1]).anyTimes();
+            } else {
+                expect(request.getDateHeader(header[0])).andReturn(Long.parseLong(header[2])).anyTimes();
+            }
+        }
+        expect(request.getDateHeader(anyString())).andReturn(-1L).anyTimes();
+
+        final Response result = new Response();
+        final HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        response.setStatus(anyInt());
+        expectLastCall().andAnswer(() -> result.status = (Integer) getCurrentArguments()[0]).anyTimes();
+        response.sendError(anyInt());
+        expectLastCall().andAnswer(() -> result.status = (Integer) getCurrentArguments()[0]).anyTimes();
+        response.setHeader(anyString(), anyString());
+        expectLastCall().andAnswer(() -> result.headers.put((String) getCurrentArguments()[0],
+                (String) getCurrentArguments()[1])).anyTimes();
+        response.addHeader(anyString(), anyString());
+        expectLastCall().andAnswer(() -> result.headers.put((String) getCurrentArguments()[0],
+                (String) getCurrentArguments()[1])).anyTimes();
+        expect(response.getOutputStream()).andReturn(new ByteArrayServletOutputStream(result.body)).anyTimes();
+        replay(request, response);
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final RESTServer server = new RESTServer(pool, "UTF-8", "UTF-8", true, false,
+                    EXistServlet.FeatureEnabled.TRUE, EXistServlet.FeatureEnabled.TRUE);
+            server.doGet(broker, request, response, TEST_COLLECTION.append(BINARY).toString());
+        }
+        return result;
+    }
+
+    private static String[] header(final String name, final String value) {
+        return new String[] { name, value };
+    }
+
+    private static String[] dateHeader(final String name, final long value) {
+        return new String[] { name, null, Long.toString(value) };
+    }
+
+    /**
+     * What the server did with the response; a status of 0 means it was not set, i.e. 200.
+     */
+    private static class Response {
+        int status = 0;
+        final Map<String, String> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    }
+
+    private static void addEntry(final ZipOutputStream zos, final String name, final String content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content.getBytes(StandardCharsets.UTF_8));
+        zos.closeEntry();
+    }
+
+    private static String query(final DBBroker broker, final String query)
+            throws EXistException, PermissionDeniedException, XPathException {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        return xquery.execute(broker, query, null).itemAt(0).getStringValue();
+    }
+
+    private static class ByteArrayServletOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream os;
+
+        ByteArrayServletOutputStream(final ByteArrayOutputStream os) {
+            this.os = os;
+        }
+
+        @Override
+        public void write(final int b) {
+            os.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            os.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class ByteArrayServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream is;
+
+        ByteArrayServletInputStream(final byte[] data) {
+            this.is = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() {
+            return is.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            return is.read(b, off, len);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return is.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener readListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
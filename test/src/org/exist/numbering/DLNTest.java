@@ -270,4 +270,68 @@ public class DLNTest {
         dln = (DLN) left.insertNode(right);
         assertEquals("1.1/0/34", dln.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compareDeepIds() {
+        final Random rand = new Random(42);
+        final DLN[] ids = new DLN[ITEMS_TO_TEST];
+        for (int i = 0; i < ITEMS_TO_TEST; i++) {
+            // mix short ids with ids longer than 8 bytes
+            final StringBuilder buf = new StringBuilder("1");
+            final int levels = 1 + rand.nextInt(i % 2 == 0 ? 4 : 30);
+            for (int j = 0; j < levels; j++) {
+                buf.append(rand.nextInt(8) == 0 ? '/' : '.');
+                buf.append(1 + rand.nextInt(j < 3 ? 3 : 700));
+            }
+            ids[i] = new DLN(buf.toString());
+        }
+        for (int i = 1; i < ITEMS_TO_TEST; i++) {
+            final DLN a = ids[i - 1];
+            final DLN b = ids[i];
+            assertEquals(a + " <> " + b, Integer.signum(compareBytes(a, b)), Integer.signum(a.compareTo(b)));
+            assertEquals(a + " <> " + b, Integer.signum(compareBytes(b, a)), Integer.signum(b.compareTo(a)));
+            assertEquals(0, a.compareTo(new DLN(a)));
+        }
+    }
+
+    @Test
+    public void deepRelations() {
+        final DLN ancestor = new DLN("1.3.2.5.6.7777.12.600.1.1.400");
+        final DLN child = (DLN) ancestor.newChild();
+        final DLN descendant = (DLN) child.getChild(250);
+        final DLN sibling = new DLN("1.3.2.5.6.7777.12.600.1.1.401.1");
+
+        assertTrue(ancestor.units() > 64);
+        assertEquals(NodeId.IS_CHILD, child.computeRelation(ancestor));
+        assertEquals(NodeId.IS_DESCENDANT, descendant.computeRelation(ancestor));
+        assertEquals(NodeId.IS_SELF, ancestor.computeRelation(new DLN(ancestor)));
+        assertEquals(-1, sibling.computeRelation(ancestor));
+        assertTrue(descendant.isDescendantOf(ancestor));
+        assertTrue(descendant.isDescendantOf(child));
+        assertFalse(sibling.isDescendantOf(ancestor));
+        assertFalse(ancestor.isDescendantOf(descendant));
+        assertTrue(ancestor.compareTo(descendant) < 0);
+        assertTrue(sibling.compareTo(descendant) > 0);
+
+        // the cached level count must follow changes of the id
+        assertEquals(12, child.getTreeLevel());
+        child.addLevelId(3, false);
+        assertEquals(13, child.getTreeLevel());
+        assertEquals(NodeId.IS_DESCENDANT, child.computeRelation(ancestor));
+        assertTrue(ancestor.equals(child.getParentId().getParentId()));
+    }
+
+    private static int compareBytes(final DLN a, final DLN b) {
+        final byte[] abits = new byte[a.size()];
+        final byte[] bbits = new byte[b.size()];
+        a.serialize(abits, 0);
+        b.serialize(bbits, 0);
+        final int limit = Math.min(abits.length, bbits.length);
+        for (int i = 0; i < limit; i++) {
+            if (abits[i] != bbits[i]) {
+                return (abits[i] & 0xFF) - (bbits[i] & 0xFF);
+            }
+        }
+        return abits.length - bbits.length;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.journal.Journal;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that binary documents with the same content share a file in the
+ * blob store, and that the references to it survive a restart and recovery.
+ */
+public class BlobStoreTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-blobs");
+    private static final XmldbURI OTHER_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-blobs-other");
+
+    private static final byte[] CONTENT = "the same content in many places".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_CONTENT = "some other content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // we don't use @ClassRule/@Rule as we want to restart and force corruption
+    private ExistEmbeddedServer existEmbeddedServer;
+    private Path dataDir;
+
+    @Before
+    public void startDb() throws IOException, EXistException, DatabaseConfigurationException {
+        dataDir = folder.newFolder("data").toPath();
+        existEmbeddedServer = new ExistEmbeddedServer(
+                propertiesBuilder()
+                        .put(NativeBroker.PROPERTY_BLOB_STORE, true)
+                        .put(BrokerPool.PROPERTY_DATA_DIR, dataDir)
+                        .put(Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE, dataDir)
+                        .build(),
+                true,
+                false);
+        existEmbeddedServer.startDb();
+    }
+
+    @After
+    public void stopDb() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.stopDb();
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final BinaryDocument a = store(broker, TEST_COLLECTION, "a.bin", CONTENT);
+            final BinaryDocument b = store(broker, OTHER_COLLECTION, "b.bin", CONTENT);
+            final BinaryDocument c = store(broker, TEST_COLLECTION, "c.bin", OTHER_CONTENT);
+
+            assertArrayEquals(a.getBlobId(), b.getBlobId());
+            assertFalse(Arrays.equals(a.getBlobId(), c.getBlobId()));
+            assertEquals(2, getBlobStore(broker).getReferenceCount(a.getBlobId()));
+            assertEquals(2, countBlobFiles());
+
+            assertArrayEquals(CONTENT, read(broker, TEST_COLLECTION.append("a.bin")));
+            assertArrayEquals(CONTENT, read(broker, OTHER_COLLECTION.append("b.bin")));
+            assertArrayEquals(OTHER_CONTENT, read(broker, TEST_COLLECTION.append("c.bin")));
+        }
+    }
+
+    @Test
+    public void copiesShareContent() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final BinaryDocument a = store(broker, TEST_COLLECTION, "a.bin", CONTENT);
+
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection test = broker.getCollection(TEST_COLLECTION);
+                final Collection root = broker.getCollection(XmldbURI.ROOT_COLLECTION_URI);
+                broker.copyResource(transaction, a, test, XmldbURI.create("copy.bin"));
+                broker.copyCollection(transaction, test, root, XmldbURI.create("test-blobs-copy"));
+                transact.commit(transaction);
+            }
+
+            // a.bin, copy.bin and both of them in the copied collection
+            assertEquals(4, getBlobStore(broker).getReferenceCount(a.getBlobId()));
+            assertEquals(1, countBlobFiles());
+            assertArrayEquals(CONTENT, read(broker, TEST_COLLECTION.append("copy.bin")));
+            assertArrayEquals(CONTENT, read(broker, XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-blobs-copy/copy.bin")));
+        }
+    }
+
+    @Test
+    public void lastReferenceRemovesContent() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final BinaryDocument a = store(broker, TEST_COLLECTION, "a.bin", CONTENT);
+            store(broker, OTHER_COLLECTION, "b.bin", CONTENT);
+
+            // replacing the content releases the old content
+            store(broker, TEST_COLLECTION, "a.bin", OTHER_CONTENT);
+            assertEquals(1, getBlobStore(broker).getReferenceCount(a.getBlobId()));
+            assertArrayEquals(OTHER_CONTENT, read(broker, TEST_COLLECTION.append("a.bin")));
+
+            try (final Txn transaction = transact.beginTransaction()) {
+                broker.removeCollection(transaction, broker.getCollection(OTHER_COLLECTION));
+                transact.commit(transaction);
+            }
+            assertEquals(0, getBlobStore(broker).getReferenceCount(a.getBlobId()));
+
+            // the file is removed once the journal has been synced
+            assertTrue(Files.exists(getBlobStore(broker).getPath(a.getBlobId())));
+            pool.sync(broker, Sync.MAJOR);
+            assertFalse(Files.exists(getBlobStore(broker).getPath(a.getBlobId())));
+            assertEquals(1, countBlobFiles());
+        }
+    }
+
+    @Test
+    public void referencesSurviveRecovery() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        final byte[] blobId;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            blobId = store(broker, TEST_COLLECTION, "a.bin", CONTENT).getBlobId();
+
+            // the following transaction will not be committed. It will thus be rolled back by recovery
+            BrokerPool.FORCE_CORRUPTION = true;
+            final Txn transaction = transact.beginTransaction();
+            final Collection test = broker.getCollection(TEST_COLLECTION);
+            test.removeBinaryResource(transaction, broker, XmldbURI.create("a.bin"));
+            pool.sync(broker, Sync.MAJOR);
+            // kept until the transaction commits
+            assertTrue(Files.exists(getBlobStore(broker).getPath(blobId)));
+            pool.getJournalManager().get().flush(true, false);
+        }
+        existEmbeddedServer.stopDb();
+
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.startDb();
+        final BrokerPool restarted = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = restarted.get(Optional.of(restarted.getSecurityManager().getSystemSubject()))) {
+            final BinaryDocument a = (BinaryDocument) broker.getXMLResource(TEST_COLLECTION.append("a.bin"));
+            assertNotNull(a);
+            assertArrayEquals(blobId, a.getBlobId());
+            assertEquals(1, getBlobStore(broker).getReferenceCount(blobId));
+            assertArrayEquals(CONTENT, read(broker, TEST_COLLECTION.append("a.bin")));
+        }
+    }
+
+    @Test
+    public void sharedBlobSurvivesRecoveryOfCreator() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        final byte[] blobId;
+        final byte[] otherBlobId;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                broker.saveCollection(transaction, broker.getOrCreateCollection(transaction, TEST_COLLECTION));
+                broker.saveCollection(transaction, broker.getOrCreateCollection(transaction, OTHER_COLLECTION));
+                transact.commit(transaction);
+            }
+
+            // the following transaction creates the blobs, but will not be committed
+            BrokerPool.FORCE_CORRUPTION = true;
+            final Txn creator = transact.beginTransaction();
+            final Collection test = broker.getCollection(TEST_COLLECTION);
+            blobId = test.addBinaryResource(creator, broker, XmldbURI.create("a.bin"),
+                    new ByteArrayInputStream(CONTENT), "application/octet-stream", CONTENT.length).getBlobId();
+            otherBlobId = test.addBinaryResource(creator, broker, XmldbURI.create("c.bin"),
+                    new ByteArrayInputStream(OTHER_CONTENT), "application/octet-stream", OTHER_CONTENT.length).getBlobId();
+
+            // while another transaction shares one of them and commits
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection other = broker.getCollection(OTHER_COLLECTION);
+                final BinaryDocument b = other.addBinaryResource(transaction, broker, XmldbURI.create("b.bin"),
+                        new ByteArrayInputStream(CONTENT), "application/octet-stream", CONTENT.length);
+                assertArrayEquals(blobId, b.getBlobId());
+                assertEquals(2, getBlobStore(broker).getReferenceCount(blobId));
+                transact.commit(transaction);
+            }
+            pool.getJournalManager().get().flush(true, false);
+        }
+        existEmbeddedServer.stopDb();
+
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.startDb();
+        final BrokerPool restarted = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = restarted.get(Optional.of(restarted.getSecurityManager().getSystemSubject()))) {
+            assertNull(broker.getXMLResource(TEST_COLLECTION.append("a.bin")));
+            assertNull(broker.getXMLResource(TEST_COLLECTION.append("c.bin")));
+            assertArrayEquals(CONTENT, read(broker, OTHER_COLLECTION.append("b.bin")));
+            assertEquals(1, getBlobStore(broker).getReferenceCount(blobId));
+
+            // the blob only referred to by the rolled back transaction is removed
+            assertEquals(0, getBlobStore(broker).getReferenceCount(otherBlobId));
+            assertFalse(Files.exists(getBlobStore(broker).getPath(otherBlobId)));
+            assertEquals(1, countBlobFiles());
+
+            // and can be stored again
+            assertArrayEquals(otherBlobId, store(broker, TEST_COLLECTION, "c.bin", OTHER_CONTENT).getBlobId());
+            assertArrayEquals(OTHER_CONTENT, read(broker, TEST_COLLECTION.append("c.bin")));
+        }
+    }
+
+    private BinaryDocument store(final DBBroker broker, final XmldbURI collectionUri, final String name, final byte[] data)
+            throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException {
+        final TransactionManager transact = broker.getBrokerPool().getTransactionManager();
+        try (final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, collectionUri);
+            broker.saveCollection(transaction, collection);
+            final BinaryDocument doc = collection.addBinaryResource(transaction, broker, XmldbURI.create(name),
+                    new ByteArrayInputStream(data), "application/octet-stream", data.length);
+            transact.commit(transaction);
+            assertNotNull(doc.getBlobId());
+            return doc;
+        }
+    }
+
+    private static byte[] read(final DBBroker broker, final XmldbURI uri) throws PermissionDeniedException, IOException {
+        final BinaryDocument doc = (BinaryDocument) broker.getXMLResource(uri);
+        assertNotNull(doc);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        broker.readBinaryResource(doc, os);
+        return os.toByteArray();
+    }
+
+    private static BlobStore getBlobStore(final DBBroker broker) {
+        return ((NativeBroker) broker).getBlobStore();
+    }
+
+    private long countBlobFiles() throws IOException {
+        try (final Stream<Path> files = Files.walk(dataDir.resolve(BlobStore.DIR_NAME))) {
+            return files.filter(Files::isRegularFile)
+                    .filter(p -> !p.getParent().getFileName().toString().equals(BlobStore.TEMP_DIR_NAME))
+                    .count();
+        }
+    }
+}
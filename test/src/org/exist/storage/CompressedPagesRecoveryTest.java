@@ -0,0 +1,128 @@
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.btree.CompressedPageStore;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.journal.Journal;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Stores documents into compressed database files, crashes the database
+ * and checks that recovery restores the committed data.
+ */
+public class CompressedPagesRecoveryTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-compressed");
+
+    private static final String COUNT_SPEECHES = "count(collection('" + TEST_COLLECTION + "')//SPEECH)";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // we don't use @ClassRule/@Rule as we want to force corruption
+    private ExistEmbeddedServer existEmbeddedServer;
+
+    @Test
+    public void storeCrashAndRecover() throws EXistException, DatabaseConfigurationException, PermissionDeniedException,
+            IOException, SAXException, LockException, XPathException {
+        final Path dataDir = folder.newFolder("data").toPath();
+        existEmbeddedServer = new ExistEmbeddedServer(
+                propertiesBuilder()
+                        .put(Paged.PROPERTY_COMPRESS_PAGES, true)
+                        .put(BrokerPool.PROPERTY_DATA_DIR, dataDir)
+                        .put(Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE, dataDir)
+                        .build(),
+                true,
+                false);
+
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.startDb();
+        final List<Path> files = FileUtils.list(TestUtils.shakespeareSamples(), p -> FileUtils.fileName(p).endsWith(".xml"));
+        final String speeches = store(existEmbeddedServer.getBrokerPool(), files);
+        existEmbeddedServer.stopDb();
+
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.startDb();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Paged domDb = ((NativeBroker) broker).getStorage(NativeBroker.DOM_DBX_ID);
+            assertTrue(domDb.isCompressed());
+            assertTrue(Files.exists(dataDir.resolve(FileUtils.fileName(domDb.getFile()) + CompressedPageStore.DIRECTORY_SUFFIX)));
+
+            // the uncommitted removal has been rolled back
+            for (final Path file : files) {
+                assertNotNull(broker.getXMLResource(TEST_COLLECTION.append(FileUtils.fileName(file))));
+            }
+            assertEquals(speeches, execute(broker, COUNT_SPEECHES));
+        }
+    }
+
+    @After
+    public void stopDb() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        if (existEmbeddedServer != null) {
+            existEmbeddedServer.stopDb();
+        }
+    }
+
+    private String store(final BrokerPool pool, final List<Path> files) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException, XPathException {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Collection test;
+            try (final Txn transaction = transact.beginTransaction()) {
+                test = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+                broker.saveCollection(transaction, test);
+                for (final Path f : files) {
+                    final IndexInfo info = test.validateXMLResource(transaction, broker,
+                            XmldbURI.create(FileUtils.fileName(f)), new InputSource(f.toUri().toASCIIString()));
+                    test.store(transaction, broker, info, new InputSource(f.toUri().toASCIIString()));
+                }
+                transact.commit(transaction);
+            }
+            final String speeches = execute(broker, COUNT_SPEECHES);
+            assertNotEquals("0", speeches);
+
+            final Paged domDb = ((NativeBroker) broker).getStorage(NativeBroker.DOM_DBX_ID);
+            assertTrue(domDb.getCompressedPageStore().getCompressionRatio() < 1.0);
+
+            // the following transaction will not be committed. It will thus be rolled back by recovery
+            final Txn transaction = transact.beginTransaction();
+            test.removeXMLResource(transaction, broker, XmldbURI.create(FileUtils.fileName(files.get(0))));
+            pool.getJournalManager().get().flush(true, false);
+            return speeches;
+        }
+    }
+
+    private String execute(final DBBroker broker, final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        return xquery.execute(broker, query, null).itemAt(0).getStringValue();
+    }
+}
@@ -19,6 +19,8 @@ import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Currently, tests for the {@link org.exist.storage.XQueryPool}
@@ -105,6 +107,34 @@ public class LowLevelText {
 		callAndTestBorrowCompiledXQuery(localStringSource);
 	}
 
+	@Test
+	public void borrowCountsHitsAndMisses() throws PermissionDeniedException {
+		final long hits = xqueryPool.getHits();
+		final long misses = xqueryPool.getMisses();
+
+		assertNull(xqueryPool.borrowCompiledXQuery(broker, new StringSource("/not-pooled")));
+		xqueryPool.returnCompiledXQuery(stringSource, preCompiledXQuery);
+		callAndTestBorrowCompiledXQuery(stringSource);
+
+		assertEquals(hits + 1, xqueryPool.getHits());
+		assertEquals(misses + 1, xqueryPool.getMisses());
+	}
+
+	@Test
+	public void leastRecentlyUsedSourceIsEvicted() throws PermissionDeniedException {
+		final int maxSize = xqueryPool.getMaxSize();
+		final long evictions = xqueryPool.getEvictions();
+		for (int i = 0; i < maxSize * 2; i++) {
+			xqueryPool.returnCompiledXQuery(new StringSource("/test-" + i), preCompiledXQuery);
+		}
+		assertTrue(xqueryPool.getSize() <= maxSize);
+		assertTrue(xqueryPool.getEvictions() > evictions);
+
+		// the most recently added source is still available
+		callAndTestBorrowCompiledXQuery(new StringSource("/test-" + (maxSize * 2 - 1)));
+		xqueryPool.clear();
+	}
+
 	private void callAndTestBorrowCompiledXQuery(StringSource stringSourceArg) throws PermissionDeniedException {
 		final CompiledXQuery compiledXQuery = xqueryPool.borrowCompiledXQuery(broker, stringSourceArg);
 		assertNotNull(
@@ -0,0 +1,155 @@
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.journal.Journal;
+import org.exist.storage.lock.MultiReadReentrantLock;
+import org.exist.storage.lock.PageLatches;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Runs queries concurrently on a database with page latches enabled,
+ * so that the queries share the locks of the database files.
+ */
+public class PageLatchesTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-latches");
+
+    private static final String[] QUERIES = {
+            "count(collection('" + TEST_COLLECTION + "')//SPEECH)",
+            "count(collection('" + TEST_COLLECTION + "')//SPEECH[SPEAKER = 'HAMLET'])",
+            "string-join(collection('" + TEST_COLLECTION + "')//TITLE, '|')",
+            "count(collection('" + TEST_COLLECTION + "')//LINE[contains(., 'love')])"
+    };
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 5;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private ExistEmbeddedServer existEmbeddedServer;
+
+    @Test
+    public void concurrentQueries() throws Exception {
+        startDb(true);
+        store(existEmbeddedServer.getBrokerPool());
+        final List<String> expected = executeAll(existEmbeddedServer.getBrokerPool());
+
+        // start with empty caches, so that the queries load pages concurrently
+        existEmbeddedServer.restart();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        assertEquals(DefaultCacheManager.CACHE_TYPE_STRIPED, pool.getCacheManager().getCacheType());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS * ROUNDS; i++) {
+                results.add(executor.submit(() -> executeAll(pool)));
+            }
+            for (final Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Paged domDb = ((NativeBroker) broker).getStorage(NativeBroker.DOM_DBX_ID);
+            assertTrue(((NativeBroker) broker).getDOMFile().getLock() instanceof MultiReadReentrantLock);
+            final PageLatches latches = domDb.getPageLatches();
+            assertNotNull(latches);
+            assertTrue(latches.getAcquisitions() > 0);
+            assertTrue(PageLatches.getOpenLatches().contains(latches));
+        }
+    }
+
+    @Test
+    public void disabledByDefault() throws EXistException, DatabaseConfigurationException, IOException {
+        startDb(false);
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Paged domDb = ((NativeBroker) broker).getStorage(NativeBroker.DOM_DBX_ID);
+            assertNull(domDb.getPageLatches());
+            assertFalse(((NativeBroker) broker).getDOMFile().getLock() instanceof MultiReadReentrantLock);
+        }
+    }
+
+    private void startDb(final boolean pageLatches) throws EXistException, DatabaseConfigurationException, IOException {
+        final Path dataDir = folder.newFolder("data").toPath();
+        final PropertiesBuilder properties = propertiesBuilder()
+                .put(BrokerPool.PROPERTY_DATA_DIR, dataDir)
+                .put(Journal.PROPERTY_RECOVERY_JOURNAL_DIR, dataDir);
+        if (pageLatches) {
+            properties.put(Paged.PROPERTY_PAGE_LATCHES, true);
+        }
+        existEmbeddedServer = new ExistEmbeddedServer(properties.build(), true, false);
+        existEmbeddedServer.startDb();
+    }
+
+    @After
+    public void stopDb() {
+        if (existEmbeddedServer != null) {
+            existEmbeddedServer.stopDb();
+        }
+    }
+
+    private void store(final BrokerPool pool) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException {
+        final List<Path> files = FileUtils.list(TestUtils.shakespeareSamples(), p -> FileUtils.fileName(p).endsWith(".xml"));
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection test = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, test);
+            for (final Path f : files) {
+                final IndexInfo info = test.validateXMLResource(transaction, broker,
+                        XmldbURI.create(FileUtils.fileName(f)), new InputSource(f.toUri().toASCIIString()));
+                test.store(transaction, broker, info, new InputSource(f.toUri().toASCIIString()));
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    private List<String> executeAll(final BrokerPool pool) throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> results = new ArrayList<>();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            for (final String query : QUERIES) {
+                results.add(xquery.execute(broker, query, null).itemAt(0).getStringValue());
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,160 @@
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that reindexing a collection with several threads
+ * results in the same indexes as storing the documents.
+ */
+public class ParallelReindexTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-reindex");
+    private static final XmldbURI REMOVE_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-reindex-remove");
+
+    private static final String CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <create qname=\"@k\" type=\"xs:string\"/>" +
+            "   </index>" +
+            "</collection>";
+
+    private static final String INDEX_KEYS =
+            "util:index-keys(collection('" + TEST_COLLECTION + "')//item/@k, '', " +
+            "function($key, $data) { $key || ':' || $data[1] || ':' || $data[2] }, 1000)";
+
+    private static final String ITEMS =
+            "for $k in ('k0', 'k5', 'k12') return count(collection('" + TEST_COLLECTION + "')//item[@k = $k])";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(NativeBroker.PROPERTY_REINDEX_THREADS, 4)
+                    .build(),
+            true,
+            true);
+
+    @BeforeClass
+    public static void storeTestData() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, CollectionConfigurationException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection root = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, root);
+            pool.getConfigurationManager().addConfiguration(transaction, broker, root, CONFIG);
+            store(transaction, broker, root, 0, 250);
+
+            final Collection child = broker.getOrCreateCollection(transaction, TEST_COLLECTION.append("child"));
+            broker.saveCollection(transaction, child);
+            store(transaction, broker, child, 250, 120);
+
+            final Collection remove = broker.getOrCreateCollection(transaction, REMOVE_COLLECTION);
+            broker.saveCollection(transaction, remove);
+            pool.getConfigurationManager().addConfiguration(transaction, broker, remove, CONFIG);
+            store(transaction, broker, remove, 0, 400);
+            transact.commit(transaction);
+        }
+    }
+
+    private static void store(final Txn transaction, final DBBroker broker, final Collection collection,
+            final int start, final int count) throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        for (int i = start; i < start + count; i++) {
+            final String data = "<items><item k='k" + (i % 13) + "'>" + i + "</item><item k='k" + (i % 7) + "'/></items>";
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc" + i + ".xml"), data);
+            collection.store(transaction, broker, info, data);
+        }
+    }
+
+    @Test
+    public void sameIndexesAsStore() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final List<String> keys = execute(INDEX_KEYS);
+        final List<String> items = execute(ITEMS);
+        assertEquals(13, keys.size());
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            broker.reindexCollection(TEST_COLLECTION);
+        }
+
+        assertEquals(keys, execute(INDEX_KEYS));
+        assertEquals(items, execute(ITEMS));
+    }
+
+    @Test
+    public void documentsRemovedWhileReindexing() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Thread remover = new Thread(() -> {
+            final TransactionManager transact = pool.getTransactionManager();
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                for (int i = 399; i >= 0; i -= 2) {
+                    try (final Txn transaction = transact.beginTransaction()) {
+                        final Collection collection = broker.getCollection(REMOVE_COLLECTION);
+                        collection.removeXMLResource(transaction, broker, XmldbURI.create("doc" + i + ".xml"));
+                        transact.commit(transaction);
+                    }
+                }
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            remover.start();
+            broker.reindexCollection(REMOVE_COLLECTION);
+        }
+        remover.join();
+
+        final String keysQuery = INDEX_KEYS.replace(TEST_COLLECTION.toString(), REMOVE_COLLECTION.toString());
+        final String itemsQuery = ITEMS.replace(TEST_COLLECTION.toString(), REMOVE_COLLECTION.toString());
+        final List<String> keys = execute(keysQuery);
+        final List<String> items = execute(itemsQuery);
+
+        // reindexing the remaining documents without concurrent changes gives the same indexes
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            broker.reindexCollection(REMOVE_COLLECTION);
+        }
+        assertEquals(keys, execute(keysQuery));
+        assertEquals(items, execute(itemsQuery));
+        assertEquals(Collections.singletonList("200"), execute("count(collection('" + REMOVE_COLLECTION + "'))"));
+    }
+
+    private List<String> execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence result = xquery.execute(broker, query, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                values.add(i.nextItem().getStringValue());
+            }
+            return values;
+        }
+    }
+}
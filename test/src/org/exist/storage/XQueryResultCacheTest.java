@@ -0,0 +1,176 @@
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that cached query results are reused and removed when
+ * a document they depend on changes.
+ */
+public class XQueryResultCacheTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-result-cache");
+    private static final XmldbURI OTHER_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-result-cache-other");
+
+    private static final String CACHE = "declare option exist:cache \"yes\"; ";
+
+    private static final String COUNT = CACHE + "count(collection('" + TEST_COLLECTION + "')//item)";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Before
+    public void storeTestData() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        store(TEST_COLLECTION, "a.xml", "<items><item>a1</item><item>a2</item></items>");
+        store(TEST_COLLECTION.append("child"), "b.xml", "<items><item>b1</item></items>");
+        store(OTHER_COLLECTION, "c.xml", "<items><item>c1</item></items>");
+        existEmbeddedServer.getBrokerPool().getXQueryResultCache().clear();
+    }
+
+    @Test
+    public void reuseResult() throws EXistException, PermissionDeniedException, XPathException {
+        final XQueryResultCache cache = existEmbeddedServer.getBrokerPool().getXQueryResultCache();
+        final long hits = cache.getHits();
+        assertEquals(Collections.singletonList("3"), execute(COUNT));
+        assertEquals(hits, cache.getHits());
+        assertEquals(Collections.singletonList("3"), execute(COUNT));
+        assertEquals(hits + 1, cache.getHits());
+
+        final String nodes = CACHE + "doc('" + TEST_COLLECTION.append("a.xml") + "')//item";
+        assertEquals(Arrays.asList("a1", "a2"), execute(nodes));
+        assertEquals(Arrays.asList("a1", "a2"), execute(nodes));
+        assertEquals(hits + 2, cache.getHits());
+
+        // not declared
+        final String uncached = "count(collection('" + TEST_COLLECTION + "')//item)";
+        execute(uncached);
+        execute(uncached);
+        assertEquals(hits + 2, cache.getHits());
+    }
+
+    @Test
+    public void invalidateOnUpdate() throws EXistException, PermissionDeniedException, XPathException, IOException,
+            SAXException, LockException {
+        final XQueryResultCache cache = existEmbeddedServer.getBrokerPool().getXQueryResultCache();
+        final String doc = CACHE + "doc('" + TEST_COLLECTION.append("a.xml") + "')//item/string()";
+        assertEquals(Collections.singletonList("3"), execute(COUNT));
+        assertEquals(Arrays.asList("a1", "a2"), execute(doc));
+        assertEquals(2, cache.getSize());
+
+        // documents the queries do not depend on
+        store(OTHER_COLLECTION, "d.xml", "<items><item>d1</item></items>");
+        execute("update insert <item>c2</item> into doc('" + OTHER_COLLECTION.append("c.xml") + "')/items");
+        assertEquals(2, cache.getSize());
+
+        // new document in a sub collection
+        store(TEST_COLLECTION.append("child"), "e.xml", "<items><item>e1</item></items>");
+        assertEquals(1, cache.getSize());
+        assertEquals(Collections.singletonList("4"), execute(COUNT));
+        assertEquals(Arrays.asList("a1", "a2"), execute(doc));
+
+        execute("update insert <item>a3</item> into doc('" + TEST_COLLECTION.append("a.xml") + "')/items");
+        assertEquals(0, cache.getSize());
+        assertEquals(Collections.singletonList("5"), execute(COUNT));
+        assertEquals(Arrays.asList("a1", "a2", "a3"), execute(doc));
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection child = broker.getCollection(TEST_COLLECTION.append("child"));
+            broker.removeCollection(transaction, child);
+            pool.getTransactionManager().commit(transaction);
+        }
+        assertEquals(Collections.singletonList("3"), execute(COUNT));
+    }
+
+    @Test
+    public void externalVariables() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = CACHE + "declare variable $n external; collection('" + TEST_COLLECTION + "')//item[$n]/string()";
+        assertEquals(Arrays.asList("a1", "b1"), execute(query, 1));
+        assertEquals(Collections.singletonList("a2"), execute(query, 2));
+        assertEquals(Arrays.asList("a1", "b1"), execute(query, 1));
+        assertEquals(2, existEmbeddedServer.getBrokerPool().getXQueryResultCache().getSize());
+    }
+
+    @Test
+    public void noCacheForConstructedNodes() throws EXistException, PermissionDeniedException, XPathException {
+        execute(CACHE + "<count>{count(collection('" + TEST_COLLECTION + "')//item)}</count>");
+        assertEquals(0, existEmbeddedServer.getBrokerPool().getXQueryResultCache().getSize());
+    }
+
+    @Test
+    public void noCacheForUntrackedInput() throws EXistException, PermissionDeniedException, XPathException {
+        final XQueryResultCache cache = existEmbeddedServer.getBrokerPool().getXQueryResultCache();
+        // depends on the dynamic context
+        execute(CACHE + "count(collection('" + TEST_COLLECTION + "')//item) || current-dateTime()");
+        // a function of a module which is not known to be safe
+        execute(CACHE + "util:system-time()");
+        // called from a user defined function
+        execute(CACHE + "declare function local:f() { string(current-time()) }; local:f()");
+        // an update would be skipped
+        execute(CACHE + "update insert <item>a3</item> into doc('" + TEST_COLLECTION.append("a.xml") + "')/items");
+        assertEquals(0, cache.getSize());
+    }
+
+    private static void store(final XmldbURI collectionUri, final String name, final String data)
+            throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, collectionUri);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), data);
+            collection.store(transaction, broker, info, data);
+            transact.commit(transaction);
+        }
+    }
+
+    private List<String> execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        return execute(query, -1);
+    }
+
+    private List<String> execute(final String query, final int n) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(broker, context, query);
+            if (n > 0) {
+                context.declareVariable("n", n);
+            }
+            final Sequence result = xquery.execute(broker, compiled, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                values.add(i.nextItem().getStringValue());
+            }
+            return values;
+        }
+    }
+}
@@ -162,6 +162,168 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void longCommonPrefixes() throws DBException, IOException, TerminatedException {
+        // keys sharing more leading bytes than fit into a signed byte
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            buf.append('p');
+        }
+        final String prefixStr = buf.toString();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            btree.flush();
+
+            // the keys are stored without the shared prefix, so that many fit into one page
+            assertTrue(btree.getFileHeader().getTotalCount() < COUNT / 20);
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+            assertEquals(-1, btree.findValue(new Value(prefixStr)));
+            assertEquals(-1, btree.findValue(new Value(prefixStr + "0")));
+
+            IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr + "1"));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(1111, count);
+        }
+    }
+
+    @Test
+    public void bulkLoad() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final int count = COUNT * 10;
+        try(final BTree btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            // a low fill factor to get several levels of branches
+            final BTree.BulkLoader loader = btree.bulkLoad(null, 0.1);
+            for (int i = 1; i <= count; i++) {
+                loader.add(new Value(String.format("K%06d", i)), i);
+            }
+            try {
+                loader.add(new Value(String.format("K%06d", 1)), 1);
+                fail("keys must be added in ascending order");
+            } catch (final BTreeException e) {
+                // expected
+            }
+            loader.finish();
+            btree.flush();
+
+            for (int i = 1; i <= count; i++) {
+                assertEquals(i, btree.findValue(new Value(String.format("K%06d", i))));
+            }
+            IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("K"));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(count, this.count);
+
+            // the tree can be modified as usual
+            for (int i = 1; i <= count; i += 2) {
+                assertEquals(i, btree.removeValue(new Value(String.format("K%06d", i))));
+                btree.addValue(new Value(String.format("K%06d-", i)), -i);
+            }
+            for (int i = 1; i <= count; i++) {
+                assertEquals(i % 2 == 0 ? i : -1, btree.findValue(new Value(String.format("K%06d", i))));
+            }
+            btree.query(query, new StringIndexCallback());
+            assertEquals(count, this.count);
+
+            try {
+                btree.bulkLoad(null);
+                fail("bulk loading requires an empty btree");
+            } catch (final BTreeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadPacksPages() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final long incrementalPages;
+        try(final BTree btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value(String.format("K%06d", i)), i);
+            }
+            incrementalPages = btree.getFileHeader().getTotalCount();
+        }
+        FileUtils.deleteQuietly(file);
+
+        try(final BTree btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            final BTree.BulkLoader loader = btree.bulkLoad(null, 1.0);
+            for (int i = 1; i <= COUNT; i++) {
+                loader.add(new Value(String.format("K%06d", i)), i);
+            }
+            loader.finish();
+            assertTrue(btree.getFileHeader().getTotalCount() < incrementalPages * 0.7);
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(String.format("K%06d", i))));
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadSortedKeys() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file);
+                final KeySorter sorter = new KeySorter(COUNT / 10)) {
+            btree.create((short) -1);
+
+            // keys in random order, some of them twice: the pointer added first is kept
+            final Random random = new Random(COUNT);
+            final Map<Integer, Long> pointers = new TreeMap<>();
+            for (int n = 0; n < COUNT; n++) {
+                final int i = random.nextInt(COUNT * 2);
+                pointers.putIfAbsent(i, (long) n);
+                sorter.add(new Value(String.format("K%06d", i)), n);
+            }
+            assertTrue(sorter.getRunCount() > 1);
+
+            final BTree.BulkLoader loader = btree.bulkLoad(null);
+            sorter.load(loader);
+            loader.finish();
+
+            for (final Map.Entry<Integer, Long> entry : pointers.entrySet()) {
+                assertEquals((long) entry.getValue(), btree.findValue(new Value(String.format("K%06d", entry.getKey()))));
+            }
+            btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("K")), new StringIndexCallback());
+            assertEquals(pointers.size(), count);
+        }
+    }
+
+    @Test
+    public void rebuild() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Random random = new Random(42);
+        final Map<String, Integer> keys = new TreeMap<>();
+        try(final BTree btree = new BTree(pool, (byte) 0, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT * 4; i++) {
+                final String key = Integer.toString(random.nextInt());
+                keys.put(key, i);
+                btree.addValue(new Value(key), i);
+            }
+
+            // discards the branches and builds them again from the leaves
+            btree.rebuild();
+            btree.flush();
+
+            for (final Map.Entry<String, Integer> entry : keys.entrySet()) {
+                assertEquals(entry.getValue().longValue(), btree.findValue(new Value(entry.getKey())));
+            }
+            btree.query(null, new SimpleCallback());
+            assertEquals(keys.size(), count);
+        }
+    }
+
     @Test
     public void stringsTruncated() throws DBException, IOException, TerminatedException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
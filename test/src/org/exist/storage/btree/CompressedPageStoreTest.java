@@ -0,0 +1,145 @@
+package org.exist.storage.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing pages through a {@link CompressedPageStore}.
+ */
+public class CompressedPageStoreTest {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int HEADER_SIZE = PAGE_SIZE;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndReopen() throws IOException {
+        final Path file = folder.newFile("compressed.dbx").toPath();
+        final Path directory = file.resolveSibling("compressed.dbx" + CompressedPageStore.DIRECTORY_SUFFIX);
+        final byte[][] pages = new byte[50][];
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final CompressedPageStore store = open(raf, directory);
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = repetitivePage(i);
+                store.write(i, pages[i], PAGE_SIZE);
+            }
+            assertPages(store, pages);
+            assertTrue(store.getCompressionRatio() < 0.5);
+            assertTrue(raf.length() < HEADER_SIZE + pages.length * PAGE_SIZE / 2);
+            store.close();
+        }
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final CompressedPageStore store = open(raf, directory);
+            assertPages(store, pages);
+            assertTrue(store.getDecodeTime() > 0);
+            store.close();
+        }
+    }
+
+    @Test
+    public void rewriteReusesSpace() throws IOException {
+        final Path file = folder.newFile("compressed.dbx").toPath();
+        final Path directory = file.resolveSibling("compressed.dbx" + CompressedPageStore.DIRECTORY_SUFFIX);
+        final byte[][] pages = new byte[20][];
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final CompressedPageStore store = open(raf, directory);
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = repetitivePage(i);
+                store.write(i, pages[i], PAGE_SIZE);
+            }
+            final long length = raf.length();
+
+            // rewriting pages of the same size must not grow the file
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < pages.length; i++) {
+                    pages[i] = repetitivePage(i + round);
+                    store.write(i, pages[i], PAGE_SIZE);
+                }
+            }
+            assertTrue(raf.length() <= length + 2 * PAGE_SIZE);
+            assertPages(store, pages);
+            store.close();
+        }
+
+        // free space is found again after reopening
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final CompressedPageStore store = open(raf, directory);
+            final long length = raf.length();
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = repetitivePage(i + 100);
+                store.write(i, pages[i], PAGE_SIZE);
+            }
+            assertTrue(raf.length() <= length + 2 * PAGE_SIZE);
+            assertPages(store, pages);
+            store.close();
+        }
+    }
+
+    @Test
+    public void partialAndIncompressiblePages() throws IOException {
+        final Path file = folder.newFile("compressed.dbx").toPath();
+        final Path directory = file.resolveSibling("compressed.dbx" + CompressedPageStore.DIRECTORY_SUFFIX);
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final CompressedPageStore store = open(raf, directory);
+
+            final byte[] random = new byte[PAGE_SIZE];
+            new Random(42).nextBytes(random);
+            store.write(0, random, PAGE_SIZE);
+
+            // only the first bytes are stored, the rest reads as zeros
+            final byte[] partial = repetitivePage(1);
+            store.write(1, partial, 100);
+
+            final byte[] buf = new byte[PAGE_SIZE];
+            store.read(0, buf);
+            assertArrayEquals(random, buf);
+            store.read(1, buf);
+            assertArrayEquals(Arrays.copyOf(partial, 100), Arrays.copyOf(buf, 100));
+            for (int i = 100; i < PAGE_SIZE; i++) {
+                assertEquals(0, buf[i]);
+            }
+
+            // pages never written read as zeros
+            Arrays.fill(buf, (byte) 1);
+            store.read(5, buf);
+            assertArrayEquals(new byte[PAGE_SIZE], buf);
+            store.close();
+        }
+    }
+
+    private static CompressedPageStore open(final RandomAccessFile raf, final Path directory) throws IOException {
+        return new CompressedPageStore(raf, (offset, buf, len) -> {
+            raf.seek(offset);
+            raf.read(buf, 0, len);
+        }, directory, HEADER_SIZE, PAGE_SIZE, false);
+    }
+
+    private static void assertPages(final CompressedPageStore store, final byte[][] pages) throws IOException {
+        final byte[] buf = new byte[PAGE_SIZE];
+        for (int i = 0; i < pages.length; i++) {
+            store.read(i, buf);
+            assertArrayEquals("page " + i, pages[i], buf);
+        }
+    }
+
+    private static byte[] repetitivePage(final int seed) {
+        final byte[] page = new byte[PAGE_SIZE];
+        final byte[] text = ("<item id='" + seed + "'>some repetitive text</item>").getBytes();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page[i] = text[i % text.length];
+        }
+        return page;
+    }
+}
@@ -0,0 +1,106 @@
+package org.exist.storage.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests reading pages through memory mappings.
+ */
+public class MappedFileReaderTest {
+
+    private static final int PAGE_SIZE = 16;
+    private static final int SEGMENT_SIZE = 4 * PAGE_SIZE;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readWithinAndAcrossSegments() throws IOException {
+        final byte[] data = randomData(10 * SEGMENT_SIZE + 5);
+        final Path file = folder.newFile("mapped.dbx").toPath();
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.write(data);
+            final MappedFileReader reader = new MappedFileReader(raf.getChannel(), PAGE_SIZE, SEGMENT_SIZE);
+
+            // page aligned reads
+            for (int offset = 0; offset + PAGE_SIZE <= data.length; offset += PAGE_SIZE) {
+                assertRead(reader, data, offset, PAGE_SIZE);
+            }
+
+            // reads crossing a segment boundary
+            assertRead(reader, data, SEGMENT_SIZE - 3, 10);
+            assertRead(reader, data, 0, 3 * SEGMENT_SIZE);
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readBeyondEndOfFile() throws IOException {
+        final byte[] data = randomData(SEGMENT_SIZE + PAGE_SIZE);
+        final Path file = folder.newFile("mapped.dbx").toPath();
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.write(data);
+            final MappedFileReader reader = new MappedFileReader(raf.getChannel(), PAGE_SIZE, SEGMENT_SIZE);
+
+            final byte[] buf = new byte[2 * PAGE_SIZE];
+            Arrays.fill(buf, (byte) 0x7f);
+            reader.read(SEGMENT_SIZE, buf, 0, buf.length);
+
+            assertArrayEquals(Arrays.copyOfRange(data, SEGMENT_SIZE, SEGMENT_SIZE + PAGE_SIZE), Arrays.copyOfRange(buf, 0, PAGE_SIZE));
+            for (int i = PAGE_SIZE; i < buf.length; i++) {
+                assertEquals((byte) 0x7f, buf[i]);
+            }
+            reader.close();
+        }
+    }
+
+    @Test
+    public void seesWritesAndGrowth() throws IOException {
+        final byte[] data = randomData(PAGE_SIZE);
+        final Path file = folder.newFile("mapped.dbx").toPath();
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.write(data);
+            final MappedFileReader reader = new MappedFileReader(raf.getChannel(), PAGE_SIZE, SEGMENT_SIZE);
+            assertRead(reader, data, 0, PAGE_SIZE);
+
+            // overwrite the mapped page
+            final byte[] updated = randomData(PAGE_SIZE);
+            raf.seek(0);
+            raf.write(updated);
+            assertRead(reader, updated, 0, PAGE_SIZE);
+
+            // grow the file within the already mapped segment
+            final byte[] appended = randomData(PAGE_SIZE);
+            raf.seek(PAGE_SIZE);
+            raf.write(appended);
+            final byte[] buf = new byte[PAGE_SIZE];
+            reader.read(PAGE_SIZE, buf, 0, PAGE_SIZE);
+            assertArrayEquals(appended, buf);
+            reader.close();
+        }
+    }
+
+    private static void assertRead(final MappedFileReader reader, final byte[] data, final int offset, final int len) throws IOException {
+        final byte[] buf = new byte[len];
+        reader.read(offset, buf, 0, len);
+        assertArrayEquals(Arrays.copyOfRange(data, offset, offset + len), buf);
+    }
+
+    private final Random random = new Random(42);
+
+    private byte[] randomData(final int len) {
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+}
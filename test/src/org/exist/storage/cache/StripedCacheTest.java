@@ -0,0 +1,232 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2016 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import org.exist.storage.CacheManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StripedCacheTest {
+
+    @Test
+    public void addAndGet() {
+        final StripedCache<Page> cache = new StripedCache<>("test", Page.class, 64, 0.0, 1.0, CacheManager.DATA_CACHE);
+        assertEquals(16, cache.getStripes());
+
+        final Page page = new Page(42);
+        cache.add(page);
+        assertSame(page, cache.get(42));
+        assertNull(cache.get(43));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getFails());
+        assertEquals(1, cache.getUsedBuffers());
+
+        cache.remove(page);
+        assertNull(cache.get(42));
+        assertEquals(0, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void replaceSyncsPage() {
+        final StripedCache<Page> cache = new StripedCache<>("test", Page.class, 16, 0.0, 1.0, CacheManager.DATA_CACHE, 1);
+        final List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            final Page page = new Page(i);
+            page.dirty = true;
+            pages.add(page);
+            cache.add(page);
+        }
+        assertEquals(16, cache.getUsedBuffers());
+        assertEquals(16, cache.getEvictions());
+
+        int synced = 0;
+        for (final Page page : pages) {
+            if (cache.get(page.getKey()) == null) {
+                assertTrue(page.synced);
+                synced++;
+            }
+        }
+        assertEquals(16, synced);
+    }
+
+    @Test
+    public void pinnedPagesAreNotReplaced() {
+        final StripedCache<Page> cache = new StripedCache<>("test", Page.class, 4, 0.0, 1.0, CacheManager.DATA_CACHE, 1);
+        final Page pinned = new Page(0);
+        pinned.pinned = true;
+        cache.add(pinned);
+        for (int i = 1; i < 100; i++) {
+            cache.add(new Page(i));
+        }
+        assertSame(pinned, cache.get(0));
+    }
+
+    @Test
+    public void innerPagesAreKeptLonger() {
+        final StripedBTreeCache<Page> cache = new StripedBTreeCache<>("test", Page.class, 4, 0.0, 1.0, CacheManager.BTREE_CACHE);
+        final Page inner = new Page(0);
+        inner.inner = true;
+        cache.add(inner);
+        for (int i = 1; i < 100; i++) {
+            cache.add(new Page(i));
+        }
+        assertSame(inner, cache.get(0));
+    }
+
+    @Test
+    public void resize() {
+        final StripedCache<Page> cache = new StripedCache<>("test", Page.class, 16, 0.0, 1.0, CacheManager.DATA_CACHE, 1);
+        for (int i = 0; i < 16; i++) {
+            final Page page = new Page(i);
+            page.dirty = true;
+            cache.add(page);
+        }
+        cache.resize(64);
+        assertEquals(64, cache.getBuffers());
+        for (int i = 0; i < 16; i++) {
+            assertNotNull(cache.get(i));
+        }
+
+        cache.resize(8);
+        assertEquals(8, cache.getBuffers());
+        assertTrue(cache.getUsedBuffers() <= 8);
+        assertFalse(cache.getUsedBuffers() == 0);
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final StripedCache<Page> cache = new StripedCache<>("test", Page.class, 128, 0.0, 1.0, CacheManager.DATA_CACHE);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20000; i++) {
+                        final long key = random.nextInt(512);
+                        final Page page = cache.get(key);
+                        if (page == null) {
+                            cache.add(new Page(key));
+                        } else {
+                            assertEquals(key, page.getKey());
+                            cache.add(page);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.getUsedBuffers() <= 128);
+        assertEquals(8 * 20000, cache.getHits() + cache.getFails());
+    }
+
+    private static class Page implements BTreeCacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+        boolean dirty = false;
+        boolean synced = false;
+        boolean pinned = false;
+        boolean inner = false;
+
+        Page(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            if (refCount < Cacheable.MAX_REF) {
+                ++refCount;
+            }
+            return refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return refCount > 0 ? --refCount : 0;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            final boolean wasDirty = dirty;
+            dirty = false;
+            synced = true;
+            return wasDirty;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return !pinned;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        @Override
+        public boolean isInnerPage() {
+            return inner;
+        }
+    }
+}
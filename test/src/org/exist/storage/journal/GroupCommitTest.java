@@ -0,0 +1,257 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2017 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnCommit;
+import org.exist.storage.txn.TxnStart;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests group commits with sync-on-commit: concurrent commits share journal
+ * flushes, no commit returns before its record is on disk, and committed
+ * transactions survive a crash.
+ */
+public class GroupCommitTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-group-commit");
+
+    private static final int THREADS = 16;
+    private static final int COMMITS = 50;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // we don't use @ClassRule/@Rule as we want to restart and force corruption
+    private ExistEmbeddedServer existEmbeddedServer;
+
+    @Before
+    public void startDb() throws IOException, EXistException, DatabaseConfigurationException {
+        final Path dataDir = folder.newFolder("data").toPath();
+        existEmbeddedServer = new ExistEmbeddedServer(
+                propertiesBuilder()
+                        .put(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, true)
+                        .put(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, true)
+                        .put(BrokerPool.PROPERTY_DATA_DIR, dataDir)
+                        .put(Journal.PROPERTY_RECOVERY_JOURNAL_DIR, dataDir)
+                        .build(),
+                true,
+                false);
+        existEmbeddedServer.startDb();
+    }
+
+    @After
+    public void stopDb() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.stopDb();
+    }
+
+    @Test
+    public void concurrentCommits() throws Exception {
+        final JournalManager journalManager = existEmbeddedServer.getBrokerPool().getJournalManager().get();
+        assertTrue(journalManager.isGroupCommits());
+        final Journal journal = journalManager.getJournal();
+        final long flushesBefore = journal.getGroupFlushes();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final long firstTxnId = 1000000L + t * COMMITS;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < COMMITS; i++) {
+                        final TxnCommit commit = commitEmptyTransaction(journalManager, firstTxnId + i);
+                        assertTrue(journal.getLastGroupFlushedLsn() >= commit.getLsn());
+                        assertTrue(journal.lastWrittenLsn() >= commit.getLsn());
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final long flushes = journal.getGroupFlushes() - flushesBefore;
+        assertTrue(flushes > 0);
+        // commits which arrived while a flush was in progress shared the next one
+        assertTrue(flushes < THREADS * COMMITS);
+        assertTrue(journal.getMaxGroupCommitBatch() > 1);
+    }
+
+    @Test
+    public void interruptedWaiterKeepsWaiting() throws Exception {
+        final JournalManager journalManager = existEmbeddedServer.getBrokerPool().getJournalManager().get();
+        final Journal journal = journalManager.getJournal();
+
+        final TxnCommit leaderCommit = new TxnCommit(2000000L);
+        final TxnCommit waiterCommit = new TxnCommit(2000001L);
+        journalManager.journal(new TxnStart(leaderCommit.getTransactionId()));
+        journalManager.journalGroup(leaderCommit);
+        journalManager.journal(new TxnStart(waiterCommit.getTransactionId()));
+        journalManager.journalGroup(waiterCommit);
+
+        final AtomicBoolean waiterFlushed = new AtomicBoolean();
+        final AtomicBoolean waiterInterrupted = new AtomicBoolean();
+        final Thread leader = new Thread(() -> journalManager.flushGroup(leaderCommit));
+        final Thread waiter = new Thread(() -> {
+            journalManager.flushGroup(waiterCommit);
+            waiterFlushed.set(journal.getLastGroupFlushedLsn() >= waiterCommit.getLsn());
+            waiterInterrupted.set(Thread.currentThread().isInterrupted());
+        });
+
+        // holding the monitor of the journal stops the leader before it can write the batch
+        synchronized (journal) {
+            leader.start();
+            awaitState(leader, Thread.State.BLOCKED);
+            waiter.start();
+            awaitState(waiter, Thread.State.WAITING);
+
+            waiter.interrupt();
+            waiter.join(500);
+            assertTrue("interrupted waiter returned before its commit was flushed", waiter.isAlive());
+        }
+
+        leader.join(10000);
+        waiter.join(10000);
+        assertFalse(leader.isAlive());
+        assertFalse(waiter.isAlive());
+        assertTrue(waiterFlushed.get());
+        assertTrue(waiterInterrupted.get());
+    }
+
+    @Test
+    public void committedSurviveCrash() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, collection);
+            transact.commit(transaction);
+        }
+
+        // store documents in concurrent transactions, so that their commits are grouped
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5; i++) {
+                        store(pool, "doc-" + thread + "-" + i + ".xml", true);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // the following transaction will not be committed. It will thus be rolled back by recovery
+        BrokerPool.FORCE_CORRUPTION = true;
+        store(pool, "uncommitted.xml", false);
+        existEmbeddedServer.stopDb();
+
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.startDb();
+        final BrokerPool restarted = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = restarted.get(Optional.of(restarted.getSecurityManager().getSystemSubject()))) {
+            for (int t = 0; t < 4; t++) {
+                for (int i = 0; i < 5; i++) {
+                    final DocumentImpl doc = (DocumentImpl) broker.getXMLResource(
+                            TEST_COLLECTION.append("doc-" + t + "-" + i + ".xml"));
+                    assertNotNull(doc);
+                    assertEquals("doc", doc.getDocumentElement().getLocalName());
+                }
+            }
+            assertNull(broker.getXMLResource(TEST_COLLECTION.append("uncommitted.xml")));
+        }
+    }
+
+    /**
+     * Journal an empty transaction like {@link TransactionManager#commit(Txn)} does.
+     */
+    private static TxnCommit commitEmptyTransaction(final JournalManager journalManager, final long txnId)
+            throws JournalException {
+        journalManager.journal(new TxnStart(txnId));
+        final TxnCommit commit = new TxnCommit(txnId);
+        journalManager.journalGroup(commit);
+        journalManager.flushGroup(commit);
+        return commit;
+    }
+
+    private static void store(final BrokerPool pool, final String name, final boolean commit) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Txn transaction = transact.beginTransaction();
+            final Collection collection = broker.getCollection(TEST_COLLECTION);
+            final String xml = "<doc name='" + name + "'><p>some text</p></doc>";
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), xml);
+            collection.store(transaction, broker, info, xml);
+            if (commit) {
+                transact.commit(transaction);
+                transaction.close();
+            } else {
+                pool.getJournalManager().get().flush(true, false);
+            }
+        }
+    }
+
+    private static void awaitState(final Thread thread, final Thread.State state) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (thread.getState() != state) {
+            assertTrue("thread did not reach state " + state, System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+    }
+}
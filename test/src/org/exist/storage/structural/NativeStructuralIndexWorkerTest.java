@@ -128,6 +128,28 @@ public class NativeStructuralIndexWorkerTest {
         assertEquals(24, ranges.get(3).end);
     }
 
+    @Test
+    public void getDocIdRanges_sortedSlice() {
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+
+        final int[] docIds = { 1, 2, 3, 7, 8, 12, 13, 14 };
+
+        final List<NativeStructuralIndexWorker.Range> ranges = indexWorker.getDocIdRanges(docIds, 1, 7);
+
+        assertEquals(3, ranges.size());
+
+        assertEquals(2, ranges.get(0).start);
+        assertEquals(3, ranges.get(0).end);
+
+        assertEquals(7, ranges.get(1).start);
+        assertEquals(8, ranges.get(1).end);
+
+        assertEquals(12, ranges.get(2).start);
+        assertEquals(13, ranges.get(2).end);
+
+        assertEquals(0, indexWorker.getDocIdRanges(docIds, 3, 3).size());
+    }
+
     private DocumentSet documentIdSet(final List<Integer> documentIds) {
         final DocumentSet mockDocumentSet = createMock(DocumentSet.class);
 
@@ -0,0 +1,125 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2017 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.structural;
+
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.indexing.IndexWorker;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the structural index, which is bulk loaded when the
+ * indexes are repaired, answers queries as before.
+ */
+public class StructuralIndexRepairTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-structural-repair");
+
+    private static final int DOCUMENTS = 20;
+    private static final int SECTIONS = 10;
+    private static final int ITEMS = 5;
+
+    private static final String[] QUERIES = {
+        "count(collection('" + TEST_COLLECTION + "')//item)",
+        "count(collection('" + TEST_COLLECTION + "')//section/item[@n = '3'])",
+        "count(collection('" + TEST_COLLECTION + "')//@n)",
+        "count(collection('" + TEST_COLLECTION + "')/doc[section/item])",
+        "string-join(collection('" + TEST_COLLECTION + "')//section[@id = 's7']/item[1]/text(), ',')"
+    };
+
+    @Test
+    public void repairLoadsStructuralIndex() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+                broker.saveCollection(transaction, collection);
+                for (int i = 0; i < DOCUMENTS; i++) {
+                    store(transaction, broker, collection, "doc" + i + ".xml", i);
+                }
+                transact.commit(transaction);
+            }
+
+            final String[] expected = new String[QUERIES.length];
+            for (int i = 0; i < QUERIES.length; i++) {
+                expected[i] = query(broker, QUERIES[i]);
+            }
+            assertEquals(Integer.toString(DOCUMENTS * SECTIONS * ITEMS), expected[0]);
+            assertEquals(Integer.toString(DOCUMENTS * SECTIONS), expected[1]);
+
+            // the index is not empty, so it can not be bulk loaded
+            final IndexWorker worker = broker.getIndexController().getWorkerByIndexId(NativeStructuralIndex.ID);
+            assertFalse(worker.beginBulkLoad());
+
+            broker.repair();
+
+            for (int i = 0; i < QUERIES.length; i++) {
+                assertEquals(QUERIES[i], expected[i], query(broker, QUERIES[i]));
+            }
+
+            // the bulk loaded index can be updated as usual
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection collection = broker.getCollection(TEST_COLLECTION);
+                store(transaction, broker, collection, "added.xml", DOCUMENTS);
+                collection.removeXMLResource(transaction, broker, XmldbURI.create("doc0.xml"));
+                transact.commit(transaction);
+            }
+            assertEquals(expected[0], query(broker, QUERIES[0]));
+            assertEquals(Integer.toString(DOCUMENTS), query(broker, QUERIES[3]));
+        }
+    }
+
+    private static void store(final Txn transaction, final DBBroker broker, final Collection collection,
+            final String name, final int n) throws Exception {
+        final StringBuilder xml = new StringBuilder("<doc n='").append(n).append("'>");
+        for (int s = 0; s < SECTIONS; s++) {
+            xml.append("<section id='s").append(s).append("'>");
+            for (int i = 0; i < ITEMS; i++) {
+                xml.append("<item n='").append(i).append("'>").append(name).append('-').append(s).append('-').append(i).append("</item>");
+            }
+            xml.append("</section>");
+        }
+        xml.append("</doc>");
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), xml.toString());
+        collection.store(transaction, broker, info, xml.toString());
+    }
+
+    private static String query(final DBBroker broker, final String query) throws Exception {
+        final Sequence result = broker.getBrokerPool().getXQueryService().execute(broker, query, null);
+        assertEquals(1, result.getItemCount());
+        return result.itemAt(0).getStringValue();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelTransferTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void wholeFile() throws IOException {
+        final byte[] data = randomData(1000);
+        assertArrayEquals(data, transfer(data, 0, data.length, new ByteArrayOutputStream()).toByteArray());
+    }
+
+    @Test
+    public void region() throws IOException {
+        final byte[] data = randomData(1000);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 150),
+                transfer(data, 100, 50, new ByteArrayOutputStream()).toByteArray());
+        assertArrayEquals(new byte[0], transfer(data, 1000, 0, new ByteArrayOutputStream()).toByteArray());
+    }
+
+    @Test
+    public void largeRegion() throws IOException {
+        final byte[] data = randomData(300 * 1024);
+        assertArrayEquals(Arrays.copyOfRange(data, 7, data.length - 7),
+                transfer(data, 7, data.length - 14, new ByteArrayOutputStream()).toByteArray());
+    }
+
+    @Test
+    public void channelOutput() throws IOException {
+        final byte[] data = randomData(200 * 1024);
+        final ChannelOutputStream os = transfer(data, 10, data.length - 10, new ChannelOutputStream());
+        assertTrue(os.channelWrites > 1);
+        assertArrayEquals(Arrays.copyOfRange(data, 10, data.length), os.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void beyondEndOfFile() throws IOException {
+        final byte[] data = randomData(1000);
+        transfer(data, 900, 200, new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IOException.class)
+    public void beyondEndOfFileToChannel() throws IOException {
+        final byte[] data = randomData(1000);
+        transfer(data, 900, 200, new ChannelOutputStream());
+    }
+
+    private <T extends OutputStream> T transfer(final byte[] data, final long position, final long count, final T os)
+            throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, data);
+        try (final FileChannel channel = FileChannel.open(file)) {
+            ChannelTransfer.transfer(channel, position, count, os);
+        }
+        return os;
+    }
+
+    private static byte[] randomData(final int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * An output stream which is also a channel, like the output stream of a socket,
+     * and which accepts at most 8 KiB at a time.
+     */
+    private static class ChannelOutputStream extends ByteArrayOutputStream implements WritableByteChannel {
+        int channelWrites = 0;
+
+        @Override
+        public int write(final ByteBuffer src) {
+            channelWrites++;
+            final byte[] buf = new byte[Math.min(8192, src.remaining())];
+            src.get(buf);
+            write(buf, 0, buf.length);
+            return buf.length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
@@ -27,10 +27,20 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Resource;
 import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.BinaryResource;
 import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XPathQueryService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CollectionTest {
 
@@ -54,4 +64,27 @@ public class CollectionTest {
         final Collection test = existEmbeddedServer.getRoot().getChildCollection(TestConstants.SPECIAL_NAME);
         assertNotNull(test);
     }
+
+    @Test
+    public void storeResources() throws XMLDBException {
+        final Collection test = existEmbeddedServer.getRoot().getChildCollection(TestConstants.SPECIAL_NAME);
+        final List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final Resource xml = test.createResource("doc" + i + ".xml", XMLResource.RESOURCE_TYPE);
+            xml.setContent("<doc n='" + i + "'><item/><item/></doc>");
+            resources.add(xml);
+        }
+        final byte[] data = "not xml".getBytes(StandardCharsets.UTF_8);
+        final Resource binary = test.createResource("data.bin", BinaryResource.RESOURCE_TYPE);
+        binary.setContent(data);
+        resources.add(binary);
+
+        ((CollectionImpl) test).storeResources(resources);
+
+        assertEquals(6, test.getResourceCount());
+        final XPathQueryService service = (XPathQueryService) test.getService("XPathQueryService", "1.0");
+        assertEquals("10", service.query("count(//item)").getResource(0).getContent());
+        assertEquals("3", service.query("string(//doc[@n = 3]/@n)").getResource(0).getContent());
+        assertArrayEquals(data, (byte[]) test.getResource("data.bin").getContent());
+    }
 }
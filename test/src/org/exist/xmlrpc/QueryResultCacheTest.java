@@ -0,0 +1,111 @@
+package org.exist.xmlrpc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QueryResultCacheTest {
+
+    @Test
+    public void addGetRemove() {
+        final QueryResultCache cache = new QueryResultCache(1000, 10);
+        final Result r1 = new Result(100, 1);
+        final Result r2 = new Result(200, 2);
+        final int id1 = cache.add("u1", r1);
+        final int id2 = cache.add("u1", r2);
+        assertNotEquals(id1, id2);
+        assertSame(r1, cache.get(id1));
+        assertSame(r2, cache.get(id2));
+        assertNull(cache.getResult(id1));
+        assertEquals(300, cache.getMemory());
+
+        cache.remove(id1, r1.hashCode() + 1);
+        assertNotNull(cache.get(id1));
+        cache.remove(id1, r1.hashCode());
+        assertNull(cache.get(id1));
+        assertTrue(r1.freed);
+        assertEquals(200, cache.getMemory());
+
+        cache.remove(id2);
+        assertNull(cache.get(id2));
+        assertEquals(0, cache.getMemory());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void memoryBudget() {
+        final QueryResultCache cache = new QueryResultCache(1000, 10);
+        final int id1 = cache.add("u1", new Result(400, 1));
+        final int id2 = cache.add("u2", new Result(400, 3));
+        final int id3 = cache.add("u1", new Result(400, 2));
+        // the least recently used result is removed
+        assertNull(cache.get(id1));
+        assertNotNull(cache.get(id2));
+        assertNotNull(cache.get(id3));
+        assertEquals(800, cache.getMemory());
+        assertEquals(1, cache.getEvictions());
+
+        // a result larger than the budget is kept on its own
+        final int id4 = cache.add("u1", new Result(2000, 4));
+        assertNotNull(cache.get(id4));
+        assertEquals(1, cache.getSize());
+        assertEquals(3, cache.getEvictions());
+    }
+
+    @Test
+    public void userQuota() {
+        final QueryResultCache cache = new QueryResultCache(100000, 2);
+        final int id1 = cache.add("u1", new Result(10, 2));
+        final int id2 = cache.add("u1", new Result(10, 1));
+        final int id3 = cache.add("u2", new Result(10, 0));
+        final int id4 = cache.add("u1", new Result(10, 3));
+        assertNotNull(cache.get(id1));
+        assertNull(cache.get(id2));
+        assertNotNull(cache.get(id3));
+        assertNotNull(cache.get(id4));
+        assertEquals(1, cache.getQuotaEvictions());
+        assertEquals(30, cache.getMemory());
+    }
+
+    @Test
+    public void timeout() {
+        final QueryResultCache cache = new QueryResultCache(1000, 10);
+        final int id1 = cache.add("u1", new Result(100, System.currentTimeMillis() - QueryResultCache.TIMEOUT - 1));
+        final int id2 = cache.add("u1", new Result(100, System.currentTimeMillis()));
+        cache.checkTimestamps();
+        assertNull(cache.get(id1));
+        assertNotNull(cache.get(id2));
+        assertEquals(1, cache.getTimeouts());
+        assertEquals(100, cache.getMemory());
+    }
+
+    private static class Result extends AbstractCachedResult {
+        private final long size;
+        private boolean freed = false;
+
+        Result(final long size, final long timestamp) {
+            this.size = size;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public long getSizeEstimate() {
+            return size;
+        }
+
+        @Override
+        public void free() {
+            freed = true;
+        }
+
+        @Override
+        public Object getResult() {
+            return null;
+        }
+    }
+}
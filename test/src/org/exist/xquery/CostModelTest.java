@@ -0,0 +1,267 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.dom.persistent.NodeSetHelper;
+import org.exist.indexing.IndexManager;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.journal.Journal;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the estimates of the {@link CostModel} and the plans chosen with them
+ * on a database with the index-stats module enabled.
+ */
+public class CostModelTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-costs");
+
+    private static final String[] QUERIES = {
+            "count(collection('" + TEST_COLLECTION + "')//SPEECH[LINE][SPEAKER = 'HAMLET'])",
+            "count(collection('" + TEST_COLLECTION + "')//SPEECH[LINE[contains(., 'love')]][SPEAKER = 'ROMEO'])",
+            "count(collection('" + TEST_COLLECTION + "')//SCENE[TITLE][SPEECH/SPEAKER != 'HAMLET'])",
+            "count(collection('" + TEST_COLLECTION + "')/PLAY[TITLE = 'The Tragedy of Hamlet, Prince of Denmark']//SPEECH)",
+            "count(collection('" + TEST_COLLECTION + "')//ACT/SCENE/SPEECH)",
+            "count(collection('" + TEST_COLLECTION + "')//SPEECH[SPEAKER = 'HAMLET' and LINE])"
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private ExistEmbeddedServer existEmbeddedServer;
+
+    @Before
+    public void startDb() throws EXistException, DatabaseConfigurationException, IOException,
+            ParserConfigurationException, PermissionDeniedException, SAXException, LockException {
+        // enable the index-stats module in addition to the modules configured in conf.xml
+        final Configuration config = new Configuration();
+        final Configuration.IndexModuleConfig[] modules =
+                (Configuration.IndexModuleConfig[]) config.getProperty(IndexManager.PROPERTY_INDEXER_MODULES);
+        final Element statsConfig = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument()
+                .createElement("module");
+        statsConfig.setAttribute("id", "index-stats");
+        statsConfig.setAttribute("file", "stats.dbx");
+        statsConfig.setAttribute("class", IndexStatistics.class.getName());
+        final Configuration.IndexModuleConfig[] withStats = Arrays.copyOf(modules, modules.length + 1);
+        withStats[modules.length] = new Configuration.IndexModuleConfig("index-stats",
+                IndexStatistics.class.getName(), statsConfig);
+
+        final Path dataDir = folder.newFolder("data").toPath();
+        existEmbeddedServer = new ExistEmbeddedServer(propertiesBuilder()
+                .put(BrokerPool.PROPERTY_DATA_DIR, dataDir)
+                .put(Journal.PROPERTY_RECOVERY_JOURNAL_DIR, dataDir)
+                .put(IndexManager.PROPERTY_INDEXER_MODULES, withStats)
+                .build(), true, false);
+        existEmbeddedServer.startDb();
+        store(existEmbeddedServer.getBrokerPool());
+    }
+
+    @After
+    public void stopDb() {
+        if (existEmbeddedServer != null) {
+            existEmbeddedServer.stopDb();
+        }
+    }
+
+    @Test
+    public void nodeCounts() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            final CostModel costModel = context.getCostModel();
+            assertTrue(costModel.hasStatistics());
+
+            final long speeches = count(broker, "//SPEECH");
+            assertEquals(speeches, costModel.getNodeCount(new NameTest(Type.ELEMENT, new QName("SPEECH", ""))));
+            assertEquals(0, costModel.getNodeCount(new NameTest(Type.ELEMENT, new QName("UNKNOWN", ""))));
+            assertEquals(CostModel.UNKNOWN, costModel.getNodeCount(new NameTest(Type.ATTRIBUTE, new QName("SPEECH", ""))));
+
+            final IndexStatistics statistics = (IndexStatistics) pool.getIndexManager().getIndexById(IndexStatistics.ID);
+            assertEquals(count(broker, "//SPEECH/SPEAKER"),
+                    statistics.getChildCount(new QName("SPEECH", ""), new QName("SPEAKER", "")));
+        }
+    }
+
+    @Test
+    public void predicatesOrderedBySelectivity() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = pool.getXQueryService().compile(broker, context,
+                    new StringSource("collection('" + TEST_COLLECTION + "')//SPEECH[LINE][SPEAKER = 'HAMLET']"));
+            final LocationStep speech = findStep((Expression) compiled, "SPEECH");
+            assertNotNull(speech);
+            final List<Predicate> predicates = speech.getPredicates();
+            assertEquals(2, predicates.size());
+            assertTrue(predicates.get(0).getExpression(0) instanceof GeneralComparison);
+
+            final long estimate = context.getCostModel().estimateCardinality(speech);
+            final long speeches = count(broker, "//SPEECH");
+            assertTrue(estimate > 0 && estimate < speeches);
+        }
+    }
+
+    @Test
+    public void positionalPredicatesNotReordered() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = pool.getXQueryService().compile(broker, context,
+                    new StringSource("collection('" + TEST_COLLECTION + "')//SPEECH[LINE][1][SPEAKER = 'HAMLET']"));
+            final LocationStep speech = findStep((Expression) compiled, "SPEECH");
+            assertNotNull(speech);
+            assertEquals(3, speech.getPredicates().size());
+            assertTrue(speech.getPredicates().get(2).getExpression(0) instanceof GeneralComparison);
+        }
+    }
+
+    @Test
+    public void sameResultsWithoutOptimizer() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            for (final String query : QUERIES) {
+                final String optimized = xquery.execute(broker, query, null).itemAt(0).getStringValue();
+                final String plain = xquery.execute(broker,
+                        "declare option exist:optimize 'enable=no'; " + query, null).itemAt(0).getStringValue();
+                assertEquals(query, plain, optimized);
+            }
+        }
+    }
+
+    @Test
+    public void parentChildJoinByParentLookup() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DocumentSet docs = broker.getCollection(TEST_COLLECTION).allDocs(broker, new DefaultDocumentSet(), true);
+            final NodeSet speeches = broker.getStructuralIndex().findElementsByTagName(ElementValue.ELEMENT, docs,
+                    new QName("SPEECH", ""), null);
+            final NodeSet speakers = broker.getStructuralIndex().findElementsByTagName(ElementValue.ELEMENT, docs,
+                    new QName("SPEAKER", ""), null);
+
+            // a few speakers, joined with all speeches: the parents are looked up
+            final NewArrayNodeSet someSpeakers = new NewArrayNodeSet();
+            for (int i = 0; i < speakers.getLength(); i += 100) {
+                someSpeakers.add(speakers.get(i));
+            }
+            assertTrue(someSpeakers.getLength() * 4 < speeches.getLength());
+
+            for (final int mode : new int[] { NodeSet.DESCENDANT, NodeSet.ANCESTOR }) {
+                final NodeSet expected = NodeSetHelper.selectParentChild(someSpeakers, speeches, mode, Expression.NO_CONTEXT_ID);
+                final NodeSet result = someSpeakers.selectParentChild(speeches, mode, Expression.NO_CONTEXT_ID);
+                assertEquals(expected.getLength(), result.getLength());
+                for (int i = 0; i < expected.getLength(); i++) {
+                    assertEquals(expected.get(i).getNodeId(), result.get(i).getNodeId());
+                }
+            }
+        }
+    }
+
+    private static LocationStep findStep(final Expression root, final String name) {
+        final List<LocationStep> steps = new ArrayList<>();
+        root.accept(new DefaultExpressionVisitor() {
+            @Override
+            public void visit(final Expression expression) {
+                // look into expressions wrapped by the optimizer
+                if (expression instanceof LocationStep) {
+                    visitLocationStep((LocationStep) expression);
+                } else {
+                    super.visit(expression);
+                }
+            }
+
+            @Override
+            public void visitLocationStep(final LocationStep locationStep) {
+                if (locationStep.getTest().getName() != null &&
+                        name.equals(locationStep.getTest().getName().getLocalPart())) {
+                    steps.add(locationStep);
+                }
+                super.visitLocationStep(locationStep);
+            }
+        });
+        return steps.isEmpty() ? null : steps.get(0);
+    }
+
+    private static long count(final DBBroker broker, final String path) throws XPathException, PermissionDeniedException {
+        final Sequence result = broker.getBrokerPool().getXQueryService().execute(broker,
+                "count(collection('" + TEST_COLLECTION + "')" + path + ")", null);
+        return Long.parseLong(result.itemAt(0).getStringValue());
+    }
+
+    private static void store(final BrokerPool pool) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException {
+        final List<Path> files = FileUtils.list(TestUtils.shakespeareSamples(), p -> FileUtils.fileName(p).endsWith(".xml"));
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection test = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, test);
+            for (final Path f : files) {
+                final IndexInfo info = test.validateXMLResource(transaction, broker,
+                        XmldbURI.create(FileUtils.fileName(f)), new InputSource(f.toUri().toASCIIString()));
+                test.store(transaction, broker, info, new InputSource(f.toUri().toASCIIString()));
+            }
+            transact.commit(transaction);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that "group by" returns the same groups whether the
+ * tuples are grouped in memory or spilled to disk.
+ */
+public class GroupByClauseTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-groupby");
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeTestData() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final StringBuilder data = new StringBuilder("<items>");
+        for (int i = 0; i < 500; i++) {
+            data.append("<item k='k").append(i % 13).append("' v='").append(i).append("'/>");
+        }
+        data.append("</items>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager mgr = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = mgr.beginTransaction()) {
+            final Collection root = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, root);
+            final IndexInfo info = root.validateXMLResource(transaction, broker, XmldbURI.create("items.xml"), data.toString());
+            root.store(transaction, broker, info, data.toString());
+            mgr.commit(transaction);
+        }
+    }
+
+    @Test
+    public void atomicValues() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameGroups(
+                "for $i in 1 to 1000\n" +
+                "let $s := 'v' || $i\n" +
+                "group by $k := $i mod 7, $even := $i mod 2 = 0\n" +
+                "order by $k, $even\n" +
+                "return $k || ':' || $even || ':' || count($i) || ':' || sum($i) || ':' || $s[last()]");
+    }
+
+    @Test
+    public void storedNodes() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameGroups(
+                "for $x in collection('" + TEST_COLLECTION + "')//item\n" +
+                "group by $k := $x/@k\n" +
+                "order by $k\n" +
+                "return $k || ':' || string-join($x/@v, ',') || ':' || count($x/..)");
+    }
+
+    @Test
+    public void constructedNodes() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameGroups(
+                "for $i in 1 to 300\n" +
+                "let $e := if ($i > 200) then <e>{$i}</e> else $i\n" +
+                "group by $k := $i mod 5\n" +
+                "order by $k\n" +
+                "return $k || ':' || string-join($e, ',')");
+    }
+
+    @Test
+    public void collation() throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> groups = assertSameGroups(
+                "for $i in 1 to 200\n" +
+                "let $city := ('Düsseldorf', 'Dusseldorf', 'Köln')[$i mod 3 + 1]\n" +
+                "group by $c := $city collation '?strength=primary'\n" +
+                "order by count($i)\n" +
+                "return count($i)");
+        assertEquals(2, groups.size());
+    }
+
+    private List<String> assertSameGroups(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> inMemory = execute(query, 0);
+        final List<String> spilled = execute(query, 10);
+        assertEquals(inMemory, spilled);
+        return inMemory;
+    }
+
+    private List<String> execute(final String query, final int spillThreshold) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(broker, context, query);
+            context.setGroupBySpillThreshold(spillThreshold);
+            final Sequence result = xquery.execute(broker, compiled, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                values.add(i.nextItem().getStringValue());
+            }
+            return values;
+        }
+    }
+}
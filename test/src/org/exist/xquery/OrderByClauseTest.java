@@ -0,0 +1,184 @@
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that "order by" returns the same order whether it sorts in memory,
+ * merges sorted runs from disk or only keeps the first items.
+ */
+public class OrderByClauseTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-orderby");
+
+    private static final String STORED_NODES =
+            "for $x in collection('" + TEST_COLLECTION + "')//item\n" +
+            "order by $x/@k descending, number($x/@v)\n" +
+            "return $x";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeTestData() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final StringBuilder data = new StringBuilder("<items>");
+        for (int i = 0; i < 500; i++) {
+            data.append("<item k='k").append((i * 7) % 13).append("' v='").append(i).append("'/>");
+        }
+        data.append("</items>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager mgr = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = mgr.beginTransaction()) {
+            final Collection root = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, root);
+            final IndexInfo info = root.validateXMLResource(transaction, broker, XmldbURI.create("items.xml"), data.toString());
+            root.store(transaction, broker, info, data.toString());
+            mgr.commit(transaction);
+        }
+    }
+
+    @Test
+    public void atomicValues() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameOrder(
+                "for $i in 1 to 1000\n" +
+                "let $k := ($i * 7919) mod 101\n" +
+                "order by $k empty greatest, -$i\n" +
+                "return $k || ':' || $i");
+    }
+
+    @Test
+    public void storedNodes() throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> ordered = assertSameOrder(STORED_NODES + "/@v/string()");
+        assertEquals(500, ordered.size());
+    }
+
+    @Test
+    public void constructedNodes() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameOrder(
+                "for $i in 1 to 300\n" +
+                "order by $i mod 17\n" +
+                "return if ($i > 100) then <e>{$i}</e> else $i");
+    }
+
+    @Test
+    public void positionalPredicate() throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> all = execute(STORED_NODES + "/@v/string()", 0);
+
+        final String query = "(" + STORED_NODES + ")[position() le 20]/@v/string()";
+        assertEquals(20, getLimit(query));
+        assertEquals(all.subList(0, 20), execute(query, 0));
+
+        assertEquals(7, getLimit("(" + STORED_NODES + ")[7]"));
+        assertEquals(all.subList(6, 7), execute("(" + STORED_NODES + ")[7]/@v/string()", 0));
+
+        assertEquals(-1, getLimit("(" + STORED_NODES + ")[position() ge 20]"));
+        assertEquals(-1, getLimit("(" + STORED_NODES + ")[last()]"));
+    }
+
+    @Test
+    public void subsequence() throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> all = execute(STORED_NODES + "/@v/string()", 0);
+
+        final String query = "subsequence(" + STORED_NODES + ", 11, 10) ! @v/string()";
+        assertEquals(20, getLimit(query));
+        assertEquals(all.subList(10, 20), execute(query, 0));
+
+        assertEquals(-1, getLimit("subsequence(" + STORED_NODES + ", 11)"));
+    }
+
+    @Test
+    public void cleanupClosesUnfinishedIterator() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(broker, context, STORED_NODES);
+            context.setOrderBySpillThreshold(64);
+            final Sequence result = xquery.execute(broker, compiled, null);
+
+            // stop after a few items, leaving the runs open
+            final SequenceIterator i = result.iterate();
+            for (int n = 0; n < 3; n++) {
+                assertTrue(i.hasNext());
+                i.nextItem();
+            }
+
+            context.runCleanupTasks();
+            assertFalse(i.hasNext());
+        }
+    }
+
+    private List<String> assertSameOrder(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> inMemory = execute(query, 0);
+        final List<String> spilled = execute(query, 64);
+        assertEquals(inMemory, spilled);
+        return inMemory;
+    }
+
+    private List<String> execute(final String query, final int spillThreshold) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(broker, context, query);
+            context.setOrderBySpillThreshold(spillThreshold);
+            try {
+                final Sequence result = xquery.execute(broker, compiled, null);
+                final List<String> values = new ArrayList<>();
+                for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                    values.add(i.nextItem().getStringValue());
+                }
+                return values;
+            } finally {
+                context.runCleanupTasks();
+            }
+        }
+    }
+
+    private int getLimit(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final CompiledXQuery compiled = xquery.compile(broker, new XQueryContext(pool), query);
+            final int[] limit = { Integer.MIN_VALUE };
+            ((Expression) compiled).accept(new DefaultExpressionVisitor() {
+                @Override
+                public void visitFilteredExpr(final FilteredExpression filtered) {
+                    filtered.getExpression().accept(this);
+                }
+
+                @Override
+                public void visitOrderByClause(final OrderByClause orderBy) {
+                    limit[0] = orderBy.getLimit();
+                }
+            });
+            return limit[0];
+        }
+    }
+}
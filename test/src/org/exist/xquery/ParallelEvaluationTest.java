@@ -0,0 +1,167 @@
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the results of path expressions evaluated over partitions of
+ * the documents with those evaluated in a single thread.
+ */
+public class ParallelEvaluationTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-parallel");
+
+    private static final int DOCUMENTS = 10 * ParallelEvaluation.MIN_PARTITION_SIZE;
+
+    private static final String PARALLEL = "declare option exist:parallelism \"4\";\n";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection test = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, test);
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final StringBuilder log = new StringBuilder("<log id=\"" + i + "\">");
+                for (int j = 0; j < 5; j++) {
+                    log.append("<event level=\"").append((i + j) % 7 == 0 ? "ERROR" : "INFO").append("\" n=\"")
+                            .append(i * 5 + j).append("\"><msg>message ").append(j).append("</msg></event>");
+                }
+                log.append("</log>");
+                final XmldbURI docUri = XmldbURI.create("log" + i + ".xml");
+                final IndexInfo info = test.validateXMLResource(transaction, broker, docUri, log.toString());
+                test.store(transaction, broker, info, log.toString());
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    @Test
+    public void descendants() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameResult("collection('" + TEST_COLLECTION + "')//event/@n/string()");
+    }
+
+    @Test
+    public void children() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameResult("collection('" + TEST_COLLECTION + "')/log/event/msg/string()");
+    }
+
+    @Test
+    public void predicate() throws EXistException, PermissionDeniedException, XPathException {
+        final Sequence result = assertSameResult(
+                "collection('" + TEST_COLLECTION + "')//event[@level = 'ERROR']/@n/string()");
+        assertTrue(result.getItemCount() > 0);
+        assertTrue(result.getItemCount() < DOCUMENTS * 5);
+    }
+
+    @Test
+    public void attributes() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameResult("collection('" + TEST_COLLECTION + "')//@level/string()");
+    }
+
+    @Test
+    public void noFreeBrokers() throws EXistException, PermissionDeniedException, XPathException,
+            InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DocumentSet docs = broker.getCollection(TEST_COLLECTION).allDocs(broker,
+                    new DefaultDocumentSet(), false);
+
+            // take all other brokers
+            final int free = pool.getMax() - pool.countActiveBrokers();
+            final CountDownLatch acquired = new CountDownLatch(free);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Thread> holders = new ArrayList<>();
+            for (int i = 0; i < free; i++) {
+                final Thread holder = new Thread(() -> {
+                    try (final DBBroker b = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                        acquired.countDown();
+                        release.await();
+                    } catch (final EXistException | InterruptedException e) {
+                        acquired.countDown();
+                    }
+                });
+                holder.start();
+                holders.add(holder);
+            }
+            acquired.await();
+
+            final ConcurrentLinkedQueue<DBBroker> used = new ConcurrentLinkedQueue<>();
+            final NodeSet result;
+            try {
+                final XQueryContext context = new XQueryContext(pool);
+                result = ParallelEvaluation.evaluate(context, new PathExpr(context), docs, 4, (b, partition) -> {
+                    used.add(b);
+                    final NodeSet nodes = new NewArrayNodeSet();
+                    for (final Iterator<DocumentImpl> i = partition.getDocumentIterator(); i.hasNext(); ) {
+                        nodes.add(new NodeProxy(i.next()));
+                    }
+                    return nodes;
+                });
+            } finally {
+                release.countDown();
+                for (final Thread holder : holders) {
+                    holder.join();
+                }
+            }
+
+            // all partitions were evaluated by the calling thread
+            assertEquals(4, used.size());
+            for (final DBBroker b : used) {
+                assertSame(broker, b);
+            }
+            assertEquals(DOCUMENTS, result.getItemCount());
+        }
+    }
+
+    private Sequence assertSameResult(final String query) throws EXistException, PermissionDeniedException,
+            XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence expected = xquery.execute(broker, query, null);
+            final Sequence actual = xquery.execute(broker, PARALLEL + query, null);
+            assertEquals(expected.getItemCount(), actual.getItemCount());
+            for (int i = 0; i < expected.getItemCount(); i++) {
+                assertEquals(expected.itemAt(i).getStringValue(), actual.itemAt(i).getStringValue());
+            }
+            return actual;
+        }
+    }
+}
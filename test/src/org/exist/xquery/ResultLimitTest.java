@@ -0,0 +1,178 @@
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that expressions whose result is only used up to a certain
+ * position stop early, and still return the same items.
+ */
+public class ResultLimitTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create(XmldbURI.ROOT_COLLECTION + "/test-limit");
+
+    private static final String ITEMS = "collection('" + TEST_COLLECTION + "')//item";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeTestData() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager mgr = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = mgr.beginTransaction()) {
+            final Collection root = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, root);
+            for (int i = 0; i < 40; i++) {
+                final StringBuilder data = new StringBuilder("<items>");
+                // the first documents do not contain any item
+                for (int j = 0; i >= 5 && j < 3; j++) {
+                    data.append("<item id='").append(i).append('.').append(j).append("'/>");
+                }
+                data.append("</items>");
+                final IndexInfo info = root.validateXMLResource(transaction, broker, XmldbURI.create("doc" + i + ".xml"), data.toString());
+                root.store(transaction, broker, info, data.toString());
+            }
+            mgr.commit(transaction);
+        }
+    }
+
+    @Test
+    public void positionalPredicate() throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> all = execute(ITEMS + "/@id/string()");
+        assertEquals(105, all.size());
+
+        assertEquals(Collections.singletonList(1), getStepLimits("(" + ITEMS + ")[1]"));
+        assertEquals(all.subList(0, 1), execute("(" + ITEMS + ")[1]/@id/string()"));
+
+        assertEquals(Collections.singletonList(10), getStepLimits("(" + ITEMS + ")[position() le 10]"));
+        assertEquals(all.subList(0, 10), execute("(" + ITEMS + ")[position() le 10]/@id/string()"));
+
+        assertEquals(Collections.singletonList(-1), getStepLimits("(" + ITEMS + ")[last()]"));
+    }
+
+    @Test
+    public void functions() throws EXistException, PermissionDeniedException, XPathException {
+        final List<String> all = execute(ITEMS + "/@id/string()");
+
+        assertEquals(Collections.singletonList(1), getStepLimits("head(" + ITEMS + ")"));
+        assertEquals(all.subList(0, 1), execute("head(" + ITEMS + ")/@id/string()"));
+
+        assertEquals(Collections.singletonList(20), getStepLimits("subsequence(" + ITEMS + ", 11, 10)"));
+        assertEquals(all.subList(10, 20), execute("subsequence(" + ITEMS + ", 11, 10) ! @id/string()"));
+
+        assertEquals(Collections.singletonList(1), getStepLimits("exists(" + ITEMS + ")"));
+        assertEquals(Collections.singletonList("true"), execute("exists(" + ITEMS + ")"));
+        assertEquals(Collections.singletonList("true"), execute("empty(collection('" + TEST_COLLECTION + "')//missing)"));
+    }
+
+    @Test
+    public void predicates() throws EXistException, PermissionDeniedException, XPathException {
+        // all nodes are needed to find the matches for each context node
+        assertEquals(Collections.singletonList("35"),
+                execute("count(collection('" + TEST_COLLECTION + "')/items[exists(item)])"));
+        assertEquals(Collections.singletonList("5.0"),
+                execute("head(collection('" + TEST_COLLECTION + "')//item[@id = '7.1'] | " + ITEMS + ")/@id/string()"));
+    }
+
+    @Test
+    public void forClause() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals(Arrays.asList(3, 3), getForLimits("(for $i in 1 to 10000000 for $j in 1 to 2 return $i * $j)[position() le 3]"));
+        assertEquals(Arrays.asList("1", "2", "2"),
+                execute("(for $i in 1 to 10000000 for $j in 1 to 2 return $i * $j)[position() le 3]"));
+
+        final String flwor = "for $d in collection('" + TEST_COLLECTION + "') let $n := $d//item where count($n) > 0 return $n/@id/string()";
+        final List<String> all = execute(flwor);
+        assertEquals(Collections.singletonList(5), getForLimits("subsequence(" + flwor + ", 2, 4)"));
+        assertEquals(all.subList(1, 5), execute("subsequence(" + flwor + ", 2, 4)"));
+
+        // grouping needs all tuples
+        assertEquals(Collections.singletonList(-1), getForLimits("(for $i in 1 to 10 group by $k := $i mod 2 return $k)[1]"));
+    }
+
+    private List<String> execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence result = xquery.execute(broker, query, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                values.add(i.nextItem().getStringValue());
+            }
+            return values;
+        }
+    }
+
+    private List<Integer> getStepLimits(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final List<Integer> limits = new ArrayList<>();
+        compile(query).accept(new LimitVisitor() {
+            @Override
+            public void visitLocationStep(final LocationStep locationStep) {
+                if (locationStep.getTest().getName() != null && locationStep.getTest().getName().getLocalPart().equals("item")) {
+                    limits.add(locationStep.getLimit());
+                }
+                super.visitLocationStep(locationStep);
+            }
+        });
+        return limits;
+    }
+
+    private List<Integer> getForLimits(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final List<Integer> limits = new ArrayList<>();
+        compile(query).accept(new LimitVisitor() {
+            @Override
+            public void visitForExpression(final ForExpr forExpr) {
+                limits.add(forExpr.getLimit());
+                super.visitForExpression(forExpr);
+            }
+        });
+        return limits;
+    }
+
+    private Expression compile(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            return (Expression) xquery.compile(broker, new XQueryContext(pool), query);
+        }
+    }
+
+    private static class LimitVisitor extends DefaultExpressionVisitor {
+        @Override
+        public void visit(final Expression expression) {
+            for (int i = 0; i < expression.getSubExpressionCount(); i++) {
+                expression.getSubExpression(i).accept(this);
+            }
+        }
+
+        @Override
+        public void visitFilteredExpr(final FilteredExpression filtered) {
+            filtered.expression.accept(this);
+        }
+    }
+}
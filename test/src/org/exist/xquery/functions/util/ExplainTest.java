@@ -0,0 +1,77 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.util;
+
+import org.exist.test.ExistXmldbEmbeddedServer;
+import org.exist.xquery.PerformanceStats;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the plans returned by util:explain.
+ */
+public class ExplainTest {
+
+    @ClassRule
+    public static final ExistXmldbEmbeddedServer existEmbeddedServer = new ExistXmldbEmbeddedServer(false, true);
+
+    private static final String PROLOG =
+            "declare namespace stats='" + PerformanceStats.XML_NAMESPACE + "';\n";
+
+    @Test
+    public void explainDoesNotExecute() throws XMLDBException {
+        final String query = PROLOG +
+                "let $plan := util:explain(\"error(xs:QName('local:fail'), 'executed')\")\n" +
+                "return (string($plan/@mode), count($plan/stats:query), count($plan//stats:expr))";
+        assertResults(query, "explain", "1", "0");
+    }
+
+    @Test
+    public void analyzeCountsCallsAndItems() throws XMLDBException {
+        final String query = PROLOG +
+                "let $plan := util:explain(\"" +
+                    "let $doc := <a>{for $i in 1 to 10 return <b n='{$i}'/>}</a> " +
+                    "return count($doc/b[@n > 6])\", true())\n" +
+                "let $step := $plan//stats:expr[@class = 'LocationStep'][starts-with(@expr, 'child::{}b')]\n" +
+                "return (string($plan/@mode), string($step/@calls), string($step/@items-in), string($step/@items-out), " +
+                    "$plan//stats:expr/xs:long(@time) >= 0)";
+        assertResults(query, "analyze", "1", "1", "4", "true");
+    }
+
+    @Test
+    public void analyzeMergesRepeatedEvaluations() throws XMLDBException {
+        final String query = PROLOG +
+                "let $plan := util:explain('for $i in 1 to 5 return $i * 2', true())\n" +
+                "return $plan//stats:expr[@class = 'OpNumeric']/string(@calls)";
+        assertResults(query, "5");
+    }
+
+    private static void assertResults(final String query, final String... expected) throws XMLDBException {
+        final ResourceSet result = existEmbeddedServer.executeQuery(query);
+        assertEquals(expected.length, result.getSize());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.getResource(i).getContent().toString());
+        }
+    }
+}